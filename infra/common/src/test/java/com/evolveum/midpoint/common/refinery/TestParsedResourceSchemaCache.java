@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.common.refinery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.resetPrismContext;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.impl.match.MatchingRuleRegistryFactory;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.SchemaService;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
+import com.evolveum.midpoint.schema.processor.ParsedResourceSchemaCache;
+import com.evolveum.midpoint.schema.processor.ResourceSchema;
+import com.evolveum.midpoint.schema.processor.ResourceSchemaFactory;
+import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+
+/**
+ * Tests {@link ParsedResourceSchemaCache}: separate copies of the same resource share the parsed schemas,
+ * while changing the `schemaHandling` or the XSD schema causes the schema to be parsed again.
+ */
+@Listeners({ com.evolveum.midpoint.tools.testng.AlphabeticalMethodInterceptor.class })
+public class TestParsedResourceSchemaCache extends AbstractUnitTest {
+
+    private static final File RESOURCE_COMPLEX_FILE = new File("src/test/resources/refinery", "resource-complex.xml");
+
+    @BeforeClass
+    public void setup() throws SchemaException, SAXException, IOException {
+        resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        SchemaService.init(
+                getPrismContext(),
+                new RelationRegistryDummyImpl(),
+                MatchingRuleRegistryFactory.createRegistry());
+        ParsedResourceSchemaCache.invalidateAll();
+    }
+
+    /** Schemas parsed for one copy of the resource are reused for another copy with the same content. */
+    @Test
+    public void test100SameContent() throws Exception {
+        given("two copies of the same resource");
+        PrismObject<ResourceType> first = parseResource();
+        PrismObject<ResourceType> second = parseResource();
+
+        when("their schemas are obtained");
+        long parseCountBefore = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
+        ResourceSchema firstSchema = ResourceSchemaFactory.getCompleteSchema(first);
+        ResourceSchema secondSchema = ResourceSchemaFactory.getCompleteSchema(second);
+        long parseCount = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT) - parseCountBefore;
+
+        then("the XSD is parsed once, and the schemas are shared");
+        displayValue("Parse count", parseCount);
+        assertThat(parseCount).as("parse count").isEqualTo(1);
+        assertThat(secondSchema).as("complete schema of the second copy").isSameAs(firstSchema);
+        assertThat(ResourceSchemaFactory.getRawSchema(second))
+                .as("raw schema of the second copy")
+                .isSameAs(ResourceSchemaFactory.getRawSchema(first));
+        assertThat(ParsedResourceSchemaCache.size()).as("cache size").isEqualTo(1);
+    }
+
+    /** Changed `schemaHandling` leads to a new complete schema, while the raw one is reused. */
+    @Test
+    public void test110ChangedSchemaHandling() throws Exception {
+        given("a resource copy, and a copy with changed schema handling");
+        PrismObject<ResourceType> original = parseResource();
+        PrismObject<ResourceType> changed = parseResource();
+        changed.asObjectable().getSchemaHandling().getObjectType().get(0).setDisplayName("Changed Account");
+
+        when("their schemas are obtained");
+        long parseCountBefore = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
+        ResourceSchema originalSchema = ResourceSchemaFactory.getCompleteSchema(original);
+        ResourceSchema changedSchema = ResourceSchemaFactory.getCompleteSchema(changed);
+        long parseCount = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT) - parseCountBefore;
+
+        then("the complete schema is created anew, reflecting the change");
+        assertThat(changedSchema).as("complete schema after the change").isNotSameAs(originalSchema);
+        assertThat(changedSchema.getObjectTypeDefinitions())
+                .as("object type definitions after the change")
+                .anySatisfy(def -> assertThat(def.getDisplayName()).isEqualTo("Changed Account"));
+
+        and("the XSD is not parsed again");
+        assertThat(parseCount).as("parse count").isZero();
+        assertThat(ResourceSchemaFactory.getRawSchema(changed))
+                .as("raw schema after the change")
+                .isSameAs(ResourceSchemaFactory.getRawSchema(original));
+    }
+
+    /** Changed XSD leads to parsing it again. */
+    @Test
+    public void test120ChangedXsd() throws Exception {
+        given("a resource copy, and a copy with changed XSD schema");
+        PrismObject<ResourceType> original = parseResource();
+        PrismObject<ResourceType> changed = parseResource();
+        Element changedXsd = (Element) ResourceTypeUtil.getResourceXsdSchema(changed).cloneNode(true);
+        changedXsd.setAttribute("version", "changed");
+        ResourceTypeUtil.setResourceXsdSchema(changed, changedXsd);
+
+        when("their schemas are obtained");
+        ResourceSchema originalSchema = ResourceSchemaFactory.getCompleteSchema(original);
+        long parseCountBefore = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
+        ResourceSchema changedSchema = ResourceSchemaFactory.getCompleteSchema(changed);
+        long parseCount = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT) - parseCountBefore;
+
+        then("the XSD is parsed again, and both schemas are new");
+        assertThat(parseCount).as("parse count").isEqualTo(1);
+        assertThat(changedSchema).as("complete schema after the change").isNotSameAs(originalSchema);
+        assertThat(ResourceSchemaFactory.getRawSchema(changed))
+                .as("raw schema after the change")
+                .isNotSameAs(ResourceSchemaFactory.getRawSchema(original));
+    }
+
+    /** After invalidation, the XSD is parsed again. */
+    @Test
+    public void test130Invalidation() throws Exception {
+        given("a resource with the schema cached");
+        PrismObject<ResourceType> resource = parseResource();
+        ResourceSchemaFactory.getCompleteSchema(resource);
+
+        when("the cache is invalidated");
+        ParsedResourceSchemaCache.invalidateAll();
+
+        then("the cache is empty, and the schema is parsed again for a new copy");
+        assertThat(ParsedResourceSchemaCache.size()).as("cache size").isZero();
+        long parseCountBefore = InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
+        ResourceSchemaFactory.getCompleteSchema(parseResource());
+        assertThat(InternalMonitor.getCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT) - parseCountBefore)
+                .as("parse count")
+                .isEqualTo(1);
+    }
+
+    private PrismObject<ResourceType> parseResource() throws SchemaException, IOException {
+        return getPrismContext().parseObject(RESOURCE_COMPLEX_FILE);
+    }
+}
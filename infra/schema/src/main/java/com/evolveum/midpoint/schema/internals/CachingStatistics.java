@@ -6,74 +6,95 @@
  */
 package com.evolveum.midpoint.schema.internals;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.evolveum.midpoint.util.DebugDumpable;
 import com.evolveum.midpoint.util.DebugUtil;
 
 /**
+ * Counters are atomic (not synchronized), as they are updated on hot paths, e.g. by each resource cache access.
+ *
  * @author semancik
  *
  */
 public class CachingStatistics implements DebugDumpable {
 
-    private long requests = 0;
-    private long hits = 0;
-    private long misses = 0;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Number of cached objects cloned because the client needed a mutable copy. */
+    private final AtomicLong clones = new AtomicLong();
 
     public long getRequests() {
-        return requests;
+        return requests.get();
     }
 
-    public synchronized void setRequests(long requests) {
-        this.requests = requests;
+    public void setRequests(long requests) {
+        this.requests.set(requests);
     }
 
-    public synchronized void recordRequest() {
-        this.requests++;
+    public void recordRequest() {
+        requests.incrementAndGet();
     }
 
     public long getHits() {
-        return hits;
+        return hits.get();
     }
 
-    public synchronized void setHits(long hits) {
-        this.hits = hits;
+    public void setHits(long hits) {
+        this.hits.set(hits);
     }
 
-    public synchronized void recordHit() {
-        this.hits++;
+    public void recordHit() {
+        hits.incrementAndGet();
     }
 
     public long getMisses() {
-        return misses;
+        return misses.get();
+    }
+
+    public void setMisses(long misses) {
+        this.misses.set(misses);
+    }
+
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public long getClones() {
+        return clones.get();
     }
 
-    public synchronized void setMisses(long misses) {
-        this.misses = misses;
+    public void setClones(long clones) {
+        this.clones.set(clones);
     }
 
-    public synchronized void recordMiss() {
-        this.misses++;
+    public void recordClone() {
+        clones.incrementAndGet();
     }
 
     public CachingStatistics clone() {
         CachingStatistics clone = new CachingStatistics();
-        clone.requests = this.requests;
-        clone.hits = this.hits;
-        clone.misses = this.misses;
+        clone.setRequests(getRequests());
+        clone.setHits(getHits());
+        clone.setMisses(getMisses());
+        clone.setClones(getClones());
         return clone;
     }
 
     @Override
     public String toString() {
-        return "CachingStatistics(requests=" + requests + ", hits=" + hits + ", misses=" + misses + ")";
+        return "CachingStatistics(requests=" + requests + ", hits=" + hits + ", misses=" + misses + ", clones=" + clones + ")";
     }
 
     @Override
     public String debugDump(int indent) {
         StringBuilder sb = DebugUtil.createTitleStringBuilderLn(CachingStatistics.class, indent);
-        DebugUtil.debugDumpWithLabelLn(sb, "requests", requests, indent);
-        DebugUtil.debugDumpWithLabelLn(sb, "hits", hits, indent);
-        DebugUtil.debugDumpWithLabel(sb, "misses", misses, indent);
+        DebugUtil.debugDumpWithLabelLn(sb, "requests", getRequests(), indent);
+        DebugUtil.debugDumpWithLabelLn(sb, "hits", getHits(), indent);
+        DebugUtil.debugDumpWithLabelLn(sb, "misses", getMisses(), indent);
+        DebugUtil.debugDumpWithLabel(sb, "clones", getClones(), indent);
         return sb.toString();
     }
 
@@ -63,6 +63,12 @@ public enum InternalCounters {
 
     PROJECTOR_RUN_COUNT("projectorRunCount", "projector run count", null),
 
+    /** Value combinations (tuples) evaluated in combinatorial (relative) value transformation. */
+    VALUE_TUPLE_EVALUATION_COUNT("valueTupleEvaluationCount", "value tuple evaluation count", null),
+
+    /** Value combinations (tuples) skipped by the condition pre-check in combinatorial value transformation. */
+    VALUE_TUPLE_SKIP_COUNT("valueTupleSkipCount", "value tuple skip count", null),
+
     TRIGGER_FIRED_COUNT("triggerFiredCount", "trigger fired count", null);
 
     // Used as localization key
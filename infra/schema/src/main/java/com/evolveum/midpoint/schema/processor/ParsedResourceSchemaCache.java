@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.processor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Element;
+
+import com.evolveum.midpoint.prism.util.CloneUtil;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SchemaHandlingType;
+
+/**
+ * Node-wide cache of parsed resource schemas (raw and complete), keyed by resource OID and verified by the content
+ * they were created from: the hash of the XSD schema, and the `schemaHandling` bean. See {@link ResourceSchemaFactory}.
+ *
+ * Without it, the schema is parsed from XSD and refined for each new in-memory copy of the resource, i.e. on each
+ * resource cache miss. The most frequent causes of such misses are modifications of the resource that touch neither
+ * the schema nor the schema handling (operational state, availability status, caching metadata, configuration),
+ * and for these the schemas can be reused. Computing the hash requires serializing the XSD DOM, which is much cheaper
+ * than parsing it into the schema.
+ *
+ * Cached schemas are immutable and shared by all resource objects having the same content.
+ *
+ * The number of resources cached is limited; the least recently used entries are evicted over the limit.
+ * As this class lives below the repository layer, it is registered in the cache registry (for invalidation,
+ * diagnostics and content dumping) by an adapter in the provisioning module.
+ */
+public class ParsedResourceSchemaCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ParsedResourceSchemaCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(ParsedResourceSchemaCache.class.getName() + ".content");
+
+    /** Maximal number of resources cached. Over this limit, the least recently used entries are evicted. */
+    static final int MAX_ENTRIES = 1000;
+
+    /** Entries in the access order, guarded by itself. */
+    @NotNull private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                LOGGER.trace("Evicting parsed schema for resource {}", eldest.getKey());
+                return true;
+            } else {
+                return false;
+            }
+        }
+    };
+
+    /** Computes the hash of the XSD schema. Guarded by the caller, as DOM access is not thread-safe. */
+    static @NotNull String computeXsdHash(@NotNull Element xsdSchema) {
+        return Hashing.sha256()
+                .hashString(DOMUtil.serializeDOMToString(xsdSchema), StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    /** Returns cached raw schema for given resource, if it was parsed from the same XSD. */
+    static @Nullable ResourceSchema getRawSchema(@Nullable String oid, @NotNull String xsdHash) {
+        Entry entry = getEntry(oid, xsdHash);
+        return entry != null ? entry.rawSchema : null;
+    }
+
+    /** Caches the raw schema. The schema is frozen in the process. */
+    static void putRawSchema(@Nullable String oid, @NotNull String xsdHash, @NotNull ResourceSchema rawSchema) {
+        if (oid == null) {
+            return;
+        }
+        rawSchema.freeze();
+        synchronized (ENTRIES) {
+            Entry existing = ENTRIES.get(oid);
+            if (existing == null || !existing.xsdHash.equals(xsdHash)) {
+                LOGGER.trace("Caching raw schema for resource {} (XSD hash {})", oid, xsdHash);
+                ENTRIES.put(oid, new Entry(xsdHash, rawSchema));
+            }
+        }
+    }
+
+    /** Returns cached complete schema for given resource, if it was created from the same XSD and schema handling. */
+    static @Nullable ResourceSchema getCompleteSchema(
+            @Nullable String oid, @NotNull String xsdHash, @Nullable SchemaHandlingType schemaHandling) {
+        Entry entry = getEntry(oid, xsdHash);
+        if (entry == null) {
+            return null;
+        }
+        CompleteSchema completeSchema = entry.completeSchema;
+        if (completeSchema != null && Objects.equals(completeSchema.schemaHandling, schemaHandling)) {
+            return completeSchema.schema;
+        } else {
+            return null;
+        }
+    }
+
+    /** Caches the complete schema (must be frozen), if the raw schema for the same XSD is cached. */
+    static void putCompleteSchema(
+            @Nullable String oid, @NotNull String xsdHash, @Nullable SchemaHandlingType schemaHandling,
+            @NotNull ResourceSchema completeSchema) {
+        Entry entry = getEntry(oid, xsdHash);
+        if (entry != null) {
+            LOGGER.trace("Caching complete schema for resource {} (XSD hash {})", oid, xsdHash);
+            entry.completeSchema = new CompleteSchema(
+                    schemaHandling != null ? CloneUtil.toImmutable(schemaHandling) : null,
+                    completeSchema);
+        }
+    }
+
+    private static @Nullable Entry getEntry(@Nullable String oid, @NotNull String xsdHash) {
+        if (oid == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(oid);
+        }
+        return entry != null && entry.xsdHash.equals(xsdHash) ? entry : null;
+    }
+
+    /**
+     * Removes the schemas of given resource. Not needed for correctness, as the entries are verified by the content
+     * they were created from.
+     */
+    public static void invalidate(@NotNull String oid) {
+        synchronized (ENTRIES) {
+            ENTRIES.remove(oid);
+        }
+    }
+
+    public static void invalidateAll() {
+        LOGGER.trace("Invalidating the whole cache");
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    public static void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            synchronized (ENTRIES) {
+                ENTRIES.forEach((oid, entry) -> LOGGER_CONTENT.info("Cached schema: {}: XSD hash {}, complete schema: {}",
+                        oid, entry.xsdHash, entry.completeSchema != null));
+            }
+        }
+    }
+
+    private static class Entry {
+
+        @NotNull private final String xsdHash;
+        @NotNull private final ResourceSchema rawSchema;
+
+        /** Complete schema is replaced as a whole, so that its `schemaHandling` and `schema` are always consistent. */
+        private volatile CompleteSchema completeSchema;
+
+        private Entry(@NotNull String xsdHash, @NotNull ResourceSchema rawSchema) {
+            this.xsdHash = xsdHash;
+            this.rawSchema = rawSchema;
+        }
+    }
+
+    private static class CompleteSchema {
+
+        /** Immutable copy. */
+        @Nullable private final SchemaHandlingType schemaHandling;
+        @NotNull private final ResourceSchema schema;
+
+        private CompleteSchema(@Nullable SchemaHandlingType schemaHandling, @NotNull ResourceSchema schema) {
+            this.schemaHandling = schemaHandling;
+            this.schema = schema;
+        }
+    }
+}
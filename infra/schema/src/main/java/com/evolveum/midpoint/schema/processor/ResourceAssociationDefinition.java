@@ -156,6 +156,10 @@ public class ResourceAssociationDefinition extends AbstractFreezable
         return !BooleanUtils.isFalse(getDefinitionBean().isExplicitReferentialIntegrity()); // because default is TRUE
     }
 
+    public boolean isBulkResolution() {
+        return BooleanUtils.isTrue(getDefinitionBean().isBulkResolution());
+    }
+
     public QName getMatchingRule() {
         return getDefinitionBean().getMatchingRule();
     }
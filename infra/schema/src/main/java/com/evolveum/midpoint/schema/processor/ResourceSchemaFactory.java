@@ -28,6 +28,7 @@ public class ResourceSchemaFactory {
 
     private static final String USER_DATA_KEY_PARSED_RESOURCE_SCHEMA = ResourceSchema.class.getName()+".parsedResourceSchema";
     private static final String USER_DATA_KEY_REFINED_SCHEMA = ResourceSchema.class.getName()+".refinedSchema";
+    private static final String USER_DATA_KEY_XSD_HASH = ResourceSchema.class.getName()+".xsdHash";
 
     public static ResourceSchema getCompleteSchema(@NotNull ResourceType resource)
             throws SchemaException, ConfigurationException {
@@ -84,11 +85,23 @@ public class ResourceSchemaFactory {
             return existingRefinedSchema;
         } else {
             stateCheck(!resource.isImmutable(), "Trying to setup parsed schema on immutable resource: %s", resource);
-            ResourceSchema completeSchema = parseCompleteSchema(resource.asObjectable());
-            resource.setUserData(USER_DATA_KEY_REFINED_SCHEMA, completeSchema);
-            if (completeSchema != null) {
-                completeSchema.freeze();
+            ResourceType resourceBean = resource.asObjectable();
+            ResourceSchema rawSchema = getRawSchema(resource);
+            String xsdHash = (String) resource.getUserData(USER_DATA_KEY_XSD_HASH);
+            ResourceSchema completeSchema = xsdHash != null ?
+                    ParsedResourceSchemaCache.getCompleteSchema(resource.getOid(), xsdHash, resourceBean.getSchemaHandling()) :
+                    null;
+            if (completeSchema == null) {
+                completeSchema = parseCompleteSchema(resourceBean, rawSchema);
+                if (completeSchema != null) {
+                    completeSchema.freeze();
+                    if (xsdHash != null) {
+                        ParsedResourceSchemaCache.putCompleteSchema(
+                                resource.getOid(), xsdHash, resourceBean.getSchemaHandling(), completeSchema);
+                    }
+                }
             }
+            resource.setUserData(USER_DATA_KEY_REFINED_SCHEMA, completeSchema);
             return completeSchema;
         }
     }
@@ -132,6 +145,9 @@ public class ResourceSchemaFactory {
      * Obtains "raw" schema for the resource, i.e. the one without `schemaHandling` and similar configuration.
      *
      * If the resource does NOT contain the schema, it must be mutable.
+     *
+     * The schema is taken from {@link ParsedResourceSchemaCache} if it was parsed from the same XSD before.
+     * Such a schema is immutable.
      */
     public static ResourceSchema getRawSchema(@NotNull PrismObject<ResourceType> resource) throws SchemaException {
         Element resourceXsdSchema = ResourceTypeUtil.getResourceXsdSchema(resource);
@@ -154,9 +170,14 @@ public class ResourceSchemaFactory {
                 }
             } else {
                 stateCheck(!resource.isImmutable(), "Trying to set parsed schema on immutable resource: %s", resource);
-                InternalMonitor.recordCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
-                ResourceSchema parsedSchema =
-                        ResourceSchemaParser.parse(resourceXsdSchema, "resource schema of " + resource);
+                String xsdHash = ParsedResourceSchemaCache.computeXsdHash(resourceXsdSchema);
+                ResourceSchema parsedSchema = ParsedResourceSchemaCache.getRawSchema(resource.getOid(), xsdHash);
+                if (parsedSchema == null) {
+                    InternalMonitor.recordCount(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
+                    parsedSchema = ResourceSchemaParser.parse(resourceXsdSchema, "resource schema of " + resource);
+                    ParsedResourceSchemaCache.putRawSchema(resource.getOid(), xsdHash, parsedSchema);
+                }
+                resource.setUserData(USER_DATA_KEY_XSD_HASH, xsdHash);
                 resource.setUserData(USER_DATA_KEY_PARSED_RESOURCE_SCHEMA, parsedSchema);
                 return parsedSchema;
             }
@@ -176,7 +197,11 @@ public class ResourceSchemaFactory {
      */
     @VisibleForTesting
     public static ResourceSchema parseCompleteSchema(ResourceType resource) throws SchemaException, ConfigurationException {
-        var rawResourceSchema = ResourceSchemaFactory.getRawSchema(resource);
+        return parseCompleteSchema(resource, ResourceSchemaFactory.getRawSchema(resource));
+    }
+
+    private static ResourceSchema parseCompleteSchema(ResourceType resource, ResourceSchema rawResourceSchema)
+            throws SchemaException, ConfigurationException {
         if (rawResourceSchema != null) {
             return new RefinedResourceSchemaParser(resource, rawResourceSchema)
                     .parse();
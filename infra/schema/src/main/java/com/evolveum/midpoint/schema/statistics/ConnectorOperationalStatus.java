@@ -7,6 +7,7 @@
 package com.evolveum.midpoint.schema.statistics;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 import com.evolveum.midpoint.util.DebugDumpable;
 import com.evolveum.midpoint.util.DebugUtil;
@@ -29,6 +30,11 @@ public class ConnectorOperationalStatus implements DebugDumpable, Serializable {
     public static final String F_POOL_CONFIG_MAX_IDLE_TIME = "poolConfigMaxIdleTime";
     public static final String F_POOL_STATUS_NUM_IDLE = "poolStatusNumIdle";
     public static final String F_POOL_STATUS_NUM_ACTIVE = "poolStatusNumActive";
+    public static final String F_CONCURRENCY_LIMIT = "concurrencyLimit";
+    public static final String F_CONCURRENCY_LIMIT_MAX = "concurrencyLimitMax";
+    public static final String F_CONCURRENCY_LIMIT_IN_FLIGHT = "concurrencyLimitInFlight";
+    public static final String F_CONCURRENCY_LIMIT_QUEUE_DEPTH = "concurrencyLimitQueueDepth";
+    public static final String F_CONCURRENCY_LIMIT_REJECTIONS = "concurrencyLimitRejections";
 
     private String connectorName;
     private String connectorClassName;
@@ -46,6 +52,13 @@ public class ConnectorOperationalStatus implements DebugDumpable, Serializable {
     private Integer poolStatusNumIdle;
     private Integer poolStatusNumActive;
 
+    // adaptive concurrency limit (null if not enabled)
+    private Integer concurrencyLimit;
+    private Integer concurrencyLimitMax;
+    private Integer concurrencyLimitInFlight;
+    private Integer concurrencyLimitQueueDepth;
+    private Long concurrencyLimitRejections;
+
     public String getConnectorName() {
         return connectorName;
     }
@@ -134,6 +147,46 @@ public class ConnectorOperationalStatus implements DebugDumpable, Serializable {
         this.poolStatusNumActive = poolStatusNumActive;
     }
 
+    public Integer getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(Integer concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public Integer getConcurrencyLimitMax() {
+        return concurrencyLimitMax;
+    }
+
+    public void setConcurrencyLimitMax(Integer concurrencyLimitMax) {
+        this.concurrencyLimitMax = concurrencyLimitMax;
+    }
+
+    public Integer getConcurrencyLimitInFlight() {
+        return concurrencyLimitInFlight;
+    }
+
+    public void setConcurrencyLimitInFlight(Integer concurrencyLimitInFlight) {
+        this.concurrencyLimitInFlight = concurrencyLimitInFlight;
+    }
+
+    public Integer getConcurrencyLimitQueueDepth() {
+        return concurrencyLimitQueueDepth;
+    }
+
+    public void setConcurrencyLimitQueueDepth(Integer concurrencyLimitQueueDepth) {
+        this.concurrencyLimitQueueDepth = concurrencyLimitQueueDepth;
+    }
+
+    public Long getConcurrencyLimitRejections() {
+        return concurrencyLimitRejections;
+    }
+
+    public void setConcurrencyLimitRejections(Long concurrencyLimitRejections) {
+        this.concurrencyLimitRejections = concurrencyLimitRejections;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -148,6 +201,8 @@ public class ConnectorOperationalStatus implements DebugDumpable, Serializable {
         result = prime * result + ((poolConfigWaitTimeout == null) ? 0 : poolConfigWaitTimeout.hashCode());
         result = prime * result + ((poolStatusNumActive == null) ? 0 : poolStatusNumActive.hashCode());
         result = prime * result + ((poolStatusNumIdle == null) ? 0 : poolStatusNumIdle.hashCode());
+        result = prime * result + Objects.hash(concurrencyLimit, concurrencyLimitMax, concurrencyLimitInFlight,
+                concurrencyLimitQueueDepth, concurrencyLimitRejections);
         return result;
     }
 
@@ -226,7 +281,11 @@ public class ConnectorOperationalStatus implements DebugDumpable, Serializable {
         } else if (!poolStatusNumIdle.equals(other.poolStatusNumIdle)) {
             return false;
         }
-        return true;
+        return Objects.equals(concurrencyLimit, other.concurrencyLimit)
+                && Objects.equals(concurrencyLimitMax, other.concurrencyLimitMax)
+                && Objects.equals(concurrencyLimitInFlight, other.concurrencyLimitInFlight)
+                && Objects.equals(concurrencyLimitQueueDepth, other.concurrencyLimitQueueDepth)
+                && Objects.equals(concurrencyLimitRejections, other.concurrencyLimitRejections);
     }
 
     @Override
@@ -249,7 +308,12 @@ public class ConnectorOperationalStatus implements DebugDumpable, Serializable {
         DebugUtil.debugDumpWithLabelLn(sb, "poolConfigMinEvictableIdleTime", poolConfigMinEvictableIdleTime, indent + 1);
         DebugUtil.debugDumpWithLabelLn(sb, "poolConfigMaxIdleTime", poolConfigMaxIdleTime, indent + 1);
         DebugUtil.debugDumpWithLabelLn(sb, "poolStatusNumIdle", poolStatusNumIdle, indent + 1);
-        DebugUtil.debugDumpWithLabel(sb, "poolStatusNumActive", poolStatusNumActive, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "poolStatusNumActive", poolStatusNumActive, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "concurrencyLimit", concurrencyLimit, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "concurrencyLimitMax", concurrencyLimitMax, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "concurrencyLimitInFlight", concurrencyLimitInFlight, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "concurrencyLimitQueueDepth", concurrencyLimitQueueDepth, indent + 1);
+        DebugUtil.debugDumpWithLabel(sb, "concurrencyLimitRejections", concurrencyLimitRejections, indent + 1);
         return sb.toString();
 
     }
@@ -605,6 +605,11 @@ public class ResourceTypeUtil {
         return false;
     }
 
+    public static boolean isChunkedShadowLookup(ResourceType resource) {
+        ResourceConsistencyType consistency = resource.getConsistency();
+        return consistency != null && Boolean.TRUE.equals(consistency.isChunkedShadowLookup());
+    }
+
     public static ErrorSelectorType getConnectorErrorCriticality(ResourceType resourceType) {
         ResourceConsistencyType consistency = resourceType.getConsistency();
         return consistency != null ? consistency.getConnectorErrorCriticality() : null;
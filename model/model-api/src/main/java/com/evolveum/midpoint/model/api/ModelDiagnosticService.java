@@ -40,6 +40,8 @@ public interface ModelDiagnosticService {
     String GET_LOG_FILE_CONTENT = CLASS_NAME_WITH_DOT + "getLogFileContent";
     String GET_LOG_FILE_SIZE = CLASS_NAME_WITH_DOT + "getLogFileSize";
     String GET_MEMORY_INFORMATION = CLASS_NAME_WITH_DOT + "getMemoryInformation";
+    String GET_PROJECTOR_COMPONENT_TIMINGS = CLASS_NAME_WITH_DOT + "getProjectorComponentTimings";
+    String GET_SCRIPT_EVALUATION_STATISTICS = CLASS_NAME_WITH_DOT + "getScriptEvaluationStatistics";
 
     /**
      * Provide repository run-time configuration and diagnostic information.
@@ -128,4 +130,28 @@ public interface ModelDiagnosticService {
     String getMemoryInformation(Task task, OperationResult parentResult)
             throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
             ConfigurationException, ExpressionEvaluationException, IOException;
+
+    /**
+     * Returns latency histograms of projector/clockwork components (loader, inbounds, assignments, template,
+     * outbounds, consolidation, reconciliation, execution, ...) collected on this node, tagged by channel and task.
+     *
+     * @param taskOid If not null, only data for given task are returned.
+     * @param reset Whether to reset the data after returning them.
+     */
+    // change the return type eventually
+    String getProjectorComponentTimings(String taskOid, boolean reset, Task task, OperationResult parentResult)
+            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+            ConfigurationException, ExpressionEvaluationException;
+
+    /**
+     * Returns statistics of script evaluations collected on this node (if enabled by `internals/expressionProfiling`),
+     * in CSV format. Scripts are identified by the OID of the object they are defined in, their path, and their code.
+     *
+     * @param taskOid If not null, only data for given task are returned.
+     * @param reset Whether to reset the data (for given task or all) after returning them.
+     */
+    // change the return type eventually
+    String getScriptEvaluationStatistics(String taskOid, boolean reset, Task task, OperationResult parentResult)
+            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+            ConfigurationException, ExpressionEvaluationException;
 }
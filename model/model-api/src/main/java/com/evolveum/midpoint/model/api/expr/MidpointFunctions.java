@@ -1540,6 +1540,23 @@ public interface MidpointFunctions {
                 || FocusTypeUtil.getEffectiveStatus((FocusType) object) == ActivationStatusType.ENABLED);
     }
 
+    /**
+     * Returns the `value` of the lookup table row with given key (or null if there is no such row).
+     *
+     * The rows are read from a node-local dictionary that is built on the first use and refreshed after the lookup table
+     * changes. Hence, this method is suitable also for large tables and frequent calls, e.g. in mappings translating codes.
+     */
+    @Nullable String lookupTableValue(@NotNull String lookupTableOid, @NotNull String key)
+            throws ObjectNotFoundException, SchemaException;
+
+    /**
+     * Returns the `label` of the lookup table row with given key (or null if there is no such row).
+     *
+     * @see #lookupTableValue(String, String)
+     */
+    @Nullable PolyString lookupTableLabel(@NotNull String lookupTableOid, @NotNull String key)
+            throws ObjectNotFoundException, SchemaException;
+
     /**
      * Does the current clockwork operation bring the focus into existence and being effectively enabled?
      * (So, previously it was either non-existent or effectively disabled.)
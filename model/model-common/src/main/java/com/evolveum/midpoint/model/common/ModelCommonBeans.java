@@ -10,6 +10,7 @@ package com.evolveum.midpoint.model.common;
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.api.ModelInteractionService;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.model.common.mapping.metadata.MetadataMappingEvaluator;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.crypto.Protector;
@@ -59,6 +60,7 @@ public class ModelCommonBeans {
     @Autowired public SecurityContextManager securityContextManager; // in order to get c:actor variable
     @Autowired public Protector protector;
     @Autowired public CacheConfigurationManager cacheConfigurationManager;
+    @Autowired public GlobalSearchExpressionEvaluatorCache globalSearchExpressionEvaluatorCache;
     @Autowired public ModelService modelService;
     @Autowired public ModelInteractionService modelInteractionService;
     @Autowired public MarkManager markManager;
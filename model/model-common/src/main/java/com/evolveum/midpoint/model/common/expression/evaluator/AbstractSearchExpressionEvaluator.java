@@ -28,6 +28,8 @@ import com.evolveum.midpoint.model.api.context.ModelElementContext;
 import com.evolveum.midpoint.model.common.ModelCommonBeans;
 import com.evolveum.midpoint.model.common.expression.ModelExpressionThreadLocalHolder;
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AbstractSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.QueryKey;
 import com.evolveum.midpoint.model.common.expression.evaluator.transformation.AbstractValueTransformationExpressionEvaluator;
 import com.evolveum.midpoint.model.common.util.PopulatorUtil;
 import com.evolveum.midpoint.prism.*;
@@ -59,6 +61,7 @@ import com.evolveum.midpoint.util.caching.CacheConfiguration;
 import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
 import com.evolveum.midpoint.util.caching.CacheUtil;
 import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
@@ -92,6 +95,7 @@ public abstract class AbstractSearchExpressionEvaluator<
     @Deprecated
     private final ModelInteractionService modelInteractionService = ModelCommonBeans.get().modelInteractionService;
     protected final CacheConfigurationManager cacheConfigurationManager = ModelCommonBeans.get().cacheConfigurationManager;
+    private final GlobalSearchExpressionEvaluatorCache globalCache = ModelCommonBeans.get().globalSearchExpressionEvaluatorCache;
 
     AbstractSearchExpressionEvaluator(
             QName elementName,
@@ -320,6 +324,15 @@ public abstract class AbstractSearchExpressionEvaluator<
             return null;
         }
 
+        /**
+         * Creates a key for the node-wide {@link GlobalSearchExpressionEvaluatorCache}. Null means the results are not to be
+         * cached there. The key must cover everything (besides the query) that the resulting values depend on.
+         */
+        protected @Nullable QueryKey createGlobalCacheKey(
+                Class<O> type, ObjectQuery query, ObjectSearchStrategyType searchStrategy) {
+            return null;
+        }
+
         private List<V> executeSearchUsingCache(
                 ObjectQuery query,
                 boolean createOnDemandRetry,
@@ -330,18 +343,18 @@ public abstract class AbstractSearchExpressionEvaluator<
             ObjectSearchStrategyType searchStrategy = getSearchStrategy();
 
             if (cacheInfo == null) {
-                return executeSearch(null, query, searchStrategy, createOnDemandRetry, newValueDeltas);
+                return executeSearchUsingGlobalCache(null, query, searchStrategy, createOnDemandRetry, newValueDeltas);
             }
 
             AbstractSearchExpressionEvaluatorCache<V, O, ?, ?> cache = cacheInfo.cache;
             if (cache == null) {
                 cacheInfo.logNull(targetTypeClass, query);
-                return executeSearch(null, query, searchStrategy, createOnDemandRetry, newValueDeltas);
+                return executeSearchUsingGlobalCache(null, query, searchStrategy, createOnDemandRetry, newValueDeltas);
             }
 
             if (!cache.supportsObjectType(targetTypeClass)) {
                 cacheInfo.logPass(targetTypeClass, query);
-                return executeSearch(null, query, searchStrategy, createOnDemandRetry, newValueDeltas);
+                return executeSearchUsingGlobalCache(null, query, searchStrategy, createOnDemandRetry, newValueDeltas);
             }
 
             List<V> cachedResult = cache.getQueryResult(targetTypeClass, query, searchStrategy, context, prismContext);
@@ -352,8 +365,10 @@ public abstract class AbstractSearchExpressionEvaluator<
 
             cacheInfo.logMiss(targetTypeClass, query);
             List<PrismObject<O>> rawResult = new ArrayList<>();
-            List<V> freshResult = executeSearch(rawResult, query, searchStrategy, createOnDemandRetry, newValueDeltas);
-            if (!freshResult.isEmpty()) {
+            List<V> freshResult =
+                    executeSearchUsingGlobalCache(rawResult, query, searchStrategy, createOnDemandRetry, newValueDeltas);
+            // Raw result is empty if the values were taken from the global cache. We do not need to store them locally then.
+            if (!freshResult.isEmpty() && !rawResult.isEmpty()) {
                 // we don't want to cache negative results (e.g. if used with focal objects it might mean that they would
                 // be attempted to create multiple times)
                 cache.putQueryResult(targetTypeClass, query, searchStrategy, context, freshResult, rawResult, prismContext);
@@ -361,6 +376,47 @@ public abstract class AbstractSearchExpressionEvaluator<
             return freshResult;
         }
 
+        /**
+         * Executes the search using the node-wide cache, if it's enabled for the target type. The `rawResult` is filled in
+         * only if the search is really executed.
+         */
+        private List<V> executeSearchUsingGlobalCache(
+                @Nullable List<PrismObject<O>> rawResult,
+                ObjectQuery query,
+                ObjectSearchStrategyType searchStrategy,
+                boolean createOnDemandRetry,
+                List<ItemDelta<V, D>> newValueDeltas)
+                throws ExpressionEvaluationException, ObjectNotFoundException, SchemaException {
+
+            // "Populate" deltas depend on the variables, so such values cannot be shared.
+            QueryKey key = newValueDeltas == null && globalCache.supportsObjectType(targetTypeClass) ?
+                    createGlobalCacheKeySafely(query, searchStrategy) : null;
+            if (key == null) {
+                return executeSearch(rawResult, query, searchStrategy, createOnDemandRetry, newValueDeltas);
+            }
+
+            List<V> cachedResult = globalCache.get(key);
+            if (cachedResult != null) {
+                return CloneUtil.cloneCollectionMembers(cachedResult);
+            }
+
+            List<PrismObject<O>> effectiveRawResult = rawResult != null ? rawResult : new ArrayList<>();
+            List<V> freshResult =
+                    executeSearch(effectiveRawResult, query, searchStrategy, createOnDemandRetry, newValueDeltas);
+            globalCache.put(key, freshResult, effectiveRawResult); // ignores empty results
+            return freshResult;
+        }
+
+        private @Nullable QueryKey createGlobalCacheKeySafely(ObjectQuery query, ObjectSearchStrategyType searchStrategy) {
+            try {
+                return createGlobalCacheKey(targetTypeClass, query, searchStrategy);
+            } catch (Exception e) {
+                // Some queries cannot be serialized; see AssociationSearchExpressionEvaluatorCache.createQueryKey.
+                LoggingUtils.logException(LOGGER, "Couldn't create global cache key, the cache will not be used", e);
+                return null;
+            }
+        }
+
         private ObjectSearchStrategyType getSearchStrategy() {
             if (expressionEvaluatorBean.getSearchStrategy() != null) {
                 return expressionEvaluatorBean.getSearchStrategy();
@@ -10,6 +10,8 @@ import java.util.List;
 import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.common.LocalizationService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.AssignmentTargetSearchQueryKey;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.QueryKey;
 import com.evolveum.midpoint.prism.PrismContainerDefinition;
 import com.evolveum.midpoint.prism.PrismContainerValue;
 import com.evolveum.midpoint.prism.PrismObject;
@@ -17,6 +19,7 @@ import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ItemDeltaCollectionsUtil;
 import com.evolveum.midpoint.prism.delta.PlusMinusZero;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.common.ObjectResolver;
 import com.evolveum.midpoint.repo.common.expression.ExpressionEvaluationContext;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
@@ -104,6 +107,20 @@ public class AssignmentTargetSearchExpressionEvaluator
                 }
                 return assignmentCVal;
             }
+
+            @Override
+            protected QueryKey createGlobalCacheKey(
+                    Class<AssignmentHolderType> type, ObjectQuery query, ObjectSearchStrategyType searchStrategy) {
+                AssignmentPropertiesSpecificationType assignmentPropertiesSpec =
+                        expressionEvaluatorBean.getAssignmentProperties();
+                return new AssignmentTargetSearchQueryKey(
+                        type,
+                        query,
+                        searchStrategy,
+                        assignmentPropertiesSpec != null ? assignmentPropertiesSpec.getRelation() : null,
+                        assignmentPropertiesSpec != null ? assignmentPropertiesSpec.getSubtype() : null,
+                        prismContext);
+            }
         };
     }
 
@@ -14,6 +14,8 @@ import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AssociationSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.AssociationSearchQueryKey;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.QueryKey;
 import com.evolveum.midpoint.prism.PrismContainerDefinition;
 import com.evolveum.midpoint.prism.PrismContainerValue;
 import com.evolveum.midpoint.prism.PrismObject;
@@ -39,6 +41,7 @@ import com.evolveum.midpoint.security.api.SecurityContextManager;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectSearchStrategyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SearchObjectExpressionEvaluatorType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowAssociationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
@@ -173,6 +176,12 @@ public class AssociationTargetSearchExpressionEvaluator
                         ShadowType.class);
             }
 
+            @Override
+            protected QueryKey createGlobalCacheKey(
+                    Class<ShadowType> type, ObjectQuery query, ObjectSearchStrategyType searchStrategy) {
+                return new AssociationSearchQueryKey(type, query, searchStrategy, context, prismContext);
+            }
+
         };
     }
 
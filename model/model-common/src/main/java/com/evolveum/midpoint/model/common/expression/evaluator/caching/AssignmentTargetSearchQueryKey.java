@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.evaluator.caching;
+
+import java.util.List;
+import java.util.Objects;
+import javax.xml.namespace.QName;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectSearchStrategyType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Query key for `assignmentTargetSearch` evaluator. Besides the query, the resulting assignment values depend
+ * on the relation and subtypes specified in `assignmentProperties`.
+ */
+public class AssignmentTargetSearchQueryKey extends QueryKey {
+
+    private final QName relation;
+    private final List<String> subtypes;
+
+    public <T extends ObjectType> AssignmentTargetSearchQueryKey(
+            Class<T> type, ObjectQuery query, ObjectSearchStrategyType searchStrategy,
+            QName relation, List<String> subtypes, PrismContext prismContext) {
+        super(type, query, searchStrategy, prismContext);
+        this.relation = relation;
+        this.subtypes = subtypes != null ? List.copyOf(subtypes) : List.of();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+
+        AssignmentTargetSearchQueryKey that = (AssignmentTargetSearchQueryKey) o;
+        return Objects.equals(relation, that.relation)
+                && subtypes.equals(that.subtypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hash(relation, subtypes);
+    }
+}
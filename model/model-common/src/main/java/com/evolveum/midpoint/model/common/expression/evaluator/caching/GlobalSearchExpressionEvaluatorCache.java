@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.evaluator.caching;
+
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.getStatisticsLevel;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Node-wide (shared by all threads) tier of the caches for search expression evaluators, i.e. `associationTargetSearch`
+ * and `assignmentTargetSearch`. It is consulted after the thread-local cache (if there's any) misses.
+ *
+ * Disabled by default. It is enabled by `globalSearchEvaluatorCache` item in the caching profile; only object types
+ * listed there are cached. The cache is bounded by `maxSize` and the entries expire after `timeToLive`.
+ *
+ * Invalidation:
+ *
+ * - shadows: entries are invalidated by resource operations and resource object changes (via
+ * `AssociationSearchExpressionCacheInvalidator` in model-impl), using resource OID and shadow kind - just like the
+ * thread-local {@link AssociationSearchExpressionEvaluatorCache}; and by repository changes of the cached shadows themselves.
+ * New shadows created elsewhere (e.g. on other nodes) are visible after the entry expires.
+ * - resources: all entries for the resource are invalidated.
+ * - other objects: all entries for the given type (and its supertypes/subtypes) are invalidated on any change.
+ *
+ * To avoid scanning the whole cache on each change (there can be many shadow changes e.g. during imports), the entries
+ * are indexed by shadow OIDs, resource OIDs and object types. The indices are updated when entries are added or removed
+ * (including evictions). Adding an entry (to the cache and the indices) and the index-based invalidation are done under
+ * {@link #indexLock}, so that an entry stored concurrently with an invalidation cannot end up in the cache without being
+ * indexed - and therefore never invalidated. Reading is not locked.
+ *
+ * Only non-empty results are cached, just like in the thread-local caches. The values are stored as immutable copies;
+ * clients have to clone them before use.
+ */
+@Component
+public class GlobalSearchExpressionEvaluatorCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(GlobalSearchExpressionEvaluatorCache.class);
+    private static final Trace LOGGER_CONTENT =
+            TraceManager.getTrace(GlobalSearchExpressionEvaluatorCache.class.getName() + ".content");
+
+    private static final long DEFAULT_MAX_SIZE = 10_000;
+    private static final int DEFAULT_TIME_TO_LIVE = 60; // seconds
+
+    /** Larger results are not cached; they are not the "find group by name" kind of searches we are after. */
+    private static final int RESULT_SIZE_LIMIT = 100;
+
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+    @Autowired private CacheRegistry cacheRegistry;
+
+    /**
+     * Created on the first use after the cache is enabled. The capacity cannot be changed afterwards (until restart);
+     * time to live can.
+     */
+    private volatile com.google.common.cache.Cache<QueryKey, Entry> cache;
+
+    /** Entries with shadows, indexed by OIDs of the shadows found. */
+    @NotNull private final EntryIndex<String> entriesByShadowOid = new EntryIndex<>();
+
+    /** Entries with shadows, indexed by resource OID. */
+    @NotNull private final EntryIndex<String> entriesByResourceOid = new EntryIndex<>();
+
+    /** All entries, indexed by the type of the objects searched for. */
+    @NotNull private final EntryIndex<Class<?>> entriesByType = new EntryIndex<>();
+
+    /** Guards adding entries and the index-based invalidation. See the class javadoc. */
+    @NotNull private final Object indexLock = new Object();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    @VisibleForTesting // overridden in tests
+    @Nullable CacheConfiguration getConfiguration() {
+        return cacheConfigurationManager.getConfiguration(CacheType.GLOBAL_SEARCH_EVALUATOR_CACHE);
+    }
+
+    /** Is the cache enabled for given (searched) object type? */
+    public boolean supportsObjectType(@NotNull Class<?> type) {
+        CacheConfiguration configuration = getConfiguration();
+        return configuration != null
+                && configuration.supportsObjectType(type)
+                && getOrCreateCache(configuration) != null;
+    }
+
+    private com.google.common.cache.Cache<QueryKey, Entry> getOrCreateCache(@NotNull CacheConfiguration configuration) {
+        if (cache == null) {
+            synchronized (this) {
+                if (cache == null) {
+                    long capacity = configuration.getMaxSize() != null ? configuration.getMaxSize() : DEFAULT_MAX_SIZE;
+                    if (capacity <= 0) {
+                        return null;
+                    }
+                    cache = CacheBuilder.newBuilder()
+                            .maximumSize(capacity)
+                            .removalListener(this::onRemoval)
+                            .build();
+                    LOGGER.info("Created global search expression evaluator cache with a capacity of {} queries", capacity);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /** Returns immutable cached values (or null if there are none). Registers the hit or miss. */
+    public <V extends PrismValue> @Nullable List<V> get(@NotNull QueryKey key) {
+        Class<?> type = key.getType();
+        Entry entry = cache != null ? cache.getIfPresent(key) : null;
+        if (entry != null && entry.isExpired()) {
+            cache.asMap().remove(key, entry);
+            entry = null;
+        }
+        CacheConfiguration configuration = getConfiguration();
+        CacheConfiguration.StatisticsLevel statisticsLevel = getStatisticsLevel(
+                configuration != null ? configuration.getForObjectType(type) : null, configuration);
+        if (entry != null) {
+            LOGGER.trace("Cache: HIT {}", key);
+            CachePerformanceCollector.INSTANCE.registerHit(GlobalSearchExpressionEvaluatorCache.class, type, statisticsLevel);
+            //noinspection unchecked
+            return (List<V>) entry.values;
+        } else {
+            LOGGER.trace("Cache: MISS {}", key);
+            CachePerformanceCollector.INSTANCE.registerMiss(GlobalSearchExpressionEvaluatorCache.class, type, statisticsLevel);
+            return null;
+        }
+    }
+
+    /** Stores the (non-empty) result. Values are copied, so the caller can continue using them. */
+    public <O extends ObjectType> void put(
+            @NotNull QueryKey key,
+            @NotNull List<? extends PrismValue> values,
+            @NotNull List<PrismObject<O>> rawObjects) {
+        CacheConfiguration configuration = getConfiguration();
+        if (values.isEmpty() || rawObjects.isEmpty() || values.size() > RESULT_SIZE_LIMIT
+                || configuration == null || getOrCreateCache(configuration) == null) {
+            return;
+        }
+        CacheConfiguration.CacheObjectTypeConfiguration typeConfiguration = configuration.getForObjectType(key.getType());
+        Integer timeToLive = typeConfiguration != null ? typeConfiguration.getEffectiveTimeToLive() : null;
+        long expiresAt = System.currentTimeMillis()
+                + (timeToLive != null ? timeToLive : DEFAULT_TIME_TO_LIVE) * 1000L;
+        Entry entry = new Entry(key, values, rawObjects, expiresAt);
+        synchronized (indexLock) {
+            cache.put(key, entry);
+            addToIndices(entry);
+            // The entry may have been evicted (outside the lock) before it was indexed; its removal notification
+            // then found nothing to remove from the indices.
+            if (cache.asMap().get(key) != entry) {
+                removeFromIndices(entry);
+            }
+        }
+    }
+
+    private void addToIndices(Entry entry) {
+        entriesByType.add(entry.key.getType(), entry);
+        if (entry.resourceOid != null) {
+            entriesByResourceOid.add(entry.resourceOid, entry);
+            entry.oids.forEach(oid -> entriesByShadowOid.add(oid, entry));
+        }
+    }
+
+    private void removeFromIndices(Entry entry) {
+        entriesByType.remove(entry.key.getType(), entry);
+        if (entry.resourceOid != null) {
+            entriesByResourceOid.remove(entry.resourceOid, entry);
+            entry.oids.forEach(oid -> entriesByShadowOid.remove(oid, entry));
+        }
+    }
+
+    /** Called for any removal: explicit, replacement, expiration, eviction. */
+    private void onRemoval(RemovalNotification<QueryKey, Entry> notification) {
+        Entry entry = notification.getValue();
+        if (entry != null) {
+            removeFromIndices(entry);
+        }
+    }
+
+    /**
+     * Invalidates entries related to a change of given resource object (shadow). See
+     * {@link AssociationSearchExpressionEvaluatorCache#invalidate(PrismObject, PrismObject)}.
+     */
+    public void invalidate(PrismObject<ResourceType> resource, PrismObject<? extends ShadowType> shadow) {
+        if (cache == null) {
+            return;
+        }
+        synchronized (indexLock) {
+            if (resource == null || resource.getOid() == null) { // shouldn't occur
+                LOGGER.debug("No resource - invalidating all the shadow-related entries");
+                invalidateAll(entriesByResourceOid);
+                return;
+            }
+            String resourceOid = resource.getOid();
+            ShadowKindType kind = shadow != null ? shadow.asObjectable().getKind() : null;
+            if (kind == null) {
+                invalidate(entriesByResourceOid.removeAll(resourceOid));
+            } else {
+                invalidate(entriesByResourceOid.get(resourceOid, entry -> entry.kind == null || entry.kind == kind));
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (cache == null) {
+            return;
+        }
+        synchronized (indexLock) {
+            if (type == null) {
+                cache.invalidateAll();
+            } else if (ResourceType.class.equals(type)) {
+                if (oid != null) {
+                    invalidate(entriesByResourceOid.removeAll(oid));
+                } else {
+                    invalidateAll(entriesByResourceOid);
+                }
+            } else if (ShadowType.class.equals(type)) {
+                // Invalidating all shadow entries on each shadow change would make the cache useless e.g. during imports.
+                if (oid != null) {
+                    invalidate(entriesByShadowOid.removeAll(oid));
+                } else {
+                    invalidateAll(entriesByResourceOid);
+                }
+            } else if (ObjectType.class.isAssignableFrom(type)) {
+                for (Class<?> cachedType : entriesByType.keys()) {
+                    if (cachedType.isAssignableFrom(type) || type.isAssignableFrom(cachedType)) {
+                        invalidate(entriesByType.removeAll(cachedType));
+                    }
+                }
+            }
+        }
+    }
+
+    private <K> void invalidateAll(EntryIndex<K> index) {
+        for (K indexKey : index.keys()) {
+            invalidate(index.removeAll(indexKey));
+        }
+    }
+
+    /** Removes the entries from the cache - unless they were already replaced by newer ones. */
+    private void invalidate(Collection<Entry> entries) {
+        for (Entry entry : entries) {
+            cache.asMap().remove(entry.key, entry);
+        }
+    }
+
+    /** Number of entries referenced from the indices; should be the same as the number of entries in the cache. */
+    @VisibleForTesting
+    int getIndexedEntriesCount() {
+        return entriesByType.size();
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        if (cache == null) {
+            return Collections.emptySet();
+        }
+        Map<Class<?>, int[]> counts = new HashMap<>();
+        int values = 0;
+        for (Map.Entry<QueryKey, Entry> e : cache.asMap().entrySet()) {
+            int[] typeCounts = counts.computeIfAbsent(e.getKey().getType(), k -> new int[2]);
+            typeCounts[0]++;
+            typeCounts[1] += e.getValue().values.size();
+            values += e.getValue().values.size();
+        }
+        SingleCacheStateInformationType info = new SingleCacheStateInformationType()
+                .name(GlobalSearchExpressionEvaluatorCache.class.getName())
+                .size((int) cache.size())
+                .secondarySize(values);
+        counts.forEach((type, typeCounts) ->
+                info.beginComponent()
+                        .name(type.getSimpleName())
+                        .size(typeCounts[0])
+                        .secondarySize(typeCounts[1]));
+        return Collections.singleton(info);
+    }
+
+    @Override
+    public void dumpContent() {
+        if (cache != null && LOGGER_CONTENT.isInfoEnabled()) {
+            cache.asMap().forEach((key, entry) ->
+                    LOGGER_CONTENT.info("Cached search expression evaluation: {}: {}", key, entry));
+        }
+    }
+
+    /** Immutable cached result, with the information needed for invalidation. Compared by identity. */
+    private static class Entry {
+
+        @NotNull private final QueryKey key;
+
+        @NotNull private final List<? extends PrismValue> values;
+
+        /** OIDs of the objects found. */
+        @NotNull private final Set<String> oids;
+
+        /** For shadows only. */
+        @Nullable private final String resourceOid;
+
+        /** For shadows only. */
+        @Nullable private final ShadowKindType kind;
+
+        private final long expiresAt;
+
+        private <O extends ObjectType> Entry(
+                @NotNull QueryKey key,
+                @NotNull List<? extends PrismValue> values,
+                @NotNull List<PrismObject<O>> rawObjects,
+                long expiresAt) {
+            this.key = key;
+            this.values = values.stream()
+                    .map(value -> {
+                        PrismValue clone = value.clone();
+                        clone.freeze();
+                        return clone;
+                    })
+                    .collect(Collectors.toUnmodifiableList());
+            this.oids = rawObjects.stream()
+                    .map(PrismObject::getOid)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toUnmodifiableSet());
+            ObjectType first = rawObjects.get(0).asObjectable();
+            if (first instanceof ShadowType) {
+                resourceOid = ShadowUtil.getResourceOid((ShadowType) first);
+                kind = ((ShadowType) first).getKind();
+            } else {
+                resourceOid = null;
+                kind = null;
+            }
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+
+        @Override
+        public String toString() {
+            return values.size() + " value(s), oids=" + oids + ", resourceOid=" + resourceOid + ", kind=" + kind;
+        }
+    }
+
+    /**
+     * Maps index keys (OIDs, types) to cache entries. Entries are compared by identity, so an index never confuses
+     * an entry with a newer one stored under the same query key.
+     *
+     * The sets are modified only within the atomic map operations; the ones taken out of the map are not shared anymore.
+     */
+    private static class EntryIndex<K> {
+
+        @NotNull private final Map<K, Set<Entry>> map = new ConcurrentHashMap<>();
+
+        void add(@NotNull K indexKey, @NotNull Entry entry) {
+            map.compute(indexKey, (k, entries) -> {
+                Set<Entry> rv = entries != null ? entries : new HashSet<>();
+                rv.add(entry);
+                return rv;
+            });
+        }
+
+        void remove(@NotNull K indexKey, @NotNull Entry entry) {
+            map.computeIfPresent(indexKey, (k, entries) -> {
+                entries.remove(entry);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+
+        /** Removes and returns all entries for given index key. */
+        @NotNull Collection<Entry> removeAll(@NotNull K indexKey) {
+            Set<Entry> entries = map.remove(indexKey);
+            return entries != null ? entries : Set.of();
+        }
+
+        /** Returns (a copy of) the entries for given index key matching the predicate. */
+        @NotNull Collection<Entry> get(@NotNull K indexKey, @NotNull Predicate<Entry> predicate) {
+            List<Entry> matching = new ArrayList<>();
+            map.computeIfPresent(indexKey, (k, entries) -> {
+                entries.stream().filter(predicate).forEach(matching::add);
+                return entries;
+            });
+            return matching;
+        }
+
+        @NotNull Collection<K> keys() {
+            return new ArrayList<>(map.keySet());
+        }
+
+        /** Not exact if the index is being modified concurrently. */
+        int size() {
+            return map.values().stream().mapToInt(Set::size).sum();
+        }
+    }
+}
@@ -12,6 +12,8 @@ import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.PlusMinusZero;
 import com.evolveum.midpoint.prism.delta.PrismValueDeltaSetTriple;
 import com.evolveum.midpoint.repo.common.expression.*;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.MiscUtil;
 import com.evolveum.midpoint.util.exception.*;
@@ -32,6 +34,8 @@ import java.util.*;
  *
  * Each combinations of values from sources is evaluated separately and the resulting values
  * are sorted out into plus-minus-zero sets.
+ *
+ * If `conditionSource` is specified, the condition is checked before the tuple evaluation, see {@link ConditionPreCheck}.
  */
 class CombinatorialEvaluation<V extends PrismValue, D extends ItemDefinition<?>, E extends TransformExpressionEvaluatorType>
         extends TransformationalEvaluation<V, D, E>  {
@@ -71,6 +75,20 @@ class CombinatorialEvaluation<V extends PrismValue, D extends ItemDefinition<?>,
      */
     @NotNull final PrismValueDeltaSetTriple<V> outputTriple;
 
+    /**
+     * Early evaluation of the condition (if `conditionSource` is specified).
+     */
+    private final ConditionPreCheck conditionPreCheck;
+
+    /** Number of value tuples considered. */
+    private int combinations;
+
+    /** Number of value tuples skipped by {@link #conditionPreCheck}. */
+    private int combinationsSkipped;
+
+    /** Number of value tuples evaluated (i.e. not skipped). */
+    private int combinationsEvaluated;
+
     CombinatorialEvaluation(ExpressionEvaluationContext context, OperationResult parentResult,
             AbstractValueTransformationExpressionEvaluator<V, D, E> evaluator) throws SecurityViolationException, ObjectNotFoundException, SchemaException {
         super(context, parentResult, evaluator);
@@ -78,6 +96,7 @@ class CombinatorialEvaluation<V extends PrismValue, D extends ItemDefinition<?>,
         this.sourceTripleList = createSourceTriplesList();
         this.conditionExpression = createConditionExpression();
         this.outputTriple = prismContext.deltaFactory().createPrismValueDeltaSetTriple();
+        this.conditionPreCheck = ConditionPreCheck.create(this, evaluatorBean.getConditionSource());
         computeSetsOccupied();
     }
 
@@ -92,6 +111,7 @@ class CombinatorialEvaluation<V extends PrismValue, D extends ItemDefinition<?>,
         }
 
         cleanUpOutputTriple();
+        recordCombinations();
         recordEvaluationEnd(outputTriple);
         return outputTriple;
     }
@@ -146,13 +166,39 @@ class CombinatorialEvaluation<V extends PrismValue, D extends ItemDefinition<?>,
         List<Collection<PrismValue>> domains = createDomainsForSets(sets);
         logDomainsForSets(domains, sets, outputSet);
         MiscUtil.carthesian(domains, valuesTuple -> {
+            combinations++;
+            // Tuples of null values are skipped in ValueTupleTransformation if includeNullInputs is false,
+            // so there is no point in evaluating the condition for them - and it could even fail on null inputs.
+            if (conditionPreCheck != null
+                    && !isSkippedAsAllNull(valuesTuple)
+                    && !conditionPreCheck.isAllowed(valuesTuple, outputSet, parentResult)) {
+                combinationsSkipped++;
+                InternalMonitor.recordCount(InternalCounters.VALUE_TUPLE_SKIP_COUNT);
+                return;
+            }
+            combinationsEvaluated++;
+            InternalMonitor.recordCount(InternalCounters.VALUE_TUPLE_EVALUATION_COUNT);
             try (ValueTupleTransformation<V> valueTupleTransformation =
-                    new ValueTupleTransformation<>(sets, valuesTuple, outputSet, this, parentResult)) {
+                    new ValueTupleTransformation<>(sets, valuesTuple, outputSet, this, conditionPreCheck != null, parentResult)) {
                 valueTupleTransformation.evaluate();
             }
         });
     }
 
+    boolean isSkippedAsAllNull(List<PrismValue> valuesTuple) {
+        return !evaluator.isIncludeNullInputs() && MiscUtil.isAllNull(valuesTuple);
+    }
+
+    private void recordCombinations() {
+        LOGGER.trace("Value combinations in {}: {} total, {} skipped by condition, {} evaluated",
+                context.getContextDescription(), combinations, combinationsSkipped, combinationsEvaluated);
+        if (trace != null) {
+            trace.setCombinations(combinations);
+            trace.setCombinationsSkipped(combinationsSkipped);
+            trace.setCombinationsEvaluated(combinationsEvaluated);
+        }
+    }
+
     private void logDomainsForSets(List<Collection<PrismValue>> domains, List<PlusMinusZero> sets, PlusMinusZero outputSet) {
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Domains for sets, targeting {}:", outputSet);
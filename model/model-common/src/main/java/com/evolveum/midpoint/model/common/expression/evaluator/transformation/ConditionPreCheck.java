@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.evaluator.transformation;
+
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.ItemDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.delta.PlusMinusZero;
+import com.evolveum.midpoint.prism.delta.PrismValueDeltaSetTriple;
+import com.evolveum.midpoint.repo.common.expression.*;
+import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.MiscUtil;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Evaluates the condition of combinatorial evaluation "in advance", only for the sources listed in `conditionSource`.
+ * Each distinct combination of values of these sources (and old/new state of input variables) is evaluated only once;
+ * value tuples ruled out by the condition are skipped altogether, i.e. no {@link ValueTupleTransformation} is created
+ * for them.
+ *
+ * The variable producer (if any) is not invoked for the condition sources here.
+ */
+class ConditionPreCheck {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ConditionPreCheck.class);
+
+    private static final String OP_EVALUATE = ConditionPreCheck.class.getName() + ".evaluate";
+
+    @NotNull private final CombinatorialEvaluation<?, ?, ?> combinatorialEvaluation;
+
+    /** Indices (into the source triple list) of the sources the condition depends on. */
+    @NotNull private final List<Integer> sourceIndices;
+
+    /**
+     * Condition results for already seen combinations. The key is "old state" flag followed by the values
+     * of condition sources.
+     */
+    @NotNull private final Map<List<Object>, Boolean> results = new HashMap<>();
+
+    private ConditionPreCheck(
+            @NotNull CombinatorialEvaluation<?, ?, ?> combinatorialEvaluation, @NotNull List<Integer> sourceIndices) {
+        this.combinatorialEvaluation = combinatorialEvaluation;
+        this.sourceIndices = sourceIndices;
+    }
+
+    /** Returns null if there's no condition or no condition sources are specified. */
+    static ConditionPreCheck create(
+            @NotNull CombinatorialEvaluation<?, ?, ?> combinatorialEvaluation,
+            @NotNull List<String> conditionSources) throws SchemaException {
+        if (combinatorialEvaluation.conditionExpression == null || conditionSources.isEmpty()) {
+            return null;
+        }
+        List<SourceTriple<?, ?>> sourceTripleList = combinatorialEvaluation.sourceTripleList;
+        List<Integer> indices = new ArrayList<>();
+        for (String conditionSource : conditionSources) {
+            int index = findSource(sourceTripleList, conditionSource);
+            if (index < 0) {
+                throw new SchemaException("Unknown condition source '" + conditionSource + "' in "
+                        + combinatorialEvaluation.context.getContextDescription());
+            }
+            indices.add(index);
+        }
+        return new ConditionPreCheck(combinatorialEvaluation, indices);
+    }
+
+    private static int findSource(List<SourceTriple<?, ?>> sourceTripleList, String name) {
+        for (int i = 0; i < sourceTripleList.size(); i++) {
+            if (sourceTripleList.get(i).getName().getLocalPart().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns false if the tuple is ruled out by the condition. Exceptions are wrapped into {@link TunnelException}. */
+    boolean isAllowed(@NotNull List<PrismValue> valuesTuple, @NotNull PlusMinusZero outputSet, OperationResult parentResult) {
+        boolean old = outputSet == PlusMinusZero.MINUS;
+        List<Object> key = new ArrayList<>(sourceIndices.size() + 1);
+        key.add(old);
+        for (int index : sourceIndices) {
+            key.add(valuesTuple.get(index));
+        }
+        Boolean cached = results.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        boolean allowed = evaluate(valuesTuple, old, parentResult);
+        LOGGER.trace("Condition pre-check for {} (old: {}) evaluated to {}", key.subList(1, key.size()), old, allowed);
+        results.put(key, allowed);
+        return allowed;
+    }
+
+    private boolean evaluate(List<PrismValue> valuesTuple, boolean old, OperationResult parentResult) {
+        ExpressionEvaluationContext context = combinatorialEvaluation.context;
+        VariablesMap variables = new VariablesMap();
+        for (int index : sourceIndices) {
+            SourceTriple<?, ?> sourceTriple = combinatorialEvaluation.sourceTripleList.get(index);
+            ItemDefinition<?> definition = sourceTriple.getSource().getDefinition();
+            variables.put(
+                    sourceTriple.getName().getLocalPart(),
+                    ValueTupleTransformation.getRealContent(valuesTuple.get(index), sourceTriple.getResidualPath()),
+                    definition);
+        }
+        if (old) {
+            variables.addVariableDefinitionsOld(context.getVariables());
+        } else {
+            variables.addVariableDefinitionsNew(context.getVariables());
+        }
+
+        OperationResult result = parentResult.subresult(OP_EVALUATE)
+                .setMinor()
+                .build();
+        try {
+            ExpressionEvaluationContext conditionCtx = new ExpressionEvaluationContext(null, variables,
+                    "condition in " + context.getContextDescription(), context.getTask());
+            conditionCtx.setExpressionFactory(context.getExpressionFactory());
+            Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> conditionExpression =
+                    combinatorialEvaluation.conditionExpression;
+            assert conditionExpression != null;
+            PrismValueDeltaSetTriple<PrismPropertyValue<Boolean>> triple = conditionExpression.evaluate(conditionCtx, result);
+            return ExpressionUtil.computeConditionResult(triple.getNonNegativeValues());
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            String msg = t.getMessage() + "(" + variables.dumpSingleLine() + ") in " + context.getContextDescription();
+            throw new TunnelException(MiscUtil.createSame(t, msg));
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+}
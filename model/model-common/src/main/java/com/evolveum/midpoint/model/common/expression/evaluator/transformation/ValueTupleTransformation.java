@@ -110,19 +110,26 @@ class ValueTupleTransformation<V extends PrismValue> implements AutoCloseable {
      */
     private Boolean conditionResult;
 
+    /**
+     * True if the condition was already evaluated (to true) by {@link ConditionPreCheck}.
+     */
+    private final boolean conditionPreEvaluated;
+
     /**
      * Result of the transformation. Empty set if condition is false. (Null means the transformation was not carried out).
      */
     private Collection<V> transformationResult;
 
     ValueTupleTransformation(@NotNull List<PlusMinusZero> sets, List<PrismValue> valuesTuple, PlusMinusZero outputSet,
-            CombinatorialEvaluation<V, ?, ?> combinatorialEvaluation, OperationResult parentResult) {
+            CombinatorialEvaluation<V, ?, ?> combinatorialEvaluation, boolean conditionPreEvaluated,
+            OperationResult parentResult) {
         this.combinatorialEvaluation = combinatorialEvaluation;
         this.context = combinatorialEvaluation.context;
         this.sourceTripleList = combinatorialEvaluation.sourceTripleList;
         this.sets = sets;
         this.valuesTuple = valuesTuple;
         this.outputSet = outputSet;
+        this.conditionPreEvaluated = conditionPreEvaluated;
         this.inputVariableState = InputVariableState.forOutputSet(outputSet);
         this.outputTriple = combinatorialEvaluation.outputTriple;
         this.numberOfSources = sourceTripleList.size();
@@ -143,7 +150,7 @@ class ValueTupleTransformation<V extends PrismValue> implements AutoCloseable {
 
     void evaluate() {
         try {
-            if (!combinatorialEvaluation.evaluator.isIncludeNullInputs() && MiscUtil.isAllNull(valuesTuple)) {
+            if (combinatorialEvaluation.isSkippedAsAllNull(valuesTuple)) {
                 // The case that all the sources are null. There is no point executing the expression.
                 setTraceComment("All sources are null and includeNullInputs is true.");
                 return;
@@ -204,7 +211,7 @@ class ValueTupleTransformation<V extends PrismValue> implements AutoCloseable {
         return staticVariables;
     }
 
-    private Object getRealContent(PrismValue pval, ItemPath residualPath) {
+    static Object getRealContent(PrismValue pval, ItemPath residualPath) {
         if (residualPath == null || residualPath.isEmpty()) {
             return pval;
         }
@@ -294,7 +301,7 @@ class ValueTupleTransformation<V extends PrismValue> implements AutoCloseable {
     private boolean evaluateCondition(VariablesMap staticVariables)
             throws SchemaException, ExpressionEvaluationException, ObjectNotFoundException, CommunicationException,
             ConfigurationException, SecurityViolationException {
-        if (combinatorialEvaluation.conditionExpression != null) {
+        if (combinatorialEvaluation.conditionExpression != null && !conditionPreEvaluated) {
             ExpressionEvaluationContext conditionCtx = new ExpressionEvaluationContext(null, staticVariables,
                     "condition in " + context.getContextDescription(), context.getTask());
             conditionCtx.setExpressionFactory(context.getExpressionFactory());
@@ -326,10 +333,14 @@ class ValueTupleTransformation<V extends PrismValue> implements AutoCloseable {
             // TODO clear existing metadata?
             LOGGER.trace("Transforming for minus set, skipping metadata computation.");
         } else {
-            ValueMetadataType outputValueMetadata = valueMetadataComputer.compute(valuesTuple, result);
+            ValueMetadataType outputValueMetadata = valueMetadataComputer.computeShared(valuesTuple, result);
             if (outputValueMetadata != null) {
                 ValueMetadata metadata = combinatorialEvaluation.prismContext.getValueMetadataFactory().createEmpty();
-                metadata.addMetadataValue(outputValueMetadata.asPrismContainerValue());
+                if (outputValueMetadata.asPrismContainerValue().isImmutable()) {
+                    metadata.addMetadataValue(outputValueMetadata.clone().asPrismContainerValue()); // shared record
+                } else {
+                    metadata.addMetadataValue(outputValueMetadata.asPrismContainerValue());
+                }
                 for (int i = 0; i < output.size(); i++) {
                     V oVal = output.get(i);
                     if (oVal != null) {
@@ -57,6 +57,9 @@ public class CustomFunctions {
     private final ExpressionProfile expressionProfile;
     private final PrismContext prismContext = PrismContext.get();
 
+    /** Results of functions marked as `pure`. Discarded with this object when the library changes. */
+    @NotNull private final PureFunctionResultCache pureFunctionResultCache = new PureFunctionResultCache();
+
     public CustomFunctions(FunctionLibraryType library, ExpressionFactory expressionFactory, ExpressionProfile expressionProfile) {
         this.library = library;
         this.expressionFactory = expressionFactory;
@@ -106,6 +109,17 @@ public class CustomFunctions {
 
         LOGGER.trace("function to execute {}", expressionType);
 
+        if (Boolean.TRUE.equals(expressionType.isPure())) {
+            return pureFunctionResultCache.getOrEvaluate(
+                    functionName, params, () -> evaluate(expressionType, params, task, result));
+        } else {
+            return evaluate(expressionType, params, task, result);
+        }
+    }
+
+    private <V extends PrismValue, D extends ItemDefinition> Object evaluate(
+            ExpressionType expressionType, Map<String, Object> params, Task task, OperationResult result)
+            throws ExpressionEvaluationException {
         try {
             VariablesMap variables = new VariablesMap();
             if (MapUtils.isNotEmpty(params)) {
@@ -159,6 +173,10 @@ public class CustomFunctions {
 
     }
 
+    public @NotNull PureFunctionResultCache getPureFunctionResultCache() {
+        return pureFunctionResultCache;
+    }
+
     @NotNull
     private <D extends ItemDefinition> D prepareOutputDefinition(QName returnType, ExpressionReturnMultiplicityType returnMultiplicity) {
         D outputDefinition;
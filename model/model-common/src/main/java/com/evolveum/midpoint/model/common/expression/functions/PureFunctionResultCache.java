@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.functions;
+
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import javax.xml.namespace.QName;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FunctionLibraryType;
+
+/**
+ * Memoized results of functions declared as `pure` in a function library. Belongs to a single {@link CustomFunctions}
+ * instance, so it is discarded when the library object changes (see `ScriptExpressionFactory.invalidate`).
+ *
+ * Only calls with "simple" arguments (strings, boxed primitives, big numbers, polystrings, QNames, enums) are memoized,
+ * as we need the arguments to be immutable and to have reliable `equals`/`hashCode`. The same holds for the results;
+ * lists of simple values are allowed as well, and are copied when returned. Other calls are simply evaluated.
+ *
+ * Hits and misses are reported to {@link CachePerformanceCollector}.
+ */
+public class PureFunctionResultCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(PureFunctionResultCache.class);
+
+    /** Maximal number of results kept (for the whole library). */
+    static final int MAX_ENTRIES = 10_000;
+
+    private final Cache<CallKey, Optional<Object>> results = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .recordStats()
+            .build();
+
+    /**
+     * Returns the result of the call: either memoized one, or computed by the `evaluator` (and memoized, if possible).
+     */
+    Object getOrEvaluate(
+            @NotNull String functionName, @Nullable Map<String, Object> params, @NotNull Evaluator evaluator)
+            throws ExpressionEvaluationException {
+        CallKey key = CallKey.create(functionName, params);
+        if (key == null) {
+            LOGGER.trace("Non-simple arguments for pure function '{}', not using the cache", functionName);
+            CachePerformanceCollector.INSTANCE.registerPass(PureFunctionResultCache.class, FunctionLibraryType.class, PER_CACHE);
+            return evaluator.evaluate();
+        }
+        Optional<Object> cached = results.getIfPresent(key);
+        if (cached != null) {
+            CachePerformanceCollector.INSTANCE.registerHit(PureFunctionResultCache.class, FunctionLibraryType.class, PER_CACHE);
+            return copyOf(cached.orElse(null));
+        }
+        CachePerformanceCollector.INSTANCE.registerMiss(PureFunctionResultCache.class, FunctionLibraryType.class, PER_CACHE);
+        Object result = evaluator.evaluate();
+        if (isSimpleResult(result)) {
+            results.put(key, Optional.ofNullable(copyOf(result)));
+        } else {
+            LOGGER.trace("Non-simple result of pure function '{}', not caching it: {}", functionName, result);
+        }
+        return result;
+    }
+
+    private static Object copyOf(Object value) {
+        return value instanceof List<?> ? new ArrayList<>((List<?>) value) : value;
+    }
+
+    private static boolean isSimpleResult(Object result) {
+        if (result instanceof List<?>) {
+            return ((List<?>) result).stream().allMatch(PureFunctionResultCache::isSimpleValue);
+        } else {
+            return isSimpleValue(result);
+        }
+    }
+
+    private static boolean isSimpleValue(Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Double
+                || value instanceof Float
+                || value instanceof BigInteger
+                || value instanceof BigDecimal
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof PolyString
+                || value instanceof QName
+                || value instanceof Enum<?>;
+    }
+
+    public void clear() {
+        results.invalidateAll();
+    }
+
+    public long size() {
+        return results.size();
+    }
+
+    public @NotNull CacheStats getStatistics() {
+        return results.stats();
+    }
+
+    @FunctionalInterface
+    interface Evaluator {
+        Object evaluate() throws ExpressionEvaluationException;
+    }
+
+    /** Function name plus argument values. */
+    private static class CallKey {
+
+        @NotNull private final String functionName;
+        @NotNull private final Map<String, Object> arguments;
+
+        private CallKey(@NotNull String functionName, @NotNull Map<String, Object> arguments) {
+            this.functionName = functionName;
+            this.arguments = arguments;
+        }
+
+        /** Returns null if the arguments are not suitable for the memoization. */
+        private static CallKey create(@NotNull String functionName, @Nullable Map<String, Object> params) {
+            Map<String, Object> arguments = new HashMap<>();
+            if (params != null) {
+                for (Map.Entry<String, Object> entry : params.entrySet()) {
+                    if (!isSimpleValue(entry.getValue())) {
+                        return null;
+                    }
+                    arguments.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new CallKey(functionName, arguments);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CallKey)) {
+                return false;
+            }
+            CallKey callKey = (CallKey) o;
+            return functionName.equals(callKey.functionName)
+                    && arguments.equals(callKey.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(functionName, arguments);
+        }
+    }
+}
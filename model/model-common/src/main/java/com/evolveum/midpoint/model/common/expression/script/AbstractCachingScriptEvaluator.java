@@ -65,6 +65,7 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
         C compiledScript = getCompiledScript(codeString, context);
 
         Object evalRawResult;
+        ScriptEvaluationProfiler.Sample sample = ScriptEvaluationProfiler.INSTANCE.start();
         try {
             InternalMonitor.recordCount(InternalCounters.SCRIPT_EXECUTION_COUNT);
 
@@ -77,6 +78,8 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
             throw getLocalizationService().translate(
                     new ExpressionEvaluationException(e.getMessage() + " in " + context.getContextDescription(),
                             e, ExceptionUtil.getUserFriendlyMessage(e)));
+        } finally {
+            ScriptEvaluationProfiler.INSTANCE.finish(sample, codeString, context);
         }
 
         if (context.getOutputDefinition() == null) {
@@ -192,6 +195,25 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
         return compiledScript;
     }
 
+    /**
+     * Compiles the script (with no expression profile) and puts it into the cache, unless it is already there.
+     * Used to warm up the cache, see {@link ScriptPrecompiler}.
+     */
+    void precompile(@NotNull String codeString, @NotNull String contextDescription)
+            throws ExpressionEvaluationException, SecurityViolationException {
+        if (!supportsPrecompilation()) {
+            return;
+        }
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setContextDescription(contextDescription);
+        getCompiledScript(codeString, context);
+    }
+
+    /** Whether compiling the script in advance (see {@link #precompile(String, String)}) makes sense for this evaluator. */
+    protected boolean supportsPrecompilation() {
+        return true;
+    }
+
     protected abstract C compileScript(String codeString, ScriptExpressionEvaluationContext context) throws Exception;
 
     protected abstract Object evaluateScript(C compiledScript, ScriptExpressionEvaluationContext context)
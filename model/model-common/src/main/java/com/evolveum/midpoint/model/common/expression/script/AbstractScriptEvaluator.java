@@ -99,26 +99,7 @@ public abstract class AbstractScriptEvaluator implements ScriptEvaluator {
                     continue;
                 }
                 String variableName = variableEntry.getKey();
-                ValueVariableModeType valueVariableMode = ObjectUtils.defaultIfNull(
-                        context.getExpressionType().getValueVariableMode(), ValueVariableModeType.REAL_VALUE);
-
-                //noinspection rawtypes
-                TypedValue variableTypedValue = ExpressionUtil.convertVariableValue(
-                        variableEntry.getValue(), variableName,
-                        context.getObjectResolver(), context.getContextDescription(),
-                        context.getExpressionType().getObjectVariableMode(),
-                        valueVariableMode,
-                        prismContext, context.getTask(), context.getResult());
-
-                scriptVariableMap.put(variableName, variableTypedValue.getValue());
-                if (context.getTrace() != null && !variables.isAlias(variableName)) {
-                    ScriptVariableEvaluationTraceType variableTrace = new ScriptVariableEvaluationTraceType();
-                    variableTrace.setName(new QName(variableName));
-                    Object clonedValue = cloneIfPossible(variableTypedValue.getValue());
-                    variableTrace.getValue().addAll(TraceUtil.toAnyValueTypeList(clonedValue, prismContext));
-                    variables.getAliases(variableName).forEach(alias -> variableTrace.getAlias().add(new QName(alias)));
-                    context.getTrace().getVariable().add(variableTrace);
-                }
+                scriptVariableMap.put(variableName, convertVariableValue(variableName, variableEntry.getValue(), context));
             }
         }
 
@@ -128,6 +109,56 @@ public abstract class AbstractScriptEvaluator implements ScriptEvaluator {
         return scriptVariableMap;
     }
 
+    /**
+     * Lazy variant of {@link #prepareScriptVariablesValueMap(ScriptExpressionEvaluationContext)}: the variables
+     * are converted only when the script asks for them. Falls back to the eager conversion when tracing,
+     * as the trace should contain all the variables.
+     */
+    protected LazyScriptVariables prepareLazyScriptVariables(ScriptExpressionEvaluationContext context)
+            throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        if (context.getTrace() != null) {
+            return LazyScriptVariables.eager(prepareScriptVariablesValueMap(context));
+        }
+        Map<String, Object> constants = new HashMap<>();
+        if (context.getFunctions() != null) {
+            for (FunctionLibrary funcLib : context.getFunctions()) {
+                constants.put(funcLib.getVariableName(), funcLib.getGenericFunctions());
+            }
+        }
+        putIfMissing(constants, ExpressionConstants.VAR_PRISM_CONTEXT, prismContext);
+        putIfMissing(constants, ExpressionConstants.VAR_LOCALIZATION_SERVICE, localizationService);
+        return new LazyScriptVariables(
+                constants, context.getVariables(), (name, value) -> convertVariableValue(name, value, context));
+    }
+
+    /** Converts a variable value to the form in which it is presented to the script. Records the trace, if needed. */
+    private Object convertVariableValue(String variableName, TypedValue<?> value, ScriptExpressionEvaluationContext context)
+            throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        ValueVariableModeType valueVariableMode = ObjectUtils.defaultIfNull(
+                context.getExpressionType().getValueVariableMode(), ValueVariableModeType.REAL_VALUE);
+
+        //noinspection rawtypes
+        TypedValue variableTypedValue = ExpressionUtil.convertVariableValue(
+                value, variableName,
+                context.getObjectResolver(), context.getContextDescription(),
+                context.getExpressionType().getObjectVariableMode(),
+                valueVariableMode,
+                prismContext, context.getTask(), context.getResult());
+
+        VariablesMap variables = context.getVariables();
+        if (context.getTrace() != null && !variables.isAlias(variableName)) {
+            ScriptVariableEvaluationTraceType variableTrace = new ScriptVariableEvaluationTraceType();
+            variableTrace.setName(new QName(variableName));
+            Object clonedValue = cloneIfPossible(variableTypedValue.getValue());
+            variableTrace.getValue().addAll(TraceUtil.toAnyValueTypeList(clonedValue, prismContext));
+            variables.getAliases(variableName).forEach(alias -> variableTrace.getAlias().add(new QName(alias)));
+            context.getTrace().getVariable().add(variableTrace);
+        }
+        return variableTypedValue.getValue();
+    }
+
     private void putIfMissing(Map<String, Object> scriptVariableMap, String key, Object value) {
         if (!scriptVariableMap.containsKey(key)) {
             scriptVariableMap.put(key, value);
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.script;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.repo.common.expression.ExpressionSyntaxException;
+import com.evolveum.midpoint.schema.expression.TypedValue;
+import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.util.exception.*;
+
+/**
+ * Script variables (name -> value) that are converted from expression variables only when they are first asked for.
+ *
+ * Expressions usually get many variables (focus, projection, shadow, resource, configuration, ...) but a typical script
+ * reads only one or two of them. The conversion can be costly, e.g. when the object is to be resolved.
+ *
+ * Lookup order is the same as in {@link AbstractScriptEvaluator#prepareScriptVariablesValueMap(ScriptExpressionEvaluationContext)}:
+ * expression variables take precedence over function libraries and other "constants".
+ *
+ * Not thread-safe. To be used for a single script evaluation.
+ */
+public class LazyScriptVariables {
+
+    /** Function libraries and other values that need no conversion. */
+    @NotNull private final Map<String, Object> constants;
+
+    /** Source (unconverted) variables. */
+    @Nullable private final VariablesMap variables;
+
+    @Nullable private final Converter converter;
+
+    /** Variables that were already converted, or set/overridden by the script. */
+    @NotNull private final Map<String, Object> converted = new HashMap<>();
+
+    /** Variables that were removed by the script. They hide the source variables and constants of the same name. */
+    @NotNull private final Set<String> removed = new HashSet<>();
+
+    LazyScriptVariables(@NotNull Map<String, Object> constants, @Nullable VariablesMap variables, @Nullable Converter converter) {
+        this.constants = constants;
+        this.variables = variables;
+        this.converter = converter;
+    }
+
+    /** No variables at all. */
+    public static LazyScriptVariables empty() {
+        return new LazyScriptVariables(Map.of(), null, null);
+    }
+
+    /** Variables that are already converted. */
+    static LazyScriptVariables eager(@NotNull Map<String, Object> values) {
+        LazyScriptVariables lazyVariables = new LazyScriptVariables(Map.of(), null, null);
+        lazyVariables.converted.putAll(values);
+        return lazyVariables;
+    }
+
+    public boolean contains(String name) {
+        return name != null
+                && (converted.containsKey(name)
+                        || !removed.contains(name) && (isSourceVariable(name) || constants.containsKey(name)));
+    }
+
+    private boolean isSourceVariable(String name) {
+        return variables != null && variables.containsKey(name);
+    }
+
+    /** Returns the value of the variable, converting it if needed. The caller should check {@link #contains(String)} first. */
+    public Object get(String name)
+            throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        if (converted.containsKey(name)) {
+            return converted.get(name);
+        } else if (removed.contains(name)) {
+            return null;
+        }
+        Object value;
+        if (isSourceVariable(name)) {
+            assert variables != null && converter != null;
+            value = converter.convert(name, variables.get(name));
+        } else {
+            value = constants.get(name);
+        }
+        converted.put(name, value);
+        return value;
+    }
+
+    public void put(String name, Object value) {
+        converted.put(name, value);
+    }
+
+    public void remove(String name) {
+        converted.remove(name);
+        removed.add(name);
+    }
+
+    /** Converts all the variables. Used when the script needs to see them all. */
+    public @NotNull Map<String, Object> materialize()
+            throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        for (String name : constants.keySet()) {
+            if (!removed.contains(name)) {
+                get(name);
+            }
+        }
+        if (variables != null) {
+            for (String name : variables.keySet()) {
+                if (name != null && !removed.contains(name)) { // null is the "root" node, not used in scripts
+                    get(name);
+                }
+            }
+        }
+        return converted;
+    }
+
+    @FunctionalInterface
+    interface Converter {
+        Object convert(String name, TypedValue<?> value)
+                throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+                SecurityViolationException, ExpressionEvaluationException;
+    }
+}
@@ -6,59 +6,142 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 
 /**
  * Cache for compiled scripts and interpreters, aware of expression profiles.
  *
+ * Compiled code is kept in a bounded concurrent cache (least recently used entries are evicted), keyed by expression
+ * profile and the source code. Reads do not block each other, so many threads can evaluate scripts concurrently.
+ * Hits, misses and evictions are counted.
+ *
+ * Interpreters are few (one per profile), so they are kept in a simple concurrent map.
+ *
  * @param <C> compiled code
  * @author Radovan Semancik
  */
 public class ScriptCache<I,C> {
 
-    private final Map<String, I> interpreterCache = new HashMap<>();
-    private final Map<String, Map<String, C>> codeCache = new HashMap<>();
+    /** Maximal number of compiled scripts kept (across all profiles). */
+    static final int MAX_CODE_ENTRIES = 10_000;
+
+    /** Key for profiles in the interpreter map, as {@link ConcurrentHashMap} does not accept nulls. */
+    private static final String NULL_PROFILE_KEY = "";
+
+    private final Map<String, I> interpreterCache = new ConcurrentHashMap<>();
 
-    public synchronized I getInterpreter(ExpressionProfile profile) {
+    private final Cache<CodeKey, C> codeCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CODE_ENTRIES)
+            .recordStats()
+            .build();
+
+    public I getInterpreter(ExpressionProfile profile) {
         return interpreterCache.get(getProfileKey(profile));
     }
 
-    public synchronized void putInterpreter(ExpressionProfile profile, I interpreter) {
+    public void putInterpreter(ExpressionProfile profile, I interpreter) {
         interpreterCache.put(getProfileKey(profile), interpreter);
     }
 
-    public synchronized C getCode(ExpressionProfile profile, String sourceCodeKey) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            return null;
-        }
-        return profileCache.get(sourceCodeKey);
+    public C getCode(ExpressionProfile profile, String sourceCodeKey) {
+        return codeCache.getIfPresent(new CodeKey(getProfileKey(profile), sourceCodeKey));
     }
 
-    public synchronized void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            profileCache = new HashMap<>();
-            codeCache.put(profileKey, profileCache);
-        }
-        profileCache.put(sourceCodeKey, compiledCode);
+    public void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
+        codeCache.put(new CodeKey(getProfileKey(profile), sourceCodeKey), compiledCode);
     }
 
-    private String getProfileKey(ExpressionProfile profile) {
+    private @NotNull String getProfileKey(ExpressionProfile profile) {
         if (profile == null) {
-            return null;
+            return NULL_PROFILE_KEY;
         } else {
             return profile.getIdentifier();
         }
     }
 
-    public synchronized void clear() {
-        codeCache.clear();
+    public void clear() {
+        codeCache.invalidateAll();
     }
 
+    /** Returns the (approximate) number of compiled scripts in the cache. */
+    public long size() {
+        return codeCache.size();
+    }
+
+    public @NotNull Statistics getStatistics() {
+        return new Statistics(codeCache.stats());
+    }
+
+    /**
+     * Key for the compiled code. The hash of the source code is computed (and cached) by {@link String} itself;
+     * the code is compared in full only on hash match.
+     */
+    private static class CodeKey {
+
+        @NotNull private final String profileKey;
+        @NotNull private final String sourceCode;
+
+        private CodeKey(@NotNull String profileKey, @NotNull String sourceCode) {
+            this.profileKey = profileKey;
+            this.sourceCode = sourceCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CodeKey)) {
+                return false;
+            }
+            CodeKey codeKey = (CodeKey) o;
+            return sourceCode.equals(codeKey.sourceCode)
+                    && profileKey.equals(codeKey.profileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(profileKey, sourceCode);
+        }
+    }
+
+    /** Hit/miss statistics of the compiled code cache. */
+    public static class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        private Statistics(CacheStats stats) {
+            this.hits = stats.hitCount();
+            this.misses = stats.missCount();
+            this.evictions = stats.evictionCount();
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+        }
+    }
 }
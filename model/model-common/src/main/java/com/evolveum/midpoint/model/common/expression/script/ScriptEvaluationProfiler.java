@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.script;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Sampling profiler of script evaluations (see {@link AbstractCachingScriptEvaluator}).
+ *
+ * For each script it records the number of measured evaluations, their total and maximal time, an approximate latency
+ * histogram (for percentiles), and memory allocated by the evaluating thread. Scripts are identified by the OID of the object
+ * they are defined in (e.g. a resource or a role), by their (mapping) path in that object, and by their code. The origin
+ * is not known for all scripts; such ones are identified by the code only. The first context description seen is kept
+ * for each script, to make it easy to find the script in the configuration.
+ *
+ * The data are kept node-wide and for individual tasks (by task OID; worker tasks are counted under their root task).
+ * Data of finished tasks are kept (to be read later), but only for {@link #MAX_FINISHED_TASKS} most recently finished ones.
+ *
+ * Disabled by default; it is configured by `internals/expressionProfiling` in the system configuration.
+ * The data can be exported as CSV, see {@link #exportCsv(String)} and `ModelDiagnosticService`.
+ */
+public class ScriptEvaluationProfiler {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ScriptEvaluationProfiler.class);
+
+    public static final ScriptEvaluationProfiler INSTANCE = new ScriptEvaluationProfiler();
+
+    /** Maximal number of scripts tracked (node-wide or for a single task). Other scripts are not measured. */
+    private static final int MAX_SCRIPTS = 10_000;
+
+    /** Maximal number of finished tasks whose data are kept. Data of the running tasks are always kept. */
+    @VisibleForTesting
+    static final int MAX_FINISHED_TASKS = 100;
+
+    /** Histogram bucket `i` covers latencies from 2^i to 2^(i+1) microseconds. */
+    private static final int HISTOGRAM_BUCKETS = 40;
+
+    private static final int CODE_PREVIEW_LENGTH = 100;
+
+    private volatile boolean enabled;
+    private volatile int samplingInterval = 1;
+
+    /** Evaluations counter for sampling purposes. */
+    private final ThreadLocal<int[]> evaluationCounter = ThreadLocal.withInitial(() -> new int[1]);
+
+    @NotNull private final Map<ScriptKey, Entry> nodeEntries = new ConcurrentHashMap<>();
+    @NotNull private final Map<String, Map<ScriptKey, Entry>> taskEntries = new ConcurrentHashMap<>();
+
+    /** Finished tasks (OID to the sequence number of finishing) whose data are still in {@link #taskEntries}. */
+    @NotNull private final Map<String, Long> finishedTasks = new ConcurrentHashMap<>();
+
+    @NotNull private final AtomicLong finishedTasksSequence = new AtomicLong();
+
+    /** Whether we have already warned about reaching {@link #MAX_SCRIPTS}. */
+    private volatile boolean scriptsLimitReported;
+
+    @Nullable private final com.sun.management.ThreadMXBean allocationBean = getAllocationBean();
+
+    private ScriptEvaluationProfiler() {
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) threadBean;
+        } else {
+            return null;
+        }
+    }
+
+    public void configure(boolean enabled, int samplingInterval) {
+        if (enabled != this.enabled) {
+            LOGGER.info("Script evaluation profiling is {} (sampling interval: {})",
+                    enabled ? "enabled" : "disabled", samplingInterval);
+        }
+        this.samplingInterval = Math.max(samplingInterval, 1);
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Starts measuring the evaluation, if it is to be sampled. Returns null otherwise. */
+    @Nullable Sample start() {
+        if (!enabled) {
+            return null;
+        }
+        int[] counter = evaluationCounter.get();
+        if (++counter[0] < samplingInterval) {
+            return null;
+        }
+        counter[0] = 0;
+        return new Sample(System.nanoTime(), getAllocatedBytes());
+    }
+
+    /** Records the sample taken for given script. */
+    void finish(@Nullable Sample sample, @NotNull String code, @NotNull ScriptExpressionEvaluationContext context) {
+        if (sample == null) {
+            return;
+        }
+        long duration = System.nanoTime() - sample.startNanos;
+        long allocated = sample.startAllocatedBytes >= 0 ? getAllocatedBytes() - sample.startAllocatedBytes : -1;
+        ScriptKey key = ScriptKey.create(code, context);
+        String contextDescription = context.getContextDescription();
+        record(nodeEntries, key, contextDescription, duration, allocated);
+        String taskOid = getTaskOid(context.getTask());
+        if (taskOid != null) {
+            if (!finishedTasks.isEmpty()) {
+                finishedTasks.remove(taskOid); // the task is running again
+            }
+            Map<ScriptKey, Entry> entries = taskEntries.computeIfAbsent(taskOid, k -> new ConcurrentHashMap<>());
+            record(entries, key, contextDescription, duration, allocated);
+        }
+    }
+
+    /**
+     * Called when a task finishes its run. Its data are kept (to be read later), but only for a limited number
+     * of most recently finished tasks.
+     */
+    public void taskFinished(@NotNull String taskOid) {
+        if (!taskEntries.containsKey(taskOid)) {
+            return;
+        }
+        finishedTasks.put(taskOid, finishedTasksSequence.incrementAndGet());
+        while (finishedTasks.size() > MAX_FINISHED_TASKS) {
+            finishedTasks.entrySet().stream()
+                    .min(Map.Entry.comparingByValue())
+                    .ifPresent(oldest -> {
+                        if (finishedTasks.remove(oldest.getKey(), oldest.getValue())) {
+                            taskEntries.remove(oldest.getKey());
+                        }
+                    });
+        }
+    }
+
+    /** Evaluations in worker (lightweight) tasks are recorded under their root task, as the workers have no OID. */
+    private static @Nullable String getTaskOid(@Nullable Task task) {
+        if (task instanceof RunningTask) {
+            return ((RunningTask) task).getRootTaskOid();
+        } else {
+            return task != null ? task.getOid() : null;
+        }
+    }
+
+    private void record(
+            Map<ScriptKey, Entry> entries, ScriptKey key, String contextDescription, long duration, long allocated) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= MAX_SCRIPTS) {
+                if (!scriptsLimitReported) {
+                    scriptsLimitReported = true;
+                    LOGGER.warn("Script evaluation profiling: the limit of {} scripts was reached, other scripts are not"
+                            + " measured. Consider resetting the statistics.", MAX_SCRIPTS);
+                }
+                return;
+            }
+            entry = entries.computeIfAbsent(key, k -> new Entry(key, contextDescription));
+        }
+        entry.record(duration, allocated);
+    }
+
+    private long getAllocatedBytes() {
+        return allocationBean != null ? allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Returns statistics for individual scripts, sorted by total time (hot spots first).
+     *
+     * @param taskOid OID of the task; null means node-wide statistics
+     */
+    public @NotNull List<Entry> getEntries(@Nullable String taskOid) {
+        Map<ScriptKey, Entry> entries = taskOid != null ? taskEntries.getOrDefault(taskOid, Map.of()) : nodeEntries;
+        return entries.values().stream()
+                .sorted(Comparator.comparing(Entry::getTotalNanos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /** Exports the statistics (see {@link #getEntries(String)}) in CSV format. */
+    public @NotNull String exportCsv(@Nullable String taskOid) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("objectOid,path,context,code,count,totalMs,avgMs,p50Ms,p95Ms,p99Ms,maxMs,allocatedBytes\n");
+        for (Entry entry : getEntries(taskOid)) {
+            synchronized (entry) {
+                sb.append(csv(entry.key.objectOid)).append(',')
+                        .append(csv(entry.key.path)).append(',')
+                        .append(csv(entry.contextDescription)).append(',')
+                        .append(csv(entry.getCodePreview())).append(',')
+                        .append(entry.count).append(',')
+                        .append(ms(entry.totalNanos)).append(',')
+                        .append(ms(entry.count > 0 ? entry.totalNanos / entry.count : 0)).append(',')
+                        .append(ms(entry.getPercentileNanos(0.5))).append(',')
+                        .append(ms(entry.getPercentileNanos(0.95))).append(',')
+                        .append(ms(entry.getPercentileNanos(0.99))).append(',')
+                        .append(ms(entry.maxNanos)).append(',')
+                        .append(entry.allocatedBytes).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String csv(String value) {
+        return value != null ? '"' + value.replace("\"", "\"\"") + '"' : "";
+    }
+
+    /** Clears node-wide and task statistics. */
+    public void reset() {
+        nodeEntries.clear();
+        taskEntries.clear();
+        finishedTasks.clear();
+        scriptsLimitReported = false;
+    }
+
+    /** Clears statistics of given task. */
+    public void reset(@NotNull String taskOid) {
+        taskEntries.remove(taskOid);
+        finishedTasks.remove(taskOid);
+    }
+
+    /** Number of tasks whose data are kept. */
+    @VisibleForTesting
+    int getTasksCount() {
+        return taskEntries.size();
+    }
+
+    /** Identification of a script: where it is defined (if known) and its code. */
+    private static class ScriptKey {
+
+        @Nullable private final String objectOid;
+        @Nullable private final String path;
+        @NotNull private final String code;
+
+        private ScriptKey(@Nullable String objectOid, @Nullable String path, @NotNull String code) {
+            this.objectOid = objectOid;
+            this.path = path;
+            this.code = code;
+        }
+
+        private static ScriptKey create(@NotNull String code, @NotNull ScriptExpressionEvaluationContext context) {
+            ObjectType originObject = context.getOriginObject();
+            Containerable originBean = context.getOriginBean();
+            // Beans detached from their object (e.g. cloned ones) have no meaningful path.
+            PrismContainerValue<?> originValue = originBean != null ? originBean.asPrismContainerValue() : null;
+            return new ScriptKey(
+                    originObject != null ? originObject.getOid() : null,
+                    originValue != null && originValue.getParent() != null ? String.valueOf(originValue.getPath()) : null,
+                    code);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ScriptKey)) {
+                return false;
+            }
+            ScriptKey that = (ScriptKey) o;
+            return Objects.equals(objectOid, that.objectOid)
+                    && Objects.equals(path, that.path)
+                    && code.equals(that.code);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(objectOid, path, code);
+        }
+    }
+
+    /** Start of a measured evaluation. */
+    static class Sample {
+
+        private final long startNanos;
+        private final long startAllocatedBytes;
+
+        private Sample(long startNanos, long startAllocatedBytes) {
+            this.startNanos = startNanos;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+    }
+
+    /** Statistics for a single script. */
+    public static class Entry {
+
+        @NotNull private final ScriptKey key;
+        private final String contextDescription;
+
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long allocatedBytes;
+        @NotNull private final long[] histogram = new long[HISTOGRAM_BUCKETS];
+
+        private Entry(@NotNull ScriptKey key, String contextDescription) {
+            this.key = key;
+            this.contextDescription = contextDescription;
+        }
+
+        private synchronized void record(long duration, long allocated) {
+            count++;
+            totalNanos += duration;
+            maxNanos = Math.max(maxNanos, duration);
+            if (allocated > 0) {
+                allocatedBytes += allocated;
+            }
+            long micros = duration / 1000;
+            int bucket = micros > 0 ? 63 - Long.numberOfLeadingZeros(micros) : 0;
+            histogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)]++;
+        }
+
+        /** OID of the object in which the script is defined, if known. */
+        public @Nullable String getObjectOid() {
+            return key.objectOid;
+        }
+
+        /** Path of the script (or its mapping) in the object, if known. */
+        public @Nullable String getPath() {
+            return key.path;
+        }
+
+        public @NotNull String getCode() {
+            return key.code;
+        }
+
+        public @NotNull String getCodePreview() {
+            return StringUtils.abbreviate(StringUtils.normalizeSpace(key.code), CODE_PREVIEW_LENGTH);
+        }
+
+        /** Context description of the first measured evaluation. */
+        public String getContextDescription() {
+            return contextDescription;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /** Total memory allocated during the evaluations (0 if not supported by the JVM). */
+        public synchronized long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /** Returns an upper estimate of given percentile (0.0-1.0) of the latency. */
+        public synchronized long getPercentileNanos(double percentile) {
+            long threshold = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= threshold && seen > 0) {
+                    return Math.min((2L << i) * 1000, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return getCodePreview() + " (" + key.objectOid + ":" + key.path + ", " + contextDescription + "): count=" + count + ", total=" + ms(totalNanos) + " ms";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.script;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.repo.api.SystemConfigurationChangeDispatcher;
+import com.evolveum.midpoint.repo.api.SystemConfigurationChangeListener;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskListener;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.task.api.TaskRunResult;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ExpressionProfilingConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
+
+/**
+ * Applies `internals/expressionProfiling` configuration to {@link ScriptEvaluationProfiler}, and informs it about
+ * finished tasks (so their data can be pruned).
+ */
+@Component
+public class ScriptEvaluationProfilerConfigurator implements SystemConfigurationChangeListener, TaskListener {
+
+    @Autowired private SystemConfigurationChangeDispatcher systemConfigurationChangeDispatcher;
+    @Autowired private TaskManager taskManager;
+
+    @Override
+    public void update(@Nullable SystemConfigurationType value) {
+        if (value == null) {
+            return;
+        }
+        ExpressionProfilingConfigurationType config =
+                value.getInternals() != null ? value.getInternals().getExpressionProfiling() : null;
+        if (config != null) {
+            ScriptEvaluationProfiler.INSTANCE.configure(
+                    Boolean.TRUE.equals(config.isEnabled()),
+                    config.getSamplingInterval() != null ? config.getSamplingInterval() : 1);
+        } else {
+            ScriptEvaluationProfiler.INSTANCE.configure(false, 1);
+        }
+    }
+
+    @Override
+    public void onTaskStart(Task task, OperationResult result) {
+        // not needed
+    }
+
+    @Override
+    public void onTaskFinish(Task task, TaskRunResult runResult, OperationResult result) {
+        if (task.getOid() != null) {
+            ScriptEvaluationProfiler.INSTANCE.taskFinished(task.getOid());
+        }
+    }
+
+    @Override
+    public void onTaskThreadStart(Task task, boolean isRecovering, OperationResult result) {
+        // not needed
+    }
+
+    @Override
+    public void onTaskThreadFinish(Task task, OperationResult result) {
+        // not needed
+    }
+
+    @PostConstruct
+    public void init() {
+        systemConfigurationChangeDispatcher.registerListener(this);
+        taskManager.registerTaskListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        systemConfigurationChangeDispatcher.unregisterListener(this);
+        taskManager.unregisterTaskListener(this);
+    }
+}
@@ -10,13 +10,16 @@ import java.util.Collection;
 import java.util.function.Function;
 
 import com.evolveum.midpoint.model.common.expression.functions.FunctionLibrary;
+import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.repo.common.ObjectResolver;
+import com.evolveum.midpoint.repo.common.expression.ExpressionEvaluationContext;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 import com.evolveum.midpoint.schema.expression.ScriptExpressionProfile;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptEvaluationTraceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionReturnTypeType;
@@ -43,6 +46,12 @@ public class ScriptExpressionEvaluationContext {
     private boolean evaluateNew = false;
 
     private String contextDescription;
+
+    /** Where the script is defined, see {@link ExpressionEvaluationContext#getOriginObject()}. For diagnostics only. */
+    private ObjectType originObject;
+
+    /** Bean containing the script, see {@link ExpressionEvaluationContext#getOriginBean()}. For diagnostics only. */
+    private Containerable originBean;
     private Task task;
     private OperationResult result;
 
@@ -144,6 +153,19 @@ public class ScriptExpressionEvaluationContext {
         this.contextDescription = contextDescription;
     }
 
+    public ObjectType getOriginObject() {
+        return originObject;
+    }
+
+    public Containerable getOriginBean() {
+        return originBean;
+    }
+
+    public void setOrigin(ObjectType originObject, Containerable originBean) {
+        this.originObject = originObject;
+        this.originBean = originBean;
+    }
+
     public Task getTask() {
         return task;
     }
@@ -71,6 +71,7 @@ public class ScriptExpressionEvaluator<V extends PrismValue, D extends ItemDefin
         sCtx.setSuggestedReturnType(getReturnType());
         sCtx.setEvaluateNew(useNew);
         sCtx.setContextDescription(contextDescription);
+        sCtx.setOrigin(eCtx.getOriginObject(), eCtx.getOriginBean());
         sCtx.setAdditionalConvertor(eCtx.getAdditionalConvertor());
         sCtx.setTask(task);
         sCtx.setResult(result);
@@ -19,6 +19,7 @@ import org.jetbrains.annotations.NotNull;
 import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.model.common.expression.functions.CustomFunctions;
 import com.evolveum.midpoint.model.common.expression.functions.FunctionLibrary;
+import com.evolveum.midpoint.model.common.expression.functions.PureFunctionResultCache;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.repo.api.Cache;
@@ -269,6 +270,25 @@ public class ScriptExpressionFactory implements Cache {
                         customLibrariesMap.values()));
     }
 
+    /** Returns evaluator for the language of given script. */
+    @NotNull ScriptEvaluator getEvaluator(ScriptExpressionEvaluatorType expressionType, String shortDesc)
+            throws ExpressionSyntaxException {
+        return getEvaluator(getLanguage(expressionType), shortDesc);
+    }
+
+    /**
+     * Precompiles scripts found in system configuration, object templates, resources and function libraries,
+     * to avoid their compilation when they are first used. The compilation itself is done in background.
+     */
+    public void precompileScripts(OperationResult result) {
+        if (repositoryService == null) {
+            LOGGER.debug("No repository service, scripts will not be precompiled");
+            return;
+        }
+        new ScriptPrecompiler(this, repositoryService)
+                .precompile(result);
+    }
+
     private @NotNull ScriptEvaluator getEvaluator(String languageUri, String shortDesc) throws ExpressionSyntaxException {
         ScriptEvaluator evaluator = evaluatorMap.get(languageUri);
         if (evaluator != null) {
@@ -296,6 +316,11 @@ public class ScriptExpressionFactory implements Cache {
         return DEFAULT_LANGUAGE;
     }
 
+    private static @Nullable PureFunctionResultCache getPureFunctionResultCache(FunctionLibrary library) {
+        Object functions = library.getGenericFunctions();
+        return functions instanceof CustomFunctions ? ((CustomFunctions) functions).getPureFunctionResultCache() : null;
+    }
+
     @Override
     public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
         if (type == null || type.isAssignableFrom(FunctionLibraryType.class)) {
@@ -308,9 +333,27 @@ public class ScriptExpressionFactory implements Cache {
     @NotNull
     @Override
     public Collection<SingleCacheStateInformationType> getStateInformation() {
-        return Collections.singleton(new SingleCacheStateInformationType()
+        List<SingleCacheStateInformationType> information = new ArrayList<>();
+        information.add(new SingleCacheStateInformationType()
                 .name(ScriptExpressionFactory.class.getName())
                 .size(emptyIfNull(cachedCustomFunctionLibraries).size()));
+        for (FunctionLibrary library : emptyIfNull(cachedCustomFunctionLibraries)) {
+            PureFunctionResultCache resultCache = getPureFunctionResultCache(library);
+            if (resultCache != null && resultCache.size() > 0) {
+                information.add(new SingleCacheStateInformationType()
+                        .name(PureFunctionResultCache.class.getName() + "." + library.getVariableName())
+                        .size((int) resultCache.size()));
+            }
+        }
+        for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+            if (evaluator instanceof AbstractCachingScriptEvaluator<?, ?>) {
+                ScriptCache<?, ?> scriptCache = ((AbstractCachingScriptEvaluator<?, ?>) evaluator).getScriptCache();
+                information.add(new SingleCacheStateInformationType()
+                        .name(ScriptCache.class.getName() + "." + evaluator.getLanguageName())
+                        .size((int) scriptCache.size()));
+            }
+        }
+        return information;
     }
 
     @Override
@@ -318,10 +361,24 @@ public class ScriptExpressionFactory implements Cache {
         if (LOGGER_CONTENT.isInfoEnabled()) {
             Collection<FunctionLibrary> cached = cachedCustomFunctionLibraries;
             if (cached != null) {
-                cached.forEach(v -> LOGGER_CONTENT.info("Cached function library: {}", v));
+                cached.forEach(v -> {
+                    LOGGER_CONTENT.info("Cached function library: {}", v);
+                    PureFunctionResultCache resultCache = getPureFunctionResultCache(v);
+                    if (resultCache != null) {
+                        LOGGER_CONTENT.info("Pure function results for {}: {} entries, {}",
+                                v.getVariableName(), resultCache.size(), resultCache.getStatistics());
+                    }
+                });
             } else {
                 LOGGER_CONTENT.info("Custom function library cache is not yet initialized");
             }
+            for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+                if (evaluator instanceof AbstractCachingScriptEvaluator<?, ?>) {
+                    ScriptCache<?, ?> scriptCache = ((AbstractCachingScriptEvaluator<?, ?>) evaluator).getScriptCache();
+                    LOGGER_CONTENT.info("Script cache for {}: {} entries, {}",
+                            evaluator.getLanguageName(), scriptCache.size(), scriptCache.getStatistics());
+                }
+            }
         }
     }
 }
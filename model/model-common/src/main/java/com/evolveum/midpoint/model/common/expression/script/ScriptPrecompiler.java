@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.script;
+
+import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCollection;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.xml.bind.JAXBElement;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.common.expression.ExpressionSyntaxException;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Warms up script caches: finds scripts in system configuration, object templates, resources and function libraries,
+ * and compiles them in parallel (in background), so the first operations after the start do not pay for the compilation.
+ *
+ * Only scripts for caching evaluators ({@link AbstractCachingScriptEvaluator}) that support precompilation are compiled.
+ * They are compiled with no expression profile, as that is what the profile resolution gives for these objects (see
+ * `MiscSchemaUtil.getExpressionProfile`). Compilation errors are ignored here; they will be reported when the script
+ * is really used.
+ */
+class ScriptPrecompiler {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ScriptPrecompiler.class);
+
+    private static final String OP_COLLECT_SCRIPTS = ScriptPrecompiler.class.getName() + ".collectScripts";
+
+    private static final List<Class<? extends ObjectType>> SCANNED_TYPES = List.of(
+            SystemConfigurationType.class, ObjectTemplateType.class, ResourceType.class, FunctionLibraryType.class);
+
+    @NotNull private final ScriptExpressionFactory scriptExpressionFactory;
+    @NotNull private final RepositoryService repositoryService;
+
+    /** Script code by evaluator. Deduplicated, as the same code is often present in many places. */
+    @NotNull private final Map<AbstractCachingScriptEvaluator<?, ?>, Set<String>> scripts = new HashMap<>();
+
+    ScriptPrecompiler(@NotNull ScriptExpressionFactory scriptExpressionFactory, @NotNull RepositoryService repositoryService) {
+        this.scriptExpressionFactory = scriptExpressionFactory;
+        this.repositoryService = repositoryService;
+    }
+
+    /** Collects the scripts (synchronously) and starts their compilation (asynchronously). */
+    void precompile(OperationResult parentResult) {
+        OperationResult result = parentResult.createMinorSubresult(OP_COLLECT_SCRIPTS);
+        try {
+            for (Class<? extends ObjectType> type : SCANNED_TYPES) {
+                collectScripts(type, result);
+            }
+        } catch (Throwable t) {
+            // Precompilation is only an optimization; it must not break the system initialization.
+            LOGGER.warn("Couldn't collect scripts for precompilation: {}", t.getMessage(), t);
+            result.recordWarning("Couldn't collect scripts for precompilation: " + t.getMessage(), t);
+            return;
+        } finally {
+            result.close();
+        }
+        startCompilation();
+    }
+
+    private <O extends ObjectType> void collectScripts(Class<O> type, OperationResult result) throws SchemaException {
+        ResultHandler<O> handler = (object, lResult) -> {
+            collectScripts(object);
+            return true;
+        };
+        repositoryService.searchObjectsIterative(type, null, handler, createReadOnlyCollection(), true, result);
+    }
+
+    private void collectScripts(PrismObject<?> object) {
+        object.accept(visitable -> {
+            if (visitable instanceof PrismPropertyValue<?>) {
+                Object realValue = ((PrismPropertyValue<?>) visitable).getRealValue();
+                if (realValue instanceof ExpressionType) {
+                    collectScripts((ExpressionType) realValue, object);
+                }
+            }
+        });
+    }
+
+    private void collectScripts(ExpressionType expression, PrismObject<?> object) {
+        for (JAXBElement<?> evaluatorElement : expression.getExpressionEvaluator()) {
+            Object evaluatorBean = evaluatorElement.getValue();
+            if (!(evaluatorBean instanceof ScriptExpressionEvaluatorType)) {
+                continue;
+            }
+            ScriptExpressionEvaluatorType script = (ScriptExpressionEvaluatorType) evaluatorBean;
+            if (script.getCode() == null) {
+                continue;
+            }
+            ScriptEvaluator evaluator;
+            try {
+                evaluator = scriptExpressionFactory.getEvaluator(script, object.toString());
+            } catch (ExpressionSyntaxException e) {
+                LOGGER.trace("Unsupported script language in {}, ignoring: {}", object, e.getMessage());
+                continue;
+            }
+            if (evaluator instanceof AbstractCachingScriptEvaluator<?, ?>
+                    && ((AbstractCachingScriptEvaluator<?, ?>) evaluator).supportsPrecompilation()) {
+                scripts.computeIfAbsent((AbstractCachingScriptEvaluator<?, ?>) evaluator, k -> new HashSet<>())
+                        .add(script.getCode());
+            }
+        }
+    }
+
+    private void startCompilation() {
+        int total = scripts.values().stream().mapToInt(Set::size).sum();
+        if (total == 0) {
+            LOGGER.debug("No scripts to precompile");
+            return;
+        }
+        int threads = Math.max(1, Math.min(total, Runtime.getRuntime().availableProcessors() - 1));
+        LOGGER.info("Precompiling {} script(s) in {} thread(s)", total, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "script-precompiler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long start = System.currentTimeMillis();
+        AtomicInteger remaining = new AtomicInteger(total);
+        AtomicInteger failed = new AtomicInteger();
+        scripts.forEach((evaluator, codes) -> {
+            for (String code : codes) {
+                executor.execute(() -> {
+                    try {
+                        evaluator.precompile(code, "script precompilation");
+                    } catch (Throwable t) {
+                        failed.incrementAndGet();
+                        LOGGER.trace("Couldn't precompile script, ignoring: {}", t.getMessage(), t);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        LOGGER.info("Precompiled {} script(s) in {} ms ({} failed)",
+                                total, System.currentTimeMillis() - start, failed.get());
+                    }
+                });
+            }
+        });
+        executor.shutdown();
+    }
+}
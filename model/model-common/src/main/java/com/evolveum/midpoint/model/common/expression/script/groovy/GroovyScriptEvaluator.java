@@ -6,11 +6,14 @@
  */
 package com.evolveum.midpoint.model.common.expression.script.groovy;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import groovy.lang.Binding;
 import groovy.lang.GString;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyRuntimeException;
@@ -24,9 +27,12 @@ import org.codehaus.groovy.control.customizers.SecureASTCustomizer;
 import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
 import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.groovy.syntax.SyntaxException;
+import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.common.expression.script.AbstractCachingScriptEvaluator;
+import com.evolveum.midpoint.model.common.expression.script.LazyScriptVariables;
+import com.evolveum.midpoint.model.common.expression.script.ScriptCache;
 import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEvaluationContext;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.crypto.Protector;
@@ -34,6 +40,7 @@ import com.evolveum.midpoint.schema.AccessDecision;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
 import com.evolveum.midpoint.schema.expression.ExpressionPermissionProfile;
 import com.evolveum.midpoint.schema.expression.ScriptExpressionProfile;
+import com.evolveum.midpoint.schema.util.ExceptionUtil;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.SecurityViolationException;
 
@@ -42,13 +49,26 @@ import com.evolveum.midpoint.util.exception.SecurityViolationException;
  *
  * "Sandboxing" based on type checking inspired by work of Cédric Champeau (http://melix.github.io/blog/2015/03/sandboxing.html)
  */
-public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<GroovyClassLoader, Class<?>> {
+public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<GroovyClassLoader, GroovyScriptEvaluator.CompiledScript> {
 
     public static final String LANGUAGE_NAME = "Groovy";
     public static final String LANGUAGE_URL = MidPointConstants.EXPRESSION_LANGUAGE_URL_BASE + LANGUAGE_NAME;
 
     static final String SANDBOX_ERROR_PREFIX = "[SANDBOX] ";
 
+    /**
+     * Whether script instances are reused (per compiled script) instead of being created for each evaluation.
+     * Can be switched off by setting the system property to "false".
+     */
+    private static final boolean REUSE_SCRIPT_INSTANCES =
+            !"false".equals(System.getProperty("midpoint.groovy.reuseScriptInstances"));
+
+    /**
+     * Maximal number of idle instances kept for a compiled script. This is the number of threads that can evaluate
+     * the script concurrently without creating new instances.
+     */
+    private static final int MAX_IDLE_INSTANCES_PER_SCRIPT = 8;
+
     /**
      * The name is not really used for anything serious. Maybe just for diagnostics.
      * But setting it to non-null to avoid confusing with the "null" profile.
@@ -98,9 +118,10 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
     }
 
     @Override
-    protected Class<?> compileScript(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
+    protected CompiledScript compileScript(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
         try {
-            return getGroovyLoader(context).parseClass(codeString, context.getContextDescription());
+            return new CompiledScript(
+                    getGroovyLoader(context).parseClass(codeString, context.getContextDescription()));
         } catch (MultipleCompilationErrorsException e) {
             String sandboxErrorMessage = getSandboxError(e);
             if (sandboxErrorMessage == null) {
@@ -180,17 +201,21 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
     }
 
     @Override
-    protected Object evaluateScript(Class<?> compiledScriptClass, ScriptExpressionEvaluationContext context) throws Exception {
+    protected Object evaluateScript(CompiledScript compiledScript, ScriptExpressionEvaluationContext context) throws Exception {
 
+        Class<?> compiledScriptClass = compiledScript.scriptClass;
         if (!Script.class.isAssignableFrom(compiledScriptClass)) {
             throw new ExpressionEvaluationException("Expected groovy script class, but got " + compiledScriptClass);
         }
 
-        Binding binding = new Binding(prepareScriptVariablesValueMap(context));
+        LazyScriptVariables variables = prepareLazyScriptVariables(context);
+        Script script = REUSE_SCRIPT_INSTANCES ? compiledScript.obtainInstance(variables) : null;
         try {
-            Script scriptResultObject = InvokerHelper.createScript(compiledScriptClass, binding);
+            if (script == null) {
+                script = InvokerHelper.createScript(compiledScriptClass, new LazyBinding(variables));
+            }
 
-            Object resultObject = scriptResultObject.run();
+            Object resultObject = script.run();
             if (resultObject == null) {
                 return null;
             }
@@ -200,11 +225,92 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
             }
 
             return resultObject;
+        } catch (LazyBinding.VariableConversionException e) {
+            throw e.getCause();
         } catch (GroovyRuntimeException e) {
+            LazyBinding.VariableConversionException conversionException =
+                    ExceptionUtil.findCause(e, LazyBinding.VariableConversionException.class);
+            if (conversionException != null) {
+                throw conversionException.getCause();
+            }
             // MID-6683: CompilationFailedException is not serializable, which makes OperationalResult unserializable
             // we can not set is as cause, so we can copy message only.
             // Seems also other groovy runtime exceptions are not serializable.
             throw new ExpressionEvaluationException("Groovy Evaluation Failed: " + e.getMessage(),serializationSafeThrowable(e));
+        } finally {
+            if (REUSE_SCRIPT_INSTANCES && script != null) {
+                compiledScript.releaseInstance(script);
+            }
+        }
+    }
+
+    /**
+     * Script instance can be reused only if it has no state of its own, i.e. there are no instance fields
+     * (created e.g. by {@code @Field} annotation). Script variables are kept in the binding, which is reset before each run.
+     */
+    private static boolean isReusable(Class<?> compiledScriptClass) {
+        for (Field field : compiledScriptClass.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiled script class with its idle instances (if the class can be reused, see {@link #isReusable(Class)}).
+     *
+     * This is the value kept in the {@link ScriptCache}, so the idle instances are dropped together with the compiled class,
+     * when it is evicted from the cache, or when the cache is cleared.
+     */
+    static class CompiledScript {
+
+        @NotNull private final Class<?> scriptClass;
+
+        private final boolean reusable;
+
+        /** Instances not being evaluated at the moment. Any thread can take one; it then uses the instance exclusively. */
+        private final Queue<Script> idleInstances = new ConcurrentLinkedQueue<>();
+
+        /** Approximate size of {@link #idleInstances} (as {@link ConcurrentLinkedQueue#size()} is not a constant-time one). */
+        private final AtomicInteger idleInstancesCount = new AtomicInteger();
+
+        CompiledScript(@NotNull Class<?> scriptClass) {
+            this.scriptClass = scriptClass;
+            this.reusable = isReusable(scriptClass);
+        }
+
+        /**
+         * Returns an idle instance (bound to given variables), or null if there is none or if the class cannot be reused.
+         * The instance is removed from the idle ones, so concurrent and nested (recursive) evaluations of the same script
+         * get their own instances.
+         */
+        private Script obtainInstance(LazyScriptVariables variables) {
+            if (!reusable) {
+                return null;
+            }
+            Script script = idleInstances.poll();
+            if (script != null) {
+                idleInstancesCount.decrementAndGet();
+                ((LazyBinding) script.getBinding()).reset(variables);
+            }
+            return script;
+        }
+
+        private void releaseInstance(Script script) {
+            if (!reusable || idleInstancesCount.get() >= MAX_IDLE_INSTANCES_PER_SCRIPT) {
+                return;
+            }
+            // Not to keep the variables (possibly large objects) referenced from idle instances. A fresh instance is used,
+            // as the variables are mutable (by the script) and must not be shared between script instances or threads.
+            ((LazyBinding) script.getBinding()).reset(LazyScriptVariables.empty());
+            idleInstancesCount.incrementAndGet();
+            idleInstances.offer(script);
+        }
+
+        @Override
+        public String toString() {
+            return "CompiledScript[" + scriptClass.getName() + "]";
         }
     }
 
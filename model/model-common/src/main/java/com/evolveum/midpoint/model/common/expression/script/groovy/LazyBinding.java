@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.script.groovy;
+
+import java.util.Collections;
+import java.util.Map;
+
+import groovy.lang.Binding;
+import groovy.lang.MissingPropertyException;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.model.common.expression.script.LazyScriptVariables;
+import com.evolveum.midpoint.util.exception.CommonException;
+
+/**
+ * Groovy binding backed by {@link LazyScriptVariables}: variables are converted only when the script reads them.
+ *
+ * The binding can be reused for subsequent evaluations (of the same script instance) by {@link #reset(LazyScriptVariables)}.
+ */
+class LazyBinding extends Binding {
+
+    private LazyScriptVariables variables;
+
+    LazyBinding(@NotNull LazyScriptVariables variables) {
+        this.variables = variables;
+    }
+
+    void reset(LazyScriptVariables variables) {
+        this.variables = variables;
+    }
+
+    @Override
+    public Object getVariable(String name) {
+        if (!variables.contains(name)) {
+            throw new MissingPropertyException(name, getClass());
+        }
+        try {
+            return variables.get(name);
+        } catch (CommonException e) {
+            throw new VariableConversionException(e);
+        }
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        variables.put(name, value);
+    }
+
+    @Override
+    public void removeVariable(String name) {
+        variables.remove(name);
+    }
+
+    @Override
+    public boolean hasVariable(String name) {
+        return variables.contains(name);
+    }
+
+    /** Returns a read-only view; variables are to be changed only via {@link #setVariable(String, Object)} and similar. */
+    @Override
+    public Map getVariables() {
+        try {
+            return Collections.unmodifiableMap(variables.materialize());
+        } catch (CommonException e) {
+            throw new VariableConversionException(e);
+        }
+    }
+
+    /** Carries a checked exception from variable conversion through the script code. */
+    static class VariableConversionException extends RuntimeException {
+
+        VariableConversionException(CommonException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized CommonException getCause() {
+            return (CommonException) super.getCause();
+        }
+    }
+}
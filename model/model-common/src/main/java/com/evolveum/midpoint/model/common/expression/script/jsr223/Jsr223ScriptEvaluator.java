@@ -6,8 +6,16 @@
  */
 package com.evolveum.midpoint.model.common.expression.script.jsr223;
 
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.script.*;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.VisibleForTesting;
+
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.common.expression.script.AbstractCachingScriptEvaluator;
 import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEvaluationContext;
@@ -24,46 +32,134 @@ import com.evolveum.midpoint.util.logging.TraceManager;
  * <p>
  * This evaluator does not really support expression profiles. It has just one
  * global almighty compiler (ScriptEngine).
+ * <p>
+ * If the engine declares itself as thread-safe (`THREADING` parameter of the engine factory is not null),
+ * the engine and the compiled scripts are shared by all threads. Otherwise, each evaluation borrows an engine instance
+ * (with its own compiled scripts) from a pool, so the scripts can be evaluated in multiple threads concurrently.
+ * The shared script cache then holds only the validated source code. The pool keeps at most {@link #MAX_IDLE_ENGINES}
+ * idle instances, each with at most {@link #MAX_SCRIPTS_PER_ENGINE} compiled scripts.
  *
  * @author Radovan Semancik
  */
-public class Jsr223ScriptEvaluator extends AbstractCachingScriptEvaluator<ScriptEngine, CompiledScript> {
+public class Jsr223ScriptEvaluator extends AbstractCachingScriptEvaluator<ScriptEngine, Jsr223ScriptEvaluator.Jsr223Script> {
 
     private static final Trace LOGGER = TraceManager.getTrace(Jsr223ScriptEvaluator.class);
 
+    /** Maximal number of idle engine instances kept in the pool (for engines that are not thread-safe). */
+    private static final int MAX_IDLE_ENGINES = 16;
+
+    /** Maximal number of compiled scripts kept in each pooled engine instance. */
+    private static final int MAX_SCRIPTS_PER_ENGINE = 1000;
+
     private final ScriptEngine scriptEngine;
     private final String engineName;
 
+    /** Whether the engine can be used by multiple threads concurrently. */
+    private final boolean threadSafe;
+
+    /**
+     * Idle engine instances, the most recently used first (as they are most likely to have the scripts compiled).
+     * Used only if the engine is not thread-safe.
+     */
+    private final Deque<PooledEngine> idleEngines = new ConcurrentLinkedDeque<>();
+
+    /** Approximate size of {@link #idleEngines} (as {@link ConcurrentLinkedDeque#size()} is not a constant-time one). */
+    private final AtomicInteger idleEnginesCount = new AtomicInteger();
+
     public Jsr223ScriptEvaluator(String engineName, PrismContext prismContext,
             Protector protector, LocalizationService localizationService) {
-        super(prismContext, protector, localizationService);
+        this(engineName, createScriptEngine(engineName), prismContext, protector, localizationService);
+    }
 
+    @VisibleForTesting
+    Jsr223ScriptEvaluator(String engineName, ScriptEngine scriptEngine, PrismContext prismContext,
+            Protector protector, LocalizationService localizationService) {
+        super(prismContext, protector, localizationService);
         this.engineName = engineName;
-        ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
+        this.scriptEngine = scriptEngine;
+        this.threadSafe = scriptEngine != null && scriptEngine.getFactory().getParameter("THREADING") != null;
+        if (scriptEngine != null) {
+            LOGGER.debug("Script engine for '{}' is thread-safe: {}", engineName, threadSafe);
+        }
+    }
+
+    private static ScriptEngine createScriptEngine(String engineName) {
         long initStartMs = System.currentTimeMillis();
-        scriptEngine = scriptEngineManager.getEngineByName(engineName);
+        ScriptEngine scriptEngine = new ScriptEngineManager().getEngineByName(engineName);
         if (scriptEngine == null) {
             LOGGER.warn("The JSR-223 scripting engine for '" + engineName + "' was not found");
-            return;
+        } else {
+            LOGGER.info("Script engine for '{}' initialized in {} ms.", engineName, System.currentTimeMillis() - initStartMs);
         }
-        LOGGER.info("Script engine for '{}' initialized in {} ms.",
-                engineName, System.currentTimeMillis() - initStartMs);
+        return scriptEngine;
     }
 
+    /** Pooled engines are not precompiled: the scripts would end up in a single (arbitrary) engine instance. */
     @Override
-    protected CompiledScript compileScript(String codeString, ScriptExpressionEvaluationContext evaluationContext) throws Exception {
-        return ((Compilable) scriptEngine).compile(codeString);
+    protected boolean supportsPrecompilation() {
+        return threadSafe;
     }
 
     @Override
-    protected Object evaluateScript(CompiledScript compiledScript, ScriptExpressionEvaluationContext context) throws Exception {
-        Bindings bindings = convertToBindings(context);
-        return compiledScript.eval(bindings);
+    protected Jsr223Script compileScript(String codeString, ScriptExpressionEvaluationContext evaluationContext) throws Exception {
+        if (threadSafe) {
+            return new Jsr223Script(codeString, ((Compilable) scriptEngine).compile(codeString));
+        } else {
+            // Compiling the code here checks it for errors; the compiled script stays in the pooled engine.
+            PooledEngine engine = borrowEngine();
+            try {
+                engine.getCompiledScript(codeString);
+            } finally {
+                returnEngine(engine);
+            }
+            return new Jsr223Script(codeString, null);
+        }
+    }
+
+    @Override
+    protected Object evaluateScript(Jsr223Script script, ScriptExpressionEvaluationContext context) throws Exception {
+        if (script.compiledScript != null) {
+            return script.compiledScript.eval(
+                    convertToBindings(scriptEngine, context));
+        } else {
+            PooledEngine engine = borrowEngine();
+            try {
+                return engine.getCompiledScript(script.code).eval(
+                        convertToBindings(engine.engine, context));
+            } finally {
+                returnEngine(engine);
+            }
+        }
     }
 
-    private Bindings convertToBindings(ScriptExpressionEvaluationContext context)
+    /** Returns an idle engine instance (or a new one). It is used exclusively by the caller until returned. */
+    private PooledEngine borrowEngine() {
+        PooledEngine engine = idleEngines.pollFirst();
+        if (engine != null) {
+            idleEnginesCount.decrementAndGet();
+            return engine;
+        } else {
+            return new PooledEngine();
+        }
+    }
+
+    /** Returns the engine instance to the pool. If the pool is full, the instance is discarded. */
+    private void returnEngine(PooledEngine engine) {
+        if (idleEnginesCount.incrementAndGet() <= MAX_IDLE_ENGINES) {
+            idleEngines.offerFirst(engine);
+        } else {
+            idleEnginesCount.decrementAndGet();
+        }
+    }
+
+    @VisibleForTesting
+    int getIdleEnginesCount() {
+        return idleEnginesCount.get();
+    }
+
+    private Bindings convertToBindings(ScriptEngine engine, ScriptExpressionEvaluationContext context)
             throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
-        Bindings bindings = scriptEngine.createBindings();
+        Bindings bindings = engine.createBindings();
         bindings.putAll(prepareScriptVariablesValueMap(context));
         return bindings;
     }
@@ -85,4 +181,40 @@ public class Jsr223ScriptEvaluator extends AbstractCachingScriptEvaluator<Script
     public boolean isInitialized() {
         return scriptEngine != null;
     }
+
+    /** Script in the shared cache. For engines that are not thread-safe, only the (validated) code is kept. */
+    static class Jsr223Script {
+
+        @NotNull private final String code;
+        private final CompiledScript compiledScript;
+
+        private Jsr223Script(@NotNull String code, CompiledScript compiledScript) {
+            this.code = code;
+            this.compiledScript = compiledScript;
+        }
+    }
+
+    /** Engine instance used by a single evaluation at a time, with its own compiled scripts. */
+    private class PooledEngine {
+
+        @NotNull private final ScriptEngine engine = scriptEngine.getFactory().getScriptEngine();
+
+        /** Least recently used scripts are evicted. */
+        @NotNull private final Map<String, CompiledScript> compiledScripts =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                        return size() > MAX_SCRIPTS_PER_ENGINE;
+                    }
+                };
+
+        private @NotNull CompiledScript getCompiledScript(@NotNull String code) throws ScriptException {
+            CompiledScript compiledScript = compiledScripts.get(code);
+            if (compiledScript == null) {
+                compiledScript = ((Compilable) engine).compile(code);
+                compiledScripts.put(code, compiledScript);
+            }
+            return compiledScript;
+        }
+    }
 }
@@ -1,37 +1,40 @@
 /*
- * Copyright (C) 2010-2022 Evolveum and contributors
+ * Copyright (C) 2010-2023 Evolveum and contributors
  *
  * This work is dual-licensed under the Apache License 2.0
  * and European Union Public License. See LICENSE file for details.
  */
 package com.evolveum.midpoint.model.common.expression.script.velocity;
 
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
-import javax.xml.namespace.QName;
 
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.common.LocalizationService;
-import com.evolveum.midpoint.model.common.expression.script.AbstractScriptEvaluator;
+import com.evolveum.midpoint.model.common.expression.script.AbstractCachingScriptEvaluator;
 import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEvaluationContext;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismValue;
 import com.evolveum.midpoint.prism.crypto.Protector;
-import com.evolveum.midpoint.prism.xml.XsdTypeMapper;
 import com.evolveum.midpoint.repo.common.expression.ExpressionSyntaxException;
-import com.evolveum.midpoint.repo.common.expression.ExpressionUtil;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
-import com.evolveum.midpoint.schema.internals.InternalCounters;
-import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.util.exception.*;
 
 /**
  * Expression evaluator that is using Apache Velocity engine.
+ *
+ * Templates are parsed once and kept in the script cache (per expression profile), so repeated evaluations
+ * of the same template (e.g. notification bodies) only merge the context into the already parsed template.
  */
-public class VelocityScriptEvaluator extends AbstractScriptEvaluator {
+public class VelocityScriptEvaluator extends AbstractCachingScriptEvaluator<Void, Template> {
 
     public static final String LANGUAGE_NAME = "velocity";
     public static final String LANGUAGE_URL = MidPointConstants.EXPRESSION_LANGUAGE_URL_BASE + LANGUAGE_NAME;
@@ -46,54 +49,38 @@ public class VelocityScriptEvaluator extends AbstractScriptEvaluator {
     @Override
     public <T, V extends PrismValue> List<V> evaluate(ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException,
             ObjectNotFoundException, ExpressionSyntaxException, CommunicationException, ConfigurationException, SecurityViolationException {
-        checkRestrictions(context);
-
-        VelocityContext velocityCtx = createVelocityContext(context);
-
-        String codeString = context.getExpressionType().getCode();
-        if (codeString == null) {
-            throw new ExpressionEvaluationException("No script code in " + context.getContextDescription());
-        }
-
-        StringWriter resultWriter = new StringWriter();
-        try {
-            InternalMonitor.recordCount(InternalCounters.SCRIPT_EXECUTION_COUNT);
-            Velocity.evaluate(velocityCtx, resultWriter, "", codeString);
-        } catch (RuntimeException e) {
-            throw new ExpressionEvaluationException(e.getMessage() + " in " + context.getContextDescription(), e);
-        }
-
+        List<V> values = super.evaluate(context);
         if (context.getOutputDefinition() == null) {
-            // No outputDefinition means "void" return type, we can return right now
+            // No outputDefinition means "void" return type
             return Collections.emptyList();
+        } else {
+            return values;
         }
+    }
 
-        QName xsdReturnType = context.getOutputDefinition().getTypeName();
-
-        Class<T> javaReturnType = XsdTypeMapper.toJavaType(xsdReturnType);
-        if (javaReturnType == null) {
-            javaReturnType = getPrismContext().getSchemaRegistry().getCompileTimeClass(xsdReturnType);
-        }
-
-        if (javaReturnType == null) {
-            // Fix for enums defined in schema extension (MID-2399) which are not parsed into ComplexTypeDefinitions.
-            //noinspection unchecked
-            javaReturnType = (Class<T>) String.class;
-        }
-
-        T evalResult;
+    @Override
+    protected Template compileScript(String codeString, ScriptExpressionEvaluationContext context)
+            throws ExpressionEvaluationException {
+        RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
+        Template template = new Template();
+        template.setName("");
+        template.setRuntimeServices(runtimeServices);
         try {
-            evalResult = ExpressionUtil.convertValue(
-                    javaReturnType, context.getAdditionalConvertor(), resultWriter.toString(), getProtector());
-        } catch (IllegalArgumentException e) {
-            throw new ExpressionEvaluationException(e.getMessage() + " in " + context.getContextDescription(), e);
+            template.setData(runtimeServices.parse(new StringReader(codeString), template));
+        } catch (ParseException e) {
+            throw new ExpressionEvaluationException(
+                    "Couldn't parse Velocity template in " + context.getContextDescription() + ": " + e.getMessage(), e);
         }
+        template.initDocument();
+        return template;
+    }
 
-        List<V> values = new ArrayList<>();
-        values.add(
-                ExpressionUtil.convertToPrismValue(
-                        evalResult, context.getOutputDefinition(), context.getContextDescription()));
-        return values;
+    @Override
+    protected Object evaluateScript(Template template, ScriptExpressionEvaluationContext context) throws Exception {
+        VelocityContext velocityCtx = createVelocityContext(context);
+        StringWriter resultWriter = new StringWriter();
+        template.merge(velocityCtx, resultWriter);
+        return resultWriter.toString();
     }
 
     private VelocityContext createVelocityContext(ScriptExpressionEvaluationContext context) throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
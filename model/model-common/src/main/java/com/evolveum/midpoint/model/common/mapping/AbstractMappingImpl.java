@@ -1304,6 +1304,7 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
             context.setMappingQName(mappingQName);
             context.setVariableProducer(variableProducer);
             context.setLocalContextDescription("condition");
+            context.setOrigin(originObject, mappingBean);
             conditionOutputTriple = expression.evaluate(context, result);
         }
     }
@@ -1325,6 +1326,7 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
         context.setVariableProducer(variableProducer);
         context.setValueMetadataComputer(valueMetadataComputer);
         context.setLocalContextDescription("expression");
+        context.setOrigin(originObject, mappingBean);
 
         if (mappingPreExpression != null) {
             mappingPreExpression.mappingPreExpression(context, result);
@@ -11,6 +11,7 @@ import com.evolveum.midpoint.model.api.ModelExecuteOptions;
 import com.evolveum.midpoint.model.api.context.ModelContext;
 import com.evolveum.midpoint.model.common.ModelCommonBeans;
 import com.evolveum.midpoint.model.common.expression.ModelExpressionThreadLocalHolder;
+import com.evolveum.midpoint.model.common.mapping.metadata.TransformationalMetadataCache;
 import com.evolveum.midpoint.model.common.mapping.metadata.TransformationalMetadataComputation;
 import com.evolveum.midpoint.model.common.mapping.metadata.ItemValueMetadataProcessingSpec;
 import com.evolveum.midpoint.prism.ItemDefinition;
@@ -49,12 +50,36 @@ public class MappingImpl<V extends PrismValue, D extends ItemDefinition<?>> exte
         if (processingSpec.isEmpty()) {
             return null;
         } else {
+            TransformationalMetadataCache metadataCache =
+                    TransformationalMetadataCache.isApplicable(processingSpec) ? new TransformationalMetadataCache() : null;
             return new TransformationValueMetadataComputer() {
                 @Override
                 public ValueMetadataType compute(@NotNull List<PrismValue> inputValues,
                         @NotNull OperationResult computationOpResult)
                         throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
                         ConfigurationException, ExpressionEvaluationException {
+                    if (metadataCache != null) {
+                        return computeShared(inputValues, computationOpResult).clone();
+                    } else {
+                        return computeMetadata(inputValues, computationOpResult);
+                    }
+                }
+
+                @Override
+                public ValueMetadataType computeShared(@NotNull List<PrismValue> inputValues,
+                        @NotNull OperationResult computationOpResult)
+                        throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+                        ConfigurationException, ExpressionEvaluationException {
+                    if (metadataCache != null) {
+                        return metadataCache.getOrCompute(inputValues, () -> computeMetadata(inputValues, computationOpResult));
+                    } else {
+                        return computeMetadata(inputValues, computationOpResult);
+                    }
+                }
+
+                private ValueMetadataType computeMetadata(List<PrismValue> inputValues, OperationResult computationOpResult)
+                        throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+                        ConfigurationException, ExpressionEvaluationException {
                     return TransformationalMetadataComputation
                             .forMapping(inputValues, processingSpec, MappingImpl.this)
                             .execute(computationOpResult);
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.mapping.metadata;
+
+import java.util.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ValueMetadataType;
+
+/**
+ * Shares the results of value metadata computations among value tuples of a single mapping evaluation.
+ *
+ * Typically, all the values of a source come from the same origin, so they carry identical provenance. The computed
+ * metadata are then identical as well, and there is no point in computing (and merging the acquisitions) for each value
+ * tuple again. The metadata are computed once for each distinct combination of input value metadata; the resulting
+ * record is frozen and shared by all the tuples. (The callers copy it when attaching it to the output values.)
+ *
+ * The lookup does not copy anything: the key refers to the input metadata values and uses their precomputed hash.
+ * Only when a new entry is stored, the metadata values that are not immutable are copied and frozen, so that the key
+ * cannot change afterwards.
+ *
+ * This is possible only if the resulting metadata do not depend on the data values themselves, i.e. if there are no
+ * custom metadata mappings and transformation metadata are not computed. See {@link #isApplicable(ItemValueMetadataProcessingSpec)}.
+ *
+ * Not thread-safe. To be used within a single mapping evaluation.
+ */
+public class TransformationalMetadataCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(TransformationalMetadataCache.class);
+
+    /** Number of distinct input metadata combinations kept. */
+    private static final int MAX_ENTRIES = 100;
+
+    /** Key: metadata of individual input values (immutable). Value: immutable output metadata. */
+    @NotNull private final Map<Key, ValueMetadataType> interned = new HashMap<>();
+
+    public static boolean isApplicable(@NotNull ItemValueMetadataProcessingSpec processingSpec)
+            throws SchemaException, ConfigurationException {
+        return processingSpec.getMappings().isEmpty()
+                && !processingSpec.isFullProcessing(ValueMetadataType.F_TRANSFORMATION);
+    }
+
+    /** Returns the (immutable) metadata for given input values. The caller must not modify them. */
+    public @NotNull ValueMetadataType getOrCompute(@NotNull List<PrismValue> inputValues, @NotNull Computer computer)
+            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+            ConfigurationException, ExpressionEvaluationException {
+        Key key = Key.of(inputValues);
+        ValueMetadataType existing = interned.get(key);
+        if (existing != null) {
+            LOGGER.trace("Reusing interned value metadata for {}", inputValues);
+            return existing;
+        }
+        ValueMetadataType computed = computer.compute();
+        computed.asPrismContainerValue().freeze();
+        if (interned.size() < MAX_ENTRIES) {
+            interned.put(key.toImmutable(), computed);
+        }
+        return computed;
+    }
+
+    @VisibleForTesting
+    int size() {
+        return interned.size();
+    }
+
+    /** Metadata values of individual input values; null for null input values. */
+    private static class Key {
+
+        @NotNull private final List<List<PrismContainerValue<Containerable>>> metadata;
+        private final int hash;
+
+        private Key(@NotNull List<List<PrismContainerValue<Containerable>>> metadata, int hash) {
+            this.metadata = metadata;
+            this.hash = hash;
+        }
+
+        static Key of(List<PrismValue> inputValues) {
+            List<List<PrismContainerValue<Containerable>>> metadata = new ArrayList<>(inputValues.size());
+            for (PrismValue inputValue : inputValues) {
+                if (inputValue == null) {
+                    metadata.add(null);
+                } else if (inputValue.hasValueMetadata()) {
+                    metadata.add(inputValue.getValueMetadata().getValues());
+                } else {
+                    metadata.add(List.of());
+                }
+            }
+            return new Key(metadata, metadata.hashCode());
+        }
+
+        /** Creates a key that does not change even if the input values do. Values already immutable are not copied. */
+        Key toImmutable() {
+            List<List<PrismContainerValue<Containerable>>> immutableMetadata = new ArrayList<>(metadata.size());
+            for (List<PrismContainerValue<Containerable>> metadataValues : metadata) {
+                if (metadataValues == null) {
+                    immutableMetadata.add(null);
+                } else {
+                    List<PrismContainerValue<Containerable>> immutableValues = new ArrayList<>(metadataValues.size());
+                    for (PrismContainerValue<Containerable> metadataValue : metadataValues) {
+                        if (metadataValue.isImmutable()) {
+                            immutableValues.add(metadataValue);
+                        } else {
+                            PrismContainerValue<Containerable> clone = metadataValue.clone();
+                            clone.freeze();
+                            immutableValues.add(clone);
+                        }
+                    }
+                    immutableMetadata.add(immutableValues);
+                }
+            }
+            return new Key(immutableMetadata, hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && metadata.equals(key.metadata);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Computer {
+        @NotNull ValueMetadataType compute()
+                throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+                ConfigurationException, ExpressionEvaluationException;
+    }
+}
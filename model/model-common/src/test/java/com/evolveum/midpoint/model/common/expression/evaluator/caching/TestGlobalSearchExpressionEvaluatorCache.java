@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.evaluator.caching;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests the invalidation of {@link GlobalSearchExpressionEvaluatorCache} entries via its indices
+ * (by shadow OID, resource OID and object type), including invalidations running concurrently with storing the entries.
+ */
+public class TestGlobalSearchExpressionEvaluatorCache extends AbstractUnitTest {
+
+    private static final String RESOURCE_1_OID = "9d1e4a5c-0b0a-4c8e-8f43-1c2b3a4d5e01";
+    private static final String RESOURCE_2_OID = "9d1e4a5c-0b0a-4c8e-8f43-1c2b3a4d5e02";
+    private static final String SHADOW_1_OID = "9d1e4a5c-0b0a-4c8e-8f43-1c2b3a4d5f01";
+    private static final String SHADOW_2_OID = "9d1e4a5c-0b0a-4c8e-8f43-1c2b3a4d5f02";
+    private static final String SHADOW_3_OID = "9d1e4a5c-0b0a-4c8e-8f43-1c2b3a4d5f03";
+    private static final String ROLE_OID = "9d1e4a5c-0b0a-4c8e-8f43-1c2b3a4d6001";
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+    }
+
+    @Test
+    public void test100ShadowChangeInvalidatesOnlyEntriesContainingIt() {
+        given("cache with two shadow entries");
+        GlobalSearchExpressionEvaluatorCache cache = createCache(100);
+        QueryKey key1 = shadowKey("group1");
+        QueryKey key2 = shadowKey("group2");
+        putShadow(cache, key1, SHADOW_1_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+        putShadow(cache, key2, SHADOW_2_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+
+        when("one of the shadows is changed");
+        cache.invalidate(ShadowType.class, SHADOW_1_OID, null);
+
+        then("only the entry containing it is invalidated");
+        assertThat((List<?>) cache.get(key1)).isNull();
+        assertThat((List<?>) cache.get(key2)).hasSize(1);
+        assertThat(cache.getIndexedEntriesCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test110ResourceObjectChangeInvalidatesEntriesOfResourceAndKind() {
+        given("cache with shadow entries of two resources and two kinds");
+        GlobalSearchExpressionEvaluatorCache cache = createCache(100);
+        QueryKey entitlementKey = shadowKey("group1");
+        QueryKey accountKey = shadowKey("account1");
+        QueryKey otherResourceKey = shadowKey("group2");
+        putShadow(cache, entitlementKey, SHADOW_1_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+        putShadow(cache, accountKey, SHADOW_2_OID, RESOURCE_1_OID, ShadowKindType.ACCOUNT);
+        putShadow(cache, otherResourceKey, SHADOW_3_OID, RESOURCE_2_OID, ShadowKindType.ENTITLEMENT);
+
+        when("an entitlement on the first resource is changed");
+        cache.invalidate(resource(RESOURCE_1_OID), shadow(null, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT));
+
+        then("only entitlement entries of that resource are invalidated");
+        assertThat((List<?>) cache.get(entitlementKey)).isNull();
+        assertThat((List<?>) cache.get(accountKey)).hasSize(1);
+        assertThat((List<?>) cache.get(otherResourceKey)).hasSize(1);
+        assertThat(cache.getIndexedEntriesCount()).isEqualTo(2);
+
+        when("the first resource is changed");
+        cache.invalidate(ResourceType.class, RESOURCE_1_OID, null);
+
+        then("all its entries are invalidated");
+        assertThat((List<?>) cache.get(accountKey)).isNull();
+        assertThat((List<?>) cache.get(otherResourceKey)).hasSize(1);
+        assertThat(cache.getIndexedEntriesCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test120OtherTypeChangeInvalidatesEntriesOfThatType() {
+        given("cache with a role and a shadow entry");
+        GlobalSearchExpressionEvaluatorCache cache = createCache(100);
+        QueryKey roleKey = roleKey("r1");
+        QueryKey shadowKey = shadowKey("group1");
+        cache.put(roleKey, List.of(ref(ROLE_OID, RoleType.COMPLEX_TYPE)), List.of(role(ROLE_OID)));
+        putShadow(cache, shadowKey, SHADOW_1_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+
+        when("a role (of abstract role type) is changed");
+        cache.invalidate(AbstractRoleType.class, ROLE_OID, null);
+
+        then("role entries are invalidated, shadow ones are not");
+        assertThat((List<?>) cache.get(roleKey)).isNull();
+        assertThat((List<?>) cache.get(shadowKey)).hasSize(1);
+        assertThat(cache.getIndexedEntriesCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test130EvictedAndReplacedEntriesAreRemovedFromIndices() {
+        given("cache with capacity of 2");
+        GlobalSearchExpressionEvaluatorCache cache = createCache(2);
+
+        when("more entries are stored, one of them twice");
+        QueryKey key1 = shadowKey("group1");
+        putShadow(cache, key1, SHADOW_1_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+        putShadow(cache, key1, SHADOW_2_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+        putShadow(cache, shadowKey("group2"), SHADOW_2_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+        putShadow(cache, shadowKey("group3"), SHADOW_3_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+
+        then("indices reference only the entries kept in the cache");
+        int size = cache.getStateInformation().iterator().next().getSize();
+        assertThat(size).isLessThanOrEqualTo(2); // eviction may occur even sooner
+        assertThat(cache.getIndexedEntriesCount()).isEqualTo(size);
+
+        when("everything is invalidated");
+        cache.invalidate(null, null, null);
+
+        then("indices are empty");
+        assertThat(cache.getIndexedEntriesCount()).isZero();
+    }
+
+    @Test
+    public void test140InvalidationDoesNotRemoveNewerEntry() {
+        given("cache with an entry replaced by a newer one with different shadow");
+        GlobalSearchExpressionEvaluatorCache cache = createCache(100);
+        QueryKey key = shadowKey("group1");
+        putShadow(cache, key, SHADOW_1_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+        putShadow(cache, key, SHADOW_2_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+
+        when("the shadow of the older entry is changed");
+        cache.invalidate(ShadowType.class, SHADOW_1_OID, null);
+
+        then("the newer entry is kept");
+        assertThat((List<?>) cache.get(key)).hasSize(1);
+
+        when("the shadow of the newer entry is changed");
+        cache.invalidate(ShadowType.class, SHADOW_2_OID, null);
+
+        then("the newer entry is invalidated");
+        assertThat((List<?>) cache.get(key)).isNull();
+        assertThat(cache.getIndexedEntriesCount()).isZero();
+    }
+
+    /** An entry stored concurrently with an invalidation must never stay in the cache without being indexed. */
+    @Test
+    public void test150ConcurrentPutAndInvalidation() throws Exception {
+        given("cache, and threads storing entries and invalidating them");
+        GlobalSearchExpressionEvaluatorCache cache = createCache(100);
+        int threads = 4;
+        int iterations = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            QueryKey key = shadowKey("group" + t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    putShadow(cache, key, SHADOW_1_OID, RESOURCE_1_OID, ShadowKindType.ENTITLEMENT);
+                }
+                return null;
+            }));
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    cache.invalidate(ShadowType.class, SHADOW_1_OID, null);
+                }
+                return null;
+            }));
+        }
+
+        when("they run concurrently");
+        start.countDown();
+        executor.shutdown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        then("every entry in the cache is indexed");
+        int size = cache.getStateInformation().iterator().next().getSize();
+        displayValue("Entries in the cache", size);
+        assertThat(cache.getIndexedEntriesCount()).as("indexed entries").isEqualTo(size);
+
+        and("the final invalidation of the shadow removes all of them");
+        cache.invalidate(ShadowType.class, SHADOW_1_OID, null);
+        for (int t = 0; t < threads; t++) {
+            assertThat((List<?>) cache.get(shadowKey("group" + t))).isNull();
+        }
+        assertThat(cache.getIndexedEntriesCount()).isZero();
+    }
+
+    private GlobalSearchExpressionEvaluatorCache createCache(int maxSize) {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setMaxSize(maxSize);
+        return new GlobalSearchExpressionEvaluatorCache() {
+            @Override
+            CacheConfiguration getConfiguration() {
+                return configuration;
+            }
+        };
+    }
+
+    private void putShadow(
+            GlobalSearchExpressionEvaluatorCache cache, QueryKey key, String shadowOid, String resourceOid, ShadowKindType kind) {
+        cache.put(key, List.of(ref(shadowOid, ShadowType.COMPLEX_TYPE)), List.of(shadow(shadowOid, resourceOid, kind)));
+    }
+
+    private @NotNull QueryKey shadowKey(String intent) {
+        return new QueryKey(
+                ShadowType.class,
+                PrismContext.get().queryFor(ShadowType.class).item(ShadowType.F_INTENT).eq(intent).build(),
+                ObjectSearchStrategyType.IN_REPOSITORY,
+                PrismContext.get());
+    }
+
+    private @NotNull QueryKey roleKey(String identifier) {
+        return new QueryKey(
+                RoleType.class,
+                PrismContext.get().queryFor(RoleType.class).item(RoleType.F_IDENTIFIER).eq(identifier).build(),
+                ObjectSearchStrategyType.IN_REPOSITORY,
+                PrismContext.get());
+    }
+
+    private PrismValue ref(String oid, QName type) {
+        return new ObjectReferenceType().oid(oid).type(type).asReferenceValue();
+    }
+
+    private PrismObject<ShadowType> shadow(String oid, String resourceOid, ShadowKindType kind) {
+        return new ShadowType()
+                .oid(oid)
+                .resourceRef(resourceOid, ResourceType.COMPLEX_TYPE)
+                .kind(kind)
+                .asPrismObject();
+    }
+
+    private PrismObject<ResourceType> resource(String oid) {
+        return new ResourceType().oid(oid).asPrismObject();
+    }
+
+    private PrismObject<RoleType> role(String oid) {
+        return new RoleType().oid(oid).asPrismObject();
+    }
+}
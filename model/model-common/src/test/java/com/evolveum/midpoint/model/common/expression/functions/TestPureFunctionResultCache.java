@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.functions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
+
+/**
+ * Tests memoization of pure custom functions.
+ */
+public class TestPureFunctionResultCache extends AbstractUnitTest {
+
+    @Test
+    public void test100SimpleArguments() throws ExpressionEvaluationException {
+        // GIVEN
+        PureFunctionResultCache cache = new PureFunctionResultCache();
+        AtomicInteger evaluations = new AtomicInteger();
+
+        // WHEN
+        Object first = cache.getOrEvaluate("codeToName", Map.of("code", "A1"),
+                () -> "Name " + evaluations.incrementAndGet());
+        Object second = cache.getOrEvaluate("codeToName", Map.of("code", "A1"),
+                () -> "Name " + evaluations.incrementAndGet());
+        Object other = cache.getOrEvaluate("codeToName", Map.of("code", "B2"),
+                () -> "Name " + evaluations.incrementAndGet());
+
+        // THEN
+        assertThat(first).isEqualTo("Name 1");
+        assertThat(second).isEqualTo("Name 1");
+        assertThat(other).isEqualTo("Name 2");
+        assertThat(evaluations.get()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getStatistics().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test110NullResult() throws ExpressionEvaluationException {
+        // GIVEN
+        PureFunctionResultCache cache = new PureFunctionResultCache();
+        AtomicInteger evaluations = new AtomicInteger();
+
+        // WHEN
+        cache.getOrEvaluate("lookup", null, () -> { evaluations.incrementAndGet(); return null; });
+        Object second = cache.getOrEvaluate("lookup", null, () -> { evaluations.incrementAndGet(); return null; });
+
+        // THEN
+        assertThat(second).isNull();
+        assertThat(evaluations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void test120ListResultIsCopied() throws ExpressionEvaluationException {
+        // GIVEN
+        PureFunctionResultCache cache = new PureFunctionResultCache();
+
+        // WHEN
+        @SuppressWarnings("unchecked")
+        List<Object> first = (List<Object>) cache.getOrEvaluate("split", Map.of("value", "a,b"),
+                () -> new ArrayList<>(List.of("a", "b")));
+        first.add("modified by the caller");
+        Object second = cache.getOrEvaluate("split", Map.of("value", "a,b"), () -> List.of("x"));
+
+        // THEN
+        assertThat(second).isEqualTo(List.of("a", "b"));
+    }
+
+    @Test
+    public void test130NonSimpleArgumentsAreNotCached() throws ExpressionEvaluationException {
+        // GIVEN
+        PureFunctionResultCache cache = new PureFunctionResultCache();
+        AtomicInteger evaluations = new AtomicInteger();
+        StringBuilder mutableArgument = new StringBuilder("jack");
+
+        // WHEN
+        cache.getOrEvaluate("describe", Map.of("name", mutableArgument), () -> "#" + evaluations.incrementAndGet());
+        cache.getOrEvaluate("describe", Map.of("name", mutableArgument), () -> "#" + evaluations.incrementAndGet());
+
+        // THEN
+        assertThat(evaluations.get()).isEqualTo(2);
+        assertThat(cache.size()).isZero();
+    }
+}
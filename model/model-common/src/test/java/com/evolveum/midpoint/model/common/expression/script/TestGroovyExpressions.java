@@ -21,6 +21,8 @@ import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.test.util.ParallelTestThread;
+import com.evolveum.midpoint.test.util.TestUtil;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
 
@@ -492,6 +494,45 @@ public class TestGroovyExpressions extends AbstractScriptTest {
 
     }
 
+    /**
+     * Script instances are reused, so a variable set by one evaluation must not be visible in the next one,
+     * neither in the same thread nor in others.
+     */
+    @Test
+    public void testBindingIsolation() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            evaluateAndAssertStringScalarExpression(
+                    "expression-binding-isolation.xml",
+                    "testBindingIsolation-" + i,
+                    createVariables("foo", "FOO" + i, PrimitiveType.STRING),
+                    "none");
+        }
+
+        ParallelTestThread[] threads = TestUtil.multithread(
+                (threadIndex) -> {
+                    for (int i = 0; i < 3; i++) {
+                        evaluateAndAssertStringScalarExpression(
+                                "expression-binding-isolation.xml",
+                                "testBindingIsolation-" + threadIndex + "-" + i,
+                                createVariables("foo", "FOO" + threadIndex, PrimitiveType.STRING),
+                                "none");
+                    }
+                }, 10, 3);
+        TestUtil.waitForThreads(threads, 60000L);
+    }
+
+    /**
+     * Removed variable must disappear from the binding, not stay there with null value.
+     */
+    @Test
+    public void testBindingRemoveVariable() throws Exception {
+        evaluateAndAssertStringScalarExpression(
+                "expression-binding-remove-variable.xml",
+                "testBindingRemoveVariable",
+                createVariables("foo", "FOO", PrimitiveType.STRING),
+                "removed:false");
+    }
+
     /**
      * Almighty script can execute a process from string.
      */
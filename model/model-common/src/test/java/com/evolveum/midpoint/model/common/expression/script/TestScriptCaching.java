@@ -119,6 +119,31 @@ public class TestScriptCaching extends AbstractUnitTest
         assertTrue("Even Horatio was wrong! " + horatio1Time + " -> " + horatio2Time, horatio2Time <= horatio1Time);
     }
 
+    @Test
+    public void testPrecompile() throws Exception {
+        // GIVEN (empty cache)
+        InternalMonitor.reset();
+        AbstractCachingScriptEvaluator<?, ?> cachingEvaluator = (AbstractCachingScriptEvaluator<?, ?>) evaluator;
+        ScriptCache<?, ?> scriptCache = cachingEvaluator.getScriptCache();
+        scriptCache.clear();
+        long hitsBefore = scriptCache.getStatistics().getHits();
+
+        // WHEN (script is precompiled)
+        ScriptExpressionEvaluatorType scriptType = parseScriptType("expression-string-variables.xml");
+        cachingEvaluator.precompile(scriptType.getCode(), "precompile");
+
+        // THEN (it is compiled but not executed)
+        assertScriptMonitor(1, 0, "precompile");
+        assertEquals("Wrong cache size", 1, scriptCache.size());
+
+        // WHEN (script is executed)
+        executeScript("expression-string-variables.xml", "FOOBAR", "after precompile");
+
+        // THEN (it is not compiled again)
+        assertScriptMonitor(1, 1, "after precompile");
+        assertTrue("No cache hit recorded", scriptCache.getStatistics().getHits() > hitsBefore);
+    }
+
     private void assertScriptMonitor(int expCompilations, int expExecutions, String desc) {
         assertEquals("Unexpected number of script compilations after " + desc, expCompilations, InternalMonitor.getCount(InternalCounters.SCRIPT_COMPILE_COUNT));
         assertEquals("Unexpected number of script executions after " + desc, expExecutions, InternalMonitor.getCount(InternalCounters.SCRIPT_EXECUTION_COUNT));
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectTemplateMappingType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectTemplateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Tests the collection of script evaluation statistics by {@link ScriptEvaluationProfiler}.
+ */
+public class TestScriptEvaluationProfiler extends AbstractUnitTest {
+
+    private static final ScriptEvaluationProfiler PROFILER = ScriptEvaluationProfiler.INSTANCE;
+
+    private static final String ROOT_TASK_OID = "4d2c6e8a-1f3b-4a5c-9d7e-0b1c2d3e4f01";
+    private static final String TEMPLATE_OID = "4d2c6e8a-1f3b-4a5c-9d7e-0b1c2d3e4f02";
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+    }
+
+    @BeforeMethod
+    public void resetProfiler() {
+        PROFILER.reset();
+    }
+
+    @AfterMethod
+    public void disableProfiler() {
+        PROFILER.configure(false, 1);
+        PROFILER.reset();
+    }
+
+    @Test
+    public void test100Disabled() {
+        // GIVEN
+        PROFILER.configure(false, 1);
+
+        // WHEN
+        PROFILER.finish(PROFILER.start(), "return 1", context("test", null));
+
+        // THEN
+        assertThat(PROFILER.getEntries(null)).isEmpty();
+    }
+
+    @Test
+    public void test110HotSpots() throws InterruptedException {
+        // GIVEN
+        PROFILER.configure(true, 1);
+
+        // WHEN
+        for (int i = 0; i < 3; i++) {
+            PROFILER.finish(PROFILER.start(), "return 'fast'", context("fast script", null));
+        }
+        ScriptEvaluationProfiler.Sample sample = PROFILER.start();
+        Thread.sleep(20);
+        PROFILER.finish(sample, "return 'slow'", context("slow script", null));
+
+        // THEN
+        List<ScriptEvaluationProfiler.Entry> entries = PROFILER.getEntries(null);
+        assertThat(entries).hasSize(2);
+        ScriptEvaluationProfiler.Entry slow = entries.get(0);
+        assertThat(slow.getContextDescription()).isEqualTo("slow script");
+        assertThat(slow.getCount()).isEqualTo(1);
+        assertThat(slow.getTotalNanos()).isGreaterThanOrEqualTo(20_000_000L);
+        assertThat(slow.getPercentileNanos(0.99)).isLessThanOrEqualTo(slow.getMaxNanos());
+        assertThat(entries.get(1).getCount()).isEqualTo(3);
+
+        String csv = PROFILER.exportCsv(null);
+        assertThat(csv.split("\n")).hasSize(3);
+    }
+
+    @Test
+    public void test120Sampling() {
+        // GIVEN
+        PROFILER.configure(true, 5);
+
+        // WHEN
+        for (int i = 0; i < 20; i++) {
+            PROFILER.finish(PROFILER.start(), "return 1", context("sampled script", null));
+        }
+
+        // THEN
+        List<ScriptEvaluationProfiler.Entry> entries = PROFILER.getEntries(null);
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void test130WorkerTasksAreRecordedUnderRootTask() {
+        // GIVEN
+        PROFILER.configure(true, 1);
+        Task worker1 = createWorkerTask(ROOT_TASK_OID);
+        Task worker2 = createWorkerTask(ROOT_TASK_OID);
+
+        // WHEN
+        PROFILER.finish(PROFILER.start(), "return 1", context("worker script", worker1));
+        PROFILER.finish(PROFILER.start(), "return 1", context("worker script", worker2));
+
+        // THEN
+        List<ScriptEvaluationProfiler.Entry> entries = PROFILER.getEntries(ROOT_TASK_OID);
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getCount()).isEqualTo(2);
+        assertThat(PROFILER.getEntries(null).get(0).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void test140ScriptsAreIdentifiedByOrigin() {
+        // GIVEN
+        PROFILER.configure(true, 1);
+        ObjectTemplateType template = new ObjectTemplateType();
+        template.setOid(TEMPLATE_OID);
+        ObjectTemplateMappingType mapping1 = new ObjectTemplateMappingType();
+        mapping1.setId(1L);
+        template.getMapping().add(mapping1);
+        ObjectTemplateMappingType mapping2 = new ObjectTemplateMappingType();
+        mapping2.setId(2L);
+        template.getMapping().add(mapping2);
+
+        // WHEN
+        PROFILER.finish(PROFILER.start(), "return 1", context("mapping 1", null, template, mapping1));
+        PROFILER.finish(PROFILER.start(), "return 1", context("mapping 1", null, template, mapping1));
+        PROFILER.finish(PROFILER.start(), "return 1", context("mapping 2", null, template, mapping2));
+        PROFILER.finish(PROFILER.start(), "return 1", context("unknown origin", null));
+
+        // THEN
+        List<ScriptEvaluationProfiler.Entry> entries = PROFILER.getEntries(null);
+        displayValue("entries", entries);
+        assertThat(entries).hasSize(3);
+        assertThat(entries)
+                .filteredOn(e -> "mapping 1".equals(e.getContextDescription()))
+                .singleElement()
+                .satisfies(e -> {
+                    assertThat(e.getObjectOid()).isEqualTo(TEMPLATE_OID);
+                    assertThat(e.getPath()).isEqualTo(String.valueOf(mapping1.asPrismContainerValue().getPath()));
+                    assertThat(e.getCount()).isEqualTo(2);
+                });
+        assertThat(entries)
+                .filteredOn(e -> "mapping 2".equals(e.getContextDescription()))
+                .singleElement()
+                .satisfies(e -> assertThat(e.getPath())
+                        .isEqualTo(String.valueOf(mapping2.asPrismContainerValue().getPath())));
+        assertThat(entries)
+                .filteredOn(e -> "unknown origin".equals(e.getContextDescription()))
+                .singleElement()
+                .satisfies(e -> {
+                    assertThat(e.getObjectOid()).isNull();
+                    assertThat(e.getPath()).isNull();
+                });
+        assertThat(PROFILER.exportCsv(null)).contains(TEMPLATE_OID);
+    }
+
+    @Test
+    public void test150FinishedTasksArePruned() {
+        // GIVEN
+        PROFILER.configure(true, 1);
+        String runningTaskOid = "running-task";
+        PROFILER.finish(PROFILER.start(), "return 1", context("running", createWorkerTask(runningTaskOid)));
+
+        // WHEN
+        int finished = ScriptEvaluationProfiler.MAX_FINISHED_TASKS + 20;
+        for (int i = 0; i < finished; i++) {
+            String oid = "finished-task-" + i;
+            PROFILER.finish(PROFILER.start(), "return 1", context("finished", createWorkerTask(oid)));
+            PROFILER.taskFinished(oid);
+        }
+
+        // THEN
+        assertThat(PROFILER.getTasksCount())
+                .as("tasks with data kept")
+                .isEqualTo(ScriptEvaluationProfiler.MAX_FINISHED_TASKS + 1);
+        assertThat(PROFILER.getEntries(runningTaskOid)).as("entries of running task").hasSize(1);
+        assertThat(PROFILER.getEntries("finished-task-0")).as("entries of the oldest finished task").isEmpty();
+        assertThat(PROFILER.getEntries("finished-task-" + (finished - 1)))
+                .as("entries of the most recently finished task")
+                .hasSize(1);
+    }
+
+    @Test
+    public void test160TaskRunningAgainIsNotPruned() {
+        // GIVEN
+        PROFILER.configure(true, 1);
+        String recurringTaskOid = "recurring-task";
+        PROFILER.finish(PROFILER.start(), "return 1", context("recurring", createWorkerTask(recurringTaskOid)));
+        PROFILER.taskFinished(recurringTaskOid);
+
+        // WHEN
+        PROFILER.finish(PROFILER.start(), "return 1", context("recurring", createWorkerTask(recurringTaskOid)));
+        for (int i = 0; i < ScriptEvaluationProfiler.MAX_FINISHED_TASKS + 1; i++) {
+            String oid = "finished-task-" + i;
+            PROFILER.finish(PROFILER.start(), "return 1", context("finished", createWorkerTask(oid)));
+            PROFILER.taskFinished(oid);
+        }
+
+        // THEN
+        assertThat(PROFILER.getEntries(recurringTaskOid)).as("entries of the recurring task").hasSize(1);
+        assertThat(PROFILER.getEntries(recurringTaskOid).get(0).getCount()).isEqualTo(2);
+    }
+
+    private ScriptExpressionEvaluationContext context(String contextDescription, Task task) {
+        return context(contextDescription, task, null, null);
+    }
+
+    private ScriptExpressionEvaluationContext context(
+            String contextDescription, Task task, ObjectType originObject, Containerable originBean) {
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setContextDescription(contextDescription);
+        context.setTask(task);
+        context.setOrigin(originObject, originBean);
+        return context;
+    }
+
+    /** Lightweight worker task: it has no OID of its own. */
+    private Task createWorkerTask(String rootTaskOid) {
+        return (Task) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { RunningTask.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRootTaskOid":
+                            return rootTaskOid;
+                        case "getOid":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
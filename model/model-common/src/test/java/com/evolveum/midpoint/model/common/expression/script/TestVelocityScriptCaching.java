@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.List;
+import javax.xml.namespace.QName;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.common.LocalizationTestUtil;
+import com.evolveum.midpoint.model.common.expression.script.velocity.VelocityScriptEvaluator;
+import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.crypto.KeyStoreBasedProtectorBuilder;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
+
+/**
+ * Tests caching of parsed templates in {@link VelocityScriptEvaluator}: templates are parsed once per expression profile,
+ * and the results are converted to the output type in the same way as before the caching was introduced.
+ */
+public class TestVelocityScriptCaching extends AbstractUnitTest {
+
+    private static final QName PROPERTY_NAME = new QName(MidPointConstants.NS_MIDPOINT_TEST_PREFIX, "whatever");
+
+    private static final String TEMPLATE_HELLO = "Hello $name";
+    private static final String TEMPLATE_BYE = "Bye $name";
+
+    private VelocityScriptEvaluator evaluator;
+
+    @BeforeClass
+    public void setup() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+        PrismContext prismContext = PrismContext.get();
+        evaluator = new VelocityScriptEvaluator(
+                prismContext, KeyStoreBasedProtectorBuilder.create(prismContext).buildOnly(),
+                LocalizationTestUtil.getLocalizationService());
+    }
+
+    @Test
+    public void test100CompiledOncePerProfile() throws Exception {
+        given("empty cache");
+        evaluator.getScriptCache().clear();
+        ExpressionProfile profileA = new ExpressionProfile("a");
+        ExpressionProfile profileB = new ExpressionProfile("b");
+        long compilesBefore = getCompileCount();
+        long executionsBefore = getExecutionCount();
+
+        when("the same template is evaluated repeatedly without a profile");
+        assertThat(evaluateToString(TEMPLATE_HELLO, null, "world")).isEqualTo("Hello world");
+        assertThat(evaluateToString(TEMPLATE_HELLO, null, "Jack")).isEqualTo("Hello Jack");
+
+        then("it is parsed once, and executed each time");
+        assertThat(getCompileCount() - compilesBefore).as("compilations").isEqualTo(1);
+        assertThat(getExecutionCount() - executionsBefore).as("executions").isEqualTo(2);
+
+        when("it is evaluated under two expression profiles");
+        assertThat(evaluateToString(TEMPLATE_HELLO, profileA, "a")).isEqualTo("Hello a");
+        assertThat(evaluateToString(TEMPLATE_HELLO, profileA, "a2")).isEqualTo("Hello a2");
+        assertThat(evaluateToString(TEMPLATE_HELLO, profileB, "b")).isEqualTo("Hello b");
+
+        then("it is parsed once for each profile");
+        assertThat(getCompileCount() - compilesBefore).as("compilations").isEqualTo(3);
+
+        when("a different template is evaluated");
+        assertThat(evaluateToString(TEMPLATE_BYE, null, "world")).isEqualTo("Bye world");
+
+        then("it is parsed as well");
+        assertThat(getCompileCount() - compilesBefore).as("compilations").isEqualTo(4);
+        assertThat(evaluator.getScriptCache().size()).as("cache size").isEqualTo(4);
+    }
+
+    @Test
+    public void test110InvalidTemplateIsNotCached() {
+        given("empty cache");
+        evaluator.getScriptCache().clear();
+        long compilesBefore = getCompileCount();
+
+        expect("invalid template is reported each time it is evaluated");
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> evaluateToString("#if(", null, "world"))
+                    .isInstanceOf(ExpressionEvaluationException.class);
+        }
+        assertThat(getCompileCount() - compilesBefore).as("compilations").isEqualTo(2);
+        assertThat(evaluator.getScriptCache().size()).as("cache size").isZero();
+    }
+
+    @Test
+    public void test200NoOutputDefinition() throws Exception {
+        expect("no values for void (no output definition)");
+        assertThat(evaluate(TEMPLATE_HELLO, null, "world", null)).isEmpty();
+    }
+
+    @Test
+    public void test210AnyTypeOutput() throws Exception {
+        when("template is evaluated with `xsd:anyType` output");
+        List<PrismValue> values = evaluate(
+                TEMPLATE_HELLO, null, "world",
+                PrismContext.get().definitionFactory().createPropertyDefinition(PROPERTY_NAME, DOMUtil.XSD_ANYTYPE));
+
+        then("the output is the merged template as a string");
+        assertThat(values).hasSize(1);
+        assertThat(((PrismPropertyValue<?>) values.get(0)).getValue()).isEqualTo("Hello world");
+    }
+
+    @Test
+    public void test220ContainerOutput() {
+        given("container output definition without compile-time class");
+        ItemDefinition<?> containerDefinition = PrismContext.get().definitionFactory().createContainerDefinition(
+                PROPERTY_NAME,
+                PrismContext.get().definitionFactory().createComplexTypeDefinition(
+                        new QName(MidPointConstants.NS_MIDPOINT_TEST_PREFIX, "WhateverType")));
+
+        expect("the string output cannot be converted to a container value");
+        assertThatThrownBy(() -> evaluate(TEMPLATE_HELLO, null, "world", containerDefinition))
+                .isInstanceOf(ExpressionEvaluationException.class);
+    }
+
+    private String evaluateToString(String code, ExpressionProfile profile, String name) throws Exception {
+        List<PrismValue> values = evaluate(
+                code, profile, name,
+                PrismContext.get().definitionFactory().createPropertyDefinition(PROPERTY_NAME, DOMUtil.XSD_STRING));
+        assertThat(values).hasSize(1);
+        return (String) ((PrismPropertyValue<?>) values.get(0)).getValue();
+    }
+
+    private List<PrismValue> evaluate(
+            String code, ExpressionProfile profile, String name, ItemDefinition<?> outputDefinition) throws Exception {
+        ScriptExpressionEvaluatorType scriptBean = new ScriptExpressionEvaluatorType();
+        scriptBean.setCode(code);
+
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setExpressionType(scriptBean);
+        context.setExpressionProfile(profile);
+        context.setOutputDefinition(outputDefinition);
+        context.setVariables(
+                VariablesMap.create(PrismContext.get(), "name", name, PrimitiveType.STRING));
+        context.setContextDescription("velocity template " + code);
+        context.setResult(new OperationResult("evaluate"));
+
+        return evaluator.evaluate(context);
+    }
+
+    private long getCompileCount() {
+        return InternalMonitor.getCount(InternalCounters.SCRIPT_COMPILE_COUNT);
+    }
+
+    private long getExecutionCount() {
+        return InternalMonitor.getCount(InternalCounters.SCRIPT_EXECUTION_COUNT);
+    }
+}
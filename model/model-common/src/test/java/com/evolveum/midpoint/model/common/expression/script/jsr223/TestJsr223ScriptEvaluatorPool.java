@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script.jsr223;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.script.*;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.common.LocalizationTestUtil;
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEvaluationContext;
+import com.evolveum.midpoint.prism.PrimitiveType;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.crypto.KeyStoreBasedProtectorBuilder;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
+
+/**
+ * Tests {@link Jsr223ScriptEvaluator} with an engine that is not thread-safe: concurrent evaluations must not share
+ * an engine instance, and the pool of engine instances must stay bounded.
+ */
+public class TestJsr223ScriptEvaluatorPool extends AbstractUnitTest {
+
+    private static final String ENGINE_NAME = "non-thread-safe";
+
+    /** The script returns the value of the variable named by its code. */
+    private static final String SCRIPT_CODE = "value";
+
+    private static final int THREADS = 8;
+    private static final int EVALUATIONS_PER_THREAD = 50;
+
+    private NonThreadSafeEngineFactory engineFactory;
+    private Jsr223ScriptEvaluator evaluator;
+
+    @BeforeClass
+    public void setup() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+        PrismContext prismContext = PrismContext.get();
+        engineFactory = new NonThreadSafeEngineFactory();
+        evaluator = new Jsr223ScriptEvaluator(
+                ENGINE_NAME, engineFactory.getScriptEngine(), prismContext,
+                KeyStoreBasedProtectorBuilder.create(prismContext).buildOnly(),
+                LocalizationTestUtil.getLocalizationService());
+    }
+
+    @Test
+    public void test100ConcurrentEvaluation() throws Exception {
+        given("threads evaluating the same script, each with its own variable value");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String threadValue = "thread-" + t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<String> values = new ArrayList<>();
+                for (int i = 0; i < EVALUATIONS_PER_THREAD; i++) {
+                    values.add(evaluate(threadValue + "-" + i));
+                }
+                return values;
+            }));
+        }
+
+        when("the scripts are evaluated concurrently");
+        start.countDown();
+        executor.shutdown();
+
+        then("each evaluation returns its own variable value, with no engine used concurrently");
+        for (int t = 0; t < THREADS; t++) {
+            List<String> values = futures.get(t).get(1, TimeUnit.MINUTES);
+            for (int i = 0; i < EVALUATIONS_PER_THREAD; i++) {
+                assertThat(values.get(i)).isEqualTo("thread-" + t + "-" + i);
+            }
+        }
+
+        and("the number of engine instances is bounded by the number of concurrent evaluations");
+        displayValue("Engines created", engineFactory.enginesCreated.get());
+        displayValue("Idle engines", evaluator.getIdleEnginesCount());
+        assertThat(engineFactory.enginesCreated.get())
+                .as("engines created (including the main one)")
+                .isLessThanOrEqualTo(THREADS + 1);
+        assertThat(evaluator.getIdleEnginesCount())
+                .as("idle engines")
+                .isBetween(1, THREADS);
+    }
+
+    @Test
+    public void test110NoPrecompilation() {
+        expect("scripts are not precompiled, as they would end up in an arbitrary pooled engine");
+        assertThat(evaluator.supportsPrecompilation()).as("precompilation supported").isFalse();
+    }
+
+    private String evaluate(String value) throws Exception {
+        ScriptExpressionEvaluatorType scriptBean = new ScriptExpressionEvaluatorType();
+        scriptBean.setCode(SCRIPT_CODE);
+
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setExpressionType(scriptBean);
+        context.setVariables(
+                VariablesMap.create(PrismContext.get(), "value", value, PrimitiveType.STRING));
+        context.setContextDescription("concurrent evaluation of " + value);
+        context.setResult(new OperationResult("evaluate"));
+
+        List<PrismPropertyValue<String>> result = evaluator.evaluate(context);
+        assertThat(result).hasSize(1);
+        return result.get(0).getValue();
+    }
+
+    /** Factory for {@link NonThreadSafeEngine}. It does not declare the `THREADING` parameter. */
+    private static class NonThreadSafeEngineFactory implements ScriptEngineFactory {
+
+        private final AtomicInteger enginesCreated = new AtomicInteger();
+
+        @Override
+        public String getEngineName() {
+            return ENGINE_NAME;
+        }
+
+        @Override
+        public String getEngineVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public List<String> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public List<String> getMimeTypes() {
+            return List.of();
+        }
+
+        @Override
+        public List<String> getNames() {
+            return List.of(ENGINE_NAME);
+        }
+
+        @Override
+        public String getLanguageName() {
+            return ENGINE_NAME;
+        }
+
+        @Override
+        public String getLanguageVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public Object getParameter(String key) {
+            return null;
+        }
+
+        @Override
+        public String getMethodCallSyntax(String obj, String m, String... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getOutputStatement(String toDisplay) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getProgram(String... statements) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScriptEngine getScriptEngine() {
+            enginesCreated.incrementAndGet();
+            return new NonThreadSafeEngine(this);
+        }
+    }
+
+    /** Engine whose compiled scripts fail if the engine instance is used by more threads at once. */
+    private static class NonThreadSafeEngine extends AbstractScriptEngine implements Compilable {
+
+        private final NonThreadSafeEngineFactory factory;
+        private final AtomicBoolean inUse = new AtomicBoolean();
+
+        private NonThreadSafeEngine(NonThreadSafeEngineFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public CompiledScript compile(String script) {
+            return new CompiledScript() {
+                @Override
+                public Object eval(ScriptContext context) throws ScriptException {
+                    if (!inUse.compareAndSet(false, true)) {
+                        throw new IllegalStateException("Engine instance used concurrently");
+                    }
+                    try {
+                        Thread.sleep(1);
+                        return context.getAttribute(script);
+                    } catch (InterruptedException e) {
+                        throw new ScriptException(e);
+                    } finally {
+                        inUse.set(false);
+                    }
+                }
+
+                @Override
+                public ScriptEngine getEngine() {
+                    return NonThreadSafeEngine.this;
+                }
+            };
+        }
+
+        @Override
+        public CompiledScript compile(Reader script) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object eval(String script, ScriptContext context) throws ScriptException {
+            return compile(script).eval(context);
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+    }
+}
@@ -38,6 +38,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
 import com.evolveum.midpoint.test.IntegrationTestTools;
 import com.evolveum.midpoint.test.util.MidPointTestConstants;
+import com.evolveum.midpoint.test.util.TestUtil;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
@@ -904,6 +905,65 @@ public class TestMappingDynamicSimple extends AbstractModelCommonTest {
         assertNull("Unexpected value in outputTriple", outputTriple);
     }
 
+    /**
+     * The condition pre-check (`conditionSource`) must not be run for the tuple of null inputs,
+     * as such a tuple is skipped anyway if `includeNullInputs` is false.
+     */
+    @Test
+    public void testConditionSourceNoValue() throws Exception {
+        // GIVEN
+        PrismObject<UserType> user = evaluator.getUserOld();
+        user.asObjectable().getSubtype().clear();
+        ObjectDelta<UserType> delta = DeltaFactory.Object.createAddDelta(user);
+
+        String shortTestName = getTestNameShort();
+        MappingImpl<PrismPropertyValue<PolyString>, PrismPropertyDefinition<PolyString>> mapping = evaluator.createMapping(
+                "mapping-condition-source-null-inputs.xml",
+                shortTestName, "title", delta);
+
+        OperationResult opResult = createOperationResult();
+
+        // WHEN
+        mapping.evaluate(createTask(), opResult);
+
+        // THEN
+        opResult.computeStatus();
+        TestUtil.assertSuccess(opResult);
+        PrismValueDeltaSetTriple<PrismPropertyValue<PolyString>> outputTriple = mapping.getOutputTriple();
+        if (outputTriple != null) {
+            PrismAsserts.assertTripleNoZero(outputTriple);
+            PrismAsserts.assertTripleNoPlus(outputTriple);
+            PrismAsserts.assertTripleNoMinus(outputTriple);
+        }
+    }
+
+    @Test
+    public void testConditionSourceCaptain() throws Exception {
+        // GIVEN
+        PrismObject<UserType> user = evaluator.getUserOld();
+        user.asObjectable().getSubtype().clear();
+        user.asObjectable().getSubtype().add("CAPTAIN");
+        user.asObjectable().getSubtype().add("PIRATE");
+        ObjectDelta<UserType> delta = DeltaFactory.Object.createAddDelta(user);
+
+        String shortTestName = getTestNameShort();
+        MappingImpl<PrismPropertyValue<PolyString>, PrismPropertyDefinition<PolyString>> mapping = evaluator.createMapping(
+                "mapping-condition-source-null-inputs.xml",
+                shortTestName, "title", delta);
+
+        OperationResult opResult = createOperationResult();
+
+        // WHEN
+        mapping.evaluate(createTask(), opResult);
+
+        // THEN
+        PrismValueDeltaSetTriple<PrismPropertyValue<PolyString>> outputTriple = mapping.getOutputTriple();
+        outputTriple.checkConsistence();
+        PrismAsserts.assertTripleNoZero(outputTriple);
+        PrismAsserts.assertTriplePlus(outputTriple, PrismTestUtil.createPolyString("The CAPTAIN"));
+        PrismAsserts.assertTripleNoMinus(outputTriple);
+    }
+
     @Test
     public void testScriptTransformMultiAddDelete() throws Exception {
         // GIVEN
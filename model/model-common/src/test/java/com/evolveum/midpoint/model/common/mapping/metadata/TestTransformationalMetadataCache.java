@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.mapping.metadata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests sharing of computed value metadata in {@link TransformationalMetadataCache}.
+ */
+public class TestTransformationalMetadataCache extends AbstractUnitTest {
+
+    private static final String RESOURCE_HR_OID = "3a7e1c52-4b6d-4f0e-8c9a-1d2e3f4a5b01";
+    private static final String RESOURCE_LDAP_OID = "3a7e1c52-4b6d-4f0e-8c9a-1d2e3f4a5b02";
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+    }
+
+    @Test
+    public void test100EqualInputMetadataShareTheResult() throws CommonException {
+        given("cache and two values with equal (but not identical) metadata");
+        TransformationalMetadataCache cache = new TransformationalMetadataCache();
+        AtomicInteger computations = new AtomicInteger();
+        List<PrismValue> tuple1 = List.of(createValue("jack", RESOURCE_HR_OID));
+        List<PrismValue> tuple2 = List.of(createValue("Jack Sparrow", RESOURCE_HR_OID));
+
+        when("metadata are obtained for both");
+        ValueMetadataType result1 = cache.getOrCompute(tuple1, () -> compute(tuple1, computations));
+        ValueMetadataType result2 = cache.getOrCompute(tuple2, () -> compute(tuple2, computations));
+
+        then("they are computed once, and the same immutable instance is returned");
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(result2).isSameAs(result1);
+        assertThat(result1.asPrismContainerValue().isImmutable()).isTrue();
+        assertThat(cache.size()).isEqualTo(1);
+
+        then("input values are neither copied nor frozen");
+        assertThat(tuple1.get(0).getValueMetadata().getValues().get(0).isImmutable()).isFalse();
+        assertThat(tuple2.get(0).getValueMetadata().getValues().get(0).isImmutable()).isFalse();
+    }
+
+    @Test
+    public void test110DifferentInputMetadataAreComputedSeparately() throws CommonException {
+        given("cache and two values with different metadata");
+        TransformationalMetadataCache cache = new TransformationalMetadataCache();
+        AtomicInteger computations = new AtomicInteger();
+        List<PrismValue> tuple1 = List.of(createValue("jack", RESOURCE_HR_OID));
+        List<PrismValue> tuple2 = List.of(createValue("jack", RESOURCE_LDAP_OID));
+
+        when("metadata are obtained for both");
+        ValueMetadataType result1 = cache.getOrCompute(tuple1, () -> compute(tuple1, computations));
+        ValueMetadataType result2 = cache.getOrCompute(tuple2, () -> compute(tuple2, computations));
+
+        then("they are computed for each of them");
+        assertThat(computations.get()).isEqualTo(2);
+        assertThat(result2).isNotSameAs(result1);
+        assertThat(result2.getProvenance().getAcquisition().get(0).getResourceRef().getOid())
+                .isEqualTo(RESOURCE_LDAP_OID);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void test120ModifiedInputDoesNotChangeStoredKey() throws CommonException {
+        given("cache with metadata computed for a value");
+        TransformationalMetadataCache cache = new TransformationalMetadataCache();
+        AtomicInteger computations = new AtomicInteger();
+        PrismValue value = createValue("jack", RESOURCE_HR_OID);
+        List<PrismValue> tuple = List.of(value);
+        cache.getOrCompute(tuple, () -> compute(tuple, computations));
+
+        when("the metadata of the value are changed and the metadata are obtained again");
+        value.setValueMetadata(createMetadata(RESOURCE_LDAP_OID));
+        ValueMetadataType result = cache.getOrCompute(tuple, () -> compute(tuple, computations));
+
+        then("they are recomputed");
+        assertThat(computations.get()).isEqualTo(2);
+        assertThat(result.getProvenance().getAcquisition().get(0).getResourceRef().getOid())
+                .isEqualTo(RESOURCE_LDAP_OID);
+
+        when("metadata are obtained for a value with the original metadata");
+        List<PrismValue> originalTuple = List.of(createValue("jack", RESOURCE_HR_OID));
+        ValueMetadataType originalResult = cache.getOrCompute(originalTuple, () -> compute(originalTuple, computations));
+
+        then("the original entry is used");
+        assertThat(computations.get()).isEqualTo(2);
+        assertThat(originalResult.getProvenance().getAcquisition().get(0).getResourceRef().getOid())
+                .isEqualTo(RESOURCE_HR_OID);
+    }
+
+    @Test
+    public void test130NullAndMetadataLessValues() throws CommonException {
+        given("cache and tuples with null and metadata-less values");
+        TransformationalMetadataCache cache = new TransformationalMetadataCache();
+        AtomicInteger computations = new AtomicInteger();
+        List<PrismValue> withNull = new ArrayList<>();
+        withNull.add(null);
+        List<PrismValue> withoutMetadata = List.of(PrismContext.get().itemFactory().createPropertyValue("jack"));
+
+        when("metadata are obtained for them twice");
+        cache.getOrCompute(withNull, () -> compute(withNull, computations));
+        cache.getOrCompute(withoutMetadata, () -> compute(withoutMetadata, computations));
+        cache.getOrCompute(withNull, () -> compute(withNull, computations));
+        cache.getOrCompute(withoutMetadata, () -> compute(withoutMetadata, computations));
+
+        then("null value and value without metadata are distinguished, and each is computed once");
+        assertThat(computations.get()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    /** Simplified provenance computation: the acquisitions of all inputs are merged. */
+    private ValueMetadataType compute(List<PrismValue> inputValues, AtomicInteger computations) {
+        computations.incrementAndGet();
+        ProvenanceMetadataType provenance = new ProvenanceMetadataType();
+        for (PrismValue inputValue : inputValues) {
+            if (inputValue != null && inputValue.hasValueMetadata()) {
+                ValueMetadataType metadata = inputValue.<ValueMetadataType>getValueMetadataAsContainer().getRealValue();
+                for (ProvenanceAcquisitionType acquisition : metadata.getProvenance().getAcquisition()) {
+                    provenance.getAcquisition().add(acquisition.clone());
+                }
+            }
+        }
+        return new ValueMetadataType().provenance(provenance);
+    }
+
+    private PrismValue createValue(String realValue, String resourceOid) throws SchemaException {
+        PrismValue value = PrismContext.get().itemFactory().createPropertyValue(realValue);
+        value.setValueMetadata(createMetadata(resourceOid));
+        return value;
+    }
+
+    private ValueMetadataType createMetadata(String resourceOid) {
+        return new ValueMetadataType()
+                .provenance(new ProvenanceMetadataType()
+                        .acquisition(new ProvenanceAcquisitionType()
+                                .resourceRef(resourceOid, ResourceType.COMPLEX_TYPE)));
+    }
+}
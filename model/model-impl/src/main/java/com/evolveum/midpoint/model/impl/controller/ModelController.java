@@ -36,6 +36,7 @@ import com.evolveum.midpoint.model.api.*;
 import com.evolveum.midpoint.model.api.authentication.GuiProfiledPrincipalManager;
 import com.evolveum.midpoint.model.api.hooks.HookRegistry;
 import com.evolveum.midpoint.model.api.hooks.ReadHook;
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionFactory;
 import com.evolveum.midpoint.model.common.util.AuditHelper;
 import com.evolveum.midpoint.model.impl.ModelObjectResolver;
 import com.evolveum.midpoint.model.impl.importer.ObjectImporter;
@@ -138,6 +139,7 @@ public class ModelController implements ModelService, TaskService, CaseService,
     @Autowired private TaskManager taskManager;
     @Autowired private TaskActivityManager activityManager;
     @Autowired private ScriptingExpressionEvaluator scriptingExpressionEvaluator;
+    @Autowired private ScriptExpressionFactory scriptExpressionFactory;
     @Autowired private AuditHelper auditHelper;
     @Autowired private SecurityEnforcer securityEnforcer;
     @Autowired private SecurityContextManager securityContextManager;
@@ -1490,6 +1492,8 @@ public class ModelController implements ModelService, TaskService, CaseService,
 
             provisioning.postInit(result);
 
+            scriptExpressionFactory.precompileScripts(result);
+
         } catch (SchemaException e) {
             result.recordFatalError(e);
             throw new SystemException(e.getMessage(), e);
@@ -24,6 +24,8 @@ import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
 import com.evolveum.midpoint.init.SystemUtil;
 import com.evolveum.midpoint.model.api.DataModelVisualizer;
 import com.evolveum.midpoint.model.api.ModelDiagnosticService;
+import com.evolveum.midpoint.model.common.expression.script.ScriptEvaluationProfiler;
+import com.evolveum.midpoint.model.impl.lens.ProjectorComponentTimings;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismObjectDefinition;
@@ -90,6 +92,7 @@ public class ModelDiagController implements ModelDiagnosticService {
     @Autowired private MappingDiagEvaluator mappingDiagEvaluator;
     @Autowired private MidpointConfiguration midpointConfiguration;
     @Autowired private SystemObjectCache systemObjectCache;
+    @Autowired private ProjectorComponentTimings projectorComponentTimings;
 
     private final RandomString randomString;
 
@@ -707,6 +710,53 @@ public class ModelDiagController implements ModelDiagnosticService {
         }
     }
 
+    @Override
+    public String getProjectorComponentTimings(String taskOid, boolean reset, Task task, OperationResult parentResult)
+            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+            ConfigurationException, ExpressionEvaluationException {
+        OperationResult result = parentResult.createSubresult(GET_PROJECTOR_COMPONENT_TIMINGS);
+        try {
+            securityEnforcer.authorize(AuthorizationConstants.AUTZ_ALL_URL, null, AuthorizationParameters.EMPTY, null, task, result);
+            String dump = projectorComponentTimings.dump(taskOid, 0);
+            if (reset) {
+                projectorComponentTimings.reset();
+            }
+            result.recordSuccess();
+            return dump;
+        } catch (Throwable t) {
+            result.recordFatalError(t.getMessage(), t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public String getScriptEvaluationStatistics(String taskOid, boolean reset, Task task, OperationResult parentResult)
+            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+            ConfigurationException, ExpressionEvaluationException {
+        OperationResult result = parentResult.createSubresult(GET_SCRIPT_EVALUATION_STATISTICS);
+        try {
+            securityEnforcer.authorize(AuthorizationConstants.AUTZ_ALL_URL, null, AuthorizationParameters.EMPTY, null, task, result);
+            ScriptEvaluationProfiler profiler = ScriptEvaluationProfiler.INSTANCE;
+            String csv = profiler.exportCsv(taskOid);
+            if (reset) {
+                if (taskOid != null) {
+                    profiler.reset(taskOid);
+                } else {
+                    profiler.reset();
+                }
+            }
+            result.recordSuccess();
+            return csv;
+        } catch (Throwable t) {
+            result.recordFatalError(t.getMessage(), t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
     private StringSubstitutor createCommandStringSubstitutor(String pid) {
         Map<String, String> variableMap = new HashMap<>();
         variableMap.put("pid", pid);
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.expr;
+
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.SchemaService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableRowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Node-local, read-only dictionaries (key -> row) built from lookup tables. Used by expressions that translate codes
+ * via lookup tables, see {@link MidpointFunctionsImpl#lookupTableValue(String, String)}.
+ *
+ * The rows of a table are loaded once (on the first lookup) into a hash map; subsequent lookups are O(1) without touching
+ * the repository. Any change of the lookup table (as reported via {@link CacheRegistry}) discards its dictionary;
+ * it is then re-created, with the current version of the table, on the next lookup.
+ *
+ * Lookup tables are not invalidated clusterwide, so a change made on another node is not reported here. Therefore,
+ * the version of the table is checked in the repository if the dictionary was not checked for {@link #VERSION_CHECK_INTERVAL}
+ * milliseconds (like {@link com.evolveum.midpoint.repo.common.SystemObjectCache} does for the system configuration).
+ *
+ * At most {@link #MAX_DICTIONARIES} dictionaries are kept; the least recently used one is discarded if needed.
+ */
+@Component
+public class LookupTableDictionaryCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(LookupTableDictionaryCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(LookupTableDictionaryCache.class.getName() + ".content");
+
+    private static final String OP_LOAD = LookupTableDictionaryCache.class.getName() + ".load";
+
+    /** How long (in milliseconds) is a dictionary used without checking the version of its table. */
+    private static final long VERSION_CHECK_INTERVAL = 1000;
+
+    private static final int MAX_DICTIONARIES = 100;
+
+    @Autowired
+    @Qualifier("cacheRepositoryService")
+    private RepositoryService repositoryService;
+
+    @Autowired private SchemaService schemaService;
+    @Autowired private CacheRegistry cacheRegistry;
+
+    /**
+     * Dictionaries indexed by lookup table OID. A dictionary being loaded is represented by an incomplete future,
+     * so concurrent lookups wait for the single load instead of loading the table themselves.
+     *
+     * The future is put into the map before the table is read from the repository. An invalidation removes it,
+     * so a dictionary that is (possibly) out of date is never kept.
+     */
+    @NotNull private final Map<String, CompletableFuture<Dictionary>> dictionaries = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each invalidation. If it changes while a dictionary is being loaded, the dictionary is not kept,
+     * even if its removal by the invalidation itself was missed.
+     */
+    @NotNull private final AtomicLong invalidationCounter = new AtomicLong();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /** Returns the row with the given key, or null if there's none. */
+    public @Nullable Row getRow(@NotNull String lookupTableOid, @NotNull String key, @NotNull OperationResult result)
+            throws ObjectNotFoundException, SchemaException {
+        return getDictionary(lookupTableOid, result).rows.get(key);
+    }
+
+    private @NotNull Dictionary getDictionary(@NotNull String oid, @NotNull OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException {
+        CompletableFuture<Dictionary> cached = dictionaries.get(oid);
+        if (cached != null) {
+            Dictionary dictionary = join(cached);
+            if (isUpToDate(oid, dictionary, parentResult)) {
+                CachePerformanceCollector.INSTANCE.registerHit(LookupTableDictionaryCache.class, LookupTableType.class, PER_CACHE);
+                dictionary.lastAccess = System.currentTimeMillis();
+                return dictionary;
+            }
+            LOGGER.debug("Lookup table {} was changed (cached version {}), discarding its dictionary", oid, dictionary.version);
+            dictionaries.remove(oid, cached);
+        }
+        CachePerformanceCollector.INSTANCE.registerMiss(LookupTableDictionaryCache.class, LookupTableType.class, PER_CACHE);
+        long invalidationsBefore = invalidationCounter.get();
+        evictIfFull();
+        CompletableFuture<Dictionary> loading = new CompletableFuture<>();
+        CompletableFuture<Dictionary> concurrent = dictionaries.putIfAbsent(oid, loading);
+        if (concurrent != null) {
+            LOGGER.trace("Lookup table {} is being loaded by another thread, waiting for it", oid);
+            return join(concurrent);
+        }
+        Dictionary loaded;
+        try {
+            loaded = load(oid, parentResult);
+        } catch (Throwable t) {
+            dictionaries.remove(oid, loading); // the next lookup will try again
+            loading.completeExceptionally(t);
+            throw t;
+        }
+        if (invalidationCounter.get() != invalidationsBefore && dictionaries.remove(oid, loading)) {
+            LOGGER.debug("Lookup table {} was (possibly) changed while being loaded, not caching its dictionary", oid);
+        }
+        loading.complete(loaded);
+        return loaded;
+    }
+
+    /** Checks the version of the table in the repository, unless that was done recently. */
+    private boolean isUpToDate(@NotNull String oid, @NotNull Dictionary dictionary, @NotNull OperationResult result)
+            throws SchemaException {
+        long now = System.currentTimeMillis();
+        if (now < dictionary.versionCheckTimestamp + getVersionCheckInterval()) {
+            return true;
+        }
+        String currentVersion;
+        try {
+            currentVersion = getTableVersion(oid, result);
+        } catch (ObjectNotFoundException e) {
+            result.muteLastSubresultError(); // the (re)load will report this
+            return false;
+        }
+        if (dictionary.version != null && dictionary.version.equals(currentVersion)) {
+            dictionary.versionCheckTimestamp = now;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /** Discards the least recently used loaded dictionary, if the cache is full. */
+    private void evictIfFull() {
+        if (dictionaries.size() < MAX_DICTIONARIES) {
+            return;
+        }
+        String oldestOid = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (Map.Entry<String, CompletableFuture<Dictionary>> entry : dictionaries.entrySet()) {
+            Dictionary dictionary = getIfLoaded(entry.getValue());
+            if (dictionary != null && dictionary.lastAccess < oldestAccess) {
+                oldestOid = entry.getKey();
+                oldestAccess = dictionary.lastAccess;
+            }
+        }
+        if (oldestOid != null) {
+            LOGGER.debug("Too many lookup table dictionaries ({}), discarding the least recently used one: {}",
+                    dictionaries.size(), oldestOid);
+            dictionaries.remove(oldestOid);
+        }
+    }
+
+    private static @NotNull Dictionary join(@NotNull CompletableFuture<Dictionary> future)
+            throws ObjectNotFoundException, SchemaException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ObjectNotFoundException) {
+                throw (ObjectNotFoundException) cause;
+            } else if (cause instanceof SchemaException) {
+                throw (SchemaException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new SystemException(cause);
+            }
+        }
+    }
+
+    private @NotNull Dictionary load(@NotNull String oid, @NotNull OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException {
+        OperationResult result = parentResult.subresult(OP_LOAD)
+                .setMinor()
+                .addParam("oid", oid)
+                .build();
+        try {
+            PrismObject<LookupTableType> table = getTable(oid, result);
+            List<LookupTableRowType> rowBeans = table.asObjectable().getRow();
+            Map<String, Row> rows = new HashMap<>((int) (rowBeans.size() / 0.75) + 1);
+            for (LookupTableRowType rowBean : rowBeans) {
+                if (rowBean.getKey() != null) {
+                    rows.put(rowBean.getKey(), new Row(rowBean.getValue(), PolyString.toPolyString(rowBean.getLabel())));
+                }
+            }
+            LOGGER.debug("Loaded dictionary for {} (version {}) with {} rows", table, table.getVersion(), rows.size());
+            return new Dictionary(table.getVersion(), rows);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.close();
+        }
+    }
+
+    @VisibleForTesting
+    @NotNull PrismObject<LookupTableType> getTable(@NotNull String oid, @NotNull OperationResult result)
+            throws ObjectNotFoundException, SchemaException {
+        return repositoryService.getObject(
+                LookupTableType.class,
+                oid,
+                schemaService.getOperationOptionsBuilder()
+                        .readOnly()
+                        .item(LookupTableType.F_ROW).retrieve()
+                        .build(),
+                result);
+    }
+
+    @VisibleForTesting
+    String getTableVersion(@NotNull String oid, @NotNull OperationResult result)
+            throws ObjectNotFoundException, SchemaException {
+        return repositoryService.getVersion(LookupTableType.class, oid, result);
+    }
+
+    @VisibleForTesting
+    long getVersionCheckInterval() {
+        return VERSION_CHECK_INTERVAL;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || type.isAssignableFrom(LookupTableType.class)) {
+            invalidationCounter.incrementAndGet();
+            if (oid != null) {
+                dictionaries.remove(oid);
+            } else {
+                dictionaries.clear();
+            }
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(
+                new SingleCacheStateInformationType()
+                        .name(LookupTableDictionaryCache.class.getName())
+                        .size(dictionaries.size())
+                        .secondarySize(getLoadedDictionaries().stream().mapToInt(d -> d.rows.size()).sum()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            dictionaries.forEach((oid, future) -> {
+                Dictionary dictionary = getIfLoaded(future);
+                if (dictionary != null) {
+                    LOGGER_CONTENT.info("Cached lookup table dictionary: {} (version {}): {} rows",
+                            oid, dictionary.version, dictionary.rows.size());
+                } else {
+                    LOGGER_CONTENT.info("Lookup table dictionary being loaded: {}", oid);
+                }
+            });
+        }
+    }
+
+    private @NotNull List<Dictionary> getLoadedDictionaries() {
+        List<Dictionary> loaded = new ArrayList<>();
+        for (CompletableFuture<Dictionary> future : dictionaries.values()) {
+            Dictionary dictionary = getIfLoaded(future);
+            if (dictionary != null) {
+                loaded.add(dictionary);
+            }
+        }
+        return loaded;
+    }
+
+    private static @Nullable Dictionary getIfLoaded(@NotNull CompletableFuture<Dictionary> future) {
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /** Immutable content of a lookup table, with the (mutable) information on its use. */
+    private static class Dictionary {
+
+        /** Version of the lookup table the dictionary was created from. */
+        private final String version;
+
+        @NotNull private final Map<String, Row> rows;
+
+        /** When was the version of the table last checked. */
+        private volatile long versionCheckTimestamp;
+
+        private volatile long lastAccess;
+
+        private Dictionary(String version, @NotNull Map<String, Row> rows) {
+            this.version = version;
+            this.rows = rows;
+            this.versionCheckTimestamp = System.currentTimeMillis();
+            this.lastAccess = versionCheckTimestamp;
+        }
+    }
+
+    /** Immutable lookup table row (without the key). */
+    public static class Row {
+
+        private final String value;
+        private final PolyString label;
+
+        private Row(String value, PolyString label) {
+            this.value = value;
+            this.label = label;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public PolyString getLabel() {
+            return label;
+        }
+    }
+}
@@ -145,6 +145,7 @@ public class MidpointFunctionsImpl implements MidpointFunctions {
     @Autowired private CorrelationServiceImpl correlationService;
     @Autowired private SystemObjectCache systemObjectCache;
     @Autowired private ContextLoader contextLoader;
+    @Autowired private LookupTableDictionaryCache lookupTableDictionaryCache;
 
     @Autowired
     @Qualifier("cacheRepositoryService")
@@ -2554,6 +2555,22 @@ public class MidpointFunctionsImpl implements MidpointFunctions {
         }
     }
 
+    @Override
+    public @Nullable String lookupTableValue(@NotNull String lookupTableOid, @NotNull String key)
+            throws ObjectNotFoundException, SchemaException {
+        LookupTableDictionaryCache.Row row = lookupTableDictionaryCache.getRow(
+                lookupTableOid, key, getCurrentResult(CLASS_DOT + "lookupTableValue"));
+        return row != null ? row.getValue() : null;
+    }
+
+    @Override
+    public @Nullable PolyString lookupTableLabel(@NotNull String lookupTableOid, @NotNull String key)
+            throws ObjectNotFoundException, SchemaException {
+        LookupTableDictionaryCache.Row row = lookupTableDictionaryCache.getRow(
+                lookupTableOid, key, getCurrentResult(CLASS_DOT + "lookupTableLabel"));
+        return row != null ? row.getLabel() : null;
+    }
+
     @Override
     public Collection<PrismValue> selectIdentityItemValues(
             @Nullable Collection<FocusIdentityType> identities,
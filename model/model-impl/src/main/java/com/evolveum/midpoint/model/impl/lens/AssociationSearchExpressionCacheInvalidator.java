@@ -8,23 +8,34 @@
 package com.evolveum.midpoint.model.impl.lens;
 
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AssociationSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.provisioning.api.ResourceObjectChangeListener;
 import com.evolveum.midpoint.provisioning.api.ResourceObjectShadowChangeDescription;
 import com.evolveum.midpoint.provisioning.api.ResourceOperationDescription;
 import com.evolveum.midpoint.provisioning.api.ResourceOperationListener;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * TODO
+ * Invalidates search expression evaluator caches on resource object changes and resource operations.
+ *
+ * Used for the thread-local {@link AssociationSearchExpressionEvaluatorCache} (registered while the thread is in the clockwork)
+ * as well as for the node-wide {@link GlobalSearchExpressionEvaluatorCache} (registered permanently).
  */
 class AssociationSearchExpressionCacheInvalidator implements ResourceOperationListener, ResourceObjectChangeListener {
 
-    private final AssociationSearchExpressionEvaluatorCache cache;
+    private final Target cache;
 
     AssociationSearchExpressionCacheInvalidator(AssociationSearchExpressionEvaluatorCache cache) {
-        this.cache = cache;
+        this.cache = cache::invalidate;
+    }
+
+    AssociationSearchExpressionCacheInvalidator(GlobalSearchExpressionEvaluatorCache cache) {
+        this.cache = cache::invalidate;
     }
 
     @Override
@@ -57,4 +68,10 @@ class AssociationSearchExpressionCacheInvalidator implements ResourceOperationLi
     public String getName() {
         return "AbstractSearchExpressionEvaluatorCache invalidator";
     }
+
+    /** The cache to be invalidated. */
+    @FunctionalInterface
+    private interface Target {
+        void invalidate(PrismObject<ResourceType> resource, PrismObject<? extends ShadowType> shadow);
+    }
 }
@@ -23,6 +23,8 @@ import com.evolveum.midpoint.model.impl.simulation.FullOperationSimulationDataIm
 import com.evolveum.midpoint.task.api.SimulationTransaction;
 
 import com.google.common.collect.Sets;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -33,6 +35,7 @@ import com.evolveum.midpoint.model.api.ProgressInformation;
 import com.evolveum.midpoint.model.api.ProgressListener;
 import com.evolveum.midpoint.model.api.hooks.HookOperationMode;
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AssociationSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.model.impl.ModelBeans;
 import com.evolveum.midpoint.model.impl.lens.projector.Projector;
 import com.evolveum.midpoint.model.impl.lens.projector.focus.FocusConstraintsChecker;
@@ -81,6 +84,26 @@ public class Clockwork {
     @Autowired private ClockworkHookHelper clockworkHookHelper;
     @Autowired private ClockworkConflictResolver clockworkConflictResolver;
     @Autowired private ModelBeans beans;
+    @Autowired private GlobalSearchExpressionEvaluatorCache globalSearchExpressionEvaluatorCache;
+
+    /** Invalidates the node-wide search expression evaluator cache; registered for the whole lifetime of this bean. */
+    private AssociationSearchExpressionCacheInvalidator globalSearchExpressionCacheInvalidator;
+
+    @PostConstruct
+    public void registerGlobalSearchExpressionCacheInvalidator() {
+        globalSearchExpressionCacheInvalidator =
+                new AssociationSearchExpressionCacheInvalidator(globalSearchExpressionEvaluatorCache);
+        eventDispatcher.registerListener((ResourceObjectChangeListener) globalSearchExpressionCacheInvalidator);
+        eventDispatcher.registerListener((ResourceOperationListener) globalSearchExpressionCacheInvalidator);
+    }
+
+    @PreDestroy
+    public void unregisterGlobalSearchExpressionCacheInvalidator() {
+        if (globalSearchExpressionCacheInvalidator != null) {
+            eventDispatcher.unregisterListener((ResourceObjectChangeListener) globalSearchExpressionCacheInvalidator);
+            eventDispatcher.unregisterListener((ResourceOperationListener) globalSearchExpressionCacheInvalidator);
+        }
+    }
 
     public <F extends ObjectType> HookOperationMode run(LensContext<F> context, Task task, OperationResult parentResult)
             throws SchemaException, PolicyViolationException, ExpressionEvaluationException, ObjectNotFoundException,
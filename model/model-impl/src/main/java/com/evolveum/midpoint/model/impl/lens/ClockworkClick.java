@@ -224,7 +224,7 @@ public class ClockworkClick<F extends ObjectType> {
         beans.medic.partialExecute(Components.EXECUTION,
                 (result1) -> beans.changeExecutor.executeChanges(context, task, result1),
                 context.getPartialProcessingOptions()::getExecution,
-                Clockwork.class, context, null, result);
+                Clockwork.class, context, null, task, result);
 
         beans.clockworkAuditHelper.audit(context, AuditEventStage.EXECUTION, task, result, overallResult);
 
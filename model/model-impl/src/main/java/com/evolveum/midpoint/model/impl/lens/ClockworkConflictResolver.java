@@ -28,6 +28,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static com.evolveum.midpoint.model.api.ProgressInformation.ActivityType.WAITING;
 import static com.evolveum.midpoint.model.api.ProgressInformation.StateType.EXITING;
@@ -181,6 +184,7 @@ public class ClockworkConflictResolver {
             LensContext<FocusType> contextNew = contextFactory.createRecomputeContext(focus, options, task, result);
             contextNew.setProgressListeners(new ArrayList<>(emptyIfNull(context.getProgressListeners())));
             contextNew.setConflictResolutionAttemptNumber(attemptNew);
+            contextNew.setReusableFullShadows(collectReusableFullShadows(context));
 
             LOGGER.debug("CONFLICT: Recomputing {} as reaction to conflict (options={}, attempts={},{}, readVersion={})",
                     context.getFocusContext().getHumanReadableName(), options, attemptNew, preconditionAttempts, contextNew.getFocusContext().getObjectReadVersion());
@@ -211,6 +215,30 @@ public class ClockworkConflictResolver {
         }
     }
 
+    /**
+     * Full shadows that were loaded in the original run and that can be reused in the repeated one: the conflict is
+     * on the focus, so the resource objects need not be fetched again - unless we have changed them ourselves.
+     * (Changes done by others are detected by comparing the shadow version when the shadow is to be reused.)
+     *
+     * The shadows are cloned, as the original context may still be used by the caller.
+     */
+    private Map<String, PrismObject<ShadowType>> collectReusableFullShadows(LensContext<?> context) {
+        Map<String, PrismObject<ShadowType>> shadows = new HashMap<>();
+        for (LensProjectionContext projectionContext : context.getProjectionContexts()) {
+            String oid = projectionContext.getOid();
+            PrismObject<ShadowType> current = projectionContext.getObjectCurrent();
+            if (oid != null
+                    && current != null
+                    && projectionContext.isFullShadow()
+                    && !projectionContext.isGone()
+                    && projectionContext.getExecutedDeltas().isEmpty()) {
+                shadows.put(oid, current.clone());
+            }
+        }
+        LOGGER.trace("CONFLICT: {} full shadow(s) can be reused in the next attempt", shadows.size());
+        return shadows;
+    }
+
     private String getNonEligibilityReason(LensContext<?> context) {
         if (context.getFocusContext() == null) {
             return "No focus context, not possible to resolve conflict by focus recomputation"; // should really never occur
@@ -236,7 +264,7 @@ public class ClockworkConflictResolver {
 
     private <F extends ObjectType> void delay(LensContext<F> context, @NotNull ConflictResolutionType resolutionPolicy, int attempt) {
         long delayRange = defaultIfNull(resolutionPolicy.getDelayUnit(), DEFAULT_CONFLICT_RESOLUTION_DELAY_UNIT) * (1L << attempt);
-        long delay = (long) (Math.random() * delayRange);
+        long delay = ThreadLocalRandom.current().nextLong(delayRange + 1);
         String message = "CONFLICT: Waiting "+delay+" milliseconds before starting conflict resolution (delay exponent: "+attempt+")";
         // TODO convey information about waiting time after some GUI mechanism for displaying it is available
         //  (showing text messages is currently really ugly)
@@ -58,6 +58,7 @@ public class ClockworkMedic {
     private static final Trace LOGGER = TraceManager.getTrace(ClockworkMedic.class);
 
     @Autowired private CacheConfigurationManager cacheConfigurationManager;
+    @Autowired private ProjectorComponentTimings projectorComponentTimings;
 
     public void enterModelMethod(boolean enterCache) {
         if (InternalsConfig.isModelProfiling()) {
@@ -174,7 +175,7 @@ public class ClockworkMedic {
             partialExecute(componentName, (result1) -> {
                 //noinspection unchecked
                 method.run(context, projectionContext, activityDescription, now, task, result1);
-            }, optionSupplier, executingClass, context, projectionContext, parentResult);
+            }, optionSupplier, executingClass, context, projectionContext, task, parentResult);
             return true;
         } else {
             return false;
@@ -192,7 +193,7 @@ public class ClockworkMedic {
             partialExecute(componentName, (result1) -> {
                 //noinspection unchecked
                 method.run(context, activityDescription, now, task, result1);
-            }, optionSupplier, executingClass, context, null, parentResult);
+            }, optionSupplier, executingClass, context, null, task, parentResult);
             return true;
         } else {
             return false;
@@ -210,7 +211,7 @@ public class ClockworkMedic {
             partialExecute(componentName, (result1) -> {
                 //noinspection unchecked
                 method.run(context, now, task, result1);
-            }, optionSupplier, executingClass, context, null, parentResult);
+            }, optionSupplier, executingClass, context, null, task, parentResult);
             return true;
         } else {
             return false;
@@ -296,7 +297,8 @@ public class ClockworkMedic {
 
     public void partialExecute(String baseComponentName, ProjectorComponentRunnable runnable,
             Supplier<PartialProcessingTypeType> optionSupplier,
-            Class<?> executingClass, LensContext<?> context, LensProjectionContext projectionContext, OperationResult initialParentResult)
+            Class<?> executingClass, LensContext<?> context, LensProjectionContext projectionContext, Task task,
+            OperationResult initialParentResult)
             throws SchemaException, ObjectNotFoundException, CommunicationException, ConfigurationException, SecurityViolationException,
             PolicyViolationException, ExpressionEvaluationException, ObjectAlreadyExistsException, ConflictDetectedException {
 
@@ -349,6 +351,7 @@ public class ClockworkMedic {
             } else {
                 trace = null;
             }
+            long start = System.nanoTime();
             try {
                 LOGGER.trace("Projector component started: {}", componentName);
                 if (clockworkInspector != null) {
@@ -363,6 +366,7 @@ public class ClockworkMedic {
                 result.recordFatalError(e);
                 throw e;
             } finally {
+                projectorComponentTimings.record(baseComponentName, context.getChannel(), task, System.nanoTime() - start);
                 result.computeStatusIfUnknown();
                 if (trace != null) {
                     if (result.isTracingNormal(ProjectorComponentTraceType.class)) {
@@ -23,6 +23,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ShadowUtil;
 import com.evolveum.midpoint.schema.util.cid.ContainerValueIdGenerator;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.Holder;
 import com.evolveum.midpoint.util.exception.ConfigurationException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.exception.SystemException;
@@ -67,6 +68,11 @@ import static com.evolveum.midpoint.xml.ns._public.common.common_3.MonitoredOper
  * 2. Because of their complexity and interdependence, state-changing operations
  * are grouped in a separate region: State updates.
  *
+ * 3. Immutable objects are shared without copying: an immutable loaded object is used as the {@link #oldObject} directly,
+ * and an immutable {@link #currentObject} (e.g. in a copy of the state) is copied only right before it is modified
+ * in place, see {@link #detachCurrentObject()}. Mutable objects provided by the callers are never frozen, as the callers
+ * (and the clockwork) may keep modifying them.
+ *
  * Intentionally not public.
  */
 class ElementState<O extends ObjectType> implements Serializable, Cloneable {
@@ -219,9 +225,10 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
         this.currentObjectAdjuster = other.currentObjectAdjuster;
         this.objectDefinitionRefiner = other.objectDefinitionRefiner;
         this.oid = other.oid;
-        this.oldObject = CloneUtil.clone(other.oldObject);
-        this.currentObject = CloneUtil.clone(other.currentObject);
-        this.primaryDelta = CloneUtil.clone(other.primaryDelta);
+        this.oldObject = cloneIfMutable(other.oldObject);
+        this.currentObject = cloneIfMutable(other.currentObject);
+        this.primaryDelta = other.primaryDelta != null && other.primaryDelta.isImmutable() ?
+                other.primaryDelta : CloneUtil.clone(other.primaryDelta);
         this.secondaryDelta = CloneUtil.clone(other.secondaryDelta);
         this.fresh = other.fresh;
         this.wasPrimaryDeltaExecuted = other.wasPrimaryDeltaExecuted;
@@ -693,12 +700,23 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
     /**
      * Sets both current and (if needed) also the old object.
      *
+     * The current object is always mutable, as it may be modified in place by the clockwork (and the caller may keep
+     * modifying the object provided). The old object is a copy of it; only if the provided object is immutable,
+     * it is used as the old object directly, without copying.
+     *
      * Should be used only by the context loader.
      */
     void setCurrentAndOptionallyOld(@NotNull PrismObject<O> object, boolean setAlsoOld) {
-        setCurrentObject(object.cloneIfImmutable());
-        if (setAlsoOld) {
-            setOldObject(object.clone());
+        if (object.isImmutable()) {
+            setCurrentObject(object.clone());
+            if (setAlsoOld) {
+                setOldObject(object);
+            }
+        } else {
+            setCurrentObject(object);
+            if (setAlsoOld) {
+                setOldObject(object.clone());
+            }
         }
     }
 
@@ -753,7 +771,7 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
     void simulateDeltaExecution(ObjectDelta<O> delta) throws SchemaException {
         if (simulatedExecutions == 0) {
             if (currentObject != null && currentObject.asObjectable() instanceof ShadowType) {
-                currentShadowBeforeSimulatedDeltaExecution = currentObject.clone();
+                currentShadowBeforeSimulatedDeltaExecution = cloneIfMutable(currentObject);
             } else {
                 // not necessary for focus objects
             }
@@ -772,22 +790,51 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
                         currentObject.debugDump(1), delta.debugDump(1));
             } else if (delta.isDelete()) {
                 clearCurrentObject();
-            } else {
+            } else if (!delta.isEmpty()) {
+                detachCurrentObject();
                 delta.applyTo(currentObject);
                 invalidateCurrentObjectDependencies();
             }
         }
-        if (currentObject != null) {
-            if (generateMissingContainerIds(currentObject)) {
-                invalidateCurrentObjectDependencies();
-            }
+        if (currentObject != null && hasMissingContainerIds(currentObject)) {
+            detachCurrentObject();
+            generateMissingContainerIds(currentObject);
+            invalidateCurrentObjectDependencies();
         }
     }
 
-    private boolean generateMissingContainerIds(PrismObject<O> currentObject) throws SchemaException {
-        ContainerValueIdGenerator generator = new ContainerValueIdGenerator(currentObject);
-        generator.generateForNewObject();
-        return generator.getGenerated() > 0;
+    /**
+     * Makes the current object mutable (and independent of any other state it may be shared with) by copying it, if needed.
+     * Must be called right before the current object is modified in place.
+     */
+    private void detachCurrentObject() {
+        if (currentObject.isImmutable()) {
+            currentObject = currentObject.clone();
+        }
+    }
+
+    /** Checks whether {@link #generateMissingContainerIds(PrismObject)} would modify the object. */
+    private static boolean hasMissingContainerIds(PrismObject<?> object) {
+        Holder<Boolean> missing = new Holder<>(false);
+        object.accept(visitable -> {
+            if (visitable instanceof PrismContainer && !(visitable instanceof PrismObject)) {
+                PrismContainer<?> container = (PrismContainer<?>) visitable;
+                if (container.getDefinition() != null && container.getDefinition().isMultiValue()
+                        && container.getValues().stream().anyMatch(value -> value.getId() == null)) {
+                    missing.setValue(true);
+                }
+            }
+        });
+        return missing.getValue();
+    }
+
+    private static <T extends ObjectType> PrismObject<T> cloneIfMutable(PrismObject<T> object) {
+        return object != null && object.isImmutable() ? object : CloneUtil.clone(object);
+    }
+
+    private void generateMissingContainerIds(PrismObject<O> currentObject) throws SchemaException {
+        new ContainerValueIdGenerator(currentObject)
+                .generateForNewObject();
     }
 
     /**
@@ -902,7 +949,14 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
         archivedSecondaryDeltas.checkEncrypted("secondary deltas");
     }
 
+    /** The consumer can modify the objects, so they are made mutable (and not shared) first. */
     void forEachObject(Consumer<PrismObject<O>> consumer) {
+        if (oldObject != null && oldObject.isImmutable()) {
+            oldObject = oldObject.clone();
+        }
+        if (currentObject != null) {
+            detachCurrentObject();
+        }
         if (currentObject != null) {
             consumer.accept(currentObject);
         }
@@ -69,6 +69,21 @@ public class IvwoConsolidator<V extends PrismValue, D extends ItemDefinition<?>,
      */
     private final List<EquivalenceClass> equivalenceClasses = new ArrayList<>();
 
+    /**
+     * Index of equivalence classes by the normalized value of their representative. Used only if the value matcher
+     * supports normalized keys (see {@link ValueMatcher#supportsNormalizedKey()}), otherwise it is null.
+     *
+     * For items with thousands of values (e.g. group membership attributes) this turns the categorization
+     * from quadratic to linear.
+     */
+    private final Map<Object, EquivalenceClass> equivalenceClassIndex;
+
+    /**
+     * Equivalence classes that are not present in {@link #equivalenceClassIndex}, because their representative
+     * could not be normalized. They have to be scanned sequentially. Used only if the index is used.
+     */
+    private final List<EquivalenceClass> unindexedEquivalenceClasses = new ArrayList<>();
+
     /**
      * Is the item an assignment (i.e. is path = c:assignment)?
      * This information is needed when preparing an item to be added into the delta.
@@ -211,6 +226,7 @@ public class IvwoConsolidator<V extends PrismValue, D extends ItemDefinition<?>,
 
         valueMatcher = builder.valueMatcher;
         comparator = builder.comparator;
+        equivalenceClassIndex = valueMatcher != null && valueMatcher.supportsNormalizedKey() ? new HashMap<>() : null;
 
         addUnchangedValues = builder.addUnchangedValues;
         addUnchangedValuesExceptForNormalMappings = builder.addUnchangedValuesExceptForNormalMappings;
@@ -960,6 +976,9 @@ public class IvwoConsolidator<V extends PrismValue, D extends ItemDefinition<?>,
     }
 
     private EquivalenceClass findOrCreateEquivalenceClass(V value) throws SchemaException {
+        if (equivalenceClassIndex != null) {
+            return findOrCreateEquivalenceClassIndexed(value);
+        }
         for (EquivalenceClass equivalenceClass : equivalenceClasses) {
             if (equivalenceClass.covers(value)) {
                 return equivalenceClass;
@@ -970,6 +989,49 @@ public class IvwoConsolidator<V extends PrismValue, D extends ItemDefinition<?>,
         return equivalenceClass;
     }
 
+    /**
+     * Hash-based variant of {@link #findOrCreateEquivalenceClass(PrismValue)}. Values that cannot be normalized
+     * are compared sequentially, just like in the original algorithm.
+     */
+    private EquivalenceClass findOrCreateEquivalenceClassIndexed(V value) throws SchemaException {
+        Object key = getIndexKey(value);
+        if (key != null) {
+            EquivalenceClass indexed = equivalenceClassIndex.get(key);
+            if (indexed != null) {
+                return indexed;
+            }
+            for (EquivalenceClass equivalenceClass : unindexedEquivalenceClasses) {
+                if (equivalenceClass.covers(value)) {
+                    return equivalenceClass;
+                }
+            }
+            EquivalenceClass equivalenceClass = new EquivalenceClass(value);
+            equivalenceClasses.add(equivalenceClass);
+            equivalenceClassIndex.put(key, equivalenceClass);
+            return equivalenceClass;
+        } else {
+            for (EquivalenceClass equivalenceClass : equivalenceClasses) {
+                if (equivalenceClass.covers(value)) {
+                    return equivalenceClass;
+                }
+            }
+            EquivalenceClass equivalenceClass = new EquivalenceClass(value);
+            equivalenceClasses.add(equivalenceClass);
+            unindexedEquivalenceClasses.add(equivalenceClass);
+            return equivalenceClass;
+        }
+    }
+
+    /** Returns the key under which the value is indexed, or null if the value cannot be indexed. */
+    private Object getIndexKey(V value) {
+        if (value instanceof PrismPropertyValue) {
+            //noinspection unchecked
+            return valueMatcher.getNormalizedKey(value.getRealValue());
+        } else {
+            return null;
+        }
+    }
+
     private boolean shouldSkipMapping(MappingStrengthType mappingStrength) {
         return mappingStrength == MappingStrengthType.STRONG && !strengthSelector.isStrong() ||
                 mappingStrength == MappingStrengthType.NORMAL && !strengthSelector.isNormal() ||
@@ -103,6 +103,13 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
 
     private int conflictResolutionAttemptNumber;
 
+    /**
+     * Full shadows loaded in the previous clockwork run that ended with a focus conflict, keyed by shadow OID.
+     * They can be reused (instead of fetching them from the resource again) when the focus is recomputed as part
+     * of the conflict resolution. Each of them is used at most once. See {@link ClockworkConflictResolver}.
+     */
+    private transient Map<String, PrismObject<ShadowType>> reusableFullShadows;
+
     // For use with personas
     private String ownerOid;
 
@@ -1621,6 +1628,15 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
         this.conflictResolutionAttemptNumber = conflictResolutionAttemptNumber;
     }
 
+    void setReusableFullShadows(Map<String, PrismObject<ShadowType>> reusableFullShadows) {
+        this.reusableFullShadows = reusableFullShadows;
+    }
+
+    /** Returns (and forgets) a full shadow with given OID loaded in the previous, conflicting, clockwork run - if any. */
+    public @Nullable PrismObject<ShadowType> takeReusableFullShadow(@NotNull String oid) {
+        return reusableFullShadows != null ? reusableFullShadows.remove(oid) : null;
+    }
+
     ConflictWatcher getFocusConflictWatcher() {
         return focusConflictWatcher;
     }
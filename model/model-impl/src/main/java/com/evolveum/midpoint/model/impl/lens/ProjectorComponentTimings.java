@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.DebugDumpable;
+import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Always-on latency histograms for projector/clockwork components (see {@link com.evolveum.midpoint.model.impl.lens.projector.Components}).
+ *
+ * Unlike tracing, this is cheap enough to be used in production: each component execution costs two calls to
+ * {@link System#nanoTime()}, one map lookup and a couple of atomic increments. No objects are created on the hot path
+ * (except for the lookup key).
+ *
+ * Histograms are kept per component, channel and task. Tasks are identified by the OID of their root task (so that
+ * worker threads of multi-threaded or distributed tasks, which are not persistent themselves, are aggregated with
+ * their root), or are all aggregated under {@link #TRANSIENT_TASK} (e.g. GUI or REST operations). To keep the memory bounded, the number
+ * of histograms is limited; executions that would need a new histogram over the limit are aggregated under
+ * {@link #OTHER} task.
+ *
+ * Data are node-local and are not persisted. They can be read (and reset) via `ModelDiagnosticService`.
+ */
+@Component
+public class ProjectorComponentTimings implements DebugDumpable {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ProjectorComponentTimings.class);
+
+    static final String TRANSIENT_TASK = "(transient)";
+    static final String OTHER = "(other)";
+    private static final String NO_CHANNEL = "(none)";
+
+    /** Maximal number of histograms kept. */
+    private static final int MAX_HISTOGRAMS = 5000;
+
+    /**
+     * Upper bounds (inclusive) of histogram buckets, in microseconds. The last bucket (not listed here) is unbounded.
+     */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000, 5_000_000
+    };
+
+    @NotNull private final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /** Records single execution of a projector component. */
+    public void record(@NotNull String componentName, @Nullable String channel, @Nullable Task task, long nanos) {
+        Key key = new Key(componentName, channel, getTaskTag(task));
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            if (histograms.size() >= MAX_HISTOGRAMS) {
+                key = new Key(componentName, channel, OTHER);
+            }
+            histogram = histograms.computeIfAbsent(key, k -> new Histogram());
+        }
+        histogram.record(nanos / 1000);
+    }
+
+    private static @NotNull String getTaskTag(@Nullable Task task) {
+        String oid;
+        if (task instanceof RunningTask) {
+            oid = ((RunningTask) task).getRootTaskOid(); // lightweight (worker) tasks have no OID of their own
+        } else if (task != null && task.isPersistent()) {
+            oid = task.getOid();
+        } else {
+            oid = null;
+        }
+        return oid != null ? oid : TRANSIENT_TASK;
+    }
+
+    /** Returns a snapshot of histograms for given task (OID or special tag), or for all tasks if null. */
+    public @NotNull Map<Key, HistogramSnapshot> getSnapshot(@Nullable String taskTag) {
+        Map<Key, HistogramSnapshot> snapshot = new TreeMap<>();
+        histograms.forEach((key, histogram) -> {
+            if (taskTag == null || taskTag.equals(key.task)) {
+                snapshot.put(key, histogram.snapshot());
+            }
+        });
+        return snapshot;
+    }
+
+    public void reset() {
+        LOGGER.debug("Resetting projector component timings ({} histograms)", histograms.size());
+        histograms.clear();
+    }
+
+    @Override
+    public String debugDump(int indent) {
+        return dump(null, indent);
+    }
+
+    /** Dumps the histograms for given task (OID or special tag), or for all tasks if null. */
+    public @NotNull String dump(@Nullable String taskTag, int indent) {
+        StringBuilder sb = new StringBuilder();
+        DebugUtil.indentDebugDump(sb, indent);
+        sb.append("Projector component timings (bucket upper bounds in ms: ");
+        for (long bound : BUCKET_BOUNDS_MICROS) {
+            sb.append(bound / 1000.0).append(' ');
+        }
+        sb.append("inf)");
+        getSnapshot(taskTag).forEach((key, snapshot) -> {
+            sb.append('\n');
+            DebugUtil.indentDebugDump(sb, indent + 1);
+            sb.append(key).append(": ").append(snapshot);
+        });
+        return sb.toString();
+    }
+
+    /** Identification of a histogram. */
+    public static class Key implements Comparable<Key> {
+
+        @NotNull private final String component;
+        @NotNull private final String channel;
+        @NotNull private final String task;
+
+        private Key(@NotNull String component, @Nullable String channel, @NotNull String task) {
+            this.component = component;
+            this.channel = channel != null ? channel : NO_CHANNEL;
+            this.task = task;
+        }
+
+        public @NotNull String getComponent() {
+            return component;
+        }
+
+        public @NotNull String getChannel() {
+            return channel;
+        }
+
+        public @NotNull String getTask() {
+            return task;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return component.equals(key.component)
+                    && channel.equals(key.channel)
+                    && task.equals(key.task);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(component, channel, task);
+        }
+
+        @Override
+        public int compareTo(@NotNull Key o) {
+            return Comparator.comparing(Key::getTask)
+                    .thenComparing(Key::getChannel)
+                    .thenComparing(Key::getComponent)
+                    .compare(this, o);
+        }
+
+        @Override
+        public String toString() {
+            return task + " / " + channel + " / " + component;
+        }
+    }
+
+    /** Thread-safe, lock-free histogram. */
+    private static class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long micros) {
+            int i = 0;
+            while (i < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            totalMicros.add(micros);
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        private HistogramSnapshot snapshot() {
+            long[] bucketCounts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = buckets[i].sum();
+            }
+            return new HistogramSnapshot(count.sum(), totalMicros.sum(), maxMicros.get(), bucketCounts);
+        }
+    }
+
+    /** Point-in-time copy of a histogram. (Not necessarily fully consistent, as the data are collected concurrently.) */
+    public static class HistogramSnapshot {
+
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long[] bucketCounts;
+
+        private HistogramSnapshot(long count, long totalMicros, long maxMicros, long[] bucketCounts) {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.bucketCounts = bucketCounts;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        /** Counts in individual buckets; the last one is for values over the highest bound. */
+        public long[] getBucketCounts() {
+            return bucketCounts.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, total=%.1f ms, avg=%.3f ms, max=%.3f ms, buckets=%s",
+                    count, totalMicros / 1000.0, count > 0 ? totalMicros / 1000.0 / count : 0.0, maxMicros / 1000.0,
+                    Arrays.toString(bucketCounts));
+        }
+    }
+}
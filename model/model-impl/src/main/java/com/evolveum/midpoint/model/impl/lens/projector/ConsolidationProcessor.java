@@ -692,14 +692,17 @@ public class ConsolidationProcessor {
             return;
         }
 
+        // For huge multivalued attributes we avoid comparing each value with each other one.
+        Set<T> normalizedKeys = valueMatcher.getNormalizedKeys(property.getRealValues());
+
         Iterator<PrismPropertyValue<T>> iterator = values.iterator();
         while (iterator.hasNext()) {
             PrismPropertyValue<T> value = iterator.next();
-            if (adding && valueMatcher.hasRealValue(property,value)) {
+            if (adding && valueMatcher.hasRealValue(property, normalizedKeys, value)) {
                 iterator.remove();
             }
 
-            if (!adding && !valueMatcher.hasRealValue(property,value)) {
+            if (!adding && !valueMatcher.hasRealValue(property, normalizedKeys, value)) {
                 iterator.remove();
             }
         }
@@ -206,7 +206,7 @@ public class Projector {
                             (result1) -> projectProjection(context, projectionContext,
                                     partialProcessingOptions, now, activityDescription, task, result1),
                             partialProcessingOptions::getProjection,
-                            Projector.class, context, projectionContext, result);
+                            Projector.class, context, projectionContext, task, result);
                 }
 
                 // If there exists some conflicting projection contexts, add them to the context so they will be recomputed
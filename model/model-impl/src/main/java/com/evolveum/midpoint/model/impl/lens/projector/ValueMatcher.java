@@ -6,8 +6,19 @@
  */
 package com.evolveum.midpoint.model.impl.lens.projector;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 import javax.xml.namespace.QName;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.PrismConstants;
 import com.evolveum.midpoint.prism.PrismProperty;
 import com.evolveum.midpoint.prism.PrismPropertyValue;
 import com.evolveum.midpoint.prism.delta.PropertyDelta;
@@ -27,6 +38,23 @@ public class ValueMatcher<T> {
 
     private static final Trace LOGGER = TraceManager.getTrace(ValueMatcher.class);
 
+    private static final Pattern SIMPLE_DN =
+            Pattern.compile("[A-Za-z][A-Za-z0-9-]*=[A-Za-z0-9._-]+(,[A-Za-z][A-Za-z0-9-]*=[A-Za-z0-9._-]+)*");
+
+    /**
+     * Case-insensitive matching rules, with the string values for which `match(a, b)` holds if and only if
+     * the lower-case forms of `a` and `b` are equal. Such values can be indexed by their lower-case form.
+     *
+     * - For case-ignoring and UUID matching this holds for ASCII strings. (Outside ASCII, e.g. for the Greek sigma
+     * or the Kelvin sign, case-insensitive equality is not the same as the equality of lower-case forms.)
+     * - For DN matching this holds for simple DNs: no spaces, escapes, quotes, or multivalued RDNs. (In general,
+     * two DNs can match even if their string forms differ in more than letter case, e.g. in spaces after commas.)
+     */
+    private static final Map<QName, Predicate<String>> KEY_NORMALIZING_MATCHING_RULES = Map.of(
+            PrismConstants.STRING_IGNORE_CASE_MATCHING_RULE_NAME, ValueMatcher::isAscii,
+            PrismConstants.UUID_MATCHING_RULE_NAME, ValueMatcher::isAscii,
+            PrismConstants.DISTINGUISHED_NAME_MATCHING_RULE_NAME, value -> SIMPLE_DN.matcher(value).matches());
+
     MatchingRule<T> matchingRule;
 
     public ValueMatcher(MatchingRule<T> matchingRule) {
@@ -53,6 +81,60 @@ public class ValueMatcher<T> {
         return matchingRule.match(realA, realB);
     }
 
+    /**
+     * Can the values be compared by their normalized form (see {@link #normalize(Object)})? If so, they can be put into
+     * hash-based structures instead of being compared pairwise.
+     */
+    public boolean supportsNormalizedKey() {
+        return matchingRule != null && KEY_NORMALIZING_MATCHING_RULES.containsKey(matchingRule.getName());
+    }
+
+    /**
+     * Returns the normalized form of the value usable as a hash key, or null if it is not available: either the matching
+     * rule does not support it, or the value is not one for which the matching is known to be equivalent to comparing
+     * the keys (see {@link #KEY_NORMALIZING_MATCHING_RULES}). Such values have to be compared by the matching rule.
+     */
+    public @Nullable T getNormalizedKey(T realValue) {
+        if (!supportsNormalizedKey() || !(realValue instanceof String)) {
+            return null;
+        }
+        String stringValue = (String) realValue;
+        if (!KEY_NORMALIZING_MATCHING_RULES.get(matchingRule.getName()).test(stringValue)) {
+            return null;
+        }
+        //noinspection unchecked
+        return (T) stringValue.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns normalized keys of all the values (see {@link #getNormalizedKey(Object)}), or null if some of them cannot
+     * be obtained. Used to replace repeated sequential {@link #hasRealValue(PrismProperty, PrismPropertyValue)} calls
+     * by hash lookups.
+     */
+    public @Nullable Set<T> getNormalizedKeys(@NotNull Collection<T> realValues) {
+        if (!supportsNormalizedKey()) {
+            return null;
+        }
+        Set<T> keys = new HashSet<>();
+        for (T realValue : realValues) {
+            T key = getNormalizedKey(realValue);
+            if (key == null) {
+                return null;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
     public boolean matches(T realValue, String regex) throws SchemaException{
         return matchingRule.matchRegex(realValue, regex);
     }
@@ -79,6 +161,20 @@ public class ValueMatcher<T> {
         return false;
     }
 
+    /**
+     * As {@link #hasRealValue(PrismProperty, PrismPropertyValue)} but uses pre-computed normalized keys of the property
+     * values (see {@link #getNormalizedKeys(Collection)}), if available.
+     */
+    public boolean hasRealValue(PrismProperty<T> property, @Nullable Set<T> normalizedKeys, PrismPropertyValue<T> pValue) {
+        if (normalizedKeys != null) {
+            T key = getNormalizedKey(pValue.getValue());
+            if (key != null) {
+                return normalizedKeys.contains(key);
+            }
+        }
+        return hasRealValue(property, pValue);
+    }
+
     @Experimental // FIXME
     public PrismPropertyValue<T> findValue(PrismProperty<T> property, PrismPropertyValue<T> pValue) {
         for (PrismPropertyValue<T> existingValue: property.getValues()) {
@@ -15,6 +15,7 @@ import java.util.Collection;
 
 import org.apache.commons.lang3.Validate;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.model.impl.ModelBeans;
 import com.evolveum.midpoint.model.impl.lens.LensContext;
@@ -23,6 +24,7 @@ import com.evolveum.midpoint.model.impl.lens.LensUtil;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.PointInTimeType;
+import com.evolveum.midpoint.schema.RetrieveOption;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -105,8 +107,12 @@ public class ProjectionFullLoadOperation<F extends ObjectType> {
                             String.format("Trying to load shadow with null OID (reason for load: %s) for %s",
                                     reason, projCtx.getHumanReadableName()));
                 }
-                PrismObject<ShadowType> objectCurrent =
-                        beans.provisioningService.getObject(ShadowType.class, oid, options, task, result);
+                PrismObject<ShadowType> objectCurrent = getReusableFullShadow(oid, options, result);
+                if (objectCurrent != null) {
+                    result.addReturn(DEFAULT, "reused");
+                } else {
+                    objectCurrent = beans.provisioningService.getObject(ShadowType.class, oid, options, task, result);
+                }
                 Validate.notNull(objectCurrent.getOid());
                 if (trace != null) {
                     trace.setShadowLoadedRef(
@@ -152,6 +158,61 @@ public class ProjectionFullLoadOperation<F extends ObjectType> {
         }
     }
 
+    /**
+     * Returns the full shadow loaded in the previous clockwork run (if we are resolving a focus conflict), provided
+     * that it is still up-to-date and we do not require anything special from the resource. See
+     * {@link #canReuseFullShadow(PrismObject, String, Collection)}.
+     */
+    private PrismObject<ShadowType> getReusableFullShadow(
+            @NotNull String oid, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
+            throws SchemaException {
+        PrismObject<ShadowType> shadow = context.takeReusableFullShadow(oid);
+        if (shadow == null) {
+            return null;
+        }
+        String repoVersion;
+        try {
+            repoVersion = beans.cacheRepositoryService.getVersion(ShadowType.class, oid, result);
+        } catch (ObjectNotFoundException e) {
+            result.muteLastSubresultError();
+            LOGGER.trace("Not reusing full shadow for {}, as the shadow is no longer in repository", projCtx);
+            return null; // provisioning will deal with this
+        }
+        if (canReuseFullShadow(shadow, repoVersion, options)) {
+            LOGGER.trace("Reusing full shadow loaded in the previous (conflicting) clockwork run for {}", projCtx);
+            return shadow;
+        } else {
+            LOGGER.trace("Not reusing full shadow (version {}, repo version {}, options {}) for {}",
+                    shadow.getVersion(), repoVersion, options, projCtx);
+            return null;
+        }
+    }
+
+    /**
+     * The shadow from the previous run can be reused only if the repository shadow has not changed since it was loaded
+     * (so nobody has touched the resource object via midPoint in the meanwhile), and if the current load does not ask
+     * for more than the previous one: reconciliation requires fresh data (`forceRefresh`), and the password is
+     * retrieved only on explicit request (`retrieve` option for a non-root item).
+     */
+    static boolean canReuseFullShadow(
+            @NotNull PrismObject<ShadowType> shadow, @Nullable String repoVersion,
+            @NotNull Collection<SelectorOptions<GetOperationOptions>> options) {
+        if (repoVersion == null || !repoVersion.equals(shadow.getVersion())) {
+            return false;
+        }
+        for (SelectorOptions<GetOperationOptions> option : options) {
+            GetOperationOptions getOptions = option.getOptions();
+            if (option.isRoot()) {
+                if (GetOperationOptions.isForceRefresh(getOptions)) {
+                    return false;
+                }
+            } else if (GetOperationOptions.getRetrieve(getOptions) == RetrieveOption.INCLUDE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void refreshContextAfterShadowNotFound(Collection<SelectorOptions<GetOperationOptions>> options,
             OperationResult result)
             throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException,
@@ -30,6 +30,10 @@ public class AssignmentPolicyRuleEvaluationContext<AH extends AssignmentHolderTy
     public final boolean isKept;
     public final boolean isDeleted;
     public final DeltaSetTriple<? extends EvaluatedAssignmentImpl<AH>> evaluatedAssignmentTriple;
+
+    /** Index of targets in {@link #evaluatedAssignmentTriple}; shared by all contexts in the current rules evaluation. */
+    @NotNull public final EvaluatedAssignmentTargetIndex targetIndex;
+
     @NotNull private final LensFocusContext<AH> focusContext;
 
     AssignmentPolicyRuleEvaluationContext(
@@ -37,8 +41,9 @@ public class AssignmentPolicyRuleEvaluationContext<AH extends AssignmentHolderTy
             @NotNull EvaluatedAssignmentImpl<AH> evaluatedAssignment,
             @NotNull LensFocusContext<AH> focusContext,
             DeltaSetTriple<? extends EvaluatedAssignmentImpl<AH>> evaluatedAssignmentTriple,
+            @NotNull EvaluatedAssignmentTargetIndex targetIndex,
             Task task) {
-        this(policyRule, evaluatedAssignment, focusContext, evaluatedAssignmentTriple, task, ObjectState.AFTER);
+        this(policyRule, evaluatedAssignment, focusContext, evaluatedAssignmentTriple, targetIndex, task, ObjectState.AFTER);
     }
 
     private AssignmentPolicyRuleEvaluationContext(
@@ -46,6 +51,7 @@ public class AssignmentPolicyRuleEvaluationContext<AH extends AssignmentHolderTy
             @NotNull EvaluatedAssignmentImpl<AH> evaluatedAssignment,
             @NotNull LensFocusContext<AH> focusContext,
             DeltaSetTriple<? extends EvaluatedAssignmentImpl<AH>> evaluatedAssignmentTriple,
+            @NotNull EvaluatedAssignmentTargetIndex targetIndex,
             Task task,
             ObjectState state) {
         super(policyRule, focusContext, task, state);
@@ -55,13 +61,14 @@ public class AssignmentPolicyRuleEvaluationContext<AH extends AssignmentHolderTy
         this.isKept = origin.isBeingKept();
         this.isDeleted = origin.isBeingDeleted();
         this.evaluatedAssignmentTriple = evaluatedAssignmentTriple;
+        this.targetIndex = targetIndex;
         this.focusContext = focusContext;
     }
 
     @Override
     public AssignmentPolicyRuleEvaluationContext<AH> cloneWithStateConstraints(ObjectState state) {
         return new AssignmentPolicyRuleEvaluationContext<>(
-                policyRule, evaluatedAssignment, focusContext, evaluatedAssignmentTriple, task, state);
+                policyRule, evaluatedAssignment, focusContext, evaluatedAssignmentTriple, targetIndex, task, state);
     }
 
     @Override
@@ -102,7 +109,7 @@ public class AssignmentPolicyRuleEvaluationContext<AH extends AssignmentHolderTy
     @Override
     public AssignmentPolicyRuleEvaluationContext<AH> clone() {
         return new AssignmentPolicyRuleEvaluationContext<>(
-                policyRule, evaluatedAssignment, focusContext, evaluatedAssignmentTriple, task);
+                policyRule, evaluatedAssignment, focusContext, evaluatedAssignmentTriple, targetIndex, task);
     }
 
     @Override
@@ -57,6 +57,8 @@ class AssignmentPolicyRuleEvaluator<F extends AssignmentHolderType> extends Poli
         collector.initialize(result);
         collector.collectGlobalAssignmentRules(evaluatedAssignmentTriple, result);
 
+        EvaluatedAssignmentTargetIndex targetIndex = new EvaluatedAssignmentTargetIndex(evaluatedAssignmentTriple);
+
         for (EvaluatedAssignmentImpl<F> evaluatedAssignment : evaluatedAssignmentTriple.union()) {
             Collection<EvaluatedPolicyRuleImpl> policyRules = evaluatedAssignment.getAllTargetsPolicyRules();
             collector.resolveConstraintReferences(policyRules);
@@ -70,6 +72,7 @@ class AssignmentPolicyRuleEvaluator<F extends AssignmentHolderType> extends Poli
                                     evaluatedAssignment,
                                     focusContext,
                                     evaluatedAssignmentTriple,
+                                    targetIndex,
                                     task));
                 } else {
                     LOGGER.trace("Skipping rule {} because it is not applicable to assignment: {}",
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector.policy;
+
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import com.evolveum.midpoint.model.impl.lens.assignments.EvaluatedAssignmentImpl;
+import com.evolveum.midpoint.model.impl.lens.assignments.EvaluatedAssignmentTargetImpl;
+import com.evolveum.midpoint.prism.delta.DeltaSetTriple;
+
+/**
+ * Index of non-negative targets of non-negative evaluated assignments, keyed by target OID.
+ *
+ * Used by constraints that compare the assignment being evaluated with all the other ones (namely, exclusion constraints),
+ * so that they do not need to iterate over all assignments and their targets for each policy rule. It is created lazily
+ * (on the first use) and shared by all assignment policy rule evaluation contexts in a single policy rules evaluation,
+ * as the evaluated assignment triple does not change during that time.
+ *
+ * The entries are kept in the same order in which they would be found by iterating over the triple.
+ */
+public class EvaluatedAssignmentTargetIndex {
+
+    @NotNull private final DeltaSetTriple<? extends EvaluatedAssignmentImpl<?>> evaluatedAssignmentTriple;
+
+    /** All entries. Lazily computed. */
+    private List<Entry> allEntries;
+
+    /** Entries by target OID. Targets without OID are not here. Lazily computed. */
+    private Map<String, List<Entry>> entriesByOid;
+
+    @VisibleForTesting
+    public EvaluatedAssignmentTargetIndex(@NotNull DeltaSetTriple<? extends EvaluatedAssignmentImpl<?>> evaluatedAssignmentTriple) {
+        this.evaluatedAssignmentTriple = evaluatedAssignmentTriple;
+    }
+
+    /** Returns all non-negative targets of all non-negative assignments. */
+    public @NotNull List<Entry> getAllEntries() {
+        buildIfNeeded();
+        return allEntries;
+    }
+
+    /** Returns all non-negative targets (of non-negative assignments) having given OID. */
+    public @NotNull List<Entry> getEntriesByOid(@NotNull String oid) {
+        buildIfNeeded();
+        return entriesByOid.getOrDefault(oid, List.of());
+    }
+
+    private void buildIfNeeded() {
+        if (allEntries != null) {
+            return;
+        }
+        List<Entry> all = new ArrayList<>();
+        Map<String, List<Entry>> byOid = new HashMap<>();
+        for (EvaluatedAssignmentImpl<?> assignment : evaluatedAssignmentTriple.getNonNegativeValues()) {
+            for (EvaluatedAssignmentTargetImpl target : assignment.getNonNegativeTargets()) {
+                Entry entry = new Entry(assignment, target);
+                all.add(entry);
+                String oid = target.getOid();
+                if (oid != null) {
+                    byOid.computeIfAbsent(oid, k -> new ArrayList<>())
+                            .add(entry);
+                }
+            }
+        }
+        entriesByOid = byOid;
+        allEntries = all;
+    }
+
+    /** A target along with the assignment it belongs to. */
+    public static class Entry {
+
+        @NotNull private final EvaluatedAssignmentImpl<?> assignment;
+        @NotNull private final EvaluatedAssignmentTargetImpl target;
+
+        private Entry(@NotNull EvaluatedAssignmentImpl<?> assignment, @NotNull EvaluatedAssignmentTargetImpl target) {
+            this.assignment = assignment;
+            this.target = target;
+        }
+
+        public @NotNull EvaluatedAssignmentImpl<?> getAssignment() {
+            return assignment;
+        }
+
+        public @NotNull EvaluatedAssignmentTargetImpl getTarget() {
+            return target;
+        }
+
+        public @Nullable String getOid() {
+            return target.getOid();
+        }
+
+        @Override
+        public String toString() {
+            return target + " in " + assignment;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.springframework.stereotype.Component;
 import com.evolveum.midpoint.model.impl.lens.assignments.EvaluatedAssignmentImpl;
 import com.evolveum.midpoint.model.impl.lens.assignments.EvaluatedAssignmentTargetImpl;
 import com.evolveum.midpoint.model.impl.lens.projector.policy.AssignmentPolicyRuleEvaluationContext;
+import com.evolveum.midpoint.model.impl.lens.projector.policy.EvaluatedAssignmentTargetIndex;
 import com.evolveum.midpoint.model.impl.lens.projector.policy.PolicyRuleEvaluationContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.polystring.PolyString;
@@ -39,6 +40,7 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentHolderType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ExclusionPolicyConstraintType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OrderConstraintsType;
 
@@ -100,30 +102,30 @@ public class ExclusionConstraintEvaluator
                     ctx, constraint.getValue().getTargetRef(), expressionFactory, result, LOGGER);
 
             List<EvaluatedExclusionTrigger> triggers = new ArrayList<>();
-            for (EvaluatedAssignmentImpl<?> assignmentB : ctx.evaluatedAssignmentTriple.getNonNegativeValues()) { // MID-6403
+            candidates:
+            for (EvaluatedAssignmentTargetIndex.Entry candidate : getCandidates(constraint, ctx)) { // MID-6403
+                EvaluatedAssignmentImpl<?> assignmentB = candidate.getAssignment();
                 if (assignmentB == ctx.evaluatedAssignment) { // currently there is no other way of comparing the evaluated assignments
                     continue;
                 }
-                targetB:
-                for (EvaluatedAssignmentTargetImpl targetB : assignmentB.getNonNegativeTargets()) {
-                    if (!pathMatches(targetB.getAssignmentPath(), targetOrderConstraints)) {
-                        LOGGER.trace("Skipping considering exclusion target {} because it does not match target path constraints."
-                                + " Path={}, constraints={}", targetB, targetB.getAssignmentPath(), targetOrderConstraints);
-                        continue;
-                    }
-                    if (!refMatcher.refMatchesTarget(targetB.getTarget(), "exclusion constraint")) {
-                        LOGGER.trace("Target {} OID does not match exclusion filter", targetB);
-                        continue;
-                    }
-                    // To avoid false positives let us check if this target is not already covered by assignment being evaluated
-                    for (EvaluatedAssignmentTargetImpl targetA : nonNegativeTargetsA) {
-                        if (targetIsAlreadyCovered(targetB, targetA)) {
-                            continue targetB;
-                        }
+                EvaluatedAssignmentTargetImpl targetB = candidate.getTarget();
+                if (!pathMatches(targetB.getAssignmentPath(), targetOrderConstraints)) {
+                    LOGGER.trace("Skipping considering exclusion target {} because it does not match target path constraints."
+                            + " Path={}, constraints={}", targetB, targetB.getAssignmentPath(), targetOrderConstraints);
+                    continue;
+                }
+                if (!refMatcher.refMatchesTarget(targetB.getTarget(), "exclusion constraint")) {
+                    LOGGER.trace("Target {} OID does not match exclusion filter", targetB);
+                    continue;
+                }
+                // To avoid false positives let us check if this target is not already covered by assignment being evaluated
+                for (EvaluatedAssignmentTargetImpl targetA : nonNegativeTargetsA) {
+                    if (targetIsAlreadyCovered(targetB, targetA)) {
+                        continue candidates;
                     }
-                    triggers.add(
-                            createTrigger(ctx.evaluatedAssignment, assignmentB, targetB, constraint, ctx, result));
                 }
+                triggers.add(
+                        createTrigger(ctx.evaluatedAssignment, assignmentB, targetB, constraint, ctx, result));
             }
 
             result.addArbitraryObjectCollectionAsReturn(
@@ -141,6 +143,22 @@ public class ExclusionConstraintEvaluator
         }
     }
 
+    /**
+     * Returns targets (along with their assignments) that should be checked against the assignment being evaluated.
+     *
+     * If the constraint points to a specific OID, only targets with that OID can match, so we get them right from the index.
+     * Otherwise (filter or no reference at all), all targets must be considered.
+     */
+    private List<EvaluatedAssignmentTargetIndex.Entry> getCandidates(
+            @NotNull JAXBElement<ExclusionPolicyConstraintType> constraint, AssignmentPolicyRuleEvaluationContext<?> ctx) {
+        ObjectReferenceType targetRef = constraint.getValue().getTargetRef();
+        if (targetRef != null && targetRef.getOid() != null) {
+            return ctx.targetIndex.getEntriesByOid(targetRef.getOid());
+        } else {
+            return ctx.targetIndex.getAllEntries();
+        }
+    }
+
     private boolean targetIsAlreadyCovered(EvaluatedAssignmentTargetImpl targetB, EvaluatedAssignmentTargetImpl targetA) {
         if (!targetA.appliesToFocus()) {
             return false;
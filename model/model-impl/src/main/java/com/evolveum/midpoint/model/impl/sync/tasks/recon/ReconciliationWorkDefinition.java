@@ -9,6 +9,8 @@ package com.evolveum.midpoint.model.impl.sync.tasks.recon;
 
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceObjectSetQueryApplicationModeType.APPEND;
 
+import java.util.Objects;
+
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.repo.common.activity.definition.AbstractWorkDefinition;
@@ -23,15 +25,30 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceObjectSetTyp
 
 public class ReconciliationWorkDefinition extends AbstractWorkDefinition implements ResourceObjectSetSpecificationProvider {
 
+    /** Should correspond to the default value in the schema. */
+    private static final int DEFAULT_SET_BASED_REMAINING_SHADOWS_MAX_DELETIONS = 1000;
+
     @NotNull private final ResourceObjectSetType resourceObjects;
 
+    /** See {@link ReconciliationWorkDefinitionType#isSetBasedRemainingShadows()}. */
+    private final boolean setBasedRemainingShadows;
+
+    /** See {@link ReconciliationWorkDefinitionType#getSetBasedRemainingShadowsMaxDeletions()}. */
+    private final int setBasedRemainingShadowsMaxDeletions;
+
     ReconciliationWorkDefinition(WorkDefinitionSource source) {
         if (source instanceof LegacyWorkDefinitionSource) {
             resourceObjects = ResourceObjectSetUtil.fromLegacySource((LegacyWorkDefinitionSource) source);
+            setBasedRemainingShadows = false;
+            setBasedRemainingShadowsMaxDeletions = DEFAULT_SET_BASED_REMAINING_SHADOWS_MAX_DELETIONS;
         } else {
             ReconciliationWorkDefinitionType typedDefinition = (ReconciliationWorkDefinitionType)
                     ((TypedWorkDefinitionWrapper) source).getTypedDefinition();
             resourceObjects = ResourceObjectSetUtil.fromConfiguration(typedDefinition.getResourceObjects());
+            setBasedRemainingShadows = Boolean.TRUE.equals(typedDefinition.isSetBasedRemainingShadows());
+            setBasedRemainingShadowsMaxDeletions = Objects.requireNonNullElse(
+                    typedDefinition.getSetBasedRemainingShadowsMaxDeletions(),
+                    DEFAULT_SET_BASED_REMAINING_SHADOWS_MAX_DELETIONS);
         }
         ResourceObjectSetUtil.setDefaultQueryApplicationMode(resourceObjects, APPEND);
     }
@@ -41,8 +58,18 @@ public class ReconciliationWorkDefinition extends AbstractWorkDefinition impleme
         return resourceObjects;
     }
 
+    boolean isSetBasedRemainingShadows() {
+        return setBasedRemainingShadows;
+    }
+
+    int getSetBasedRemainingShadowsMaxDeletions() {
+        return setBasedRemainingShadowsMaxDeletions;
+    }
+
     @Override
     protected void debugDumpContent(StringBuilder sb, int indent) {
-        DebugUtil.debugDumpWithLabel(sb, "resourceObjects", resourceObjects, indent+1);
+        DebugUtil.debugDumpWithLabelLn(sb, "resourceObjects", resourceObjects, indent+1);
+        DebugUtil.debugDumpWithLabelLn(sb, "setBasedRemainingShadows", setBasedRemainingShadows, indent+1);
+        DebugUtil.debugDumpWithLabel(sb, "setBasedRemainingShadowsMaxDeletions", setBasedRemainingShadowsMaxDeletions, indent+1);
     }
 }
@@ -7,13 +7,20 @@
 
 package com.evolveum.midpoint.model.impl.sync.tasks.recon;
 
+import static com.evolveum.midpoint.model.api.ModelPublicConstants.RECONCILIATION_REMAINING_SHADOWS_PREVIEW_ID;
+import static com.evolveum.midpoint.model.api.ModelPublicConstants.RECONCILIATION_RESOURCE_OBJECTS_ID;
+import static com.evolveum.midpoint.model.api.ModelPublicConstants.RECONCILIATION_RESOURCE_OBJECTS_PREVIEW_ID;
 import static com.evolveum.midpoint.util.MiscUtil.stateCheck;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ReconciliationWorkStateType.F_RESOURCE_OBJECTS_RECONCILIATION_START_TIMESTAMP;
 
 import java.util.Collection;
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.repo.common.activity.run.ActivityRunException;
 import com.evolveum.midpoint.repo.common.activity.run.SearchSpecification;
+import com.evolveum.midpoint.schema.util.task.ActivityItemProcessingStatisticsUtil;
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -22,6 +29,8 @@ import org.jetbrains.annotations.NotNull;
 import com.evolveum.midpoint.model.impl.util.ModelImplUtils;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.query.builder.S_FilterExit;
 import com.evolveum.midpoint.provisioning.api.ResourceObjectShadowChangeDescription;
 import com.evolveum.midpoint.repo.common.activity.run.ActivityRunInstantiationContext;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityState;
@@ -33,6 +42,7 @@ import com.evolveum.midpoint.schema.SchemaService;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.schema.util.ShadowUtil;
 import com.evolveum.midpoint.task.api.RunningTask;
 import com.evolveum.midpoint.task.api.Task;
@@ -42,13 +52,24 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
 /**
- * Scans shadows for unfinished operations and tries to finish them.
+ * Processes shadows that were not seen during the resource objects reconciliation. Each one is checked on the resource;
+ * if the resource object does not exist, the deletion is synchronized.
+ *
+ * In the set-based mode (see {@link ReconciliationWorkDefinition#isSetBasedRemainingShadows()}), live shadows are
+ * not checked on the resource, if the resource objects reconciliation was complete and without errors: the absence
+ * from the complete result of the search is considered a proof that the object is gone. See {@link #isSetBasedModeApplicable(
+ * OperationResult)} and {@link #canSkipResourceCheck(ShadowType)} for the details. If there are too many such shadows
+ * (see {@link ReconciliationWorkDefinition#getSetBasedRemainingShadowsMaxDeletions()}), all of them are checked
+ * on the resource, as a protection against mass deletion.
  */
 final class RemainingShadowsActivityRun
         extends PartialReconciliationActivityRun {
 
     private static final Trace LOGGER = TraceManager.getTrace(RemainingShadowsActivityRun.class);
 
+    /** Start of the resource objects reconciliation; set only if the set-based mode is applicable. */
+    private XMLGregorianCalendar setBasedModeReconciliationStart;
+
     RemainingShadowsActivityRun(
             @NotNull ActivityRunInstantiationContext<ReconciliationWorkDefinition, ReconciliationActivityHandler> context,
             String shortNameCapitalized) {
@@ -56,6 +77,82 @@ final class RemainingShadowsActivityRun
         setInstanceReady();
     }
 
+    @Override
+    public void beforeRun(OperationResult result) throws CommonException, ActivityRunException {
+        super.beforeRun(result);
+        if (isSetBasedModeApplicable(result)) {
+            setBasedModeReconciliationStart = getReconciliationStartTimestamp(result);
+        }
+    }
+
+    /**
+     * The set-based mode can be used only if the resource objects reconciliation (the one executed in the same mode
+     * as this activity) has seen all the objects: it must be complete, with no failed items, and not restricted by a query
+     * or by a failed objects selector.
+     * The statistics are accumulated over all the runs, so the errors are not forgotten when the activity is resumed.
+     * Delegated or distributed activities keep their statistics in subtasks, so they are conservatively excluded.
+     *
+     * Finally, the number of live shadows not seen must not exceed the configured maximum.
+     */
+    private boolean isSetBasedModeApplicable(OperationResult result) throws SchemaException, ObjectNotFoundException {
+        if (!getWorkDefinition().isSetBasedRemainingShadows()) {
+            return false;
+        }
+        ResourceObjectSetType resourceObjects = getWorkDefinition().getResourceObjectSetSpecification();
+        if (resourceObjects.getQuery() != null || resourceObjects.getFailedObjectsSelector() != null) {
+            LOGGER.debug("Set-based mode is not applicable, because the resource objects are restricted by a query "
+                    + "or by a failed objects selector");
+            return false;
+        }
+        ActivityPath resourceObjectsPath = getActivityPath().allExceptLast().append(
+                RECONCILIATION_REMAINING_SHADOWS_PREVIEW_ID.equals(getActivityPath().last()) ?
+                        RECONCILIATION_RESOURCE_OBJECTS_PREVIEW_ID : RECONCILIATION_RESOURCE_OBJECTS_ID);
+        ActivityState resourceObjectsState = ActivityState.getActivityStateUpwards(
+                resourceObjectsPath, getRunningTask(), null, getBeans(), result);
+        if (resourceObjectsState.getBucketingRole() == BucketsProcessingRoleType.COORDINATOR
+                || resourceObjectsState.getWorkStateReferenceRealValue(DelegationWorkStateType.F_TASK_REF) != null) {
+            LOGGER.debug("Set-based mode is not applicable, because resource objects were processed in subtask(s)");
+            return false;
+        }
+        if (!resourceObjectsState.isComplete()) {
+            LOGGER.debug("Set-based mode is not applicable, because resource objects reconciliation is not complete");
+            return false;
+        }
+        int failures = ActivityItemProcessingStatisticsUtil.getItemsProcessedWithFailure(
+                resourceObjectsState.getItemProcessingStatistics());
+        if (failures > 0 || resourceObjectsState.getResultStatus() == OperationResultStatus.FATAL_ERROR
+                || resourceObjectsState.getResultStatus() == OperationResultStatus.PARTIAL_ERROR) {
+            LOGGER.debug("Set-based mode is not applicable, because resource objects reconciliation had errors "
+                    + "(failed items: {}, status: {})", failures, resourceObjectsState.getResultStatus());
+            return false;
+        }
+        int maxDeletions = getWorkDefinition().getSetBasedRemainingShadowsMaxDeletions();
+        int liveShadowsNotSeen = countLiveShadowsNotSeen(result);
+        if (liveShadowsNotSeen > maxDeletions) {
+            LOGGER.warn("Set-based mode is not applicable, because there are {} live shadows not seen by the resource objects "
+                    + "reconciliation, which is more than the maximum of {}. They will be checked on the resource.",
+                    liveShadowsNotSeen, maxDeletions);
+            return false;
+        }
+        LOGGER.debug("Using set-based mode: {} live shadow(s) not seen by resource objects reconciliation are considered gone",
+                liveShadowsNotSeen);
+        return true;
+    }
+
+    /**
+     * Counts shadows that would be considered gone. Shadows of the object class not matching the objects filter
+     * are counted as well, so the number may be overestimated; this is on the safe side.
+     */
+    private int countLiveShadowsNotSeen(OperationResult result) throws SchemaException, ObjectNotFoundException {
+        ObjectQuery query = queryForShadowsNotSeen(result)
+                .and().block()
+                    .item(ShadowType.F_DEAD).isNull()
+                    .or().item(ShadowType.F_DEAD).eq(false)
+                    .endBlock()
+                .build();
+        return getBeans().repositoryService.countObjects(ShadowType.class, query, null, result);
+    }
+
     @Override
     public boolean doesRequireDirectRepositoryAccess() {
         return true;
@@ -75,6 +172,13 @@ final class RemainingShadowsActivityRun
     @Override
     public void customizeQuery(@NotNull SearchSpecification<ShadowType> searchSpecification, OperationResult result)
             throws SchemaException, ObjectNotFoundException {
+        searchSpecification.setQuery(
+                queryForShadowsNotSeen(result).build());
+    }
+
+    /** Query for the shadows not seen by the resource objects reconciliation. */
+    private @NotNull S_FilterExit queryForShadowsNotSeen(OperationResult result)
+            throws SchemaException, ObjectNotFoundException {
 
         // We doing dry run or preview, we must look after synchronizationTimestamp, because this is the one that
         // is updated in resource objects activity in dry run or preview mode. However, when doing execution,
@@ -89,15 +193,13 @@ final class RemainingShadowsActivityRun
                         ShadowType.F_SYNCHRONIZATION_TIMESTAMP;
 
         // TODO maybe we should filter on kind/intent here as well, and not rely on objectsFilter?
-        searchSpecification.setQuery(
-                getBeans().prismContext.queryFor(ShadowType.class)
-                        .block()
-                            .item(syncTimestampItem).le(getReconciliationStartTimestamp(result))
-                            .or().item(syncTimestampItem).isNull()
-                            .endBlock()
-                        .and().item(ShadowType.F_RESOURCE_REF).ref(processingScope.getResourceOid())
-                        .and().item(ShadowType.F_OBJECT_CLASS).eq(processingScope.getResolvedObjectClassName())
-                        .build());
+        return getBeans().prismContext.queryFor(ShadowType.class)
+                .block()
+                    .item(syncTimestampItem).le(getReconciliationStartTimestamp(result))
+                    .or().item(syncTimestampItem).isNull()
+                    .endBlock()
+                .and().item(ShadowType.F_RESOURCE_REF).ref(processingScope.getResourceOid())
+                .and().item(ShadowType.F_OBJECT_CLASS).eq(processingScope.getResolvedObjectClassName());
     }
 
     private @NotNull XMLGregorianCalendar getReconciliationStartTimestamp(OperationResult opResult)
@@ -148,6 +250,13 @@ final class RemainingShadowsActivityRun
             throws CommonException {
         LOGGER.trace("Reconciling shadow {}, fullSynchronizationTimestamp={}", shadow,
                 shadow.getFullSynchronizationTimestamp());
+        if (canSkipResourceCheck(shadow)) {
+            LOGGER.debug("Shadow was not seen by complete resource objects reconciliation, the object is gone: {}", shadow);
+            PrismObject<ShadowType> mutableShadow = shadow.asPrismObject().cloneIfImmutable();
+            getModelBeans().provisioningService.markShadowTombstone(mutableShadow, task, result);
+            reactResourceObjectGone(mutableShadow.asObjectable(), requestIdentifier, task, result);
+            return;
+        }
         try {
             // For a long time, the forceRefresh option was turned off in dry run mode.
             // However, it looks like we should apply it each time, to (e.g.) force deletion of dead shadows
@@ -167,7 +276,36 @@ final class RemainingShadowsActivityRun
         }
     }
 
-    private void handleNoException(
+    /**
+     * In the set-based mode, only regular live shadows are considered gone without checking. Others (dead, not existing yet,
+     * with pending operations) are checked on the resource, so that their specific handling in provisioning is applied.
+     * The same goes for shadows seen by the resource objects reconciliation but not fully synchronized (e.g. not visible
+     * because of their lifecycle state), as their basic synchronization timestamp was updated.
+     *
+     * Shadows created after the resource objects reconciliation started (e.g. by a concurrent provisioning operation)
+     * could not have been seen by it, so they are checked as well. The same goes for shadows without creation timestamp.
+     */
+    private boolean canSkipResourceCheck(ShadowType shadow) {
+        if (setBasedModeReconciliationStart == null
+                || ShadowUtil.isDead(shadow)
+                || !ShadowUtil.isExists(shadow)
+                || !shadow.getPendingOperation().isEmpty()
+                || !wasCreatedBeforeReconciliationStart(shadow)) {
+            return false;
+        }
+        XMLGregorianCalendar syncTimestamp = shadow.getSynchronizationTimestamp();
+        return syncTimestamp == null
+                || XmlTypeConverter.toMillis(syncTimestamp) <= XmlTypeConverter.toMillis(setBasedModeReconciliationStart);
+    }
+
+    private boolean wasCreatedBeforeReconciliationStart(ShadowType shadow) {
+        MetadataType metadata = shadow.getMetadata();
+        XMLGregorianCalendar createTimestamp = metadata != null ? metadata.getCreateTimestamp() : null;
+        return createTimestamp != null
+                && XmlTypeConverter.toMillis(createTimestamp) < XmlTypeConverter.toMillis(setBasedModeReconciliationStart);
+    }
+
+        private void handleNoException(
             ShadowType shadowFetched, String requestIdentifier, Task task, OperationResult result)
             throws CommonException {
         // Here are e.g. tombstones or protected shadows. The former may need synchronization, if they were not synced yet.
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableRowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+
+/**
+ * Tests loading and invalidation of dictionaries in {@link LookupTableDictionaryCache}, especially under concurrency.
+ */
+public class TestLookupTableDictionaryCache extends AbstractUnitTest {
+
+    private static final String TABLE_OID = "7f3c2a1e-6b5d-4c8e-9f0a-2b3c4d5e6f01";
+    private static final int THREADS = 8;
+    private static final long TIMEOUT = 10;
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+    }
+
+    @Test
+    public void test100ConcurrentMissesLoadTheTableOnce() throws Exception {
+        given("cache with a slow repository");
+        TestCache cache = new TestCache();
+        cache.blockLoading();
+
+        when("the table is looked up from more threads concurrently");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> lookup(cache, "a")));
+            }
+            cache.awaitLoadingStarted();
+            Thread.sleep(200); // let the other threads reach the cache
+            cache.unblockLoading();
+
+            then("all threads get the value");
+            for (Future<String> future : futures) {
+                assertThat(future.get(TIMEOUT, TimeUnit.SECONDS)).isEqualTo("A1");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        then("the table was loaded once");
+        assertThat(cache.loads.get()).isEqualTo(1);
+
+        when("the table is looked up again");
+        String value = lookup(cache, "a");
+
+        then("the dictionary is reused");
+        assertThat(value).isEqualTo("A1");
+        assertThat(cache.loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void test110InvalidationDuringLoadIsNotLost() throws Exception {
+        given("cache with a slow repository");
+        TestCache cache = new TestCache();
+        cache.blockLoading();
+
+        when("the table is changed while its dictionary is being loaded");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> future = executor.submit(() -> lookup(cache, "a"));
+            cache.awaitLoadingStarted();
+            cache.version = 2;
+            cache.invalidate(LookupTableType.class, TABLE_OID, null);
+            cache.unblockLoading();
+
+            then("the lookup that started before the change gets the old value");
+            assertThat(future.get(TIMEOUT, TimeUnit.SECONDS)).isEqualTo("A1");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        when("the table is looked up again");
+        String value = lookup(cache, "a");
+
+        then("the new version is loaded");
+        assertThat(value).isEqualTo("A2");
+        assertThat(cache.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void test120FailedLoadIsNotCached() throws Exception {
+        given("cache with a table that does not exist (yet)");
+        TestCache cache = new TestCache();
+        cache.missing = true;
+
+        when("the table is looked up");
+        then("the lookup fails");
+        assertThatThrownBy(() -> lookup(cache, "a"))
+                .isInstanceOf(ObjectNotFoundException.class);
+
+        when("the table is created and looked up again");
+        cache.missing = false;
+        String value = lookup(cache, "a");
+
+        then("it is loaded");
+        assertThat(value).isEqualTo("A1");
+        assertThat(cache.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void test130UnrelatedInvalidationsAreIgnored() throws Exception {
+        given("cache with a loaded dictionary");
+        TestCache cache = new TestCache();
+        lookup(cache, "a");
+
+        when("an object of other type is changed");
+        cache.invalidate(RoleType.class, TABLE_OID, null);
+
+        then("the dictionary is kept");
+        assertThat(lookup(cache, "b")).isEqualTo("B1");
+        assertThat(lookup(cache, "x")).isNull();
+        assertThat(cache.loads.get()).isEqualTo(1);
+
+        when("all the lookup tables are invalidated");
+        cache.invalidate(null, null, null);
+
+        then("the dictionary is loaded again");
+        assertThat(lookup(cache, "a")).isEqualTo("A1");
+        assertThat(cache.loads.get()).isEqualTo(2);
+    }
+
+    /** A change that was not reported to this node (e.g. made on another one) is found by the version check. */
+    @Test
+    public void test140ChangeWithoutInvalidationIsFoundByVersionCheck() throws Exception {
+        given("cache with a loaded dictionary");
+        TestCache cache = new TestCache();
+        lookup(cache, "a");
+
+        when("the table is changed without invalidation, and looked up before the version check is due");
+        cache.version = 2;
+
+        then("the dictionary is reused, without checking the version");
+        assertThat(lookup(cache, "a")).isEqualTo("A1");
+        assertThat(cache.versionChecks.get()).isEqualTo(0);
+        assertThat(cache.loads.get()).isEqualTo(1);
+
+        when("the table is looked up after the version check is due");
+        cache.versionCheckInterval = 0;
+
+        then("the new version is loaded");
+        assertThat(lookup(cache, "a")).isEqualTo("A2");
+        assertThat(cache.versionChecks.get()).isEqualTo(1);
+        assertThat(cache.loads.get()).isEqualTo(2);
+
+        when("the table is looked up again, without a change");
+        then("the dictionary is reused after the version check");
+        assertThat(lookup(cache, "b")).isEqualTo("B2");
+        assertThat(cache.versionChecks.get()).isEqualTo(2);
+        assertThat(cache.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void test150NumberOfDictionariesIsBounded() throws Exception {
+        given("cache with many lookup tables");
+        TestCache cache = new TestCache();
+        int tables = 150;
+
+        when("all the tables are looked up");
+        for (int i = 0; i < tables; i++) {
+            lookup(cache, tableOid(i), "a");
+            Thread.sleep(1); // to have distinct last access times
+        }
+
+        then("not all the dictionaries are kept");
+        int size = cache.getStateInformation().iterator().next().getSize();
+        displayValue("cached dictionaries", size);
+        assertThat(size).isLessThan(tables);
+        assertThat(cache.loads.get()).isEqualTo(tables);
+
+        when("the most recently used table is looked up again");
+        lookup(cache, tableOid(tables - 1), "a");
+
+        then("its dictionary is reused");
+        assertThat(cache.loads.get()).isEqualTo(tables);
+
+        when("the first table is looked up again");
+        lookup(cache, tableOid(0), "a");
+
+        then("it is loaded again");
+        assertThat(cache.loads.get()).isEqualTo(tables + 1);
+    }
+
+    private static String tableOid(int i) {
+        return String.format("7f3c2a1e-6b5d-4c8e-9f0a-%012d", i);
+    }
+
+    private String lookup(LookupTableDictionaryCache cache, String key) throws ObjectNotFoundException, SchemaException {
+        return lookup(cache, TABLE_OID, key);
+    }
+
+    private String lookup(LookupTableDictionaryCache cache, String oid, String key)
+            throws ObjectNotFoundException, SchemaException {
+        LookupTableDictionaryCache.Row row =
+                cache.getRow(oid, key, new OperationResult(TestLookupTableDictionaryCache.class.getName() + ".lookup"));
+        return row != null ? row.getValue() : null;
+    }
+
+    /** Cache with a simulated repository: rows have values suffixed by the current table version. */
+    private static class TestCache extends LookupTableDictionaryCache {
+
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger versionChecks = new AtomicInteger();
+        private volatile long versionCheckInterval = TimeUnit.HOURS.toMillis(1);
+        private final CountDownLatch loadingStarted = new CountDownLatch(1);
+        private volatile CountDownLatch loadingAllowed = new CountDownLatch(0);
+        private volatile int version = 1;
+        private volatile boolean missing;
+
+        void blockLoading() {
+            loadingAllowed = new CountDownLatch(1);
+        }
+
+        void unblockLoading() {
+            loadingAllowed.countDown();
+        }
+
+        void awaitLoadingStarted() throws InterruptedException {
+            assertThat(loadingStarted.await(TIMEOUT, TimeUnit.SECONDS)).as("loading started").isTrue();
+        }
+
+        @Override
+        @NotNull PrismObject<LookupTableType> getTable(@NotNull String oid, @NotNull OperationResult result)
+                throws ObjectNotFoundException {
+            loads.incrementAndGet();
+            if (missing) {
+                throw new ObjectNotFoundException("Lookup table " + oid + " does not exist", LookupTableType.class, oid);
+            }
+            int currentVersion = version;
+            loadingStarted.countDown();
+            try {
+                if (!loadingAllowed.await(TIMEOUT, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Loading was not allowed in time");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new LookupTableType()
+                    .oid(oid)
+                    .name("table")
+                    .version(String.valueOf(currentVersion))
+                    .row(new LookupTableRowType().key("a").value("A" + currentVersion))
+                    .row(new LookupTableRowType().key("b").value("B" + currentVersion))
+                    .asPrismObject();
+        }
+
+        @Override
+        String getTableVersion(@NotNull String oid, @NotNull OperationResult result) throws ObjectNotFoundException {
+            versionChecks.incrementAndGet();
+            if (missing) {
+                throw new ObjectNotFoundException("Lookup table " + oid + " does not exist", LookupTableType.class, oid);
+            }
+            return String.valueOf(version);
+        }
+
+        @Override
+        long getVersionCheckInterval() {
+            return versionCheckInterval;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Tests handling (and sharing) of old and current object in {@link ElementState}.
+ */
+public class TestElementState extends AbstractUnitTest {
+
+    private static final String USER_OID = "a6e3ac7c-3c0b-4a5c-bb5b-48f1c9a1dd26";
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+    }
+
+    @Test
+    public void test100LoadedObjectIsNotFrozen() {
+        given("a loaded (mutable) object");
+        ElementState<UserType> state = createState();
+        PrismObject<UserType> user = createUser();
+
+        when("it is set as old and current object");
+        state.setCurrentAndOptionallyOld(user, true);
+
+        then("it is used as the current object, and it is not frozen");
+        assertThat(state.getCurrentObject()).isSameAs(user);
+        assertThat(user.isImmutable()).as("loaded object is immutable").isFalse();
+
+        and("the old object is a separate copy");
+        assertThat(state.getOldObject()).isNotSameAs(user);
+        assertThat(state.getOldObject().equivalent(user)).as("old object equivalent to loaded one").isTrue();
+
+        and("the current object can be modified in place, without affecting the old one");
+        state.getCurrentObject().asObjectable().setGivenName(new PolyStringType("changed"));
+        assertThat(state.getOldObject().asObjectable().getGivenName()).isNull();
+    }
+
+    @Test
+    public void test105ImmutableLoadedObjectIsShared() {
+        given("a loaded immutable object");
+        ElementState<UserType> state = createState();
+        PrismObject<UserType> user = createUser();
+        user.freeze();
+
+        when("it is set as old and current object");
+        state.setCurrentAndOptionallyOld(user, true);
+
+        then("it is used as the old object directly");
+        assertThat(state.getOldObject()).isSameAs(user);
+
+        and("the current object is a mutable copy");
+        assertThat(state.getCurrentObject()).isNotSameAs(user);
+        assertThat(state.getCurrentObject().isImmutable()).as("current object is immutable").isFalse();
+        state.getCurrentObject().asObjectable().setGivenName(new PolyStringType("changed"));
+        assertThat(state.getOldObject().asObjectable().getGivenName()).isNull();
+    }
+
+    @Test
+    public void test110ModifyingCurrentObjectDoesNotAffectOldObject() throws SchemaException {
+        given("a state with old and current object");
+        ElementState<UserType> state = createState();
+        PrismObject<UserType> user = createUser();
+        state.setCurrentAndOptionallyOld(user, true);
+
+        when("a modification is applied to the current object");
+        state.simulateDeltaExecution(createGivenNameDelta("Jack"));
+
+        then("the current object is modified, the old one is not");
+        assertThat(state.getCurrentObject().asObjectable().getGivenName().getOrig()).isEqualTo("Jack");
+        assertThat(state.getOldObject().asObjectable().getGivenName()).isNull();
+    }
+
+    @Test
+    public void test120EmptyDeltaDoesNotCopy() throws SchemaException {
+        given("a state with old and current object");
+        ElementState<UserType> state = createState();
+        PrismObject<UserType> user = createUser();
+        state.setCurrentAndOptionallyOld(user, true);
+        PrismObject<UserType> oldObject = state.getOldObject();
+
+        when("an empty delta is applied to the current object");
+        state.simulateDeltaExecution(
+                PrismContext.get().deltaFactory().object().createEmptyModifyDelta(UserType.class, USER_OID));
+
+        then("the objects are not copied");
+        assertThat(state.getCurrentObject()).isSameAs(user);
+        assertThat(state.getOldObject()).isSameAs(oldObject);
+    }
+
+    @Test
+    public void test130MissingContainerIdsAreGeneratedInCurrentObject() throws SchemaException {
+        given("a state with an immutable old object having an assignment without ID");
+        ElementState<UserType> state = createState();
+        PrismObject<UserType> user = createUser();
+        user.asObjectable().getAssignment().add(new AssignmentType().description("no id"));
+        user.freeze();
+        state.setCurrentAndOptionallyOld(user, true);
+
+        when("an empty delta is applied to the current object");
+        state.simulateDeltaExecution(
+                PrismContext.get().deltaFactory().object().createEmptyModifyDelta(UserType.class, USER_OID));
+
+        then("the ID is generated in the current object only");
+        assertThat(state.getCurrentObject()).isNotSameAs(user);
+        assertThat(state.getCurrentObject().asObjectable().getAssignment().get(0).getId()).isNotNull();
+        assertThat(state.getOldObject().asObjectable().getAssignment().get(0).getId()).isNull();
+    }
+
+    @Test
+    public void test140CurrentObjectOnlyIsNotFrozen() {
+        given("a loaded object");
+        ElementState<UserType> state = createState();
+        PrismObject<UserType> user = createUser();
+
+        when("it is set as the current object only");
+        state.setCurrentAndOptionallyOld(user, false);
+
+        then("it is not frozen");
+        assertThat(state.getOldObject()).isNull();
+        assertThat(state.getCurrentObject()).isSameAs(user);
+        assertThat(user.isImmutable()).isFalse();
+    }
+
+    private ElementState<UserType> createState() {
+        return new ElementState<>(UserType.class, o -> o, o -> o);
+    }
+
+    private PrismObject<UserType> createUser() {
+        UserType user = new UserType()
+                .oid(USER_OID)
+                .name("jack");
+        return user.asPrismObject();
+    }
+
+    private ObjectDelta<UserType> createGivenNameDelta(String givenName) throws SchemaException {
+        return PrismContext.get().deltaFor(UserType.class)
+                .item(UserType.F_GIVEN_NAME).replace(PolyString.fromOrig(givenName))
+                .asObjectDelta(USER_OID);
+    }
+}
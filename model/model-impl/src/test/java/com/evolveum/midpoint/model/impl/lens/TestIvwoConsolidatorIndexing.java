@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.model.common.mapping.PrismValueDeltaSetTripleProducer;
+import com.evolveum.midpoint.model.impl.lens.projector.ValueMatcher;
+import com.evolveum.midpoint.prism.MutablePrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismConstants;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.delta.DeltaSetTriple;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.PrismValueDeltaSetTriple;
+import com.evolveum.midpoint.prism.impl.match.MatchingRuleRegistryFactory;
+import com.evolveum.midpoint.prism.match.MatchingRule;
+import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MappingStrengthType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Checks that the hash-indexed categorization of values in {@link IvwoConsolidator} (used for matching rules supporting
+ * normalized keys, see {@link ValueMatcher#supportsNormalizedKey()}) gives the same results as the sequential one.
+ *
+ * The values include the ones where the matching is not equivalent to comparing the lower-case forms (non-ASCII letters,
+ * DNs differing in spaces), as these must not be indexed.
+ */
+public class TestIvwoConsolidatorIndexing extends AbstractUnitTest {
+
+    private static final ItemName ATTR_NAME = new ItemName("http://midpoint.evolveum.com/xml/ns/test", "member");
+
+    private static final List<String> CASE_IGNORE_VALUES = List.of(
+            "alice", "Alice", "ALICE", "bob", "Bob ", "BOB",
+            "σ", "Σ", "ς", // sigma, Sigma, final sigma
+            "K", "k", "K", // Kelvin sign
+            "straße", "STRASSE", "İ", "i", "I", "ſ", "s", "S"); // sharp s, dotted I, long s
+
+    private static final List<String> UUID_VALUES = List.of(
+            "c0ffee00-1234-5678-9abc-00000000000a", "C0FFEE00-1234-5678-9ABC-00000000000A",
+            "c0ffee00-1234-5678-9abc-00000000000b");
+
+    private static final List<String> DN_VALUES = List.of(
+            "cn=alice,ou=people,dc=example,dc=com", "CN=Alice,OU=People,DC=Example,DC=com",
+            "cn=alice, ou=people, dc=example, dc=com", "cn=alice,ou=People,dc=example,dc=com",
+            "cn=bob,ou=people,dc=example,dc=com", "cn=Bob\\,Jr,ou=people,dc=example,dc=com",
+            "cn=bob\\,jr,ou=people,dc=example,dc=com", "uid=bob+cn=Bob,ou=people,dc=example,dc=com",
+            "cn=ŝ,dc=example,dc=com", "cn=Ŝ,dc=example,dc=com");
+
+    /** Not DNs at all. The matching rule cannot compare them; they are used only when checking the keys. */
+    private static final List<String> INVALID_DN_VALUES = List.of("alice", "ALICE", "cn=", "=alice");
+
+    private PrismPropertyDefinition<String> definition;
+    private MatchingRuleRegistry matchingRuleRegistry;
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+        MutablePrismPropertyDefinition<String> definition =
+                PrismContext.get().definitionFactory().createPropertyDefinition(ATTR_NAME, DOMUtil.XSD_STRING);
+        definition.setMaxOccurs(-1);
+        this.definition = definition;
+        matchingRuleRegistry = MatchingRuleRegistryFactory.createRegistry();
+    }
+
+    /** Values have equal keys if and only if they match; and the key-based lookup gives the same result as the scan. */
+    @Test
+    public void test100KeysAgreeWithMatching() throws SchemaException {
+        checkKeys(PrismConstants.STRING_IGNORE_CASE_MATCHING_RULE_NAME, CASE_IGNORE_VALUES);
+        checkKeys(PrismConstants.UUID_MATCHING_RULE_NAME, UUID_VALUES);
+        checkKeys(PrismConstants.DISTINGUISHED_NAME_MATCHING_RULE_NAME, DN_VALUES);
+        checkKeys(PrismConstants.DISTINGUISHED_NAME_MATCHING_RULE_NAME, INVALID_DN_VALUES);
+    }
+
+    @Test
+    public void test110NoKeysForOtherMatchingRules() throws SchemaException {
+        checkNoKeys(PrismConstants.DEFAULT_MATCHING_RULE_NAME, DOMUtil.XSD_STRING, "alice");
+        for (QName ruleName : List.of(
+                PrismConstants.POLY_STRING_STRICT_MATCHING_RULE_NAME,
+                PrismConstants.POLY_STRING_ORIG_MATCHING_RULE_NAME,
+                PrismConstants.POLY_STRING_NORM_MATCHING_RULE_NAME)) {
+            checkNoKeys(ruleName, PolyStringType.COMPLEX_TYPE, new PolyString("alice"));
+        }
+    }
+
+    /** The consolidation gives the same delta with and without indexing, for various distributions of the values. */
+    @Test
+    public void test200ConsolidationIsSameAsSequential() throws CommonException {
+        checkConsolidation(PrismConstants.STRING_IGNORE_CASE_MATCHING_RULE_NAME, CASE_IGNORE_VALUES);
+        checkConsolidation(PrismConstants.UUID_MATCHING_RULE_NAME, UUID_VALUES);
+        checkConsolidation(PrismConstants.DISTINGUISHED_NAME_MATCHING_RULE_NAME, DN_VALUES);
+    }
+
+    /**
+     * A big group membership attribute: 90% of the values are kept (with different letter case), 10% removed,
+     * and 10% new ones added.
+     */
+    @Test
+    public void test210BigItem() throws CommonException {
+        int size = 5_000;
+        List<String> existing = new ArrayList<>();
+        List<String> plus = new ArrayList<>();
+        List<String> zero = new ArrayList<>();
+        List<String> minus = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String value = "cn=member-" + i + ",ou=people,dc=example,dc=com";
+            existing.add(value);
+            if (i % 10 == 0) {
+                minus.add(value.toUpperCase());
+            } else {
+                zero.add(value.toUpperCase());
+            }
+        }
+        for (int i = size; i < size + size / 10; i++) {
+            plus.add("cn=member-" + i + ",ou=people,dc=example,dc=com");
+        }
+
+        MatchingRule<String> rule = getRule(PrismConstants.DISTINGUISHED_NAME_MATCHING_RULE_NAME);
+        long start = System.currentTimeMillis();
+        DeltaValues indexed = consolidate(new ValueMatcher<>(rule), existing, plus, zero, minus);
+        display("Indexed consolidation of " + size + " values: " + (System.currentTimeMillis() - start) + " ms");
+        start = System.currentTimeMillis();
+        DeltaValues sequential = consolidate(sequentialMatcher(rule), existing, plus, zero, minus);
+        display("Sequential consolidation of " + size + " values: " + (System.currentTimeMillis() - start) + " ms");
+
+        assertThat(indexed.toAdd).as("values to add").hasSize(size / 10);
+        assertThat(indexed.toDelete).as("values to delete").hasSize(size / 10);
+        assertThat(indexed).as("indexed consolidation result").isEqualTo(sequential);
+    }
+
+    private void checkNoKeys(QName ruleName, QName type, Object value) throws SchemaException {
+        ValueMatcher<Object> matcher = new ValueMatcher<>(matchingRuleRegistry.getMatchingRule(ruleName, type));
+        assertThat(matcher.supportsNormalizedKey()).as("normalized keys for " + ruleName).isFalse();
+        assertThat(matcher.getNormalizedKey(value)).as("key for " + ruleName).isNull();
+    }
+
+    private void checkKeys(QName ruleName, List<String> values) throws SchemaException {
+        MatchingRule<String> rule = getRule(ruleName);
+        ValueMatcher<String> matcher = new ValueMatcher<>(rule);
+        assertThat(matcher.supportsNormalizedKey()).as("normalized keys for " + ruleName).isTrue();
+        for (String a : values) {
+            for (String b : values) {
+                String keyA = matcher.getNormalizedKey(a);
+                String keyB = matcher.getNormalizedKey(b);
+                if (keyA != null && keyB != null) {
+                    assertThat(keyA.equals(keyB))
+                            .as("keys of '%s' and '%s' equal (%s)", a, b, ruleName)
+                            .isEqualTo(rule.match(a, b));
+                }
+            }
+        }
+
+        // Lookup of each value in each "prefix" of the value list, with and without keys.
+        ValueMatcher<String> sequentialMatcher = sequentialMatcher(rule);
+        for (int size = 0; size <= values.size(); size++) {
+            PrismProperty<String> property = definition.instantiate();
+            values.subList(0, size).forEach(property::addRealValue);
+            Set<String> keys = matcher.getNormalizedKeys(property.getRealValues());
+            for (String value : values) {
+                PrismPropertyValue<String> pValue = PrismContext.get().itemFactory().createPropertyValue(value);
+                assertThat(matcher.hasRealValue(property, keys, pValue))
+                        .as("'%s' found in %s (%s)", value, property.getRealValues(), ruleName)
+                        .isEqualTo(sequentialMatcher.hasRealValue(property, pValue));
+            }
+        }
+    }
+
+    /**
+     * Each value is put into the existing item, zero set, plus set and minus set (or a combination of them), with the
+     * assignment being rotated. The values are also processed in various orders.
+     */
+    private void checkConsolidation(QName ruleName, List<String> values) throws CommonException {
+        MatchingRule<String> rule = getRule(ruleName);
+        int n = values.size();
+        for (int rotation = 0; rotation < 6; rotation++) {
+            for (int offset = 0; offset < n; offset += 3) {
+                List<String> existing = new ArrayList<>();
+                List<String> plus = new ArrayList<>();
+                List<String> zero = new ArrayList<>();
+                List<String> minus = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    String value = values.get((i + offset) % n);
+                    int category = (i + rotation) % 6;
+                    if (category <= 1 || category == 4) {
+                        existing.add(value);
+                    }
+                    if (category == 1 || category == 5) {
+                        zero.add(value);
+                    } else if (category == 2) {
+                        plus.add(value);
+                    } else if (category >= 3) {
+                        minus.add(value);
+                    }
+                }
+                DeltaValues indexed = consolidate(new ValueMatcher<>(rule), existing, plus, zero, minus);
+                DeltaValues sequential = consolidate(sequentialMatcher(rule), existing, plus, zero, minus);
+                assertThat(indexed)
+                        .as("result for %s; existing: %s, plus: %s, zero: %s, minus: %s", ruleName, existing, plus, zero, minus)
+                        .isEqualTo(sequential);
+            }
+        }
+    }
+
+    private MatchingRule<String> getRule(QName ruleName) throws SchemaException {
+        return matchingRuleRegistry.getMatchingRule(ruleName, DOMUtil.XSD_STRING);
+    }
+
+    /** The same matching, but without indexing, i.e. the original sequential algorithm. */
+    private static ValueMatcher<String> sequentialMatcher(MatchingRule<String> rule) {
+        return new ValueMatcher<>(rule) {
+            @Override
+            public boolean supportsNormalizedKey() {
+                return false;
+            }
+        };
+    }
+
+    private DeltaValues consolidate(ValueMatcher<String> valueMatcher,
+            List<String> existingValues, List<String> plus, List<String> zero, List<String> minus)
+            throws CommonException {
+        PrismProperty<String> existing = definition.instantiate();
+        existingValues.forEach(existing::addRealValue);
+        DeltaSetTriple<ItemValueWithOrigin<PrismPropertyValue<String>, PrismPropertyDefinition<String>>> triple =
+                PrismContext.get().deltaFactory().createDeltaSetTriple();
+        TestMapping mapping = new TestMapping();
+        plus.forEach(value -> triple.addToPlusSet(ivwo(value, mapping)));
+        zero.forEach(value -> triple.addToZeroSet(ivwo(value, mapping)));
+        minus.forEach(value -> triple.addToMinusSet(ivwo(value, mapping)));
+
+        OperationResult result = new OperationResult(TestIvwoConsolidatorIndexing.class.getName() + ".consolidate");
+        try (IvwoConsolidator<PrismPropertyValue<String>, PrismPropertyDefinition<String>,
+                ItemValueWithOrigin<PrismPropertyValue<String>, PrismPropertyDefinition<String>>> consolidator =
+                new IvwoConsolidatorBuilder<PrismPropertyValue<String>, PrismPropertyDefinition<String>,
+                        ItemValueWithOrigin<PrismPropertyValue<String>, PrismPropertyDefinition<String>>>()
+                        .itemPath(ATTR_NAME)
+                        .ivwoTriple(triple)
+                        .itemDefinition(definition)
+                        .existingItem(existing)
+                        .existingItemKnown(true)
+                        .valueMatcher(valueMatcher)
+                        .strengthSelector(StrengthSelector.ALL_EXCEPT_WEAK)
+                        .contextDescription("indexing test")
+                        .result(result)
+                        .build()) {
+            return new DeltaValues(consolidator.consolidateToDeltaNoMetadata());
+        }
+    }
+
+    private ItemValueWithOrigin<PrismPropertyValue<String>, PrismPropertyDefinition<String>> ivwo(
+            String value, TestMapping mapping) {
+        return new ItemValueWithOrigin<>(
+                PrismContext.get().itemFactory().createPropertyValue(value), mapping, null);
+    }
+
+    /** Real values of a delta, in comparable form. */
+    private record DeltaValues(List<String> toAdd, List<String> toDelete, List<String> toReplace) {
+
+        private DeltaValues(ItemDelta<PrismPropertyValue<String>, PrismPropertyDefinition<String>> delta) {
+            this(sorted(delta.getValuesToAdd()), sorted(delta.getValuesToDelete()), sorted(delta.getValuesToReplace()));
+        }
+
+        private static List<String> sorted(Collection<PrismPropertyValue<String>> values) {
+            if (values == null) {
+                return List.of();
+            }
+            return values.stream()
+                    .map(PrismPropertyValue::getRealValue)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** Minimalistic strong mapping, as the consolidator looks only at its basic properties. */
+    private static class TestMapping
+            implements PrismValueDeltaSetTripleProducer<PrismPropertyValue<String>, PrismPropertyDefinition<String>> {
+
+        @Override
+        public QName getMappingQName() {
+            return ATTR_NAME;
+        }
+
+        @Override
+        public PrismValueDeltaSetTriple<PrismPropertyValue<String>> getOutputTriple() {
+            return null;
+        }
+
+        @Override
+        public MappingStrengthType getStrength() {
+            return MappingStrengthType.STRONG;
+        }
+
+        @Override
+        public TestMapping clone() {
+            return this;
+        }
+
+        @Override
+        public boolean isExclusive() {
+            return false;
+        }
+
+        @Override
+        public boolean isAuthoritative() {
+            return true;
+        }
+
+        @Override
+        public boolean isSourceless() {
+            return false;
+        }
+
+        @Override
+        public String getIdentifier() {
+            return "test-mapping";
+        }
+
+        @Override
+        public boolean isPushChanges() {
+            return false;
+        }
+
+        public String toHumanReadableDescription() {
+            return "test mapping";
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.lens.ProjectorComponentTimings.HistogramSnapshot;
+import com.evolveum.midpoint.model.impl.lens.ProjectorComponentTimings.Key;
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests aggregation of {@link ProjectorComponentTimings} per task.
+ */
+public class TestProjectorComponentTimings extends AbstractUnitTest {
+
+    private static final String ROOT_OID_1 = "1b1f8c7a-7d2e-4d55-9a0c-3f4a2e6f1a01";
+    private static final String ROOT_OID_2 = "1b1f8c7a-7d2e-4d55-9a0c-3f4a2e6f1a02";
+    private static final String COMPONENT = "focusActivation";
+    private static final String CHANNEL = "http://midpoint.evolveum.com/xml/ns/public/common/channels-3#import";
+
+    @Test
+    public void test100WorkerTasksAreAggregatedUnderRootTask() {
+        given("timings and three worker tasks of two root tasks");
+        ProjectorComponentTimings timings = new ProjectorComponentTimings();
+        RunningTask worker1 = createWorkerTask(ROOT_OID_1);
+        RunningTask worker2 = createWorkerTask(ROOT_OID_1);
+        RunningTask worker3 = createWorkerTask(ROOT_OID_2);
+
+        when("component executions are recorded in the workers");
+        timings.record(COMPONENT, CHANNEL, worker1, 1_000_000);
+        timings.record(COMPONENT, CHANNEL, worker2, 2_000_000);
+        timings.record(COMPONENT, CHANNEL, worker2, 3_000_000);
+        timings.record(COMPONENT, CHANNEL, worker3, 4_000_000);
+
+        then("they are aggregated per root task");
+        assertSingleHistogram(timings, ROOT_OID_1, 3, 6_000);
+        assertSingleHistogram(timings, ROOT_OID_2, 1, 4_000);
+        assertThat(timings.getSnapshot(ProjectorComponentTimings.TRANSIENT_TASK)).isEmpty();
+    }
+
+    @Test
+    public void test110NonRunningTasksAreAggregatedAsTransient() {
+        given("timings and non-running tasks");
+        ProjectorComponentTimings timings = new ProjectorComponentTimings();
+
+        when("component executions are recorded in them");
+        timings.record(COMPONENT, CHANNEL, createTransientTask(), 1_000_000);
+        timings.record(COMPONENT, CHANNEL, null, 2_000_000);
+
+        then("they are aggregated under the transient task tag");
+        assertSingleHistogram(timings, ProjectorComponentTimings.TRANSIENT_TASK, 2, 3_000);
+        assertThat(timings.getSnapshot(null)).hasSize(1);
+    }
+
+    private void assertSingleHistogram(ProjectorComponentTimings timings, String taskTag, long count, long totalMicros) {
+        Map<Key, HistogramSnapshot> snapshot = timings.getSnapshot(taskTag);
+        display("Snapshot for " + taskTag + ": " + snapshot);
+        assertThat(snapshot).as("histograms for " + taskTag).hasSize(1);
+        Key key = snapshot.keySet().iterator().next();
+        assertThat(key.getComponent()).isEqualTo(COMPONENT);
+        assertThat(key.getChannel()).isEqualTo(CHANNEL);
+        HistogramSnapshot histogram = snapshot.get(key);
+        assertThat(histogram.getCount()).isEqualTo(count);
+        assertThat(histogram.getTotalMicros()).isEqualTo(totalMicros);
+    }
+
+    /** Lightweight worker task: not persistent, no OID of its own. */
+    private RunningTask createWorkerTask(String rootOid) {
+        return (RunningTask) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { RunningTask.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRootTaskOid":
+                            return rootOid;
+                        case "isPersistent":
+                            return false;
+                        case "getOid":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private Task createTransientTask() {
+        return (Task) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Task.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isPersistent":
+                            return false;
+                        case "getOid":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
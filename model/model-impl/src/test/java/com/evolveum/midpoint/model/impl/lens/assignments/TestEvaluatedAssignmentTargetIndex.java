@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.assignments;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.model.impl.lens.LensUtil;
+import com.evolveum.midpoint.model.impl.lens.projector.policy.EvaluatedAssignmentTargetIndex;
+import com.evolveum.midpoint.prism.PrismContainerDefinition;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.delta.DeltaSetTriple;
+import com.evolveum.midpoint.prism.delta.PlusMinusZero;
+import com.evolveum.midpoint.prism.util.ItemDeltaItem;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Checks that {@link EvaluatedAssignmentTargetIndex} returns the same targets (in the same order) as the iteration over
+ * all non-negative targets of all non-negative assignments that was used by the exclusion constraints before.
+ */
+public class TestEvaluatedAssignmentTargetIndex extends AbstractUnitTest {
+
+    private static final String ROLE_1_OID = "4b1d3e6a-2f0c-4d51-9a57-0e1c6f2a7b01";
+    private static final String ROLE_2_OID = "4b1d3e6a-2f0c-4d51-9a57-0e1c6f2a7b02";
+    private static final String ROLE_3_OID = "4b1d3e6a-2f0c-4d51-9a57-0e1c6f2a7b03";
+    private static final String ROLE_4_OID = "4b1d3e6a-2f0c-4d51-9a57-0e1c6f2a7b04";
+
+    private static final List<String> OIDS = List.of(ROLE_1_OID, ROLE_2_OID, ROLE_3_OID, ROLE_4_OID);
+
+    private PrismContainerDefinition<AssignmentType> assignmentDefinition;
+
+    @BeforeClass
+    public void setup() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+        assignmentDefinition = PrismContext.get().getSchemaRegistry()
+                .findObjectDefinitionByCompileTimeClass(UserType.class)
+                .findContainerDefinition(UserType.F_ASSIGNMENT);
+    }
+
+    /**
+     * Assignments in all three sets of the triple, with targets in all three modes, including the same OID reached
+     * via more assignments (and more times via the same assignment), and a target without OID.
+     */
+    @Test
+    public void test100IndexedLookupEqualsScan() throws Exception {
+        given("evaluated assignments with various targets");
+        DeltaSetTriple<EvaluatedAssignmentImpl<?>> triple = PrismContext.get().deltaFactory().createDeltaSetTriple();
+
+        EvaluatedAssignmentImpl<?> zero1 = createAssignment();
+        addTarget(zero1, ROLE_1_OID, PlusMinusZero.ZERO);
+        addTarget(zero1, ROLE_2_OID, PlusMinusZero.ZERO);
+        addTarget(zero1, ROLE_1_OID, PlusMinusZero.PLUS); // the same OID again, e.g. via an inducement
+        addTarget(zero1, ROLE_3_OID, PlusMinusZero.MINUS); // negative target
+        triple.addToZeroSet(zero1);
+
+        EvaluatedAssignmentImpl<?> zero2 = createAssignment();
+        addTarget(zero2, ROLE_1_OID, PlusMinusZero.ZERO); // the same OID in another assignment
+        addTarget(zero2, null, PlusMinusZero.ZERO); // target without OID
+        triple.addToZeroSet(zero2);
+
+        EvaluatedAssignmentImpl<?> plus = createAssignment();
+        addTarget(plus, ROLE_3_OID, PlusMinusZero.PLUS);
+        addTarget(plus, ROLE_1_OID, PlusMinusZero.ZERO);
+        triple.addToPlusSet(plus);
+
+        EvaluatedAssignmentImpl<?> minus = createAssignment(); // negative assignment
+        addTarget(minus, ROLE_1_OID, PlusMinusZero.ZERO);
+        addTarget(minus, ROLE_4_OID, PlusMinusZero.ZERO);
+        triple.addToMinusSet(minus);
+
+        when("the index is created");
+        EvaluatedAssignmentTargetIndex index = new EvaluatedAssignmentTargetIndex(triple);
+
+        then("all entries are the same as found by the scan");
+        assertSameEntries(index.getAllEntries(), scan(triple, null), "all entries");
+
+        and("entries by OID are the same as found by the scan");
+        for (String oid : OIDS) {
+            assertSameEntries(index.getEntriesByOid(oid), scan(triple, oid), "entries for " + oid);
+        }
+        assertThat(index.getEntriesByOid(ROLE_1_OID)).as("entries for role 1").hasSize(4);
+        assertThat(index.getEntriesByOid(ROLE_3_OID)).as("entries for role 3").hasSize(1);
+        assertThat(index.getEntriesByOid(ROLE_4_OID)).as("entries for role 4").isEmpty();
+    }
+
+    /** The previous way of finding the candidate targets: all of them, or the ones with given OID. */
+    private List<Object[]> scan(DeltaSetTriple<EvaluatedAssignmentImpl<?>> triple, String oid) {
+        List<Object[]> found = new ArrayList<>();
+        for (EvaluatedAssignmentImpl<?> assignment : triple.getNonNegativeValues()) {
+            for (EvaluatedAssignmentTargetImpl target : assignment.getNonNegativeTargets()) {
+                if (oid == null || oid.equals(target.getOid())) {
+                    found.add(new Object[] { assignment, target });
+                }
+            }
+        }
+        return found;
+    }
+
+    private void assertSameEntries(List<EvaluatedAssignmentTargetIndex.Entry> actual, List<Object[]> expected, String desc) {
+        displayValue(desc, actual);
+        assertThat(actual).as(desc).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getAssignment()).as("assignment in %s #%d", desc, i).isSameAs(expected.get(i)[0]);
+            assertThat(actual.get(i).getTarget()).as("target in %s #%d", desc, i).isSameAs(expected.get(i)[1]);
+        }
+    }
+
+    private @NotNull EvaluatedAssignmentImpl<?> createAssignment() throws SchemaException {
+        AssignmentType assignment = new AssignmentType();
+        return new EvaluatedAssignmentImpl<>(
+                new ItemDeltaItem<>(LensUtil.createAssignmentSingleValueContainer(assignment), assignmentDefinition),
+                false, AssignmentOrigin.createInObject(), PrismContext.get());
+    }
+
+    private void addTarget(EvaluatedAssignmentImpl<?> assignment, String oid, PlusMinusZero mode) {
+        RoleType role = new RoleType().oid(oid);
+        assignment.addRole(
+                new EvaluatedAssignmentTargetImpl(
+                        role.asPrismObject(), false, new AssignmentPathImpl(), assignment.getAssignment(), true),
+                mode);
+    }
+}
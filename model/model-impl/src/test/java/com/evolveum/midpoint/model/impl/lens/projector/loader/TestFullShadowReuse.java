@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.loader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.model.impl.lens.projector.loader.ProjectionFullLoadOperation.canReuseFullShadow;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.PointInTimeType;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests the conditions under which a full shadow loaded in the previous (conflicting) clockwork run can be reused.
+ * See {@link ProjectionFullLoadOperation#canReuseFullShadow(PrismObject, String, Collection)}.
+ */
+public class TestFullShadowReuse extends AbstractUnitTest {
+
+    private static final String SHADOW_OID = "5c2f6a0e-8d0b-4f3e-9b7a-2e1d4c6b8a01";
+
+    @BeforeClass
+    public void initPrismContextIfNeeded() throws SchemaException, IOException, SAXException {
+        if (PrismContext.get() == null) {
+            PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        }
+    }
+
+    @Test
+    public void test100SameVersionStandardOptions() {
+        then("shadow with unchanged version is reused for standard load");
+        assertThat(canReuseFullShadow(createShadow("3"), "3", createStandardOptions())).isTrue();
+    }
+
+    @Test
+    public void test110ChangedVersion() {
+        then("shadow is not reused if the repository version has changed");
+        assertThat(canReuseFullShadow(createShadow("3"), "4", createStandardOptions())).isFalse();
+    }
+
+    @Test
+    public void test120UnknownVersion() {
+        then("shadow is not reused if either version is unknown");
+        assertThat(canReuseFullShadow(createShadow(null), "3", createStandardOptions())).isFalse();
+        assertThat(canReuseFullShadow(createShadow("3"), null, createStandardOptions())).isFalse();
+    }
+
+    @Test
+    public void test130ForceRefresh() {
+        given("options for reconciliation");
+        Collection<SelectorOptions<GetOperationOptions>> options = createStandardOptions();
+        SelectorOptions.findRootOptions(options).setForceRefresh(true);
+
+        then("shadow is not reused");
+        assertThat(canReuseFullShadow(createShadow("3"), "3", options)).isFalse();
+    }
+
+    @Test
+    public void test140RetrievePassword() {
+        given("options retrieving the password");
+        Collection<SelectorOptions<GetOperationOptions>> options = createStandardOptions();
+        options.add(
+                SelectorOptions.create(
+                        PrismContext.get().toUniformPath(SchemaConstants.PATH_PASSWORD_VALUE),
+                        GetOperationOptions.createRetrieve()));
+
+        then("shadow is not reused");
+        assertThat(canReuseFullShadow(createShadow("3"), "3", options)).isFalse();
+    }
+
+    @Test
+    public void test150NoDiscovery() {
+        given("options with discovery disabled");
+        Collection<SelectorOptions<GetOperationOptions>> options = createStandardOptions();
+        SelectorOptions.findRootOptions(options).setDoNotDiscovery(true);
+
+        then("shadow is reused, as discovery does not influence the data");
+        assertThat(canReuseFullShadow(createShadow("3"), "3", options)).isTrue();
+    }
+
+    /** The same as {@link ProjectionFullLoadOperation} creates when nothing special is needed. */
+    private Collection<SelectorOptions<GetOperationOptions>> createStandardOptions() {
+        GetOperationOptions getOptions = GetOperationOptions.createAllowNotFound();
+        getOptions.setPointInTimeType(PointInTimeType.FUTURE);
+        return SelectorOptions.createCollection(getOptions);
+    }
+
+    private PrismObject<ShadowType> createShadow(String version) {
+        return new ShadowType()
+                .oid(SHADOW_OID)
+                .version(version)
+                .name("jack")
+                .asPrismObject();
+    }
+}
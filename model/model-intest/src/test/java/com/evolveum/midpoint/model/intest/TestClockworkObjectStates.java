@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.intest;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.api.ModelExecuteOptions;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Runs the clockwork through the paths where the loaded focus and projection objects are kept as old and current
+ * objects in the lens context (see `ElementState`) and then modified in place: creation and reload of a projection,
+ * credentials propagation, reconciliation, and adding or removing the `linkRef` values (also by synchronization).
+ *
+ * The objects provided to the context must stay mutable, so all these operations must succeed.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-intest-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestClockworkObjectStates extends AbstractInitializedModelIntegrationTest {
+
+    private static final String USER_NAME = "elaine-states";
+    private static final String USER_FULL_NAME = "Elaine Marley";
+    private static final String USER_FULL_NAME_CHANGED = "Elaine Marley-Threepwood";
+    private static final String USER_PASSWORD = "whereStheRUM";
+
+    private String userOid;
+
+    /** Assigning the account adds the `linkRef` and reloads the newly created projection. */
+    @Test
+    public void test100AssignAccount() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("a user");
+        userOid = addObject(
+                new UserType()
+                        .name(USER_NAME)
+                        .fullName(USER_FULL_NAME),
+                task, result);
+
+        when("an account is assigned to the user");
+        assignAccountToUser(userOid, RESOURCE_DUMMY_OID, null, task, result);
+
+        then("the account is created and linked");
+        assertSuccess(result);
+        assertUserAfter(userOid)
+                .assertLiveLinks(1);
+        assertDummyAccount(null, USER_NAME, USER_FULL_NAME, true);
+    }
+
+    /** The password change is applied to the focus and propagated to the loaded projection. */
+    @Test
+    public void test110ChangePassword() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("the password of the user is changed");
+        modifyUserChangePassword(userOid, USER_PASSWORD, task, result);
+
+        then("the password is propagated to the account");
+        assertSuccess(result);
+        assertUserAfter(userOid)
+                .assertPassword(USER_PASSWORD)
+                .assertLiveLinks(1);
+        assertDummyPassword(null, USER_NAME, USER_PASSWORD);
+    }
+
+    /** The projection is fully reloaded during the reconciliation, and then modified. */
+    @Test
+    public void test120ModifyUserWithReconcile() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("the full name of the user is changed, with reconciliation");
+        executeChanges(
+                deltaFor(UserType.class)
+                        .item(UserType.F_FULL_NAME).replace(PolyString.fromOrig(USER_FULL_NAME_CHANGED))
+                        .asObjectDelta(userOid),
+                ModelExecuteOptions.create().reconcile(), task, result);
+
+        then("the account is updated");
+        assertSuccess(result);
+        assertUserAfter(userOid)
+                .assertFullName(USER_FULL_NAME_CHANGED)
+                .assertLiveLinks(1);
+        assertDummyAccount(null, USER_NAME, USER_FULL_NAME_CHANGED, true);
+
+        when("the user is reconciled once again");
+        reconcileUser(userOid, task, result);
+
+        then("nothing is changed");
+        assertSuccess(result);
+        assertDummyAccount(null, USER_NAME, USER_FULL_NAME_CHANGED, true);
+        assertDummyPassword(null, USER_NAME, USER_PASSWORD);
+    }
+
+    /** The `linkRef` is removed explicitly, and then added back by the synchronization `link` action. */
+    @Test
+    public void test130UnlinkAndImportAccount() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the account is unlinked from the user");
+        String shadowOid = getSingleLinkOid(getUser(userOid));
+        unlink(UserType.class, userOid, shadowOid, task, result);
+        assertSuccess(result);
+        assertUserAfter(userOid)
+                .assertLiveLinks(0);
+        assertDummyAccount(null, USER_NAME, USER_FULL_NAME_CHANGED, true);
+
+        when("the account is imported");
+        importAccountsRequest()
+                .withResourceOid(RESOURCE_DUMMY_OID)
+                .withNameValue(USER_NAME)
+                .execute(result);
+
+        then("the account is linked to the user again");
+        assertUserAfter(userOid)
+                .assertLiveLinks(1)
+                .links()
+                .singleLive()
+                .assertOid(shadowOid);
+    }
+
+    /** Unassigning the account deletes it, and removes the `linkRef`. */
+    @Test
+    public void test140UnassignAccount() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("the account is unassigned from the user");
+        unassignAccountFromUser(userOid, RESOURCE_DUMMY_OID, null, task, result);
+
+        then("the account is deleted and unlinked");
+        assertSuccess(result);
+        assertUserAfter(userOid)
+                .assertLiveLinks(0);
+        assertNoDummyAccount(null, USER_NAME);
+    }
+}
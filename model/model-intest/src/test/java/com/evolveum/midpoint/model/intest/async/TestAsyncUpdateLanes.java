@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.intest.async;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.intest.AbstractEmptyModelIntegrationTest;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.TestObject;
+import com.evolveum.midpoint.test.TestTask;
+import com.evolveum.midpoint.test.util.MidPointTestConstants;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UcfChangeType;
+
+/**
+ * Tests the asynchronous update activity with the changes processed in the processing lanes of the async update connector,
+ * with and without worker threads: the changes of each object have to be processed in the order of their arrival.
+ *
+ * Each account gets a sequence of changes (full shadows) with different values of `ri:group`, mapped
+ * to `organizationalUnit`. If the changes of an account were processed out of order, the user would end up
+ * with a value other than the last one.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-intest-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestAsyncUpdateLanes extends AbstractEmptyModelIntegrationTest {
+
+    private static final File TEST_DIR = new File(MidPointTestConstants.TEST_RESOURCES_DIR, "async/lanes");
+
+    private static final TestObject<ResourceType> RESOURCE_ASYNC_LANES = TestObject.file(
+            TEST_DIR, "resource-async-lanes.xml", "7d3a6e52-0f0b-4c7e-9a4e-5b1e2f3c4d01");
+    private static final TestTask TASK_ASYNC_UPDATE_NO_WORKERS = new TestTask(
+            TEST_DIR, "task-async-update-lanes-no-workers.xml", "b5c1f0a2-3d4e-4f60-8a7b-9c0d1e2f3a41");
+    private static final TestTask TASK_ASYNC_UPDATE_WORKERS = new TestTask(
+            TEST_DIR, "task-async-update-lanes-workers.xml", "b5c1f0a2-3d4e-4f60-8a7b-9c0d1e2f3a42");
+
+    private static final File CHANGE_TEMPLATE_FILE = new File(TEST_DIR, "change-template.xml");
+
+    private static final int ACCOUNTS = 10;
+    private static final int CHANGES_PER_ACCOUNT = 5;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        importObject(RESOURCE_ASYNC_LANES, initTask, initResult);
+        assertSuccess(modelService.testResource(RESOURCE_ASYNC_LANES.oid, initTask, initResult));
+
+        TASK_ASYNC_UPDATE_NO_WORKERS.init(this, initTask, initResult);
+        TASK_ASYNC_UPDATE_WORKERS.init(this, initTask, initResult);
+    }
+
+    /** Without worker threads, the changes from all the lanes are processed by the coordinator task, one at a time. */
+    @Test
+    public void test100NoWorkers() throws Exception {
+        executeAndCheck(TASK_ASYNC_UPDATE_NO_WORKERS, "nw-");
+    }
+
+    /** With worker threads, the changes of each account must get to the same worker, in the order of their arrival. */
+    @Test
+    public void test110Workers() throws Exception {
+        executeAndCheck(TASK_ASYNC_UPDATE_WORKERS, "w-");
+    }
+
+    private void executeAndCheck(TestTask asyncUpdateTask, String prefix) throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("changes of accounts, interleaved");
+        MockAsyncUpdateSource.INSTANCE.reset();
+        for (int change = 0; change < CHANGES_PER_ACCOUNT; change++) {
+            for (int account = 0; account < ACCOUNTS; account++) {
+                MockAsyncUpdateSource.INSTANCE.prepareMessage(
+                        createChange(getAccountName(prefix, account), getGroupName(change)));
+            }
+        }
+
+        when("async update task is run");
+        asyncUpdateTask.rerun(result);
+
+        then("task is OK");
+        asyncUpdateTask.assertAfter()
+                .display()
+                .assertSuccess();
+
+        then("each user has the value from the last change");
+        for (int account = 0; account < ACCOUNTS; account++) {
+            assertUserAfterByUsername(getAccountName(prefix, account))
+                    .assertOrganizationalUnits(getGroupName(CHANGES_PER_ACCOUNT - 1))
+                    .assertLiveLinks(1);
+        }
+    }
+
+    private String getAccountName(String prefix, int account) {
+        return String.format("%s%02d", prefix, account);
+    }
+
+    private String getGroupName(int change) {
+        return "step-" + change;
+    }
+
+    private UcfChangeType createChange(String name, String group) throws IOException, CommonException {
+        String template = Files.readString(CHANGE_TEMPLATE_FILE.toPath(), StandardCharsets.UTF_8);
+        String text = template
+                .replace("#name#", name)
+                .replace("#group#", group);
+        return prismContext.parserFor(text).xml().parseRealValue(UcfChangeType.class);
+    }
+}
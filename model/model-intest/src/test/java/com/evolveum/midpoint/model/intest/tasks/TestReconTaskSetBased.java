@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.intest.tasks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.model.intest.AbstractEmptyModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.DummyTestResource;
+import com.evolveum.midpoint.test.TestTask;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MetadataType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests the set-based mode of the remaining shadows reconciliation (`setBasedRemainingShadows`): shadows not seen
+ * by a complete and successful resource objects reconciliation are considered gone without fetching them from the resource.
+ * Also checks that each shadow is fetched in the regular way if the resource objects reconciliation was filtered or failed,
+ * or if there are too many shadows to be deleted.
+ *
+ * The resource has no synchronization policy, so the only resource fetch operations are the reconciliation search
+ * and the checks of the remaining shadows.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-intest-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestReconTaskSetBased extends AbstractEmptyModelIntegrationTest {
+
+    private static final File TEST_DIR = TestReconTask.TEST_DIR;
+
+    private static final String ATTR_NUMBER = "number";
+
+    private static final DummyTestResource RESOURCE_DUMMY = new DummyTestResource(
+            TEST_DIR, "resource-dummy-set-based.xml", "f149330d-d146-45b4-ab2d-b8d15170aa2c", "set-based",
+            controller -> controller.addAttrDef(
+                    controller.getDummyResource().getAccountObjectClass(), ATTR_NUMBER, Integer.class, false, false));
+
+    private static final TestTask TASK_RECONCILIATION = new TestTask(
+            TEST_DIR, "task-reconciliation-set-based.xml", "27ae6b28-0aa1-414c-a107-563be96c9c36");
+    private static final TestTask TASK_RECONCILIATION_FILTERED = new TestTask(
+            TEST_DIR, "task-reconciliation-set-based-filtered.xml", "faa50c04-a71c-45bd-b7ae-ae9657b36a2e");
+    private static final TestTask TASK_RECONCILIATION_MAX_DELETIONS = new TestTask(
+            TEST_DIR, "task-reconciliation-set-based-max-deletions.xml", "ae2fc562-ae0a-4eee-a558-d69fa845f37d");
+
+    private static final int ACCOUNTS = 6;
+
+    /** The search executed by the resource objects reconciliation. */
+    private static final int SEARCH_FETCHES = 1;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        RESOURCE_DUMMY.initAndTest(this, initTask, initResult);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            DummyAccount account = RESOURCE_DUMMY.addAccount(getAccountName(i));
+            account.addAttributeValue(ATTR_NUMBER, i);
+        }
+
+        TASK_RECONCILIATION.init(this, initTask, initResult);
+        TASK_RECONCILIATION_FILTERED.init(this, initTask, initResult);
+        TASK_RECONCILIATION_MAX_DELETIONS.init(this, initTask, initResult);
+    }
+
+    private static String getAccountName(int i) {
+        return String.format("a-%06d", i);
+    }
+
+    /** Creates the shadows. */
+    @Test
+    public void test100FirstRun() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        when("reconciliation is run for the first time");
+        TASK_RECONCILIATION.rerun(result);
+
+        then("shadows for all accounts exist");
+        assertLiveShadows(result, 0, 1, 2, 3, 4, 5);
+    }
+
+    /** Normal set-based processing: deleted accounts are not fetched, their shadows are marked dead. */
+    @Test
+    public void test110DeletedAccountsAreNotFetched() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("two accounts are deleted");
+        deleteAccounts(0, 1);
+
+        when("reconciliation is run");
+        rememberCounter(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
+        TASK_RECONCILIATION.rerun(result);
+
+        then("their shadows are dead, and nothing was fetched from the resource except for the search");
+        assertLiveShadows(result, 2, 3, 4, 5);
+        assertCounterIncrement(InternalCounters.SHADOW_FETCH_OPERATION_COUNT, SEARCH_FETCHES);
+    }
+
+    /** Filtered resource objects reconciliation: the remaining shadows must be checked on the resource. */
+    @Test
+    public void test120FallbackWhenFiltered() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("an account is deleted");
+        deleteAccounts(2);
+
+        when("reconciliation restricted to a single account is run");
+        rememberCounter(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
+        TASK_RECONCILIATION_FILTERED.rerun(result);
+
+        then("all shadows not seen were checked on the resource, and only the shadow of the deleted account is dead");
+        assertLiveShadows(result, 3, 4, 5);
+        assertCounterIncrement(InternalCounters.SHADOW_FETCH_OPERATION_COUNT, SEARCH_FETCHES + 3); // 2, 4, 5
+    }
+
+    /** Resource objects reconciliation with a failure: the remaining shadows must be checked on the resource. */
+    @Test
+    public void test130FallbackWhenFailed() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("an account is deleted and another one is malformed");
+        deleteAccounts(3);
+        DummyAccount malformed = RESOURCE_DUMMY.getDummyResource().getAccountByUsername(getAccountName(4));
+        malformed.replaceAttributeValue(ATTR_NUMBER, "WRONG");
+
+        try {
+            when("reconciliation is run");
+            rememberCounter(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
+            TASK_RECONCILIATION.rerunErrorsOk(result);
+
+            then("the shadows not seen (including the failed one) were checked on the resource");
+            assertCounterIncrement(InternalCounters.SHADOW_FETCH_OPERATION_COUNT, SEARCH_FETCHES + 2); // 3, 4
+
+            then("only the shadow of the deleted account is dead");
+            assertLiveShadows(result, 4, 5);
+        } finally {
+            malformed.replaceAttributeValue(ATTR_NUMBER, 4);
+        }
+    }
+
+    /** Too many shadows not seen: they must be checked on the resource. */
+    @Test
+    public void test140FallbackWhenTooManyDeletions() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("two accounts are deleted, while at most one deletion is allowed in the set-based mode");
+        deleteAccounts(4, 5);
+
+        when("reconciliation is run");
+        rememberCounter(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
+        TASK_RECONCILIATION_MAX_DELETIONS.rerun(result);
+
+        then("the shadows were checked on the resource, and they are dead");
+        assertCounterIncrement(InternalCounters.SHADOW_FETCH_OPERATION_COUNT, SEARCH_FETCHES + 2); // 4, 5
+        assertLiveShadows(result);
+    }
+
+    /**
+     * A shadow created after the resource objects reconciliation started could not have been seen by it;
+     * it must be checked on the resource even in the set-based mode.
+     */
+    @Test
+    public void test150ShadowCreatedAfterReconciliationStartIsChecked() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("two new accounts with their shadows");
+        for (int i = ACCOUNTS; i < ACCOUNTS + 2; i++) {
+            DummyAccount account = RESOURCE_DUMMY.addAccount(getAccountName(i));
+            account.addAttributeValue(ATTR_NUMBER, i);
+        }
+        TASK_RECONCILIATION.rerun(result);
+        assertLiveShadows(result, ACCOUNTS, ACCOUNTS + 1);
+
+        and("both accounts are deleted, and one of the shadows looks like created after the reconciliation start");
+        deleteAccounts(ACCOUNTS, ACCOUNTS + 1);
+        repositoryService.modifyObject(
+                ShadowType.class,
+                getShadowOid(getAccountName(ACCOUNTS + 1), result),
+                prismContext.deltaFor(ShadowType.class)
+                        .item(ShadowType.F_METADATA, MetadataType.F_CREATE_TIMESTAMP)
+                        .replace(XmlTypeConverter.createXMLGregorianCalendar(clock.currentTimeMillis() + 60 * 60 * 1000))
+                        .asItemDeltas(),
+                result);
+
+        when("reconciliation is run");
+        rememberCounter(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
+        TASK_RECONCILIATION.rerun(result);
+
+        then("only the \"new\" shadow was checked on the resource, and both shadows are dead");
+        assertCounterIncrement(InternalCounters.SHADOW_FETCH_OPERATION_COUNT, SEARCH_FETCHES + 1);
+        assertLiveShadows(result);
+    }
+
+    private String getShadowOid(String name, OperationResult result) throws SchemaException {
+        ObjectQuery query = prismContext.queryFor(ShadowType.class)
+                .item(ShadowType.F_RESOURCE_REF).ref(RESOURCE_DUMMY.oid)
+                .and().item(ShadowType.F_NAME).eqPoly(name)
+                .build();
+        List<PrismObject<ShadowType>> shadows = repositoryService.searchObjects(ShadowType.class, query, null, result);
+        assertThat(shadows).as("shadows named " + name).hasSize(1);
+        return shadows.get(0).getOid();
+    }
+
+    private void deleteAccounts(int... indices) throws Exception {
+        for (int i : indices) {
+            RESOURCE_DUMMY.getDummyResource().deleteAccountByName(getAccountName(i));
+        }
+    }
+
+    private void assertLiveShadows(OperationResult result, int... expectedIndices) throws SchemaException {
+        ObjectQuery query = prismContext.queryFor(ShadowType.class)
+                .item(ShadowType.F_RESOURCE_REF).ref(RESOURCE_DUMMY.oid)
+                .and().block()
+                    .item(ShadowType.F_DEAD).isNull()
+                    .or().item(ShadowType.F_DEAD).eq(false)
+                    .endBlock()
+                .build();
+        List<String> names = repositoryService.searchObjects(ShadowType.class, query, null, result).stream()
+                .map(shadow -> shadow.getName().getOrig())
+                .collect(Collectors.toList());
+        String[] expectedNames = new String[expectedIndices.length];
+        for (int i = 0; i < expectedIndices.length; i++) {
+            expectedNames[i] = getAccountName(expectedIndices[i]);
+        }
+        assertThat(names).as("names of live shadows").containsExactlyInAnyOrder(expectedNames);
+    }
+}
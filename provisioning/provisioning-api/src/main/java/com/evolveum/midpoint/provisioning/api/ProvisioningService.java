@@ -881,6 +881,15 @@ public interface ProvisioningService {
             throws SchemaException, ObjectNotFoundException, CommunicationException, ConfigurationException,
             ObjectAlreadyExistsException, SecurityViolationException, ExpressionEvaluationException;
 
+    /**
+     * Marks the shadow as dead (tombstone), without contacting the resource. To be used when the caller knows that
+     * the resource object does not exist any more, e.g. because it was not seen by a complete and error-free reconciliation.
+     * This is the same as what happens when the object is not found by {@link #getObject(Class, String, Collection, Task,
+     * OperationResult)}; no synchronization notification is issued. Shadows not marked as existing are left untouched.
+     */
+    void markShadowTombstone(@NotNull PrismObject<ShadowType> shadow, @NotNull Task task, @NotNull OperationResult parentResult)
+            throws SchemaException;
+
     /**
      * Applies appropriate definition to the shadow/resource delta.
      */
@@ -470,6 +470,14 @@ public class ProvisioningContext {
         }
     }
 
+    /** Whether fingerprints of cached data should be used to detect unchanged objects. See `useFingerprints` in the schema. */
+    public boolean isUseFingerprints() {
+        CachingPolicyType cachingPolicy = resource.getCaching();
+        return cachingPolicy != null
+                && Boolean.TRUE.equals(cachingPolicy.isUseFingerprints())
+                && getCachingStrategy() == CachingStrategyType.PASSIVE;
+    }
+
     public String toHumanReadableDescription() {
         if (resourceObjectDefinition != null) {
             return resourceObjectDefinition.getHumanReadableName() + " @" + resource;
@@ -19,7 +19,6 @@ import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.provisioning.impl.resources.ResourceManager;
-import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.ResourceOperationCoordinates;
 import com.evolveum.midpoint.schema.ResourceShadowCoordinates;
 import com.evolveum.midpoint.schema.processor.ResourceObjectDefinition;
@@ -284,7 +283,7 @@ public class ProvisioningContextFactory {
 
     public @NotNull ResourceType getResource(String resourceOid, Task task, OperationResult result)
             throws SchemaException, ExpressionEvaluationException, ObjectNotFoundException, ConfigurationException {
-        return resourceManager.getCompletedResource(resourceOid, GetOperationOptions.createReadOnly(), task, result);
+        return resourceManager.getCompletedResource(resourceOid, task, result);
     }
 
     private ResourceObjectDefinition getObjectDefinition(
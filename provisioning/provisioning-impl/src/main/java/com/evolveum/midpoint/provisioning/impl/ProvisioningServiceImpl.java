@@ -106,6 +106,7 @@ public class ProvisioningServiceImpl implements ProvisioningService, SystemConfi
     private static final String OP_SEARCH_OBJECTS = ProvisioningService.class.getName() + ".searchObjects";
     private static final String OP_COUNT_OBJECTS = ProvisioningService.class.getName() + ".countObjects";
     private static final String OP_REFRESH_SHADOW = ProvisioningServiceImpl.class.getName() + ".refreshShadow";
+    private static final String OP_MARK_SHADOW_TOMBSTONE = ProvisioningService.class.getName() + ".markShadowTombstone";
     private static final String OP_DELETE_OBJECT = ProvisioningService.class.getName() + ".deleteObject";
     private static final String OP_DISCOVER_CONFIGURATION = ProvisioningService.class.getName() + ".discoverConfiguration";
     private static final String OP_EXPAND_CONFIGURATION_OBJECT = ProvisioningService.class.getName()
@@ -273,7 +274,8 @@ public class ProvisioningServiceImpl implements ProvisioningService, SystemConfi
 
         try {
             // TODO avoid double fetching the resource
-            PrismObject<ResourceType> resource = getObject(ResourceType.class, resourceOid, null, task, result);
+            PrismObject<ResourceType> resource =
+                    getObject(ResourceType.class, resourceOid, GetOperationOptions.createReadOnlyCollection(), task, result);
             ResourceTypeUtil.checkNotInMaintenance(resource.asObjectable());
 
             LOGGER.debug("Start synchronization of {}", resource);
@@ -729,6 +731,24 @@ public class ProvisioningServiceImpl implements ProvisioningService, SystemConfi
         LOGGER.debug("Finished refreshing shadow {}: {}", shadow, result);
     }
 
+    @Override
+    public void markShadowTombstone(
+            @NotNull PrismObject<ShadowType> shadow, @NotNull Task task, @NotNull OperationResult parentResult)
+            throws SchemaException {
+        OperationResult result = parentResult.createMinorSubresult(OP_MARK_SHADOW_TOMBSTONE);
+        result.addParam("shadow", shadow);
+        result.addContext(OperationResult.CONTEXT_IMPLEMENTATION_CLASS, ProvisioningServiceImpl.class);
+        try {
+            shadowsFacade.markShadowTombstone(shadow.asObjectable(), task, result);
+        } catch (Throwable e) {
+            ProvisioningUtil.recordFatalErrorWhileRethrowing(LOGGER, result, null, e);
+            throw e;
+        } finally {
+            result.close();
+            result.cleanupResult();
+        }
+    }
+
     @Override
     public <T extends ObjectType> SearchResultMetadata searchObjectsIterative(
             @NotNull Class<T> type,
@@ -803,7 +823,7 @@ public class ProvisioningServiceImpl implements ProvisioningService, SystemConfi
         ResourceType resource;
         try {
 
-            resource = resourceManager.getCompletedResource(resourceOid, null, task, result);
+            resource = resourceManager.getCompletedResource(resourceOid, task, result);
 
         } catch (SchemaException | ObjectNotFoundException | ExpressionEvaluationException ex) {
             ProvisioningUtil.recordFatalErrorWhileRethrowing(LOGGER, result, ex.getMessage(), ex);
@@ -6,9 +6,12 @@
  */
 package com.evolveum.midpoint.provisioning.impl.resourceobjects;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.namespace.QName;
 
@@ -26,6 +29,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -61,6 +65,9 @@ class EntitlementConverter {
 
     private static final Trace LOGGER = TraceManager.getTrace(EntitlementConverter.class);
 
+    private static final String OP_BUILD_ENTITLEMENT_REVERSE_INDEX =
+            EntitlementConverter.class.getName() + ".buildEntitlementReverseIndex";
+
     @Autowired private ResourceObjectReferenceResolver resourceObjectReferenceResolver;
     @Autowired private DelineationProcessor delineationProcessor;
     @Autowired private PrismContext prismContext;
@@ -78,6 +85,7 @@ class EntitlementConverter {
     void postProcessEntitlementsRead(
             PrismObject<ShadowType> resourceObject,
             ProvisioningContext subjectCtx,
+            @Nullable EntitlementReverseIndex reverseIndex,
             OperationResult result)
             throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
             SecurityViolationException, ExpressionEvaluationException {
@@ -121,6 +129,8 @@ class EntitlementConverter {
                                 associationDef,
                                 subjectCtx,
                                 entitlementCtx,
+                                entitlementIntent,
+                                reverseIndex,
                                 result);
                     }
                 } else {
@@ -200,6 +210,9 @@ class EntitlementConverter {
     /**
      * Creates values in `associationContainer`. It searches for entitlements having the "association" (referencing) attribute
      * value - e.g. `ri:members` - containing the value in subject "value" (referenced) attribute - e.g. `ri:dn`.
+     *
+     * If bulk resolution is enabled for the association (and the reverse index is provided and available), the entitlements
+     * are taken from the index instead.
      */
     private <S extends ShadowType, T> void postProcessReadEntitlementToSubject(
             PrismContainer<ShadowAssociationType> associationContainer,
@@ -207,6 +220,8 @@ class EntitlementConverter {
             ResourceAssociationDefinition associationDef,
             ProvisioningContext subjectCtx,
             ProvisioningContext entitlementCtx,
+            String entitlementIntent,
+            @Nullable EntitlementReverseIndex reverseIndex,
             OperationResult result)
             throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
             SecurityViolationException, ExpressionEvaluationException {
@@ -250,6 +265,22 @@ class EntitlementConverter {
         ResourceAttributeDefinition<T> referencedAttrDef = referencedAttr.getDefinition();
         PrismPropertyValue<T> referencedAttrValue = referencedAttr.getAnyValue();
 
+        if (reverseIndex != null && associationDef.isBulkResolution()) {
+            EntitlementReverseIndex.Index index = reverseIndex.getIndex(
+                    associationName + "/" + associationDef.getKind() + "/" + entitlementIntent,
+                    i -> fillEntitlementReverseIndex(i, referencingAttrDef, associationDef, subjectCtx, entitlementCtx, result));
+            if (index != null) {
+                Object indexKey = getSubjectIndexKey(referencedAttrValue, referencedAttrDef, referencingAttrDef, associationDef);
+                for (PrismObject<ShadowType> entitlement : index.getEntitlements(indexKey)) {
+                    // Cloning because the object may be updated later (e.g. when acquiring its shadow)
+                    createAssociationValueFromTarget(associationContainer, entitlement.clone(), associationName, entitlementDef);
+                }
+                LOGGER.trace("Resolved entitlement-to-subject association {} for account {} using reverse index",
+                        associationName, ShadowUtil.getHumanReadableNameLazily(resourceObject));
+                return;
+            }
+        }
+
         ObjectQuery query = createEntitlementQuery(referencedAttrValue, referencedAttrDef, referencingAttrDef, associationDef);
 
         executeSearchForEntitlements(
@@ -315,6 +346,115 @@ class EntitlementConverter {
         }
     }
 
+    /**
+     * Fills in the reverse index by searching for all entitlements of given kind/intent. Returns false if the index
+     * could not be built: either because of an error, or because it is over the limits.
+     */
+    private <TA> boolean fillEntitlementReverseIndex(
+            EntitlementReverseIndex.Index index,
+            ResourceAttributeDefinition<TA> referencingAttrDef,
+            ResourceAssociationDefinition associationDef,
+            ProvisioningContext subjectCtx,
+            ProvisioningContext entitlementCtx,
+            OperationResult parentResult) {
+
+        QName referencingAttrName = referencingAttrDef.getItemName();
+        AtomicBoolean complete = new AtomicBoolean(true);
+
+        UcfObjectHandler handler = (ucfObject, lResult) -> {
+            PrismObject<ShadowType> entitlement = ucfObject.getResourceObject();
+            ResourceAttribute<TA> referencingAttr = ShadowUtil.getAttributesContainer(entitlement).findAttribute(referencingAttrName);
+            List<Object> keys = new ArrayList<>();
+            if (referencingAttr != null) {
+                try {
+                    for (PrismPropertyValue<TA> value : referencingAttr.getValues()) {
+                        keys.add(
+                                getIndexKey(
+                                        getNormalizedValue(value.getValue(), referencingAttrDef, associationDef),
+                                        referencingAttrDef));
+                    }
+                } catch (SchemaException e) {
+                    throw new TunnelException(e);
+                }
+            }
+            if (!index.add(entitlement, keys)) {
+                complete.set(false);
+                return false;
+            }
+            return true;
+        };
+
+        OperationResult indexResult = parentResult.subresult(OP_BUILD_ENTITLEMENT_REVERSE_INDEX)
+                .setMinor()
+                .addArbitraryObjectAsParam("association", associationDef.getName())
+                .build();
+        try {
+            QueryWithConstraints queryWithConstraints =
+                    delineationProcessor.determineQueryWithConstraints(entitlementCtx, null, indexResult);
+            ConnectorInstance connector = subjectCtx.getConnector(ReadCapabilityType.class, indexResult);
+            LOGGER.trace("Building entitlement reverse index for {} using query {}",
+                    associationDef.getName(), queryWithConstraints.query);
+            connector.search(
+                    entitlementCtx.getObjectDefinitionRequired(),
+                    queryWithConstraints.query,
+                    handler,
+                    createAttributesToReturnForIndex(referencingAttrDef, entitlementCtx),
+                    null,
+                    queryWithConstraints.constraints,
+                    UcfFetchErrorReportingMethod.EXCEPTION,
+                    subjectCtx.getUcfExecutionContext(),
+                    indexResult);
+            return complete.get();
+        } catch (Exception e) {
+            // The per-object searches will report the problem, if it persists.
+            LOGGER.warn("Couldn't build entitlement reverse index for association {} in {}, falling back to per-object "
+                    + "searches: {}", associationDef.getName(), subjectCtx, e.getMessage(), e);
+            indexResult.recordHandledError(e);
+            return false;
+        } finally {
+            indexResult.close();
+        }
+    }
+
+    /** The association attribute must be returned, even if it is not returned by default. */
+    private AttributesToReturn createAttributesToReturnForIndex(
+            ResourceAttributeDefinition<?> referencingAttrDef, ProvisioningContext entitlementCtx) {
+        AttributesToReturn attributesToReturn = entitlementCtx.createAttributesToReturn();
+        if (referencingAttrDef.isReturnedByDefault()
+                && (attributesToReturn == null || attributesToReturn.isReturnDefaultAttributes())) {
+            return attributesToReturn;
+        }
+        if (attributesToReturn == null) {
+            attributesToReturn = new AttributesToReturn();
+        }
+        Collection<ResourceAttributeDefinition> attributes = new ArrayList<>(emptyIfNull(attributesToReturn.getAttributesToReturn()));
+        if (!attributes.contains(referencingAttrDef)) {
+            attributes.add(referencingAttrDef);
+        }
+        attributesToReturn.setAttributesToReturn(attributes);
+        return attributesToReturn;
+    }
+
+    /** Index key for the subject: the value it is referenced by, in the form used in the association attribute. */
+    private <TV, TA> Object getSubjectIndexKey(
+            PrismPropertyValue<TV> referencedAttrValue,
+            ResourceAttributeDefinition<TV> referencedAttrDef,
+            ResourceAttributeDefinition<TA> referencingAttrDef,
+            ResourceAssociationDefinition associationDef) throws SchemaException {
+        return getIndexKey(
+                getRealNormalizedConvertedValue(referencedAttrValue, referencedAttrDef, referencingAttrDef, associationDef),
+                referencingAttrDef);
+    }
+
+    /** Applies the matching rule of the association attribute on top of the association matching rule. */
+    private <TA> Object getIndexKey(TA normalizedValue, ResourceAttributeDefinition<TA> referencingAttrDef)
+            throws SchemaException {
+        MatchingRule<TA> matchingRule = matchingRuleRegistry.getMatchingRule(
+                referencingAttrDef.getMatchingRuleQName(),
+                referencingAttrDef.getTypeName());
+        return matchingRule.normalize(normalizedValue);
+    }
+
     /**
      * Creates association value from known identifier value; and inserts it into `associationContainer`.
      *
@@ -453,12 +593,19 @@ class EntitlementConverter {
             ResourceAttributeDefinition<TV> sourceDef,
             ResourceAttributeDefinition<TA> targetDef,
             ResourceAssociationDefinition associationDef) throws SchemaException {
+        PrismPropertyValue<TA> converted =
+                PrismUtil.convertPropertyValue(value, sourceDef, targetDef);
+        return getNormalizedValue(converted.getValue(), targetDef, associationDef);
+    }
+
+    /** Normalizes the (association attribute) value according to the matching rule defined for the association. */
+    private <TA> TA getNormalizedValue(
+            TA value, ResourceAttributeDefinition<TA> targetDef, ResourceAssociationDefinition associationDef)
+            throws SchemaException {
         MatchingRule<TA> matchingRule = matchingRuleRegistry.getMatchingRule(
                 associationDef.getMatchingRule(),
                 targetDef.getTypeName());
-        PrismPropertyValue<TA> converted =
-                PrismUtil.convertPropertyValue(value, sourceDef, targetDef);
-        return matchingRule.normalize(converted.getValue());
+        return matchingRule.normalize(value);
     }
     //endregion
 
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.resourceobjects;
+
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Reverse indices for object-to-subject associations with bulk resolution enabled (`bulkResolution` in association
+ * definition). Each index maps (normalized) values of the association attribute (e.g. `ri:members`) to the entitlement
+ * objects that contain them.
+ *
+ * Lives for a single search operation, i.e. for a single bucket (or page) of an import or reconciliation. This keeps
+ * the data reasonably fresh, while allowing to resolve the associations of all subjects found using one entitlement search.
+ *
+ * The memory is bounded: if an index grows beyond {@link #DEFAULT_MAX_ENTITLEMENTS} objects or {@link #MAX_VALUES} values,
+ * it is discarded, and the associations are resolved using per-object searches, as usual.
+ */
+public class EntitlementReverseIndex {
+
+    private static final Trace LOGGER = TraceManager.getTrace(EntitlementReverseIndex.class);
+
+    /** Maximal number of entitlement objects in a single index. */
+    public static final int DEFAULT_MAX_ENTITLEMENTS = 10_000;
+
+    /** Current limit for the number of entitlement objects in a single index. Lowered only by tests. */
+    private static volatile int maxEntitlements = DEFAULT_MAX_ENTITLEMENTS;
+
+    /** Maximal number of association attribute values in a single index. */
+    static final int MAX_VALUES = 1_000_000;
+
+    @VisibleForTesting
+    public static void setMaxEntitlements(int value) {
+        maxEntitlements = value;
+    }
+
+    /** Indices keyed by association name + entitlement kind/intent. Empty value means "index not available". */
+    @NotNull private final Map<String, Optional<Index>> indices = new HashMap<>();
+
+    /**
+     * Returns the index for given key, building it (on first request) by the `builder`.
+     * Returns null if the index is not available; the caller should fall back to per-object searches then.
+     */
+    synchronized @Nullable Index getIndex(@NotNull String key, @NotNull IndexBuilder builder) {
+        Optional<Index> existing = indices.get(key);
+        if (existing != null) {
+            return existing.orElse(null);
+        }
+        Index index = new Index();
+        boolean complete = builder.build(index);
+        if (complete) {
+            LOGGER.debug("Built entitlement reverse index for {}: {} entitlements, {} values",
+                    key, index.entitlements, index.values);
+            indices.put(key, Optional.of(index));
+            return index;
+        } else {
+            LOGGER.debug("Entitlement reverse index for {} could not be built, falling back to per-object searches", key);
+            indices.put(key, Optional.empty());
+            return null;
+        }
+    }
+
+    /** Association attribute values -> entitlement objects. */
+    static class Index {
+
+        @NotNull private final Map<Object, List<PrismObject<ShadowType>>> entitlementsByValue = new HashMap<>();
+
+        private int entitlements;
+        private int values;
+
+        /** Adds the entitlement. Returns false if the index is over the limits (and therefore unusable). */
+        boolean add(@NotNull PrismObject<ShadowType> entitlement, @NotNull Collection<?> normalizedValues) {
+            entitlements++;
+            values += normalizedValues.size();
+            if (entitlements > maxEntitlements || values > MAX_VALUES) {
+                LOGGER.debug("Entitlement reverse index is over the limits: {} entitlements, {} values", entitlements, values);
+                entitlementsByValue.clear();
+                return false;
+            }
+            for (Object normalizedValue : normalizedValues) {
+                entitlementsByValue
+                        .computeIfAbsent(normalizedValue, k -> new ArrayList<>(1))
+                        .add(entitlement);
+            }
+            return true;
+        }
+
+        /** Returns entitlements having given (normalized) value of the association attribute. Must not be modified. */
+        @NotNull List<PrismObject<ShadowType>> getEntitlements(@NotNull Object normalizedValue) {
+            return entitlementsByValue.getOrDefault(normalizedValue, List.of());
+        }
+    }
+
+    @FunctionalInterface
+    interface IndexBuilder {
+
+        /** Fills in the index. Returns false if it couldn't be built completely. */
+        boolean build(@NotNull Index index);
+    }
+}
@@ -1690,6 +1690,17 @@ public class ResourceObjectConverter {
     void postProcessResourceObjectRead(ProvisioningContext ctx, PrismObject<ShadowType> resourceObject,
             boolean fetchAssociations, OperationResult result) throws SchemaException, CommunicationException,
             ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+        postProcessResourceObjectRead(ctx, resourceObject, fetchAssociations, null, result);
+    }
+
+    /**
+     * As {@link #postProcessResourceObjectRead(ProvisioningContext, PrismObject, boolean, OperationResult)}, but
+     * object-to-subject associations may be resolved using provided reverse index (for objects found by a search).
+     */
+    void postProcessResourceObjectRead(ProvisioningContext ctx, PrismObject<ShadowType> resourceObject,
+            boolean fetchAssociations, @Nullable EntitlementReverseIndex entitlementReverseIndex, OperationResult result)
+            throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
         if (resourceObject == null) {
             return;
         }
@@ -1706,7 +1717,7 @@ public class ResourceObjectConverter {
 
         // Entitlements
         if (fetchAssociations) {
-            entitlementConverter.postProcessEntitlementsRead(resourceObject, ctx, result);
+            entitlementConverter.postProcessEntitlementsRead(resourceObject, ctx, entitlementReverseIndex, result);
         }
     }
 
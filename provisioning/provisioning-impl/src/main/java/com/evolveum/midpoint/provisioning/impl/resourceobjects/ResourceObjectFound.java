@@ -10,6 +10,7 @@ package com.evolveum.midpoint.provisioning.impl.resourceobjects;
 import java.util.Collection;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.provisioning.impl.InitializableMixin;
@@ -87,11 +88,12 @@ public class ResourceObjectFound implements InitializableMixin {
             UcfObjectFound ucfObject,
             ResourceObjectConverter converter,
             ProvisioningContext ctx,
-            boolean fetchAssociations) {
+            boolean fetchAssociations,
+            @Nullable EntitlementReverseIndex entitlementReverseIndex) {
         this.resourceObject = ucfObject.getResourceObject().clone().asObjectable();
         this.primaryIdentifierValue = ucfObject.getPrimaryIdentifierValue();
         this.initializationState = InitializationState.fromUcfErrorState(ucfObject.getErrorState(), null);
-        this.ictx = new InitializationContext(ctx, fetchAssociations);
+        this.ictx = new InitializationContext(ctx, fetchAssociations, entitlementReverseIndex);
         this.beans = converter.getBeans();
     }
 
@@ -100,7 +102,8 @@ public class ResourceObjectFound implements InitializableMixin {
 
         if (initializationState.isInitialStateOk()) {
             beans.resourceObjectConverter
-                    .postProcessResourceObjectRead(ictx.ctx, resourceObject.asPrismObject(), ictx.fetchAssociations, result);
+                    .postProcessResourceObjectRead(
+                            ictx.ctx, resourceObject.asPrismObject(), ictx.fetchAssociations, ictx.entitlementReverseIndex, result);
         } else {
             addFakePrimaryIdentifierIfNeeded();
         }
@@ -161,9 +164,14 @@ public class ResourceObjectFound implements InitializableMixin {
         private final ProvisioningContext ctx;
         private final boolean fetchAssociations;
 
-        private InitializationContext(ProvisioningContext ctx, boolean fetchAssociations) {
+        /** Shared by all objects found by the search. */
+        @Nullable private final EntitlementReverseIndex entitlementReverseIndex;
+
+        private InitializationContext(
+                ProvisioningContext ctx, boolean fetchAssociations, @Nullable EntitlementReverseIndex entitlementReverseIndex) {
             this.ctx = ctx;
             this.fetchAssociations = fetchAssociations;
+            this.entitlementReverseIndex = entitlementReverseIndex;
         }
     }
 }
@@ -58,6 +58,9 @@ class ResourceObjectSearchOperation {
 
     private final AtomicInteger objectCounter = new AtomicInteger(0);
 
+    /** Used to resolve object-to-subject associations in bulk (if enabled for them). Lives as long as this search. */
+    @NotNull private final EntitlementReverseIndex entitlementReverseIndex = new EntitlementReverseIndex();
+
     ResourceObjectSearchOperation(
             @NotNull ProvisioningContext ctx,
             @NotNull ResourceObjectHandler resultHandler,
@@ -164,7 +167,8 @@ class ResourceObjectSearchOperation {
 
     private boolean handleObjectFound(UcfObjectFound ucfObject, OperationResult parentResult) {
         ResourceObjectFound objectFound =
-                new ResourceObjectFound(ucfObject, beans.resourceObjectConverter, ctx, fetchAssociations);
+                new ResourceObjectFound(
+                        ucfObject, beans.resourceObjectConverter, ctx, fetchAssociations, entitlementReverseIndex);
 
         // in order to utilize the cache right from the beginning...
         RepositoryCache.enterLocalCaches(beans.cacheConfigurationManager);
@@ -522,6 +522,7 @@ public class ConnectorManager implements Cache, ConnectorDiscoveryListener {
                     if (notInRepoConsumer != null) {
                         notInRepoConsumer.accept(foundConnector);
                     }
+                    generateSchemaIfMissing(connectorFactory, foundConnector);
                     if (addConnectorToRepo(foundConnector, result, hostType)) {
                         discoveredConnectors.add(foundConnector);
                         LOGGER.info("Discovered new connector {}", foundConnector);
@@ -580,6 +581,25 @@ public class ConnectorManager implements Cache, ConnectorDiscoveryListener {
         }
     }
 
+    /**
+     * Connector factories may list connectors without the configuration schema, if generating it is expensive
+     * (e.g. requires loading the connector bundle). As the schema is needed only for connectors being added
+     * to the repository, it is generated here.
+     */
+    private void generateSchemaIfMissing(ConnectorFactory connectorFactory, ConnectorType foundConnector) {
+        if (foundConnector.getSchema() != null) {
+            return;
+        }
+        try {
+            PrismSchema connectorSchema = connectorFactory.generateConnectorConfigurationSchema(foundConnector);
+            if (connectorSchema != null) {
+                UcfUtil.setConnectorSchema(foundConnector, connectorSchema);
+            }
+        } catch (ObjectNotFoundException | SchemaException e) {
+            LOGGER.warn("Couldn't generate configuration schema for connector {}: {}", foundConnector, e.getMessage(), e);
+        }
+    }
+
     /**
      *
      * @return true if connector was not present in repo and was added to it
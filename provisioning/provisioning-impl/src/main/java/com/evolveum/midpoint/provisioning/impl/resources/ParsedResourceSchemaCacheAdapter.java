@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.resources;
+
+import java.util.Collection;
+import java.util.Collections;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.schema.processor.ParsedResourceSchemaCache;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Adapter from {@link ParsedResourceSchemaCache} (that lives in the schema module) to {@link Cache}.
+ *
+ * Invalidation of a specific resource is ignored, because the cached schemas are verified by the content they were
+ * created from; reusing them after the resource is modified (without touching the schema) is the point of the cache.
+ * The whole cache is cleared on global invalidation, e.g. when all caches are cleared via the diagnostics.
+ */
+@Component
+public class ParsedResourceSchemaCacheAdapter implements Cache {
+
+    @Autowired private CacheRegistry cacheRegistry;
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || type.isAssignableFrom(ResourceType.class) && oid == null) {
+            ParsedResourceSchemaCache.invalidateAll();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(
+                new SingleCacheStateInformationType()
+                        .name(ParsedResourceSchemaCache.class.getName())
+                        .size(ParsedResourceSchemaCache.size())
+        );
+    }
+
+    @Override
+    public void dumpContent() {
+        ParsedResourceSchemaCache.dumpContent();
+    }
+}
@@ -18,6 +18,7 @@ import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ComponentSizeInformationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
 
@@ -50,6 +51,11 @@ import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLe
  * The cache deals with concrete resources, i.e. _not_ the abstract ones. So, when an abstract resource is invalidated,
  * all concrete ones that inherit from it should be invalidated as well.
  *
+ * Reading is lock-free: cached resources are immutable, so they can be shared among threads without any synchronization.
+ * Only modifications of the cache (putting, invalidating) are synchronized, as they have to keep {@link #dependencyMap}
+ * consistent with the cache content. Read-only clients get the shared (frozen) instance; others get a clone. The number
+ * of clones created is recorded in {@link InternalMonitor#getResourceCacheStats()}, along with hits and misses.
+ *
  * @author Radovan Semancik
  */
 @Component
@@ -76,7 +82,7 @@ public class ResourceCache implements Cache {
      * Note that prism objects in this map are always not null and immutable.
      * And they must remain immutable after getting them from the cache.
      *
-     * As for ConcurrentHashMap: Although we use synchronization whenever possible, let's be extra cautious here.
+     * Reads are not synchronized, hence the ConcurrentHashMap. Writes are guarded by `this`.
      */
     private final Map<String, PrismObject<ResourceType>> cache = new ConcurrentHashMap<>();
 
@@ -140,8 +146,10 @@ public class ResourceCache implements Cache {
 
     /**
      * Gets a resource if it has specified version. If it has not, purges it from the cache (even if it exists there).
+     *
+     * Not synchronized. Read-only clients get the cached (immutable) instance, others get a clone.
      */
-    synchronized PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
+    PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
         InternalMonitor.getResourceCacheStats().recordRequest();
 
         PrismObject<ResourceType> resourceToReturn;
@@ -153,7 +161,7 @@ public class ResourceCache implements Cache {
             LOGGER.debug("MISS(wrong version) for {} (req={}, actual={})", oid, requestedVersion, cachedResource.getVersion());
             LOGGER.trace("Cached resource version {} does not match requested resource version {}, purging from cache",
                     cachedResource.getVersion(), requestedVersion);
-            invalidateSingle(oid);
+            invalidateSingleIfCached(oid, cachedResource);
             resourceToReturn = null;
         } else if (readOnly) {
             cachedResource.checkImmutable();
@@ -162,6 +170,7 @@ public class ResourceCache implements Cache {
         } else {
             LOGGER.debug("HIT(returning clone) for {} (v{})", cachedResource, cachedResource.getVersion());
             resourceToReturn = cachedResource.clone();
+            InternalMonitor.getResourceCacheStats().recordClone();
         }
 
         if (resourceToReturn != null) {
@@ -177,8 +186,7 @@ public class ResourceCache implements Cache {
     /**
      * Gets a resource without specifying requested version: returns one only if it has the same version as in the repo.
      *
-     * This requires a cooperation with the repository cache. Therefore this method is NOT synchronized
-     * and has operation result as its parameter.
+     * This requires a cooperation with the repository cache. Therefore this method has operation result as its parameter.
      */
     PrismObject<ResourceType> getIfLatest(@NotNull String oid, boolean readonly, OperationResult parentResult)
             throws SchemaException, ObjectNotFoundException {
@@ -194,14 +202,14 @@ public class ResourceCache implements Cache {
         }
     }
 
-    private synchronized boolean contains(@NotNull String oid) {
+    private boolean contains(@NotNull String oid) {
         return cache.containsKey(oid);
     }
 
     /**
      * Returns currently cached version. FOR DIAGNOSTICS ONLY.
      */
-    synchronized String getVersion(String oid) {
+    String getVersion(String oid) {
         if (oid == null) {
             return null;
         }
@@ -223,6 +231,16 @@ public class ResourceCache implements Cache {
         }
     }
 
+    /**
+     * Invalidates given resource (with the descendants), but only if it's still the cached one. This avoids discarding
+     * a newer version that was put into the cache by another thread in the meanwhile.
+     */
+    private synchronized void invalidateSingleIfCached(@NotNull String oid, @NotNull PrismObject<ResourceType> expected) {
+        if (cache.get(oid) == expected) {
+            invalidateSingle(oid);
+        }
+    }
+
     /** Invalidates single (concrete) resource and all its descendants. */
     synchronized void invalidateSingle(@NotNull String oid) {
         Set<String> descendants = new HashSet<>(dependencyMap.get(oid));
@@ -250,13 +268,18 @@ public class ResourceCache implements Cache {
         dependencyMap.clear();
     }
 
+    /** Besides the size, reports the number of clones created so far (for clients not requesting read-only resources). */
     @NotNull
     @Override
-    public synchronized Collection<SingleCacheStateInformationType> getStateInformation() {
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        long clones = InternalMonitor.getResourceCacheStats().getClones();
         return Collections.singleton(
                 new SingleCacheStateInformationType()
                         .name(ResourceCache.class.getName())
                         .size(cache.size())
+                        .component(new ComponentSizeInformationType()
+                                .name("clones")
+                                .size((int) Math.min(clones, Integer.MAX_VALUE)))
         );
     }
 
@@ -143,6 +143,20 @@ public class ResourceManager {
         }
     }
 
+    /**
+     * Gets (from cache) or gets (from repo) and completes a resource for use inside provisioning. This is the default for
+     * internal callers: the shared (immutable) cached instance is returned, so no clone is created. Callers that need to
+     * modify the resource must use {@link #getCompletedResource(String, GetOperationOptions, Task, OperationResult)}
+     * without `readOnly` option instead.
+     */
+    public @NotNull ResourceType getCompletedResource(
+            @NotNull String oid,
+            @NotNull Task task,
+            @NotNull OperationResult result)
+            throws ObjectNotFoundException, SchemaException, ExpressionEvaluationException, ConfigurationException {
+        return getCompletedResource(oid, GetOperationOptions.createReadOnly(), task, result);
+    }
+
     /** The processing is described in {@link ProvisioningService#getObject(Class, String, Collection, Task, OperationResult)}. */
     private @NotNull ResourceType completeAndCacheResource(
             @NotNull ResourceType repositoryObject,
@@ -304,8 +318,9 @@ public class ResourceManager {
             resourceDesc = "resource " + resourceOid;
         } else {
             try {
-                // TODO consider getting the resource in read-only mode
-                resource = getCompletedResource(resourceOid, GetOperationOptions.createNoFetch(), task, result);
+                // The resource is only read here, so the cached (shared) instance is sufficient.
+                resource = getCompletedResource(
+                        resourceOid, GetOperationOptions.createNoFetch().readOnly(true), task, result);
             } catch (ConfigurationException | SchemaException | ExpressionEvaluationException e) {
                 // We actually do not expect any of these exceptions here. The resource is most probably in use
                 throw SystemException.unexpected(e);
@@ -367,7 +382,7 @@ public class ResourceManager {
     public Object executeScript(String resourceOid, ProvisioningScriptType script, Task task, OperationResult result)
             throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException,
             ExpressionEvaluationException {
-        ResourceType resource = getCompletedResource(resourceOid, null, task, result);
+        ResourceType resource = getCompletedResource(resourceOid, task, result);
         ConnectorSpec connectorSpec = connectorSelector.selectConnectorRequired(resource, ScriptCapabilityType.class);
         ConnectorInstance connectorInstance = connectorManager.getConfiguredAndInitializedConnectorInstance(connectorSpec, false, result);
         ExecuteProvisioningScriptOperation scriptOperation = ProvisioningUtil.convertToScriptOperation(script, "script on " + resource, prismContext);
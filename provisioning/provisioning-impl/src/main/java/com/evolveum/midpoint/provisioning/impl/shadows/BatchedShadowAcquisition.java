@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadows;
+
+import static com.evolveum.midpoint.provisioning.impl.shadows.manager.ShadowManagerMiscUtil.determinePrimaryIdentifierValue;
+import static com.evolveum.midpoint.util.MiscUtil.getClassWithMessage;
+
+import java.util.*;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
+import com.evolveum.midpoint.provisioning.impl.resourceobjects.ResourceObjectFound;
+import com.evolveum.midpoint.provisioning.impl.shadows.manager.ShadowFinder;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Buffers objects found by a resource search into chunks, and looks up existing live shadows for the whole chunk
+ * using a single repository query (per object class) on `primaryIdentifierValue`. Objects are then processed
+ * (shadowed and passed to the client handler) one by one, in the original order, with the live shadows found in advance.
+ *
+ * Objects with no live shadow found in this way are marked as "known absent", so their shadows are created without
+ * any further lookup. This is not done if there are live shadows of the object class without `primaryIdentifierValue`
+ * stored (e.g. created by older versions), because these cannot be found by the batched query. The regular
+ * {@link ShadowAcquisition} lookup takes place in such cases.
+ *
+ * The "known absent" information may become stale while the chunk is being processed, e.g. if the client handler is slow
+ * and the shadow is created by another thread in the meanwhile. Hence it is used only for {@link #KNOWN_ABSENT_VALIDITY}
+ * after the lookup; objects processed later are looked up again in the regular way before their shadows are created.
+ * Similarly, the check for shadows without `primaryIdentifierValue` is repeated after {@link #MISSING_MEANS_ABSENT_VALIDITY}.
+ *
+ * Chunks start small and grow up to {@link #MAX_CHUNK_SIZE}, and objects are not kept in the buffer longer than
+ * {@link #MAX_BUFFERING_TIME} (checked when next object arrives), so that the client handler is not delayed too much
+ * when the resource returns objects slowly. As the objects are not passed to the client immediately, this mode must be
+ * explicitly enabled for the resource (`consistency/chunkedShadowLookup`).
+ *
+ * The remaining objects are processed when this object is closed, i.e. at the end of the search - even if the search
+ * has failed.
+ */
+class BatchedShadowAcquisition implements AutoCloseable {
+
+    private static final Trace LOGGER = TraceManager.getTrace(BatchedShadowAcquisition.class);
+
+    /** Size of the first chunk. Each following chunk is twice as large, up to {@link #MAX_CHUNK_SIZE}. */
+    static final int INITIAL_CHUNK_SIZE = 10;
+
+    /** Maximal number of objects buffered before their shadows are looked up and the objects are processed. */
+    static final int MAX_CHUNK_SIZE = 100;
+
+    /** Maximal time (in milliseconds) the first object in the buffer can wait for processing. */
+    static final long MAX_BUFFERING_TIME = 1000;
+
+    /** How long (in milliseconds) after the batched lookup the objects marked as "known absent" can rely on that. */
+    static final long KNOWN_ABSENT_VALIDITY = 1000;
+
+    /** How long (in milliseconds) the result of the check for shadows without `primaryIdentifierValue` is reused. */
+    static final long MISSING_MEANS_ABSENT_VALIDITY = 60_000;
+
+    @NotNull private final ProvisioningContext ctx;
+    @NotNull private final ShadowsLocalBeans localBeans;
+    @NotNull private final ObjectProcessor processor;
+
+    /** Result of the search operation; the objects are processed under it. */
+    @NotNull private final OperationResult result;
+
+    /** Objects waiting for processing. */
+    @NotNull private final List<ShadowedObjectFound> buffer = new ArrayList<>(MAX_CHUNK_SIZE);
+
+    /** Current chunk size. */
+    private int chunkSize = INITIAL_CHUNK_SIZE;
+
+    /** When the first object in the {@link #buffer} was added. */
+    private long firstBufferedAt;
+
+    /**
+     * Whether a live shadow not found by the batched query is known not to exist, per object class.
+     * See {@link ShadowFinder#existLiveShadowsWithoutIndexedPrimaryIdValue(ProvisioningContext, QName, OperationResult)}.
+     */
+    @NotNull private final Map<QName, Boolean> missingMeansAbsentByClass = new HashMap<>();
+
+    /** When the values in {@link #missingMeansAbsentByClass} were determined. */
+    @NotNull private final Map<QName, Long> missingMeansAbsentCheckedAt = new HashMap<>();
+
+    /** True if the processor requested stopping the search. */
+    private boolean stopped;
+
+    BatchedShadowAcquisition(
+            @NotNull ProvisioningContext ctx, @NotNull ShadowsLocalBeans localBeans, @NotNull ObjectProcessor processor,
+            @NotNull OperationResult result) {
+        this.ctx = ctx;
+        this.localBeans = localBeans;
+        this.processor = processor;
+        this.result = result;
+    }
+
+    /** Adds the object found to the buffer, processing the whole chunk if it's due. Returns false if the search should stop. */
+    synchronized boolean add(@NotNull ResourceObjectFound objectFound) {
+        if (stopped) {
+            return false;
+        }
+        if (buffer.isEmpty()) {
+            firstBufferedAt = System.currentTimeMillis();
+        }
+        buffer.add(new ShadowedObjectFound(objectFound, localBeans, ctx));
+        if (buffer.size() >= chunkSize || System.currentTimeMillis() - firstBufferedAt >= MAX_BUFFERING_TIME) {
+            chunkSize = Math.min(chunkSize * 2, MAX_CHUNK_SIZE);
+            return flush();
+        } else {
+            return true;
+        }
+    }
+
+    /** Processes all buffered objects. Returns false if the search should stop. */
+    synchronized boolean flush() {
+        if (stopped || buffer.isEmpty()) {
+            buffer.clear();
+            return !stopped;
+        }
+        List<ShadowedObjectFound> chunk = new ArrayList<>(buffer);
+        buffer.clear();
+
+        RepositoryCache.enterLocalCaches(localBeans.cacheConfigurationManager);
+        try {
+            prefetchLiveShadows(chunk);
+            long prefetchedAt = System.currentTimeMillis();
+            for (ShadowedObjectFound objectFound : chunk) {
+                if (objectFound.isLiveShadowKnownAbsent()
+                        && System.currentTimeMillis() - prefetchedAt > KNOWN_ABSENT_VALIDITY) {
+                    LOGGER.trace("The 'known absent' information is no longer fresh, the shadow will be looked up again");
+                    objectFound.setLiveShadowKnownAbsent(false);
+                }
+                if (!processor.process(objectFound, result)) {
+                    LOGGER.trace("Processing stopped by the handler, skipping the rest of the chunk");
+                    stopped = true;
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            RepositoryCache.exitLocalCaches();
+        }
+    }
+
+    /** Processes the remaining objects. */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Looks up live shadows for all (OK) objects in the chunk, marking the objects without one as known absent
+     * (if possible). Any problems are only logged here: affected objects are simply processed in the regular way,
+     * where the problems are reported.
+     */
+    private void prefetchLiveShadows(List<ShadowedObjectFound> chunk) {
+        Map<QName, Map<String, ShadowedObjectFound>> objectsByClass = new HashMap<>();
+        Set<ShadowedObjectFound> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ShadowedObjectFound objectFound : chunk) {
+            if (!objectFound.getInitializationState().isInitialStateOk()) {
+                continue;
+            }
+            ShadowType resourceObject = objectFound.getResourceObject();
+            QName objectClass = resourceObject.getObjectClass();
+            if (objectClass == null) {
+                continue;
+            }
+            try {
+                ProvisioningContext estimatedCtx = localBeans.shadowCaretaker.reapplyDefinitions(ctx, resourceObject);
+                String primaryIdentifierValue = determinePrimaryIdentifierValue(estimatedCtx, resourceObject);
+                if (primaryIdentifierValue != null) {
+                    ShadowedObjectFound previous = objectsByClass
+                            .computeIfAbsent(objectClass, k -> new HashMap<>())
+                            .put(primaryIdentifierValue, objectFound);
+                    if (previous != null) {
+                        // The same object returned twice: the shadow created for the first one is not known in advance
+                        duplicates.add(previous);
+                        duplicates.add(objectFound);
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.trace("Couldn't determine primary identifier value for {}, it will be processed in the regular way: {}",
+                        resourceObject, getClassWithMessage(e));
+            }
+        }
+
+        for (Map.Entry<QName, Map<String, ShadowedObjectFound>> entry : objectsByClass.entrySet()) {
+            QName objectClass = entry.getKey();
+            Map<String, ShadowedObjectFound> objectsByValue = entry.getValue();
+            Map<String, ShadowType> liveShadows;
+            boolean missingMeansAbsent;
+            try {
+                liveShadows = localBeans.shadowFinder.lookupLiveShadowsByIndexedPrimaryIdValues(
+                        ctx, objectClass, objectsByValue.keySet(), result);
+                missingMeansAbsent = isMissingMeansAbsent(objectClass);
+            } catch (SchemaException | RuntimeException e) {
+                LOGGER.debug("Couldn't look up shadows for {} objects of {}, they will be processed in the regular way: {}",
+                        objectsByValue.size(), objectClass, getClassWithMessage(e));
+                continue;
+            }
+            LOGGER.trace("Found {} live shadows for {} objects of {}; the others are known to be absent: {}",
+                    liveShadows.size(), objectsByValue.size(), objectClass, missingMeansAbsent);
+            objectsByValue.forEach((value, objectFound) -> {
+                ShadowType liveShadow = liveShadows.get(value);
+                if (liveShadow != null) {
+                    objectFound.setPrefetchedLiveShadow(liveShadow);
+                } else if (missingMeansAbsent && !duplicates.contains(objectFound)) {
+                    objectFound.setLiveShadowKnownAbsent(true);
+                }
+            });
+        }
+    }
+
+    private boolean isMissingMeansAbsent(QName objectClass) throws SchemaException {
+        Boolean cached = missingMeansAbsentByClass.get(objectClass);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - missingMeansAbsentCheckedAt.get(objectClass) <= MISSING_MEANS_ABSENT_VALIDITY) {
+            return cached;
+        }
+        boolean value = !localBeans.shadowFinder.existLiveShadowsWithoutIndexedPrimaryIdValue(ctx, objectClass, result);
+        missingMeansAbsentByClass.put(objectClass, value);
+        missingMeansAbsentCheckedAt.put(objectClass, now);
+        return value;
+    }
+
+    @FunctionalInterface
+    interface ObjectProcessor {
+
+        /** Processes a single object (with its live shadow possibly found in advance). Returns false to stop the search. */
+        boolean process(@NotNull ShadowedObjectFound objectFound, @NotNull OperationResult result);
+    }
+}
@@ -22,6 +22,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.xml.namespace.QName;
 
@@ -77,6 +78,19 @@ class ShadowAcquisition {
     /** Whether we want to skip the classification. It is used e.g. in emergency shadow creation. */
     private final boolean skipClassification;
 
+    /**
+     * Live shadow found in advance, typically by a batched lookup for a chunk of objects found by a search
+     * (see {@link BatchedShadowAcquisition}). If present, the repository lookup is skipped.
+     */
+    @Nullable private final ShadowType prefetchedLiveShadow;
+
+    /**
+     * True if it is known in advance that there is no live shadow (see {@link BatchedShadowAcquisition}).
+     * The repository lookup is then skipped. If the shadow was created in the meanwhile, the conflict is resolved
+     * when adding the new one.
+     */
+    private final boolean liveShadowKnownAbsent;
+
     private final CommonBeans beans;
     private final ShadowsLocalBeans localBeans;
 
@@ -86,12 +100,16 @@ class ShadowAcquisition {
             @NotNull QName objectClass,
             @NotNull ResourceObjectSupplier resourceObjectSupplier,
             boolean skipClassification,
+            @Nullable ShadowType prefetchedLiveShadow,
+            boolean liveShadowKnownAbsent,
             CommonBeans commonBeans) {
         this.ctx = ctx;
         this.primaryIdentifier = primaryIdentifier;
         this.objectClass = objectClass;
         this.resourceObjectSupplier = resourceObjectSupplier;
         this.skipClassification = skipClassification;
+        this.prefetchedLiveShadow = prefetchedLiveShadow;
+        this.liveShadowKnownAbsent = liveShadowKnownAbsent;
         this.beans = commonBeans;
         this.localBeans = commonBeans.shadowsFacade.getLocalBeans();
     }
@@ -143,8 +161,16 @@ class ShadowAcquisition {
     private @NotNull ShadowType obtainRepoShadow(OperationResult result)
             throws SchemaException, ConfigurationException, EncryptionException {
 
-        ShadowType existingLiveRepoShadow =
-                localBeans.shadowFinder.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier, objectClass, result);
+        ShadowType existingLiveRepoShadow;
+        if (prefetchedLiveShadow != null) {
+            existingLiveRepoShadow = prefetchedLiveShadow;
+        } else if (liveShadowKnownAbsent) {
+            LOGGER.trace("Live shadow is known not to exist, skipping the repository lookup");
+            existingLiveRepoShadow = null;
+        } else {
+            existingLiveRepoShadow =
+                    localBeans.shadowFinder.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier, objectClass, result);
+        }
 
         if (existingLiveRepoShadow != null) {
             LOGGER.trace("Found live shadow object in the repository {}", shortDumpShadowLazily(existingLiveRepoShadow));
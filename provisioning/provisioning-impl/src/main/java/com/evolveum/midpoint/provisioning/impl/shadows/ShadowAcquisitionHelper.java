@@ -12,6 +12,7 @@ import static java.util.Objects.requireNonNull;
 import javax.xml.namespace.QName;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -54,6 +55,19 @@ class ShadowAcquisitionHelper {
             ProvisioningContext ctx, ShadowType resourceObject, boolean skipClassification, OperationResult result)
             throws SchemaException, ConfigurationException, ObjectNotFoundException, SecurityViolationException,
             CommunicationException, GenericConnectorException, ExpressionEvaluationException, EncryptionException {
+        return acquireRepoShadow(ctx, resourceObject, skipClassification, null, false, result);
+    }
+
+    /**
+     * As {@link #acquireRepoShadow(ProvisioningContext, ShadowType, boolean, OperationResult)}, but uses live shadow
+     * found in advance (if not null) instead of looking it up in the repository. If `liveShadowKnownAbsent` is true,
+     * the lookup is skipped as well, and a new shadow is created right away.
+     */
+    @NotNull ShadowType acquireRepoShadow(
+            ProvisioningContext ctx, ShadowType resourceObject, boolean skipClassification,
+            @Nullable ShadowType prefetchedLiveShadow, boolean liveShadowKnownAbsent, OperationResult result)
+            throws SchemaException, ConfigurationException, ObjectNotFoundException, SecurityViolationException,
+            CommunicationException, GenericConnectorException, ExpressionEvaluationException, EncryptionException {
 
         PrismProperty<?> primaryIdentifier = requireNonNull(
                 ProvisioningUtil.getSingleValuedPrimaryIdentifier(resourceObject),
@@ -62,7 +76,9 @@ class ShadowAcquisitionHelper {
                 resourceObject.getObjectClass(),
                 () -> "No object class in " + ShadowUtil.shortDumpShadow(resourceObject));
 
-        return new ShadowAcquisition(ctx, primaryIdentifier, objectClass, () -> resourceObject, skipClassification, commonBeans)
+        return new ShadowAcquisition(
+                ctx, primaryIdentifier, objectClass, () -> resourceObject, skipClassification,
+                prefetchedLiveShadow, liveShadowKnownAbsent, commonBeans)
                 .execute(result);
     }
 
@@ -72,7 +88,7 @@ class ShadowAcquisitionHelper {
             GenericConnectorException, ExpressionEvaluationException, EncryptionException, SecurityViolationException {
 
         return new ShadowAcquisition(
-                ctx, primaryIdentifier, objectClass, resourceObjectSupplier, false, commonBeans)
+                ctx, primaryIdentifier, objectClass, resourceObjectSupplier, false, null, false, commonBeans)
                 .execute(result);
     }
 }
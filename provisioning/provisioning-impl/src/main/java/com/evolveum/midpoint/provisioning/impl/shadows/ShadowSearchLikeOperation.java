@@ -30,6 +30,7 @@ import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
+import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -150,6 +151,11 @@ class ShadowSearchLikeOperation {
         // We need to record the fetch down here. Now it is certain that we are going to fetch from resource.
         InternalMonitor.recordCount(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
 
+        boolean fetchAssociations = SelectorOptions.hasToIncludePath(ShadowType.F_ASSOCIATION, options, true);
+        if (ResourceTypeUtil.isChunkedShadowLookup(ctx.getResource())) {
+            return executeChunkedIterativeSearchOnResource(handler, fetchAssociations, ucfErrorReportingMethod, result);
+        }
+
         ResourceObjectHandler shadowHandler = (ResourceObjectFound objectFound, OperationResult lResult) -> {
 
             ShadowedObjectFound shadowedObjectFound = new ShadowedObjectFound(objectFound, localBeans, ctx);
@@ -166,7 +172,6 @@ class ShadowSearchLikeOperation {
             }
         };
 
-        boolean fetchAssociations = SelectorOptions.hasToIncludePath(ShadowType.F_ASSOCIATION, options, true);
         try {
             return localBeans.resourceObjectConverter.searchResourceObjects(
                     ctx, shadowHandler, createOnResourceQuery(), fetchAssociations, ucfErrorReportingMethod, result);
@@ -176,6 +181,55 @@ class ShadowSearchLikeOperation {
         }
     }
 
+    /**
+     * Existing shadows are looked up for chunks of objects found; the objects are processed after that
+     * (see {@link BatchedShadowAcquisition}). As the per-object results of the resource search are closed at that time,
+     * the objects are processed under their own {@link ShadowsFacade#OP_HANDLE_OBJECT} subresults of the search result.
+     */
+    private SearchResultMetadata executeChunkedIterativeSearchOnResource(
+            ResultHandler<ShadowType> handler, boolean fetchAssociations,
+            FetchErrorReportingMethodType ucfErrorReportingMethod, OperationResult result)
+            throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException,
+            ExpressionEvaluationException, SecurityViolationException {
+
+        BatchedShadowAcquisition batchedAcquisition = new BatchedShadowAcquisition(ctx, localBeans,
+                (ShadowedObjectFound shadowedObjectFound, OperationResult parentResult) -> {
+
+                    OperationResult lResult = parentResult.createMinorSubresult(ShadowsFacade.OP_HANDLE_OBJECT);
+                    try {
+                        shadowedObjectFound.initialize(ctx.getTask(), lResult);
+                        ShadowType shadowedObject = shadowedObjectFound.getResultingObject(ucfErrorReportingMethod);
+                        return handler.handle(shadowedObject.asPrismObject(), lResult);
+                    } catch (Throwable t) {
+                        lResult.recordException(t);
+                        throw t;
+                    } finally {
+                        lResult.close();
+                        parentResult.summarize();
+                    }
+                }, result);
+
+        ResourceObjectHandler shadowHandler = (ResourceObjectFound objectFound, OperationResult lResult) -> {
+            try {
+                return batchedAcquisition.add(objectFound);
+            } catch (Throwable t) {
+                lResult.recordException(t);
+                throw t;
+            } finally {
+                lResult.close();
+            }
+        };
+
+        // Objects buffered when the search ends (even if it fails) are processed when the batched acquisition is closed.
+        try (batchedAcquisition) {
+            return localBeans.resourceObjectConverter.searchResourceObjects(
+                    ctx, shadowHandler, createOnResourceQuery(), fetchAssociations, ucfErrorReportingMethod, result);
+        } catch (TunnelException e) {
+            unwrapAndThrowSearchingTunnelException(e);
+            throw new AssertionError();
+        }
+    }
+
     private ObjectQuery createOnResourceQuery() throws SchemaException {
         if (query == null) {
             return null;
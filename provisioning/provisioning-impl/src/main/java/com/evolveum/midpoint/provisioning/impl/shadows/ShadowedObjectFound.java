@@ -74,6 +74,19 @@ public class ShadowedObjectFound implements InitializableMixin {
      */
     private ShadowType shadowedObject;
 
+    /**
+     * Live repo shadow found in advance by {@link BatchedShadowAcquisition}. Null means "unknown": the shadow is then
+     * looked up in the usual way (unless {@link #liveShadowKnownAbsent} is set).
+     */
+    private ShadowType prefetchedLiveShadow;
+
+    /**
+     * True if {@link BatchedShadowAcquisition} has determined that there is no live repo shadow for this object,
+     * so the repository lookup can be skipped. It is cleared by {@link BatchedShadowAcquisition} if it is no longer
+     * fresh when the object is about to be processed.
+     */
+    private boolean liveShadowKnownAbsent;
+
     /** State of the processing. */
     private final InitializationState initializationState;
 
@@ -158,7 +171,8 @@ public class ShadowedObjectFound implements InitializableMixin {
         // Now find or create repository shadow, along with its classification (maybe it is not a good idea to merge the two).
         try {
             return ictx.localBeans.shadowAcquisitionHelper
-                    .acquireRepoShadow(estimatedCtx, resourceObject, false, result);
+                    .acquireRepoShadow(
+                            estimatedCtx, resourceObject, false, prefetchedLiveShadow, liveShadowKnownAbsent, result);
         } catch (Exception e) {
             // No need to log stack trace now. It will be logged at the place where the exception is processed.
             LOGGER.error("Couldn't acquire shadow for {}. Creating shadow in emergency mode. Error: {}", resourceObject, getClassWithMessage(e));
@@ -242,6 +256,18 @@ public class ShadowedObjectFound implements InitializableMixin {
         return resourceObject;
     }
 
+    void setPrefetchedLiveShadow(ShadowType prefetchedLiveShadow) {
+        this.prefetchedLiveShadow = prefetchedLiveShadow;
+    }
+
+    boolean isLiveShadowKnownAbsent() {
+        return liveShadowKnownAbsent;
+    }
+
+    void setLiveShadowKnownAbsent(boolean liveShadowKnownAbsent) {
+        this.liveShadowKnownAbsent = liveShadowKnownAbsent;
+    }
+
     private @NotNull ShadowType getAdoptedOrOriginalObject() {
         return MoreObjects.firstNonNull(shadowedObject, resourceObject);
     }
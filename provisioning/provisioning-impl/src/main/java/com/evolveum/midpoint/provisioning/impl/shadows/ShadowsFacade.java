@@ -26,6 +26,7 @@ import com.evolveum.midpoint.provisioning.ucf.api.GenericFrameworkException;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.processor.ResourceAttribute;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationProvisioningScriptsType;
@@ -121,6 +122,14 @@ public class ShadowsFacade {
         return refreshHelper.refreshShadow(repoShadow, options, task, result);
     }
 
+    /** Marks the shadow as tombstone, if it is marked as existing. Does not contact the resource. */
+    public void markShadowTombstone(@NotNull ShadowType repoShadow, @NotNull Task task, @NotNull OperationResult result)
+            throws SchemaException {
+        if (ShadowUtil.isExists(repoShadow)) {
+            localBeans.shadowUpdater.markShadowTombstone(repoShadow, task, result);
+        }
+    }
+
     public void applyDefinition(ObjectDelta<ShadowType> delta, ShadowType repoShadow,
             Task task, OperationResult result) throws SchemaException, ObjectNotFoundException,
                     CommunicationException, ConfigurationException, ExpressionEvaluationException {
@@ -59,6 +59,9 @@ import static com.evolveum.midpoint.provisioning.impl.shadows.manager.ShadowMana
  *
  * These two situations are discriminated by {@link DeltaComputation#fromResource} flag.
  *
+ * In the first situation, if the {@link ShadowFingerprint} of the resource object matches the one stored in the shadow,
+ * the comparison of cached data is skipped.
+ *
  * @see ShadowDeltaComputerRelative
  * @see ShadowUpdater#updateShadowInRepository(ProvisioningContext, ShadowType, ObjectDelta, ShadowType,
  * ShadowLifecycleStateType, OperationResult)
@@ -80,10 +83,33 @@ class ShadowDeltaComputerAbsolute {
             ShadowLifecycleStateType shadowState, // TODO ensure this is filled-in
             boolean fromResource)
             throws SchemaException, ConfigurationException {
-        return new DeltaComputation(ctx, repoShadow, resourceObject, resourceObjectDelta, shadowState, fromResource)
+        return computeShadowDelta(ctx, repoShadow, resourceObject, resourceObjectDelta, shadowState, fromResource, null);
+    }
+
+    /**
+     * As {@link #computeShadowDelta(ProvisioningContext, ShadowType, ShadowType, ObjectDelta, ShadowLifecycleStateType,
+     * boolean)}, with the fingerprint of the resource object (if fingerprints are used).
+     */
+    @NotNull ObjectDelta<ShadowType> computeShadowDelta(
+            @NotNull ProvisioningContext ctx,
+            @NotNull ShadowType repoShadow,
+            @NotNull ShadowType resourceObject,
+            @Nullable ObjectDelta<ShadowType> resourceObjectDelta,
+            ShadowLifecycleStateType shadowState,
+            boolean fromResource,
+            @Nullable String fingerprint)
+            throws SchemaException, ConfigurationException {
+        return new DeltaComputation(
+                ctx, repoShadow, resourceObject, resourceObjectDelta, shadowState, fromResource, fingerprint)
                 .execute();
     }
 
+    /** Computes the fingerprint of the resource object, if fingerprints are used for the resource. */
+    @Nullable String computeFingerprint(@NotNull ProvisioningContext ctx, @NotNull ShadowType resourceObject)
+            throws SchemaException, ConfigurationException {
+        return ctx.isUseFingerprints() ? ShadowFingerprint.compute(ctx, resourceObject, matchingRuleRegistry) : null;
+    }
+
     /**
      * Objects are NOT updated. Only {@link #computedShadowDelta} is created.
      */
@@ -102,13 +128,17 @@ class ShadowDeltaComputerAbsolute {
          */
         private final boolean fromResource;
 
+        /** Fingerprint of the resource object; null if not used or not known. Applicable only if {@link #fromResource}. */
+        @Nullable private final String fingerprint;
+
         private DeltaComputation(
                 @NotNull ProvisioningContext ctx,
                 @NotNull ShadowType repoShadow,
                 @NotNull ShadowType resourceObject,
                 @Nullable ObjectDelta<ShadowType> resourceObjectDelta,
                 ShadowLifecycleStateType shadowState,
-                boolean fromResource) {
+                boolean fromResource,
+                @Nullable String fingerprint) {
             this.ctx = ctx;
             this.repoShadow = repoShadow;
             this.resourceObject = resourceObject;
@@ -117,6 +147,7 @@ class ShadowDeltaComputerAbsolute {
             this.computedShadowDelta = repoShadow.asPrismObject().createModifyDelta();
             this.cachingStrategy = ctx.getCachingStrategy();
             this.fromResource = fromResource;
+            this.fingerprint = fromResource ? fingerprint : null;
         }
 
         private @NotNull ObjectDelta<ShadowType> execute()
@@ -127,9 +158,15 @@ class ShadowDeltaComputerAbsolute {
             // Note: these updateXXX method work by adding respective deltas (if needed) to the computedShadowDelta
             // They do not change repoShadow nor resourceObject.
 
-            updateAttributes(incompleteCacheableItems);
-            updateShadowName();
-            updateAuxiliaryObjectClasses();
+            boolean unchanged = fingerprint != null && fingerprint.equals(ShadowFingerprint.get(repoShadow));
+            if (unchanged) {
+                LOGGER.trace("Fingerprint of {} matches the one in the shadow, skipping comparison of the cached data",
+                        resourceObject);
+            } else {
+                updateAttributes(incompleteCacheableItems);
+                updateShadowName();
+                updateAuxiliaryObjectClasses();
+            }
 
             if (fromResource) {
                 updateExistsFlag();
@@ -142,11 +179,16 @@ class ShadowDeltaComputerAbsolute {
                 if (cachingStrategy == CachingStrategyType.NONE) {
                     clearCachingMetadata();
                 } else if (cachingStrategy == CachingStrategyType.PASSIVE) {
-                    updateCachedActivation();
-                    updateCachingMetadata(incompleteCacheableItems);
+                    if (!unchanged) {
+                        updateCachedActivation();
+                        updateCachingMetadata(incompleteCacheableItems);
+                    }
                 } else {
                     throw new ConfigurationException("Unknown caching strategy " + cachingStrategy);
                 }
+            } else if (!computedShadowDelta.isEmpty()) {
+                // Cached data are being updated not from the resource, so the fingerprint is no longer valid.
+                removeFingerprint();
             }
             return computedShadowDelta;
         }
@@ -214,14 +256,23 @@ class ShadowDeltaComputerAbsolute {
             }
         }
 
-        private void updateCachingMetadata(Collection<QName> incompleteCacheableItems) {
+        private void updateCachingMetadata(Collection<QName> incompleteCacheableItems) throws SchemaException {
             if (incompleteCacheableItems.isEmpty()) {
                 CachingMetadataType cachingMetadata = new CachingMetadataType();
                 cachingMetadata.setRetrievalTimestamp(clock.currentTimeXMLGregorianCalendar());
+                cachingMetadata.setFingerprint(fingerprint);
                 computedShadowDelta.addModificationReplaceProperty(ShadowType.F_CACHING_METADATA, cachingMetadata);
             } else {
                 LOGGER.trace("Shadow has incomplete cacheable items; will not update caching timestamp: {}",
                         incompleteCacheableItems);
+                removeFingerprint();
+            }
+        }
+
+        private void removeFingerprint() throws SchemaException {
+            ItemDelta<?, ?> fingerprintRemovalDelta = ShadowFingerprint.createRemovalDelta(repoShadow);
+            if (fingerprintRemovalDelta != null) {
+                computedShadowDelta.addModification(fingerprintRemovalDelta);
             }
         }
 
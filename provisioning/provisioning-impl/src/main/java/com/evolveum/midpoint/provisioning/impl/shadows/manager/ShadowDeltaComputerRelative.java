@@ -138,6 +138,14 @@ class ShadowDeltaComputerRelative {
             resultingRepoModifications.add(attributeBasedNameChange);
         }
 
+        if (!resultingRepoModifications.isEmpty() && repoShadow != null) {
+            // The cached data no longer correspond to the state retrieved from the resource.
+            ItemDelta<?, ?> fingerprintRemovalDelta = ShadowFingerprint.createRemovalDelta(repoShadow);
+            if (fingerprintRemovalDelta != null) {
+                resultingRepoModifications.add(fingerprintRemovalDelta);
+            }
+        }
+
         return resultingRepoModifications;
     }
 
@@ -15,7 +15,9 @@ import static com.evolveum.midpoint.provisioning.util.ProvisioningUtil.selectLiv
 import static com.evolveum.midpoint.util.DebugUtil.lazy;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import javax.xml.namespace.QName;
 
@@ -160,6 +162,70 @@ public class ShadowFinder {
                 lazy(() -> "primary identifier value " + primaryIdentifierValue + " (impossible because of DB constraint)"));
     }
 
+    /**
+     * Looks up live shadows by (indexed) primary identifier values, using a single repository query.
+     * Returns a map from primary identifier value to the live shadow. Values without a live shadow are not in the map.
+     *
+     * Note that shadows without `primaryIdentifierValue` stored (e.g. created by older midPoint versions) are not found
+     * this way, so callers must treat a missing value as "unknown" rather than "not existing".
+     *
+     * Side effects: none.
+     */
+    public @NotNull Map<String, ShadowType> lookupLiveShadowsByIndexedPrimaryIdValues(
+            ProvisioningContext ctx, @NotNull QName objectClass, @NotNull Collection<String> primaryIdentifierValues,
+            OperationResult result) throws SchemaException {
+
+        if (primaryIdentifierValues.isEmpty()) {
+            return Map.of();
+        }
+
+        ObjectQuery query = prismContext.queryFor(ShadowType.class)
+                .item(ShadowType.F_PRIMARY_IDENTIFIER_VALUE).eq(primaryIdentifierValues.toArray())
+                .and().item(ShadowType.F_OBJECT_CLASS).eq(objectClass)
+                .and().item(ShadowType.F_RESOURCE_REF).ref(ctx.getResourceOid())
+                .build();
+        LOGGER.trace("Searching for shadows by {} primaryIdentifierValue(s) using filter:\n{}",
+                primaryIdentifierValues.size(), query.debugDumpLazily(1));
+
+        List<PrismObject<ShadowType>> shadowsFound = searchRepoShadows(query, zeroStalenessOptions(), result);
+        LOGGER.trace("Found {} shadows (live or dead)", shadowsFound.size());
+
+        Map<String, List<PrismObject<ShadowType>>> shadowsByValue = shadowsFound.stream()
+                .filter(shadow -> shadow.asObjectable().getPrimaryIdentifierValue() != null)
+                .collect(Collectors.groupingBy(shadow -> shadow.asObjectable().getPrimaryIdentifierValue()));
+        Map<String, ShadowType> liveShadows = new HashMap<>();
+        for (Map.Entry<String, List<PrismObject<ShadowType>>> entry : shadowsByValue.entrySet()) {
+            PrismObject<ShadowType> liveShadow = selectLiveShadow(entry.getValue());
+            checkConsistency(liveShadow);
+            if (liveShadow != null) {
+                liveShadows.put(entry.getKey(), liveShadow.asObjectable());
+            }
+        }
+        return liveShadows;
+    }
+
+    /**
+     * Returns true if there are live shadows of given object class on the resource that have no `primaryIdentifierValue`
+     * stored (e.g. created by older midPoint versions). If there are none, a value not found by
+     * {@link #lookupLiveShadowsByIndexedPrimaryIdValues(ProvisioningContext, QName, Collection, OperationResult)}
+     * means that there is no live shadow for it.
+     *
+     * Side effects: none.
+     */
+    public boolean existLiveShadowsWithoutIndexedPrimaryIdValue(
+            ProvisioningContext ctx, @NotNull QName objectClass, OperationResult result) throws SchemaException {
+        ObjectQuery query = prismContext.queryFor(ShadowType.class)
+                .item(ShadowType.F_RESOURCE_REF).ref(ctx.getResourceOid())
+                .and().item(ShadowType.F_OBJECT_CLASS).eq(objectClass)
+                .and().item(ShadowType.F_PRIMARY_IDENTIFIER_VALUE).isNull()
+                .and().block()
+                    .item(ShadowType.F_DEAD).eq(false)
+                    .or().item(ShadowType.F_DEAD).isNull()
+                .endBlock()
+                .build();
+        return repositoryService.countObjects(ShadowType.class, query, zeroStalenessOptions(), result) > 0;
+    }
+
     private Collection<SelectorOptions<GetOperationOptions>> zeroStalenessOptions() {
         return schemaService.getOperationOptionsBuilder()
                 .staleness(0L) // Explicitly avoid all caches. We want to avoid shadow duplication.
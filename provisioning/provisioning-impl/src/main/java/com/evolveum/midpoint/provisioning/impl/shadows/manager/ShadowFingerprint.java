@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadows.manager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import javax.xml.namespace.QName;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.match.MatchingRule;
+import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
+import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.processor.ResourceAttributeDefinition;
+import com.evolveum.midpoint.schema.processor.ResourceObjectDefinition;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.exception.ConfigurationException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingMetadataType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Fingerprint of the data cached in a shadow: a hash of normalized values of attributes stored in the shadow,
+ * the shadow name, auxiliary object classes, and cached activation. It is stored in shadow caching metadata.
+ *
+ * If the fingerprint of an object retrieved from the resource matches the stored one, the object has not changed
+ * since the shadow was last updated from the resource, and {@link ShadowDeltaComputerAbsolute} skips comparing
+ * the cached data. Therefore, any other update of the cached data (e.g. after a modify operation) must remove
+ * the fingerprint, see {@link #createRemovalDelta(ShadowType)}.
+ *
+ * Used only if enabled by `useFingerprints` in the resource caching policy.
+ */
+class ShadowFingerprint {
+
+    private static final List<ItemPath> ACTIVATION_PATHS = List.of(
+            SchemaConstants.PATH_ACTIVATION_ADMINISTRATIVE_STATUS,
+            SchemaConstants.PATH_ACTIVATION_VALID_FROM,
+            SchemaConstants.PATH_ACTIVATION_VALID_TO,
+            SchemaConstants.PATH_ACTIVATION_LOCKOUT_STATUS);
+
+    /**
+     * Computes the fingerprint of the resource object. Returns null if it cannot be determined, e.g. because some of
+     * the cached attributes are incomplete; the object is then processed in the regular way.
+     */
+    static @Nullable String compute(
+            @NotNull ProvisioningContext ctx,
+            @NotNull ShadowType resourceObject,
+            @NotNull MatchingRuleRegistry matchingRuleRegistry)
+            throws SchemaException, ConfigurationException {
+        ResourceObjectDefinition ocDef = ctx.computeCompositeObjectDefinition(resourceObject);
+        Hasher hasher = Hashing.sha256().newHasher();
+
+        PrismContainer<?> attributes = resourceObject.asPrismObject().findContainer(ShadowType.F_ATTRIBUTES);
+        if (attributes != null) {
+            List<Item<?, ?>> items = new ArrayList<>(attributes.getValue().getItems());
+            items.sort(Comparator.comparing(item -> item.getElementName().toString()));
+            for (Item<?, ?> item : items) {
+                QName attrName = item.getElementName();
+                ResourceAttributeDefinition<?> attrDef = ocDef.findAttributeDefinition(attrName);
+                if (!(item instanceof PrismProperty<?>) || attrDef == null) {
+                    return null;
+                }
+                if (!ProvisioningUtil.shouldStoreAttributeInShadow(ocDef, attrName, ctx.getCachingStrategy())) {
+                    continue;
+                }
+                if (item.isIncomplete()) {
+                    return null;
+                }
+                MatchingRule<Object> matchingRule =
+                        matchingRuleRegistry.getMatchingRule(attrDef.getMatchingRuleQName(), attrDef.getTypeName());
+                List<String> normalizedValues = new ArrayList<>();
+                for (Object realValue : item.getRealValues()) {
+                    normalizedValues.add(toString(matchingRule.normalize(realValue)));
+                }
+                normalizedValues.sort(null);
+                put(hasher, attrName.toString());
+                hasher.putInt(normalizedValues.size());
+                normalizedValues.forEach(value -> put(hasher, value));
+            }
+        }
+
+        put(hasher, toString(ShadowUtil.determineShadowName(resourceObject)));
+
+        List<String> auxiliaryObjectClasses = new ArrayList<>();
+        resourceObject.getAuxiliaryObjectClass().forEach(oc -> auxiliaryObjectClasses.add(oc.toString()));
+        auxiliaryObjectClasses.sort(null);
+        hasher.putInt(auxiliaryObjectClasses.size());
+        auxiliaryObjectClasses.forEach(oc -> put(hasher, oc));
+
+        for (ItemPath activationPath : ACTIVATION_PATHS) {
+            PrismProperty<?> property = resourceObject.asPrismObject().findProperty(activationPath);
+            put(hasher, property != null ? toString(property.getRealValue()) : "");
+        }
+        return hasher.hash().toString();
+    }
+
+    /** Returns the fingerprint stored in the repository shadow, if any. */
+    static @Nullable String get(@NotNull ShadowType repoShadow) {
+        CachingMetadataType cachingMetadata = repoShadow.getCachingMetadata();
+        return cachingMetadata != null ? cachingMetadata.getFingerprint() : null;
+    }
+
+    /** Returns a delta that removes the fingerprint from the shadow, or null if there is none. */
+    static @Nullable ItemDelta<?, ?> createRemovalDelta(@NotNull ShadowType repoShadow) throws SchemaException {
+        if (get(repoShadow) == null) {
+            return null;
+        }
+        CachingMetadataType cachingMetadata = repoShadow.getCachingMetadata().clone();
+        cachingMetadata.setFingerprint(null);
+        return PrismContext.get().deltaFor(ShadowType.class)
+                .item(ShadowType.F_CACHING_METADATA).replace(cachingMetadata)
+                .asItemDelta();
+    }
+
+    private static void put(Hasher hasher, String value) {
+        hasher.putInt(value.length());
+        hasher.putString(value, StandardCharsets.UTF_8);
+    }
+
+    private static String toString(Object value) {
+        if (value == null) {
+            return "";
+        } else if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        } else if (value instanceof PolyString) {
+            return ((PolyString) value).getOrig();
+        } else {
+            return value.toString();
+        }
+    }
+}
@@ -364,6 +364,9 @@ public class ShadowUpdater {
      *
      * Retrieves index-only attributes from repo if needed.
      *
+     * If fingerprints are used and the fingerprint of the resource object matches the one in the shadow, the cached data
+     * are not compared nor updated; see {@link ShadowFingerprint}.
+     *
      * @param currentResourceObject Current state of the resource object. Not shadowized yet.
      * @param resourceObjectDelta Delta coming from the resource (if known).
      *
@@ -381,7 +384,10 @@ public class ShadowUpdater {
             throws SchemaException, ObjectNotFoundException, ConfigurationException {
 
         LOGGER.trace("updateShadowInRepository starting; shadowState = {}", shadowState);
-        if (resourceObjectDelta == null) {
+        String fingerprint = shadowDeltaComputerAbsolute.computeFingerprint(ctx, currentResourceObject);
+        if (fingerprint != null && fingerprint.equals(ShadowFingerprint.get(repoShadow))) {
+            LOGGER.trace("Fingerprint matches, no need to retrieve index-only attributes");
+        } else if (resourceObjectDelta == null) {
             repoShadow = retrieveIndexOnlyAttributesIfNeeded(ctx, repoShadow, result);
         } else {
             LOGGER.trace("Resource object delta is present. We assume we will be able to update the shadow without "
@@ -390,7 +396,7 @@ public class ShadowUpdater {
 
         ObjectDelta<ShadowType> computedShadowDelta =
                 shadowDeltaComputerAbsolute.computeShadowDelta(
-                        ctx, repoShadow, currentResourceObject, resourceObjectDelta, shadowState, true);
+                        ctx, repoShadow, currentResourceObject, resourceObjectDelta, shadowState, true, fingerprint);
 
         if (!computedShadowDelta.isEmpty()) {
             LOGGER.trace("Updating repo shadow {} with delta:\n{}", repoShadow, computedShadowDelta.debugDumpLazily(1));
@@ -33,6 +33,11 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 /**
  * Implements Async Update functionality. (Currently not much, but this might change as we'll implement multi-threading.
  * Then we'll maybe find some code common with LiveSynchronizer.)
+ *
+ * Note that the listener can be called from multiple threads at once, if the connector processes the changes
+ * in parallel (e.g. in the processing lanes of the built-in async update connector). The connector guarantees
+ * that changes related to the same object are delivered in order, and the activity's `ProcessingCoordinator` keeps
+ * that order (for events with the same correlation value), both with and without worker threads.
  */
 @Component
 public class AsyncUpdater {
@@ -6,6 +6,8 @@
  */
 package com.evolveum.midpoint.provisioning.impl.shadows.task;
 
+import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCollection;
+
 import java.util.List;
 
 import com.evolveum.midpoint.repo.common.activity.run.*;
@@ -62,7 +64,7 @@ public final class PropagationActivityRun
                 () -> "No resource specified");
         resource =
                 getActivityHandler().provisioningService
-                        .getObject(ResourceType.class, resourceOid, null, getRunningTask(), result)
+                        .getObject(ResourceType.class, resourceOid, createReadOnlyCollection(), getRunningTask(), result)
                         .asObjectable();
         setContextDescription("to " + resource);
     }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.async.update;
+
+import java.io.File;
+
+/**
+ * As {@link TestAsyncUpdateCaching}, but the changes are processed in processing lanes.
+ */
+public class TestAsyncUpdateCachingLanes extends TestAsyncUpdateCaching {
+
+    private static final File RESOURCE_ASYNC_CACHING_LANES_FILE = new File(TEST_DIR, "resource-async-caching-lanes.xml");
+
+    @Override
+    protected File getResourceFile() {
+        return RESOURCE_ASYNC_CACHING_LANES_FILE;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_ACCOUNT_OBJECT_CLASS;
+import static com.evolveum.midpoint.schema.util.ObjectQueryUtil.createResourceAndObjectClassQuery;
+
+import java.io.File;
+import java.util.*;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.icf.dummy.resource.DummyGroup;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.impl.resourceobjects.EntitlementReverseIndex;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowAssociationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests the bulk resolution of object-to-subject associations (`bulkResolution` in the association definition):
+ * the associations of accounts found by a search must be the same as the ones resolved for each account separately,
+ * also when the reverse index is over the limits and the per-object searches are used instead.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+@Listeners({ com.evolveum.midpoint.tools.testng.AlphabeticalMethodInterceptor.class })
+public class TestDummyBulkAssociationResolution extends AbstractDummyTest {
+
+    private static final File TEST_DIR = new File(TEST_DIR_DUMMY, "dummy-bulk-resolution");
+    private static final File RESOURCE_DUMMY_FILE = new File(TEST_DIR, "resource-dummy.xml");
+
+    private static final int ACCOUNTS = 6;
+
+    /** Group name -> indices of member accounts. The last account is in no group. */
+    private static final Map<String, List<Integer>> GROUP_MEMBERS = Map.of(
+            "bulk-sailors", List.of(0, 1, 2),
+            "bulk-gunners", List.of(1, 3),
+            "bulk-cooks", List.of(2, 3, 4));
+
+    @Override
+    protected File getResourceDummyFile() {
+        return RESOURCE_DUMMY_FILE;
+    }
+
+    @Test
+    public void test000Integrity() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        testResourceAssertSuccess(RESOURCE_DUMMY_OID, task, result);
+    }
+
+    /** The associations resolved from the reverse index are the same as the ones resolved for each account. */
+    @Test
+    public void test100BulkResolution() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("accounts and groups having them as members");
+        for (int i = 0; i < ACCOUNTS; i++) {
+            dummyResource.addAccount(new DummyAccount(getAccountName(i)));
+        }
+        for (Map.Entry<String, List<Integer>> entry : GROUP_MEMBERS.entrySet()) {
+            DummyGroup group = new DummyGroup(entry.getKey());
+            dummyResource.addGroup(group);
+            for (int member : entry.getValue()) {
+                group.addMember(getAccountName(member));
+            }
+        }
+
+        when("the accounts are searched for");
+        rememberCounter(InternalCounters.CONNECTOR_OPERATION_COUNT);
+        List<PrismObject<ShadowType>> found = searchAccounts(task, result);
+        long searchOperations = getCounterIncrement(InternalCounters.CONNECTOR_OPERATION_COUNT);
+
+        then("the associations are the expected ones, and the same as when resolved for each account");
+        assertSuccess(result);
+        Map<String, Set<String>> groupsFound = getGroupNames(found, result);
+        displayValue("Groups of accounts found", groupsFound);
+        assertThat(groupsFound).as("groups of accounts found").isEqualTo(getExpectedGroupNames());
+        assertThat(groupsFound)
+                .as("groups of accounts found compared to per-object resolution")
+                .isEqualTo(getGroupNamesPerObject(found, task, result));
+
+        and("the groups are not searched for each account");
+        displayValue("Connector operations in search", searchOperations);
+        assertThat(searchOperations).as("connector operations in search").isLessThan(ACCOUNTS);
+    }
+
+    /** If the index is over the limits, the associations are resolved by per-object searches, with the same result. */
+    @Test
+    public void test110FallbackOverLimit() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the index limit lower than the number of groups");
+        EntitlementReverseIndex.setMaxEntitlements(GROUP_MEMBERS.size() - 1);
+        try {
+            when("the accounts are searched for");
+            rememberCounter(InternalCounters.CONNECTOR_OPERATION_COUNT);
+            List<PrismObject<ShadowType>> found = searchAccounts(task, result);
+            long searchOperations = getCounterIncrement(InternalCounters.CONNECTOR_OPERATION_COUNT);
+
+            then("the associations are the same as when resolved for each account");
+            assertSuccess(result);
+            Map<String, Set<String>> groupsFound = getGroupNames(found, result);
+            displayValue("Groups of accounts found", groupsFound);
+            assertThat(groupsFound).as("groups of accounts found").isEqualTo(getExpectedGroupNames());
+            assertThat(groupsFound)
+                    .as("groups of accounts found compared to per-object resolution")
+                    .isEqualTo(getGroupNamesPerObject(found, task, result));
+
+            and("the groups are searched for each account");
+            displayValue("Connector operations in search", searchOperations);
+            assertThat(searchOperations).as("connector operations in search").isGreaterThan(ACCOUNTS);
+        } finally {
+            EntitlementReverseIndex.setMaxEntitlements(EntitlementReverseIndex.DEFAULT_MAX_ENTITLEMENTS);
+        }
+    }
+
+    private static String getAccountName(int i) {
+        return "bulk-" + i;
+    }
+
+    /** Account name -> names of its groups, for all the accounts (including the ones created by the superclass). */
+    private Map<String, Set<String>> getExpectedGroupNames() {
+        Map<String, Set<String>> expected = new TreeMap<>();
+        expected.put(ACCOUNT_DAEMON_USERNAME, Set.of());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            expected.put(getAccountName(i), new TreeSet<>());
+        }
+        GROUP_MEMBERS.forEach(
+                (group, members) -> members.forEach(
+                        member -> expected.get(getAccountName(member)).add(group)));
+        return expected;
+    }
+
+    private Map<String, Set<String>> getGroupNamesPerObject(
+            List<PrismObject<ShadowType>> shadows, Task task, OperationResult result) throws Exception {
+        List<PrismObject<ShadowType>> fetched = new ArrayList<>();
+        for (PrismObject<ShadowType> shadow : shadows) {
+            fetched.add(
+                    provisioningService.getObject(ShadowType.class, shadow.getOid(), null, task, result));
+        }
+        return getGroupNames(fetched, result);
+    }
+
+    private Map<String, Set<String>> getGroupNames(List<PrismObject<ShadowType>> shadows, OperationResult result)
+            throws Exception {
+        Map<String, Set<String>> groupNames = new TreeMap<>();
+        for (PrismObject<ShadowType> shadow : shadows) {
+            Set<String> names = new TreeSet<>();
+            for (ShadowAssociationType association : shadow.asObjectable().getAssociation()) {
+                if (ASSOCIATION_GROUP_NAME.equals(association.getName())) {
+                    String groupOid = association.getShadowRef().getOid();
+                    names.add(
+                            repositoryService.getObject(ShadowType.class, groupOid, null, result)
+                                    .getName().getOrig());
+                }
+            }
+            groupNames.put(shadow.getName().getOrig(), names);
+        }
+        return groupNames;
+    }
+
+    private List<PrismObject<ShadowType>> searchAccounts(Task task, OperationResult result) throws Exception {
+        return provisioningService.searchObjects(
+                ShadowType.class, createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_ACCOUNT_OBJECT_CLASS),
+                null, task, result);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_ACCOUNT_OBJECT_CLASS;
+import static com.evolveum.midpoint.schema.util.ObjectQueryUtil.createResourceAndObjectClassQuery;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.asserter.RepoOpAsserter;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests the repository access when objects found by a resource search are shadowed in chunks
+ * (see `BatchedShadowAcquisition`, enabled by `consistency/chunkedShadowLookup`): existing shadows should be looked up
+ * by a single query per chunk, and no per-object lookups should be needed - neither for existing nor for new shadows.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+@Listeners({ com.evolveum.midpoint.tools.testng.AlphabeticalMethodInterceptor.class })
+public class TestDummyChunkedSearch extends AbstractDummyTest {
+
+    private static final int NEW_ACCOUNTS = 250;
+    private static final int MORE_ACCOUNTS = 20;
+
+    /**
+     * Upper bound for the number of shadow searches in a single resource search.
+     * Chunks grow from 10 to 100 objects, so a few hundreds of objects need less than 10 chunks.
+     */
+    private static final int MAX_CHUNK_SEARCHES = 10;
+
+    private static final File TEST_DIR = new File(TEST_DIR_DUMMY, "dummy-chunked-search");
+    private static final File RESOURCE_DUMMY_FILE = new File(TEST_DIR, "resource-dummy.xml");
+
+    private static final String LEGACY_ACCOUNT_NAME = "legacy";
+
+    private static final String STALE_ACCOUNT_A_NAME = "stale-a";
+    private static final String STALE_ACCOUNT_B_NAME = "stale-b";
+
+    /** Longer than the time for which the "known absent" information is relied upon. */
+    private static final long SLOW_HANDLER_DELAY = 1500;
+
+    private String legacyShadowOid;
+
+    @Override
+    protected File getResourceDummyFile() {
+        return RESOURCE_DUMMY_FILE;
+    }
+
+    @Test
+    public void test000Integrity() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        testResourceAssertSuccess(RESOURCE_DUMMY_OID, task, result);
+    }
+
+    /** The shadows are created for new accounts without looking them up one by one. */
+    @Test
+    public void test100SearchNewAccounts() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("many accounts without shadows");
+        for (int i = 0; i < NEW_ACCOUNTS; i++) {
+            dummyResource.addAccount(new DummyAccount(String.format("chunk-%03d", i)));
+        }
+
+        when("the accounts are searched for");
+        startRepoPerformanceCollection();
+        List<PrismObject<ShadowType>> found = searchAccounts(task, result);
+
+        then("all of them are found, and their shadows are created");
+        assertSuccess(result);
+        RepoOpAsserter repoOpAsserter = createRepoOpAsserter().display();
+        assertThat(found).as("accounts found").hasSize(NEW_ACCOUNTS + 1); // + daemon
+        repoOpAsserter.assertOp("addObject.ShadowType", NEW_ACCOUNTS);
+
+        then("shadows are searched for by chunks only");
+        repoOpAsserter
+                .assertOp("searchObjects.ShadowType", 1, MAX_CHUNK_SEARCHES)
+                .assertOp("countObjects.ShadowType", 1); // the check for shadows without primaryIdentifierValue
+    }
+
+    /** Existing shadows are found by chunks, and no new ones are created. */
+    @Test
+    public void test110SearchExistingAccounts() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("the accounts are searched for again");
+        startRepoPerformanceCollection();
+        List<PrismObject<ShadowType>> found = searchAccounts(task, result);
+
+        then("all of them are found, with existing shadows");
+        assertSuccess(result);
+        assertThat(found).as("accounts found").hasSize(NEW_ACCOUNTS + 1);
+        createRepoOpAsserter().display()
+                .assertOp("addObject.ShadowType", 0)
+                .assertOp("searchObjects.ShadowType", 1, MAX_CHUNK_SEARCHES);
+    }
+
+    /**
+     * If there is a shadow without `primaryIdentifierValue`, new objects must be looked up in the regular way,
+     * so that such shadow is found and not duplicated.
+     */
+    @Test
+    public void test120SearchWithLegacyShadow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("an account with a shadow without primary identifier value, and some more new accounts");
+        DummyAccount legacyAccount = new DummyAccount(LEGACY_ACCOUNT_NAME);
+        dummyResource.addAccount(legacyAccount);
+        PrismObject<ShadowType> legacyShadow = PrismTestUtil.parseObject(ACCOUNT_DAEMON_FILE);
+        legacyShadow.setOid(null);
+        legacyShadow.asObjectable().setName(PrismTestUtil.createPolyStringType(LEGACY_ACCOUNT_NAME));
+        legacyShadow.asObjectable().setPrimaryIdentifierValue(null);
+        legacyShadow.findProperty(SchemaConstants.ICFS_NAME_PATH).setRealValue(LEGACY_ACCOUNT_NAME);
+        setIcfUid(legacyShadow, legacyAccount.getId());
+        legacyShadowOid = repositoryService.addObject(legacyShadow, null, result);
+
+        for (int i = 0; i < MORE_ACCOUNTS; i++) {
+            dummyResource.addAccount(new DummyAccount(String.format("more-%03d", i)));
+        }
+
+        when("the accounts are searched for");
+        startRepoPerformanceCollection();
+        List<PrismObject<ShadowType>> found = searchAccounts(task, result);
+
+        then("all of them are found, and the legacy shadow is used");
+        assertSuccess(result);
+        RepoOpAsserter repoOpAsserter = createRepoOpAsserter().display();
+        assertThat(found).as("accounts found").hasSize(NEW_ACCOUNTS + MORE_ACCOUNTS + 2);
+        assertThat(found)
+                .filteredOn(shadow -> LEGACY_ACCOUNT_NAME.equals(shadow.getName().getOrig()))
+                .singleElement()
+                .extracting(PrismObject::getOid)
+                .isEqualTo(legacyShadowOid);
+        repoOpAsserter.assertOp("addObject.ShadowType", MORE_ACCOUNTS);
+
+        then("objects without a shadow found by chunk were looked up one by one");
+        repoOpAsserter.assertOp("searchObjects.ShadowType", MORE_ACCOUNTS + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * A shadow that was absent when the chunk was looked up, but was created (e.g. by another thread) while a slow
+     * handler was processing the preceding object, must be found and not duplicated.
+     */
+    @Test
+    public void test130ShadowCreatedWhileChunkIsProcessed() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("no shadows without primary identifier value, and two new accounts");
+        repositoryService.deleteObject(ShadowType.class, legacyShadowOid, result);
+        dummyResource.addAccount(new DummyAccount(STALE_ACCOUNT_A_NAME));
+        DummyAccount accountB = new DummyAccount(STALE_ACCOUNT_B_NAME);
+        dummyResource.addAccount(accountB);
+
+        and("a slow handler that creates the shadow for the second account when processing the first one");
+        String[] shadowBOid = new String[1];
+        List<PrismObject<ShadowType>> found = new ArrayList<>();
+        ResultHandler<ShadowType> handler = (object, lResult) -> {
+            found.add(object);
+            if (STALE_ACCOUNT_A_NAME.equals(object.getName().getOrig())) {
+                shadowBOid[0] = addShadowWithoutPrimaryIdentifierValue(STALE_ACCOUNT_B_NAME, accountB.getId(), lResult);
+                try {
+                    Thread.sleep(SLOW_HANDLER_DELAY);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            return true;
+        };
+
+        when("the accounts are searched for");
+        searchAccounts(handler, task, result);
+
+        then("the shadow created during the processing is used for the second account");
+        assertSuccess(result);
+        assertThat(shadowBOid[0]).as("shadow created by the handler").isNotNull();
+        assertThat(found)
+                .filteredOn(shadow -> STALE_ACCOUNT_B_NAME.equals(shadow.getName().getOrig()))
+                .singleElement()
+                .extracting(PrismObject::getOid)
+                .isEqualTo(shadowBOid[0]);
+    }
+
+    private String addShadowWithoutPrimaryIdentifierValue(String name, String icfUid, OperationResult result) {
+        try {
+            PrismObject<ShadowType> shadow = PrismTestUtil.parseObject(ACCOUNT_DAEMON_FILE);
+            shadow.setOid(null);
+            shadow.asObjectable().setName(PrismTestUtil.createPolyStringType(name));
+            shadow.asObjectable().setPrimaryIdentifierValue(null);
+            shadow.findProperty(SchemaConstants.ICFS_NAME_PATH).setRealValue(name);
+            setIcfUid(shadow, icfUid);
+            return repositoryService.addObject(shadow, null, result);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private List<PrismObject<ShadowType>> searchAccounts(Task task, OperationResult result) throws Exception {
+        List<PrismObject<ShadowType>> found = new ArrayList<>();
+        searchAccounts((object, parentResult) -> {
+            found.add(object);
+            return true;
+        }, task, result);
+        return found;
+    }
+
+    private void searchAccounts(ResultHandler<ShadowType> handler, Task task, OperationResult result) throws Exception {
+        provisioningService.searchObjectsIterative(
+                ShadowType.class, createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_ACCOUNT_OBJECT_CLASS),
+                null, handler, task, result);
+    }
+
+    private void startRepoPerformanceCollection() {
+        repositoryService.getPerformanceMonitor().startThreadLocalPerformanceInformationCollection();
+    }
+
+    private RepoOpAsserter createRepoOpAsserter() {
+        return new RepoOpAsserter(
+                repositoryService.getPerformanceMonitor().getThreadLocalPerformanceInformation(), getTestNameShort());
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_ACCOUNT_OBJECT_CLASS;
+import static com.evolveum.midpoint.schema.util.ObjectQueryUtil.createResourceAndObjectClassQuery;
+import static com.evolveum.midpoint.test.DummyResourceContoller.DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME;
+import static com.evolveum.midpoint.test.DummyResourceContoller.DUMMY_POSIX_ACCOUNT_OBJECT_CLASS_NAME;
+
+import java.io.File;
+import javax.xml.namespace.QName;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.asserter.RepoOpAsserter;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ActivationStatusType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingMetadataType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests the use of fingerprints of cached data (`useFingerprints` in caching policy, see `ShadowFingerprint`):
+ * a shadow of an unchanged resource object is not updated, while any change of cached data - attributes, activation,
+ * auxiliary object classes - is still propagated to the shadow. Updates not coming from the resource remove
+ * the fingerprint.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+@Listeners({ com.evolveum.midpoint.tools.testng.AlphabeticalMethodInterceptor.class })
+public class TestDummyFingerprints extends AbstractDummyTest {
+
+    private static final File TEST_DIR = new File(TEST_DIR_DUMMY, "dummy-fingerprints");
+    private static final File RESOURCE_DUMMY_FILE = new File(TEST_DIR, "resource-dummy.xml");
+
+    private static final String ACCOUNT_JACK_NAME = "jack";
+    private static final QName POSIX_ACCOUNT_OBJECT_CLASS = new QName(RESOURCE_DUMMY_NS, DUMMY_POSIX_ACCOUNT_OBJECT_CLASS_NAME);
+
+    private static DummyAccount accountJack;
+    private static String shadowJackOid;
+
+    @Override
+    protected File getResourceDummyFile() {
+        return RESOURCE_DUMMY_FILE;
+    }
+
+    @Override
+    protected void extraDummyResourceInit() {
+        dummyResourceCtl.extendSchemaPosix();
+    }
+
+    @Test
+    public void test000Integrity() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        testResourceAssertSuccess(RESOURCE_DUMMY_OID, task, result);
+    }
+
+    /** The first retrieval stores the fingerprint in the shadow. */
+    @Test
+    public void test100FirstRetrievalStoresFingerprint() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("an account with a shadow");
+        accountJack = new DummyAccount(ACCOUNT_JACK_NAME);
+        accountJack.setEnabled(true);
+        accountJack.addAttributeValues(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Jack Sparrow");
+        dummyResource.addAccount(accountJack);
+        shadowJackOid = provisioningService
+                .searchObjects(
+                        ShadowType.class, createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_ACCOUNT_OBJECT_CLASS),
+                        null, task, result)
+                .stream()
+                .filter(shadow -> ACCOUNT_JACK_NAME.equals(shadow.getName().getOrig()))
+                .findFirst()
+                .map(PrismObject::getOid)
+                .orElseThrow();
+
+        when("the account is retrieved");
+        getAccountJack(task, result);
+
+        then("the shadow contains the fingerprint");
+        assertSuccess(result);
+        assertThat(getFingerprint()).as("fingerprint").isNotNull();
+    }
+
+    /** Unchanged object does not cause the shadow update. */
+    @Test
+    public void test110UnchangedObjectDoesNotUpdateShadow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the fingerprint stored");
+        String fingerprintBefore = getFingerprint();
+
+        when("the account is retrieved again");
+        RepoOpAsserter repoOpAsserter = getAccountJack(task, result);
+
+        then("the shadow is not updated");
+        assertSuccess(result);
+        repoOpAsserter.assertOp("modifyObject.ShadowType", 0);
+        assertThat(getFingerprint()).as("fingerprint").isEqualTo(fingerprintBefore);
+    }
+
+    /** A change of an attribute is stored in the shadow. */
+    @Test
+    public void test120ChangedAttributeUpdatesShadow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the full name is changed on the resource");
+        String fingerprintBefore = getFingerprint();
+        accountJack.replaceAttributeValue(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Captain Jack Sparrow");
+
+        when("the account is retrieved");
+        RepoOpAsserter repoOpAsserter = getAccountJack(task, result);
+
+        then("the shadow is updated, including the fingerprint");
+        assertSuccess(result);
+        repoOpAsserter.assertOp("modifyObject.ShadowType", 1);
+        PrismObject<ShadowType> repoShadow = getShadowRepo(shadowJackOid);
+        assertAttribute(repoShadow, DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Captain Jack Sparrow");
+        assertFingerprintChangedAndStable(fingerprintBefore, task, result);
+    }
+
+    /** A change of the activation is stored in the shadow. */
+    @Test
+    public void test130ChangedActivationUpdatesShadow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the account is disabled on the resource");
+        String fingerprintBefore = getFingerprint();
+        accountJack.setEnabled(false);
+
+        when("the account is retrieved");
+        RepoOpAsserter repoOpAsserter = getAccountJack(task, result);
+
+        then("the shadow is updated, including the fingerprint");
+        assertSuccess(result);
+        repoOpAsserter.assertOp("modifyObject.ShadowType", 1);
+        ShadowType repoShadow = getShadowRepo(shadowJackOid).asObjectable();
+        assertThat(repoShadow.getActivation()).as("cached activation").isNotNull();
+        assertThat(repoShadow.getActivation().getAdministrativeStatus())
+                .as("cached administrative status")
+                .isEqualTo(ActivationStatusType.DISABLED);
+        assertFingerprintChangedAndStable(fingerprintBefore, task, result);
+    }
+
+    /** A change of auxiliary object classes is stored in the shadow. */
+    @Test
+    public void test140ChangedAuxiliaryObjectClassUpdatesShadow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("an auxiliary object class is added on the resource");
+        String fingerprintBefore = getFingerprint();
+        accountJack.addAuxiliaryObjectClassName(DUMMY_POSIX_ACCOUNT_OBJECT_CLASS_NAME);
+
+        when("the account is retrieved");
+        RepoOpAsserter repoOpAsserter = getAccountJack(task, result);
+
+        then("the shadow is updated, including the fingerprint");
+        assertSuccess(result);
+        repoOpAsserter.assertOp("modifyObject.ShadowType", 1);
+        assertThat(getShadowRepo(shadowJackOid).asObjectable().getAuxiliaryObjectClass())
+                .as("auxiliary object classes in the shadow")
+                .containsExactly(POSIX_ACCOUNT_OBJECT_CLASS);
+        assertFingerprintChangedAndStable(fingerprintBefore, task, result);
+    }
+
+    /** An update not coming from the resource (here: a modify operation) removes the fingerprint. */
+    @Test
+    public void test200ModifyOperationRemovesFingerprint() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the fingerprint stored");
+        assertThat(getFingerprint()).as("fingerprint").isNotNull();
+
+        when("the full name is modified via provisioning");
+        ObjectDelta<ShadowType> delta = prismContext.deltaFactory().object().createModificationReplaceProperty(
+                ShadowType.class, shadowJackOid, dummyResourceCtl.getAttributeFullnamePath(), "Jack");
+        provisioningService.modifyObject(
+                ShadowType.class, delta.getOid(), delta.getModifications(), null, null, task, result);
+
+        then("the fingerprint is removed from the shadow");
+        assertSuccess(result);
+        assertAttribute(getShadowRepo(shadowJackOid), DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Jack");
+        assertThat(getFingerprint()).as("fingerprint").isNull();
+
+        when("the account is retrieved");
+        RepoOpAsserter repoOpAsserter = getAccountJack(task, result);
+
+        then("the shadow is updated, and the fingerprint is stored again");
+        assertSuccess(result);
+        repoOpAsserter.assertOp("modifyObject.ShadowType", 1);
+        assertThat(getFingerprint()).as("fingerprint").isNotNull();
+    }
+
+    /** Checks that the fingerprint has changed, and that the next retrieval does not update the shadow. */
+    private void assertFingerprintChangedAndStable(String fingerprintBefore, Task task, OperationResult result)
+            throws Exception {
+        String fingerprintAfter = getFingerprint();
+        assertThat(fingerprintAfter).as("fingerprint").isNotNull().isNotEqualTo(fingerprintBefore);
+
+        RepoOpAsserter repoOpAsserter = getAccountJack(task, result);
+        assertSuccess(result);
+        repoOpAsserter.assertOp("modifyObject.ShadowType", 0);
+        assertThat(getFingerprint()).as("fingerprint after the next retrieval").isEqualTo(fingerprintAfter);
+    }
+
+    /** Retrieves the account from the resource, returning the asserter for the repository operations executed. */
+    private RepoOpAsserter getAccountJack(Task task, OperationResult result) throws Exception {
+        rememberCounter(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
+        repositoryService.getPerformanceMonitor().startThreadLocalPerformanceInformationCollection();
+        provisioningService.getObject(ShadowType.class, shadowJackOid, null, task, result);
+        assertCounterIncrement(InternalCounters.SHADOW_FETCH_OPERATION_COUNT, 1);
+        return new RepoOpAsserter(
+                repositoryService.getPerformanceMonitor().getThreadLocalPerformanceInformation(), getTestNameShort())
+                .display();
+    }
+
+    private String getFingerprint() throws Exception {
+        CachingMetadataType cachingMetadata = getShadowRepo(shadowJackOid).asObjectable().getCachingMetadata();
+        return cachingMetadata != null ? cachingMetadata.getFingerprint() : null;
+    }
+}
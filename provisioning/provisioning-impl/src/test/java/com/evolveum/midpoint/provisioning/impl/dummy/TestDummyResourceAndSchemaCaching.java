@@ -6,6 +6,8 @@
  */
 package com.evolveum.midpoint.provisioning.impl.dummy;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,6 +15,7 @@ import java.util.Collection;
 
 import com.evolveum.midpoint.schema.processor.ResourceSchemaFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.AssertJUnit;
@@ -24,6 +27,7 @@ import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.delta.PropertyDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.provisioning.impl.resources.ResourceCache;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
@@ -36,9 +40,11 @@ import com.evolveum.midpoint.test.DummyResourceContoller;
 import com.evolveum.midpoint.test.util.TestUtil;
 import com.evolveum.midpoint.util.DOMUtil;
 import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ComponentSizeInformationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ProjectionPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
 
 /**
  * The test of Provisioning service on the API level. It checks proper caching of resource and schemas.
@@ -51,6 +57,8 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 @DirtiesContext
 public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
 
+    @Autowired private ResourceCache resourceCache;
+
     @Test
     public void test010GetResource() throws Exception {
         // GIVEN
@@ -126,6 +134,9 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         Task task = getTestTask();
         OperationResult result = createOperationResult();
 
+        // Clones created in the previous test are not interesting here.
+        rememberResourceCacheStats();
+
         // WHEN
         PrismObject<ResourceType> resourceProvisioning =
                 provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, task, result);
@@ -150,6 +161,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         displayDumpable("Resource cache (1)", InternalMonitor.getResourceCacheStats());
         assertResourceCacheHitsIncrement(1);
         assertResourceCacheMissesIncrement(0);
+        assertResourceCacheClonesIncrement(1); // the client did not ask for a read-only resource
 
         assertResourceSchemaUnchanged(ResourceSchemaFactory.getRawSchema(resourceProvisioning));
         assertRefinedResourceSchemaUnchanged(ResourceSchemaFactory.getCompleteSchema(resourceProvisioning));
@@ -179,6 +191,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         displayDumpable("Resource cache (1)", InternalMonitor.getResourceCacheStats());
         assertResourceCacheHitsIncrement(1);
         assertResourceCacheMissesIncrement(0);
+        assertResourceCacheClonesIncrement(1); // the client did not ask for a read-only resource
 
         assertResourceSchemaUnchanged(ResourceSchemaFactory.getRawSchema(resourceProvisioning));
         assertRefinedResourceSchemaUnchanged(ResourceSchemaFactory.getCompleteSchema(resourceProvisioning));
@@ -204,6 +217,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         displayDumpable("Resource cache (1)", InternalMonitor.getResourceCacheStats());
         assertResourceCacheHitsIncrement(1);
         assertResourceCacheMissesIncrement(0);
+        assertResourceCacheClonesIncrement(0); // the resource is used read-only inside provisioning
 
         PrismObject<ResourceType> resourceProvisioning =
                 provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, task, result);
@@ -227,6 +241,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         displayDumpable("Resource cache (2)", InternalMonitor.getResourceCacheStats());
         assertResourceCacheHitsIncrement(1);
         assertResourceCacheMissesIncrement(0);
+        assertResourceCacheClonesIncrement(1);
 
         assertResourceSchemaUnchanged(ResourceSchemaFactory.getRawSchema(resourceProvisioning));
         assertRefinedResourceSchemaUnchanged(ResourceSchemaFactory.getCompleteSchema(resourceProvisioning));
@@ -301,8 +316,38 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         assertConnectorInstanceUnchanged(resourceProvisioning);
     }
 
+    /** Read-only client gets the shared cached resource; no clone is created. The clone count is reported by the cache. */
+    @Test
+    public void test014GetResourceReadOnly() throws Exception {
+        // GIVEN
+        Task task = getTestTask();
+        OperationResult result = createOperationResult();
+
+        // WHEN
+        PrismObject<ResourceType> resourceProvisioning = provisioningService.getObject(
+                ResourceType.class, RESOURCE_DUMMY_OID, GetOperationOptions.createReadOnlyCollection(), task, result);
+
+        // THEN
+        assertSuccess(result);
+        assertHasSchema(resourceProvisioning, "provisioning resource");
+        assertThat(resourceProvisioning.isImmutable()).as("resource is immutable").isTrue();
+
+        displayDumpable("Resource cache", InternalMonitor.getResourceCacheStats());
+        assertResourceCacheHitsIncrement(1);
+        assertResourceCacheMissesIncrement(0);
+        assertResourceCacheClonesIncrement(0);
+
+        SingleCacheStateInformationType stateInformation = resourceCache.getStateInformation().iterator().next();
+        displayValue("Resource cache state", stateInformation);
+        assertThat(stateInformation.getComponent())
+                .as("clones reported by the cache")
+                .singleElement()
+                .returns("clones", ComponentSizeInformationType::getName)
+                .returns((int) InternalMonitor.getResourceCacheStats().getClones(), ComponentSizeInformationType::getSize);
+    }
+
     /**
-     * Change something that is not important. The cached resource should be refreshed, the schema re-parsed
+     * Change something that is not important. The cached resource should be refreshed (reusing the already parsed schema),
      * but the connector should still be cached.
      */
     @Test
@@ -344,7 +389,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         assertCounterIncrement(InternalCounters.CONNECTOR_CAPABILITIES_FETCH_COUNT, 0);
         assertCounterIncrement(InternalCounters.CONNECTOR_INSTANCE_INITIALIZATION_COUNT, 0);
         assertCounterIncrement(InternalCounters.CONNECTOR_INSTANCE_CONFIGURATION_COUNT, 0);
-        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 1);
+        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 0);
 
         assertResourceVersionIncrement(resourceProvisioning, 0);
 
@@ -415,7 +460,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
      * Change resource directly in repo. This simulates the change done by other node. The connector cache should
      * be refreshed.
      * <p>
-     * Change something that is not important. The cached resource should be refreshed, the schema re-parsed
+     * Change something that is not important. The cached resource should be refreshed (reusing the already parsed schema),
      * but the connector should still be cached.
      */
     @Test
@@ -457,7 +502,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         assertCounterIncrement(InternalCounters.CONNECTOR_CAPABILITIES_FETCH_COUNT, 0);
         assertCounterIncrement(InternalCounters.CONNECTOR_INSTANCE_INITIALIZATION_COUNT, 0);
         assertCounterIncrement(InternalCounters.CONNECTOR_INSTANCE_CONFIGURATION_COUNT, 0);
-        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 1);
+        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 0);
 
         assertResourceVersionIncrement(resourceProvisioning, 0);
 
@@ -474,7 +519,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
     }
 
     /**
-     * Change part of connector configuration. The cached resource should be refreshed, the schema re-parsed.
+     * Change part of connector configuration. The cached resource should be refreshed (reusing the already parsed schema).
      * The connector also needs to re-initialized.
      */
     @Test
@@ -502,7 +547,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
      * Change part of connector configuration. Change it directly in repo to simulate change
      * from another midPoint node.
      * <p>
-     * The cached resource should be refreshed, the schema re-parsed.
+     * The cached resource should be refreshed (reusing the already parsed schema).
      * The connector also needs to re-initialized.
      */
     @Test
@@ -589,7 +634,7 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         assertCounterIncrement(InternalCounters.CONNECTOR_CAPABILITIES_FETCH_COUNT, 0);
         assertCounterIncrement(InternalCounters.CONNECTOR_INSTANCE_INITIALIZATION_COUNT, 0);
         assertCounterIncrement(InternalCounters.CONNECTOR_INSTANCE_CONFIGURATION_COUNT, 0);
-        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 1);
+        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 0);
 
         assertResourceVersionIncrement(resourceProvisioning, 0);
 
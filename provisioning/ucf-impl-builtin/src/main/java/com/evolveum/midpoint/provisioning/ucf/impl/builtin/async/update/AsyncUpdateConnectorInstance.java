@@ -161,9 +161,10 @@ public class AsyncUpdateConnectorInstance extends AbstractManagedConnectorInstan
         }
 
         Authentication authentication = securityContextManager.getAuthentication();
+        OrderedProcessingLanes lanes = createProcessingLanes();
         TransformationalAsyncUpdateMessageListener transformationalListener =
-                new TransformationalAsyncUpdateMessageListener(changeListener, authentication, this);
-        ConnectorListener newListener = new ConnectorListener(this, transformationalListener);
+                new TransformationalAsyncUpdateMessageListener(changeListener, authentication, this, lanes);
+        ConnectorListener newListener = new ConnectorListener(this, transformationalListener, lanes);
 
         boolean success = listener.compareAndSet(null, newListener);
         if (success) {
@@ -178,6 +179,10 @@ public class AsyncUpdateConnectorInstance extends AbstractManagedConnectorInstan
         }
     }
 
+    private @Nullable OrderedProcessingLanes createProcessingLanes() {
+        return configuration.isProcessingInLanes() ? new OrderedProcessingLanes(configuration.getProcessingLanes()) : null;
+    }
+
     @Override
     public @NotNull CapabilityCollectionType getNativeCapabilities(OperationResult result)
             throws CommunicationException, GenericFrameworkException, ConfigurationException {
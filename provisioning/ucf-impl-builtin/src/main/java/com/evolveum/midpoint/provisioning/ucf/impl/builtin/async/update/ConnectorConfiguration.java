@@ -24,6 +24,7 @@ public class ConnectorConfiguration {
     private ExpressionType transformExpression;
     private AsyncUpdateErrorHandlingActionType errorHandlingAction;
     private ActivityTracingDefinitionType processTracingConfiguration;
+    private Integer processingLanes;
 
     @ConfigurationItem
     public AsyncUpdateSourcesType getSources() {
@@ -61,10 +62,35 @@ public class ConnectorConfiguration {
         this.processTracingConfiguration = processTracingConfiguration;
     }
 
+    /**
+     * Number of threads ("lanes") in which the changes are processed. Changes are assigned to lanes by their primary
+     * identifier, so the changes of any single object are still processed in the order of their arrival.
+     * Null or values lower than 2 mean that the changes are processed in the thread that received the message.
+     * See {@link OrderedProcessingLanes}.
+     *
+     * Not supported for JMS sources: a JMS session must not be used from multiple threads, and acknowledging a message
+     * acknowledges all the messages consumed by the session, including the ones still being processed.
+     */
+    @ConfigurationItem
+    public Integer getProcessingLanes() {
+        return processingLanes;
+    }
+
+    public void setProcessingLanes(Integer processingLanes) {
+        this.processingLanes = processingLanes;
+    }
+
     public void validate() {
         if (getAllSources().isEmpty()) {
             throw new IllegalStateException("No asynchronous update sources were configured");
         }
+        if (isProcessingInLanes() && sources != null && !sources.getJms().isEmpty()) {
+            throw new IllegalStateException("Processing lanes are not supported for JMS sources");
+        }
+    }
+
+    boolean isProcessingInLanes() {
+        return processingLanes != null && processingLanes > 1;
     }
 
     @NotNull
@@ -14,6 +14,7 @@ import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -32,6 +33,8 @@ import java.util.stream.Collectors;
  * 4. Accepts configuration updates.
  * 5. Holds the control - in {@link #listenForChanges(ConnectorConfiguration, Supplier)} method - while there are open
  *     passive sources and/or any listening activities on active sources and until externally requested to be stopped.
+ * 6. When stopping permanently, waits for the changes in {@link OrderedProcessingLanes} (if used) to be processed,
+ *     before the sources are closed. So the messages can be still acknowledged.
  */
 class ConnectorListener {
 
@@ -60,13 +63,18 @@ class ConnectorListener {
     /** "Output" message listener. Usually here is the transformational listener that transforms messages to UCF API level. */
     @NotNull private final AsyncUpdateMessageListener messageListener;
 
+    /** Lanes in which {@link #messageListener} processes the changes, if used. */
+    @Nullable private final OrderedProcessingLanes lanes;
+
     /** Set to true when the listening should be stopped. Once stopped, it remains stopped. */
     private volatile boolean stopped;
 
     ConnectorListener(@NotNull AsyncUpdateConnectorInstance connectorInstance,
-            @NotNull AsyncUpdateMessageListener messageListener) {
+            @NotNull AsyncUpdateMessageListener messageListener,
+            @Nullable OrderedProcessingLanes lanes) {
         this.connectorInstance = connectorInstance;
         this.messageListener = messageListener;
+        this.lanes = lanes;
     }
 
     /**
@@ -191,6 +199,9 @@ class ConnectorListener {
 
         if (permanently) {
             stopped = true;
+            if (lanes != null) {
+                lanes.close(); // the changes must be processed (and acknowledged) while the sources are still open
+            }
         }
 
         List<ListeningActivity> activitiesCopy;
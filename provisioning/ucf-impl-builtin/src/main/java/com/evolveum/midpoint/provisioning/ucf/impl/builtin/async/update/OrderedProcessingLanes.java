@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.ucf.impl.builtin.async.update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Processes asynchronous changes in a fixed number of single-threaded "lanes". Each change is put into the lane
+ * determined by its key (the primary identifier), so changes of the same object are processed in the order in which
+ * they were submitted, while changes of different objects are processed in parallel.
+ *
+ * The number of changes submitted but not processed yet is limited; when the limit is reached, {@link #submit(Object, Runnable)}
+ * blocks. This keeps the message source from reading messages much faster than they can be processed.
+ *
+ * Used by {@link TransformationalAsyncUpdateMessageListener} if `processingLanes` is configured.
+ * Messages are acknowledged when all their changes are processed, i.e. generally not in the order of their arrival;
+ * message sources have to take this into account.
+ *
+ * The lanes are closed by {@link ConnectorListener} before it closes the message sources. Changes submitted after that
+ * (from messages delivered before the sources are closed) are processed in the submitting thread.
+ */
+class OrderedProcessingLanes {
+
+    private static final Trace LOGGER = TraceManager.getTrace(OrderedProcessingLanes.class);
+
+    /** Maximal number of changes waiting in a lane (on average). */
+    private static final int CHANGES_PER_LANE = 100;
+
+    /** How long we wait for the changes to be processed when closing the lanes. */
+    private static final long CLOSE_TIMEOUT = 60000;
+
+    private static final AtomicInteger LANES_NUMBER = new AtomicInteger(0);
+
+    @NotNull private final List<ExecutorService> lanes = new ArrayList<>();
+
+    /** Permits for changes that can be submitted but not processed yet. */
+    @NotNull private final Semaphore permits;
+
+    private volatile boolean closed;
+
+    OrderedProcessingLanes(int count) {
+        int lanesNumber = LANES_NUMBER.incrementAndGet();
+        for (int i = 0; i < count; i++) {
+            String threadName = "AsyncUpdate-lane-" + lanesNumber + "-" + i;
+            lanes.add(Executors.newSingleThreadExecutor(r -> new Thread(r, threadName)));
+        }
+        permits = new Semaphore(count * CHANGES_PER_LANE);
+        LOGGER.debug("Created {} processing lanes", count);
+    }
+
+    /**
+     * Puts the processing into the lane determined by the key. Blocks if too many changes are waiting.
+     * If the lanes are closed, waits until the lane is finished, and then processes the change in the current thread.
+     */
+    void submit(@Nullable Object key, @NotNull Runnable processing) {
+        ExecutorService lane = lanes.get(Math.floorMod(Objects.hashCode(key), lanes.size()));
+        if (!closed) {
+            permits.acquireUninterruptibly();
+            try {
+                lane.execute(() -> {
+                    try {
+                        process(key, processing);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                permits.release(); // closed in the meanwhile
+            }
+        }
+        LOGGER.debug("Processing lanes are closed, processing change with key {} in the current thread", key);
+        awaitTermination(lane, System.currentTimeMillis() + CLOSE_TIMEOUT);
+        process(key, processing);
+    }
+
+    private void process(@Nullable Object key, @NotNull Runnable processing) {
+        try {
+            processing.run();
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception while processing change with key {}", t, key);
+        }
+    }
+
+    /** Waits until all the submitted changes are processed, and stops the lanes. */
+    void close() {
+        closed = true;
+        lanes.forEach(ExecutorService::shutdown);
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        for (ExecutorService lane : lanes) {
+            if (!awaitTermination(lane, deadline)) {
+                LOGGER.warn("Processing lanes did not finish in {} ms, some changes may not be processed", CLOSE_TIMEOUT);
+                break;
+            }
+        }
+        LOGGER.debug("Processing lanes closed");
+    }
+
+    /** Waits until the (already shut down) lane finishes, or the deadline is reached. Returns true if it finished. */
+    private boolean awaitTermination(@NotNull ExecutorService lane, long deadline) {
+        boolean interrupted = false;
+        while (!lane.isTerminated() && System.currentTimeMillis() < deadline) {
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                lane.awaitTermination(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOGGER.info("Interrupted while waiting for processing lanes. Continuing waiting until specified time.");
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return lane.isTerminated();
+    }
+}
@@ -53,6 +53,9 @@ import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
  * Transforms AsyncUpdateMessageType objects to Change ones (via UcfChangeType intermediary).
  *
  * Also prepares appropriately authenticated security context. (In the future we might factor this out to a separate class.)
+ *
+ * The transformation is always done in the thread that received the message. The changes are then processed either
+ * in the same thread, or - if {@link OrderedProcessingLanes} are used - in the lane determined by the primary identifier.
  */
 public class TransformationalAsyncUpdateMessageListener implements AsyncUpdateMessageListener {
 
@@ -60,6 +63,7 @@ public class TransformationalAsyncUpdateMessageListener implements AsyncUpdateMe
 
     private static final String OP_ON_MESSAGE = TransformationalAsyncUpdateMessageListener.class.getName() + ".onMessage";
     private static final String OP_ON_MESSAGE_PREPARATION = TransformationalAsyncUpdateMessageListener.class.getName() + ".onMessagePreparation";
+    private static final String OP_PROCESS_CHANGE_IN_LANE = TransformationalAsyncUpdateMessageListener.class.getName() + ".processChangeInLane";
 
     private static final String VAR_MESSAGE = "message";
 
@@ -67,15 +71,20 @@ public class TransformationalAsyncUpdateMessageListener implements AsyncUpdateMe
     @Nullable private final Authentication authentication;
     @NotNull private final AsyncUpdateConnectorInstance connectorInstance;
 
+    /** If present, changes are processed in these lanes instead of the thread that received the message. */
+    @Nullable private final OrderedProcessingLanes lanes;
+
     private final AtomicInteger messagesSeen = new AtomicInteger(0);
     private final AtomicInteger changesProduced = new AtomicInteger(0);
 
     TransformationalAsyncUpdateMessageListener(@NotNull UcfAsyncUpdateChangeListener changeListener,
             @Nullable Authentication authentication,
-            @NotNull AsyncUpdateConnectorInstance connectorInstance) {
+            @NotNull AsyncUpdateConnectorInstance connectorInstance,
+            @Nullable OrderedProcessingLanes lanes) {
         this.changeListener = changeListener;
         this.authentication = authentication;
         this.connectorInstance = connectorInstance;
+        this.lanes = lanes;
     }
 
     @Override
@@ -89,11 +98,7 @@ public class TransformationalAsyncUpdateMessageListener implements AsyncUpdateMe
         try {
             securityContextManager.setupPreAuthenticatedSecurityContext(authentication);
 
-            Task task = connectorInstance.getTaskManager().createTaskInstance(OP_ON_MESSAGE_PREPARATION);
-            task.setChannel(CHANNEL_ASYNC_UPDATE_URI);
-            if (authentication != null && authentication.getPrincipal() instanceof MidPointPrincipal) {
-                task.setOwner(((MidPointPrincipal) authentication.getPrincipal()).getFocus().asPrismObject().clone());
-            }
+            Task task = createTask(OP_ON_MESSAGE_PREPARATION);
             Tracer tracer = connectorInstance.getTracer();
 
             OperationResult result = task.getResult();
@@ -152,7 +157,11 @@ public class TransformationalAsyncUpdateMessageListener implements AsyncUpdateMe
                         // intentionally in this order - to process changes even after failure
                         // (if listener wants to fail fast, it can throw an exception)
                         UcfAsyncUpdateChange change = createChange(changeBean, result, changeSequentialNumber, aggregatedSink);
-                        changeListener.onChange(change, task, result);
+                        if (lanes != null) {
+                            lanes.submit(change.getPrimaryIdentifierRealValue(), () -> processChangeInLane(change));
+                        } else {
+                            changeListener.onChange(change, task, result);
+                        }
                     }
                 }
             } catch (Exception e) {
@@ -177,6 +186,41 @@ public class TransformationalAsyncUpdateMessageListener implements AsyncUpdateMe
         }
     }
 
+    /**
+     * Processes the change in a lane thread, so the security context and the task have to be set up here.
+     * The change is negatively acknowledged if the processing fails.
+     */
+    private void processChangeInLane(UcfAsyncUpdateChange change) {
+        SecurityContextManager securityContextManager = connectorInstance.getSecurityContextManager();
+        Authentication oldAuthentication = securityContextManager.getAuthentication();
+        try {
+            securityContextManager.setupPreAuthenticatedSecurityContext(authentication);
+            Task task = createTask(OP_PROCESS_CHANGE_IN_LANE);
+            OperationResult result = task.getResult();
+            try {
+                changeListener.onChange(change, task, result);
+            } catch (Exception e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Got exception while processing asynchronous change {} in {}",
+                        e, change, task);
+                result.recordFatalError(e.getMessage(), e);
+                change.acknowledge(false, result);
+            } finally {
+                result.computeStatusIfUnknown();
+            }
+        } finally {
+            securityContextManager.setupPreAuthenticatedSecurityContext(oldAuthentication);
+        }
+    }
+
+    private Task createTask(String operationName) {
+        Task task = connectorInstance.getTaskManager().createTaskInstance(operationName);
+        task.setChannel(CHANNEL_ASYNC_UPDATE_URI);
+        if (authentication != null && authentication.getPrincipal() instanceof MidPointPrincipal) {
+            task.setOwner(((MidPointPrincipal) authentication.getPrincipal()).getFocus().asPrismObject().clone());
+        }
+        return task;
+    }
+
     private AcknowledgementSink createAggregatingAcknowledgeSink(AcknowledgementSink sink, int expectedReplies) {
         if (expectedReplies > 1) {
             return new AggregatingAcknowledgeSink(sink, expectedReplies);
@@ -23,6 +23,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.rabbitmq.client.*;
 import org.apache.commons.lang3.ObjectUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -81,6 +82,9 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
 
         private final AtomicInteger messagesBeingProcessed = new AtomicInteger(0);
 
+        /** Messages are acknowledged cumulatively, as their processing (in lanes) can finish out of order. */
+        private final ContiguousAcknowledgeTracker<Delivery> acknowledgeTracker = new ContiguousAcknowledgeTracker<>();
+
         @Override
         public boolean isAlive() {
             return state != State.CLOSED;
@@ -94,11 +98,13 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
                 activeChannel.basicQos(defaultIfNull(sourceConfiguration.getPrefetch(), DEFAULT_PREFETCH));
                 LOGGER.info("Opened AMQP connection = {}, channel = {}", activeConnection, activeChannel);  // todo debug
                 DeliverCallback deliverCallback = (consumerTag, message) -> {
+                    long sequence = acknowledgeTracker.register(message);
                     try {
                         // This runs in a thread different from the task thread!
                         messagesBeingProcessed.incrementAndGet();
                         if (state != State.OPEN) {
                             LOGGER.info("Ignoring message on {} because the state is {}", consumerTag, state);
+                            acknowledgeTracker.fail(sequence);
                             return;
                         }
                         byte[] body = message.getBody();
@@ -107,19 +113,14 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
                         listener.onMessage(createAsyncUpdateMessage(message), (processed, result) -> {
                             if (processed) {
                                 try {
-                                    if (activeChannel != null) {
-                                        activeChannel.basicAck(message.getEnvelope().getDeliveryTag(), false);
-                                    } else {
-                                        // TODO
-                                        LOGGER.warn("Couldn't acknowledge message because the channel is gone: {}", message);
-                                    }
+                                    acknowledgeUpTo(acknowledgeTracker.release(sequence));
                                 } catch (IOException e) {
                                     throw new SystemException("Couldn't acknowledge message processing", e); // TODO
                                 }
                             } else {
                                 LOGGER.debug("Message processing was not successful, rejecting message according to the current settings");
                                 try {
-                                    rejectMessage(message);
+                                    rejectMessage(message, sequence);
                                 } catch (IOException e) {
                                     throw new SystemException("Couldn't reject message processing", e); // TODO
                                 }
@@ -135,7 +136,7 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
                         }
                     } catch (RuntimeException e) {
                         LoggingUtils.logUnexpectedException(LOGGER, "Got exception while processing message", e);
-                        rejectMessage(message);
+                        rejectMessage(message, sequence);
                     } finally {
                         messagesBeingProcessed.decrementAndGet();
                     }
@@ -196,7 +197,7 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
             int steadyState = withinMessageProcessing ? 1 : 0;
 
             long start = System.currentTimeMillis();
-            while (messagesBeingProcessed.get() > steadyState
+            while ((messagesBeingProcessed.get() > steadyState || !acknowledgeTracker.isSettled())
                     && System.currentTimeMillis() - start < CONNECTION_CLOSE_TIMEOUT) {
                 try {
                     Thread.sleep(100);
@@ -209,6 +210,9 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
                 LOGGER.warn("Closing the connection even if {} messages are being processed; they will be unacknowledged",
                         messagesBeingProcessed.get() - steadyState);
             }
+            if (!acknowledgeTracker.isSettled()) {
+                LOGGER.warn("Closing the connection even if some messages are not acknowledged yet: {}", acknowledgeTracker);
+            }
 
             silentlyCloseActiveConnection();
         }
@@ -221,18 +225,37 @@ public class Amqp091AsyncUpdateSource implements ActiveAsyncUpdateSource {
                     '}';
         }
 
-        private void rejectMessage(Delivery message) throws IOException {
+        /**
+         * Acknowledges all messages up to (and including) the given one. They are all processed, as the message
+         * comes from {@link #acknowledgeTracker}. Messages can be processed out of order when processing lanes are used.
+         */
+        private void acknowledgeUpTo(@Nullable Delivery message) throws IOException {
+            if (message == null) {
+                return;
+            }
+            if (activeChannel != null) {
+                activeChannel.basicAck(message.getEnvelope().getDeliveryTag(), true);
+            } else {
+                // TODO
+                LOGGER.warn("Couldn't acknowledge message because the channel is gone: {}", message);
+            }
+        }
+
+        private void rejectMessage(Delivery message, long sequence) throws IOException {
             AsyncUpdateErrorHandlingActionType action = getErrorHandlingAction();
             switch (action) {
                 case RETRY:
+                    acknowledgeTracker.fail(sequence);
                     throw new UnsupportedOperationException("'Retry' error handling strategy is not implemented yet");
                 case SKIP_UPDATE:
                     if (activeChannel != null) {
                         // TODO what if it's null?
                         activeChannel.basicReject(message.getEnvelope().getDeliveryTag(), false);
                     }
+                    acknowledgeUpTo(acknowledgeTracker.skip(sequence));
                     break;
                 case STOP_PROCESSING:
+                    acknowledgeTracker.fail(sequence);
                     stopInternal(true);
                     break;
                 default:
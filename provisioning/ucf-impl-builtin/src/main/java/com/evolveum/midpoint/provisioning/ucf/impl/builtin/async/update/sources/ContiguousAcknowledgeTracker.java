@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.ucf.impl.builtin.async.update.sources;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps track of messages that are acknowledged in an order different from the order of their delivery,
+ * e.g. when their changes are processed in processing lanes.
+ *
+ * Each delivered message gets a sequence number. The tracker determines the contiguous prefix of released messages,
+ * so that the source can acknowledge them all at once, using a cumulative acknowledgement (`basicAck` with `multiple`
+ * flag in AMQP). A message that is still being processed is never covered by such an acknowledgement. A failed message stops the prefix from growing; the messages after it are then redelivered
+ * when the connection is closed.
+ *
+ * Thread safe.
+ */
+class ContiguousAcknowledgeTracker<M> {
+
+    /** Sequence number of the next delivered message. */
+    private long nextSequence;
+
+    /** All messages with lower sequence numbers were released or skipped. */
+    private long firstNotReleased;
+
+    /** Messages that were delivered but neither released nor failed. */
+    @NotNull private final Map<Long, M> unsettled = new HashMap<>();
+
+    /** Messages that were released (or skipped; null values) but are not part of the contiguous prefix yet. */
+    @NotNull private final Map<Long, M> releasedAhead = new HashMap<>();
+
+    /** Registers a delivered message. Returns its sequence number. */
+    synchronized long register(@NotNull M message) {
+        long sequence = nextSequence++;
+        unsettled.put(sequence, message);
+        return sequence;
+    }
+
+    /**
+     * Marks the message as released. Returns the last message of the contiguous prefix of released messages,
+     * if the prefix has grown by this call (ignoring skipped messages); null otherwise.
+     * Repeated calls for the same message are ignored.
+     */
+    synchronized @Nullable M release(long sequence) {
+        return settle(sequence, true);
+    }
+
+    /**
+     * Marks the message as skipped, i.e. settled by the source individually (e.g. rejected). It does not stop
+     * the prefix from growing, but it is never returned as the message to be used for the cumulative acknowledgement.
+     * Returns the same as {@link #release(long)}.
+     */
+    synchronized @Nullable M skip(long sequence) {
+        return settle(sequence, false);
+    }
+
+    private @Nullable M settle(long sequence, boolean acknowledgeable) {
+        M message = unsettled.remove(sequence);
+        if (message == null) {
+            return null;
+        }
+        releasedAhead.put(sequence, acknowledgeable ? message : null);
+        M last = null;
+        while (releasedAhead.containsKey(firstNotReleased)) {
+            M next = releasedAhead.remove(firstNotReleased++);
+            if (next != null) {
+                last = next;
+            }
+        }
+        return last;
+    }
+
+    /** Marks the message as failed. It will never be acknowledged, and neither will be any message after it. */
+    synchronized void fail(long sequence) {
+        unsettled.remove(sequence);
+    }
+
+    /** Returns true if all delivered messages were released or failed, i.e. none is being processed. */
+    synchronized boolean isSettled() {
+        return unsettled.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ContiguousAcknowledgeTracker{delivered=" + nextSequence + ", released=" + firstNotReleased
+                + ", unsettled=" + unsettled.size() + ", releasedAhead=" + releasedAhead.size() + "}";
+    }
+}
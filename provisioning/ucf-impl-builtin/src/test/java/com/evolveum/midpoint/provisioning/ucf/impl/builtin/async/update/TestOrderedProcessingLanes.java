@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.ucf.impl.builtin.async.update;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests the ordering and the parallelism of the change processing in {@link OrderedProcessingLanes}.
+ */
+public class TestOrderedProcessingLanes extends AbstractUnitTest {
+
+    private static final int LANES = 4;
+    private static final int KEYS = 20;
+    private static final int CHANGES_PER_KEY = 200;
+    private static final long TIMEOUT = 10;
+
+    @Test
+    public void test100ChangesOfSameKeyAreProcessedInOrder() {
+        given("processing lanes");
+        OrderedProcessingLanes lanes = new OrderedProcessingLanes(LANES);
+        Map<Integer, List<Integer>> processed = new ConcurrentHashMap<>();
+        AtomicInteger concurrentlyProcessed = new AtomicInteger();
+        AtomicInteger maxConcurrentlyProcessed = new AtomicInteger();
+
+        when("many changes of many keys are submitted (interleaved), and the lanes are closed");
+        for (int i = 0; i < CHANGES_PER_KEY; i++) {
+            for (int key = 0; key < KEYS; key++) {
+                int finalKey = key;
+                int sequence = i;
+                lanes.submit(key, () -> {
+                    maxConcurrentlyProcessed.accumulateAndGet(concurrentlyProcessed.incrementAndGet(), Math::max);
+                    if (ThreadLocalRandom.current().nextInt(50) == 0) {
+                        Thread.yield();
+                    }
+                    processed.computeIfAbsent(finalKey, k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(sequence);
+                    concurrentlyProcessed.decrementAndGet();
+                });
+            }
+        }
+        lanes.close();
+
+        then("all changes are processed, and the changes of each key are processed in the order of submission");
+        display("Max concurrently processed: " + maxConcurrentlyProcessed.get());
+        assertThat(processed).hasSize(KEYS);
+        for (int key = 0; key < KEYS; key++) {
+            List<Integer> sequences = processed.get(key);
+            assertThat(sequences).as("changes of key " + key).hasSize(CHANGES_PER_KEY).isSorted();
+        }
+        assertThat(maxConcurrentlyProcessed.get()).as("max concurrently processed changes").isLessThanOrEqualTo(LANES);
+    }
+
+    @Test
+    public void test110ChangesOfDifferentKeysAreProcessedInParallel() throws Exception {
+        given("processing lanes");
+        OrderedProcessingLanes lanes = new OrderedProcessingLanes(LANES);
+
+        when("a change waits for a change of another key (falling into a different lane)");
+        CountDownLatch secondProcessed = new CountDownLatch(1);
+        CompletableFuture<Boolean> firstResult = new CompletableFuture<>();
+        lanes.submit(0, () -> {
+            try {
+                firstResult.complete(secondProcessed.await(TIMEOUT, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                firstResult.completeExceptionally(e);
+            }
+        });
+        lanes.submit(1, secondProcessed::countDown);
+
+        then("the other change is processed in the meanwhile");
+        assertThat(firstResult.get(2 * TIMEOUT, TimeUnit.SECONDS)).as("second change processed").isTrue();
+        lanes.close();
+    }
+
+    @Test
+    public void test120SubmitAfterClose() {
+        given("processing lanes with a change being processed");
+        OrderedProcessingLanes lanes = new OrderedProcessingLanes(LANES);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        lanes.submit("key", () -> {
+            sleep();
+            processed.add("first");
+        });
+
+        when("the lanes are closed and another change of the same key is submitted");
+        lanes.close();
+        Thread submittingThread = Thread.currentThread();
+        List<Thread> processingThreads = new ArrayList<>();
+        lanes.submit("key", () -> {
+            processingThreads.add(Thread.currentThread());
+            processed.add("second");
+        });
+
+        then("both are processed in order, the latter one in the submitting thread");
+        assertThat(processed).containsExactly("first", "second");
+        assertThat(processingThreads).containsExactly(submittingThread);
+    }
+
+    @Test
+    public void test130FailingChangeDoesNotStopTheLane() {
+        given("processing lanes");
+        OrderedProcessingLanes lanes = new OrderedProcessingLanes(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+
+        when("a change processing throws an exception, followed by another change");
+        lanes.submit("key", () -> {
+            throw new IllegalStateException("Expected exception");
+        });
+        lanes.submit("key", () -> processed.add("second"));
+        lanes.close();
+
+        then("the other change is processed");
+        assertThat(processed).containsExactly("second");
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
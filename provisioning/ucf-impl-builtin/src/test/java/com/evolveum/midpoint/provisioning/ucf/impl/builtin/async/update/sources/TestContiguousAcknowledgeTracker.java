@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.ucf.impl.builtin.async.update.sources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests the determination of messages to be acknowledged cumulatively in {@link ContiguousAcknowledgeTracker}.
+ */
+public class TestContiguousAcknowledgeTracker extends AbstractUnitTest {
+
+    @Test
+    public void test100OutOfOrderRelease() {
+        given("tracker with three delivered messages");
+        ContiguousAcknowledgeTracker<String> tracker = new ContiguousAcknowledgeTracker<>();
+        long a = tracker.register("a");
+        long b = tracker.register("b");
+        long c = tracker.register("c");
+
+        when("the last two messages are released");
+        then("nothing can be acknowledged, as the first message is still being processed");
+        assertThat(tracker.release(c)).isNull();
+        assertThat(tracker.release(b)).isNull();
+        assertThat(tracker.isSettled()).isFalse();
+
+        when("the first message is released");
+        then("all of them can be acknowledged up to the last one");
+        assertThat(tracker.release(a)).isEqualTo("c");
+        assertThat(tracker.isSettled()).isTrue();
+        display("Tracker: " + tracker);
+
+        when("another message is delivered and released");
+        then("it can be acknowledged");
+        assertThat(tracker.release(tracker.register("d"))).isEqualTo("d");
+    }
+
+    @Test
+    public void test110Skip() {
+        given("tracker with three delivered messages, the first one released");
+        ContiguousAcknowledgeTracker<String> tracker = new ContiguousAcknowledgeTracker<>();
+        long a = tracker.register("a");
+        long b = tracker.register("b");
+        long c = tracker.register("c");
+        assertThat(tracker.release(a)).isEqualTo("a");
+
+        when("the second message is skipped (e.g. rejected individually)");
+        then("it is not returned for acknowledgement");
+        assertThat(tracker.skip(b)).isNull();
+
+        when("the third message is released");
+        then("it can be acknowledged, as the skipped message does not block the prefix");
+        assertThat(tracker.release(c)).isEqualTo("c");
+        assertThat(tracker.isSettled()).isTrue();
+
+        when("messages are skipped before the preceding ones are released");
+        long d = tracker.register("d");
+        long e = tracker.register("e");
+        long f = tracker.register("f");
+        assertThat(tracker.skip(f)).isNull();
+        assertThat(tracker.skip(e)).isNull();
+
+        then("releasing the preceding message returns that message, not the skipped ones");
+        assertThat(tracker.release(d)).isEqualTo("d");
+        assertThat(tracker.isSettled()).isTrue();
+    }
+
+    @Test
+    public void test120Fail() {
+        given("tracker with three delivered messages");
+        ContiguousAcknowledgeTracker<String> tracker = new ContiguousAcknowledgeTracker<>();
+        long a = tracker.register("a");
+        long b = tracker.register("b");
+        long c = tracker.register("c");
+
+        when("the second message fails");
+        tracker.fail(b);
+
+        then("the messages before it can be acknowledged");
+        assertThat(tracker.release(a)).isEqualTo("a");
+
+        then("the messages after it cannot be acknowledged");
+        assertThat(tracker.release(c)).isNull();
+        assertThat(tracker.release(tracker.register("d"))).isNull();
+
+        then("the tracker is settled, as no message is being processed");
+        assertThat(tracker.isSettled()).isTrue();
+        display("Tracker: " + tracker);
+
+        when("the failed message is released later");
+        then("it is ignored");
+        assertThat(tracker.release(b)).isNull();
+    }
+
+    @Test
+    public void test130RepeatedRelease() {
+        given("tracker with two delivered messages");
+        ContiguousAcknowledgeTracker<String> tracker = new ContiguousAcknowledgeTracker<>();
+        long a = tracker.register("a");
+        long b = tracker.register("b");
+
+        when("the second message is released twice");
+        then("nothing can be acknowledged");
+        assertThat(tracker.release(b)).isNull();
+        assertThat(tracker.release(b)).isNull();
+
+        when("the first message is released");
+        then("both can be acknowledged");
+        assertThat(tracker.release(a)).isEqualTo("b");
+
+        when("the messages are released again, or skipped");
+        then("they are ignored");
+        assertThat(tracker.release(a)).isNull();
+        assertThat(tracker.release(b)).isNull();
+        assertThat(tracker.skip(b)).isNull();
+
+        then("the next message is acknowledged normally");
+        assertThat(tracker.release(tracker.register("c"))).isEqualTo("c");
+        assertThat(tracker.isSettled()).isTrue();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Persistent cache of connector bundle discovery results: for each bundle file, it keeps the SHA-256 checksum
+ * of its content and the keys of the connectors it contains.
+ *
+ * A bundle whose checksum matches the cached one does not need to be loaded (and checked) by ConnId during the startup:
+ * its connectors are registered using the cached keys, and the bundle is loaded on the first use of any of them.
+ * See {@link DirectoryScanningInfoManager#uriAddedLazily(URI, List)}.
+ *
+ * Only bundles that are plain files (`file:` URLs) are cached. The cache is stored in midPoint home directory,
+ * and it is rewritten after each discovery, so it contains only the bundles that currently exist.
+ *
+ * Whether a bundle is compatible depends also on the ConnId framework and midPoint versions. These are stored
+ * in the file as well (the "environment"); the whole cache is dropped if they do not match the current ones.
+ *
+ * Enabled by `bundleDiscoveryCache` in `midpoint/icf` configuration.
+ */
+class ConnIdBundleDiscoveryCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ConnIdBundleDiscoveryCache.class);
+
+    static final String FILE_NAME = "connid-bundle-cache.properties";
+
+    private static final String CHECKSUM_SEPARATOR = " ";
+    private static final String KEY_SEPARATOR = ",";
+    private static final String KEY_PART_SEPARATOR = "|";
+
+    /** Key of the environment entry. Bundle entries have URIs as keys, so there can be no clash. */
+    static final String ENVIRONMENT_KEY = "environment";
+
+    @NotNull private final File file;
+
+    /** Bundle URI -> checksum and keys, as read from the file. */
+    @NotNull private final Properties cached = new Properties();
+
+    /** Bundle URI -> checksum and keys, as discovered now. To be written to the file. */
+    @NotNull private final Properties current = new Properties();
+
+    /** Checksums computed during this discovery, so they are not computed twice. */
+    @NotNull private final Map<URI, String> checksums = new HashMap<>();
+
+    /**
+     * @param environment Description of the ConnId framework and midPoint versions, see {@link #ENVIRONMENT_KEY}.
+     */
+    ConnIdBundleDiscoveryCache(@NotNull File file, @NotNull String environment) {
+        this.file = file;
+        current.setProperty(ENVIRONMENT_KEY, environment);
+        if (file.isFile()) {
+            try (InputStream is = new FileInputStream(file)) {
+                cached.load(is);
+                LOGGER.debug("Loaded {} entries from connector bundle discovery cache {}", cached.size(), file);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("Couldn't read connector bundle discovery cache {}, ignoring it: {}", file, e.getMessage());
+                cached.clear();
+            }
+            String cachedEnvironment = cached.getProperty(ENVIRONMENT_KEY);
+            if (!environment.equals(cachedEnvironment)) {
+                LOGGER.info("Connector bundle discovery cache {} was created for different versions ({}, now {}), dropping it",
+                        file, cachedEnvironment, environment);
+                cached.clear();
+                if (!file.delete()) {
+                    LOGGER.warn("Couldn't delete connector bundle discovery cache {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns keys of connectors in given bundle, if the bundle is known and was not changed since it was cached.
+     * Returns null if the bundle has to be loaded and checked in the regular way.
+     */
+    @Nullable List<ConnectorKey> getUnchangedBundleKeys(@NotNull URI bundleUri) {
+        String checksum = getChecksum(bundleUri);
+        String entry = cached.getProperty(bundleUri.toString());
+        if (checksum == null || entry == null) {
+            return null;
+        }
+        String[] parts = entry.split(CHECKSUM_SEPARATOR, 2);
+        if (parts.length != 2 || !checksum.equals(parts[0])) {
+            LOGGER.debug("Connector bundle {} was changed since it was cached", bundleUri);
+            return null;
+        }
+        List<ConnectorKey> keys = new ArrayList<>();
+        for (String key : parts[1].split(KEY_SEPARATOR)) {
+            String[] keyParts = key.split(Pattern.quote(KEY_PART_SEPARATOR));
+            if (keyParts.length != 3) {
+                LOGGER.debug("Malformed connector bundle discovery cache entry for {}: {}", bundleUri, entry);
+                return null;
+            }
+            keys.add(new ConnectorKey(keyParts[0], keyParts[1], keyParts[2]));
+        }
+        return keys;
+    }
+
+    /** Records the bundle (with the connectors found in it) to be written into the cache. */
+    void recordBundle(@NotNull URI bundleUri, @NotNull Collection<ConnectorKey> keys) {
+        String checksum = getChecksum(bundleUri);
+        if (checksum == null || keys.isEmpty()) {
+            return;
+        }
+        StringJoiner joiner = new StringJoiner(KEY_SEPARATOR);
+        for (ConnectorKey key : keys) {
+            joiner.add(key.getBundleName() + KEY_PART_SEPARATOR + key.getBundleVersion() + KEY_PART_SEPARATOR
+                    + key.getConnectorName());
+        }
+        current.setProperty(bundleUri.toString(), checksum + CHECKSUM_SEPARATOR + joiner);
+    }
+
+    /** Writes the bundles recorded during this discovery into the file. */
+    void save() {
+        if (current.equals(cached)) {
+            LOGGER.trace("Connector bundle discovery cache {} is up to date", file);
+            return;
+        }
+        try (OutputStream os = new FileOutputStream(file)) {
+            current.store(os, "ConnId connector bundles discovered by midPoint; safe to delete");
+            LOGGER.debug("Stored {} entries into connector bundle discovery cache {}", current.size(), file);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't write connector bundle discovery cache {}: {}", file, e.getMessage());
+        }
+    }
+
+    private @Nullable String getChecksum(@NotNull URI bundleUri) {
+        return checksums.computeIfAbsent(bundleUri, ConnIdBundleDiscoveryCache::computeChecksum);
+    }
+
+    private static @Nullable String computeChecksum(@NotNull URI bundleUri) {
+        if (!"file".equals(bundleUri.getScheme())) {
+            return null;
+        }
+        try {
+            return Files.asByteSource(new File(bundleUri))
+                    .hash(Hashing.sha256())
+                    .toString();
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Couldn't compute checksum of connector bundle {}: {}", bundleUri, e.getMessage());
+            return null;
+        }
+    }
+}
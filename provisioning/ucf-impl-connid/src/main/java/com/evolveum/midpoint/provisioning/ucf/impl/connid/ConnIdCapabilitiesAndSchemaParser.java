@@ -188,7 +188,7 @@ class ConnIdCapabilitiesAndSchemaParser {
     private void fetchSupportedOperations(OperationResult parentResult)
             throws CommunicationException, ConfigurationException, GenericFrameworkException {
         OperationResult result = parentResult.createSubresult(OP_GET_SUPPORTED_OPERATIONS);
-        result.addContext("connector", connIdConnectorFacade.getClass());
+        result.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
         try {
             LOGGER.debug("Fetching supported connector operations from {}", connectorHumanReadableName);
@@ -236,7 +236,7 @@ class ConnIdCapabilitiesAndSchemaParser {
             throws CommunicationException, ConfigurationException, GenericFrameworkException {
         // Connector operation cannot create result for itself, so we need to create result for it
         OperationResult result = parentResult.createSubresult(OP_SCHEMA);
-        result.addContext("connector", connIdConnectorFacade.getClass());
+        result.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
         try {
 
             LOGGER.debug("Fetching schema from {}", connectorHumanReadableName);
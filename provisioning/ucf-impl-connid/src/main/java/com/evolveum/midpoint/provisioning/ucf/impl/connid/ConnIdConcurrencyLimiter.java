@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.common.exceptions.ConnectionBrokenException;
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.schema.statistics.ConnectorOperationalStatus;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Adaptive limit of concurrent operations executed by a connector instance, i.e. (typically) against a single resource.
+ *
+ * The limit is adjusted using AIMD (additive increase, multiplicative decrease) algorithm:
+ *
+ * - when an operation completes in a time comparable to the long-term average (of the same kind of operation),
+ * and the limit is (nearly) used up, the limit is increased by `1/limit` (i.e. by one after "limit" such operations);
+ * - when an operation takes much longer than the long-term average (of the same kind of operation), or fails because
+ * of a timeout or a connection problem, the limit is decreased by {@link #BACKOFF_RATIO}.
+ *
+ * The average latency is tracked per operation (e.g. `getObject`, `update`), as the operations may take very different
+ * times. The limit is decreased at most once per "generation" of operations: operations that started before the last
+ * decrease were affected by the same overload, so they do not decrease the limit again when they complete.
+ *
+ * Operations exceeding the limit wait; if they cannot start within `maxWait` milliseconds, they are rejected
+ * by {@link OperationTimeoutException}, which is reported as a communication error.
+ *
+ * Only operations working with individual objects are limited. Searches and live sync are long-running, and they
+ * are executed by a few threads at most; limiting them could block the other operations for a long time.
+ *
+ * Enabled by `adaptiveConcurrencyLimit` (the maximal limit) in `midpoint/icf` configuration.
+ * The current state is reported in {@link ConnectorOperationalStatus}.
+ */
+class ConnIdConcurrencyLimiter {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ConnIdConcurrencyLimiter.class);
+
+    /** Operations (methods of {@link ConnectorFacade}) that are subject to the limit. */
+    private static final Set<String> LIMITED_OPERATIONS = Set.of(
+            "getObject", "create", "update", "delete", "addAttributeValues", "removeAttributeValues", "updateDelta",
+            "authenticate", "resolveUsername", "runScriptOnConnector", "runScriptOnResource");
+
+    private static final int MIN_LIMIT = 1;
+
+    /** The limit is multiplied by this value when an overload is detected. */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /** Operation taking more than this multiple of the average time is considered a sign of overload. */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /** Weight of a new sample in the long-term average latency. */
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final int maxLimit;
+    private final long maxWait;
+
+    /** The current limit. Guarded by `this`, as are all the fields below. */
+    private double limit;
+
+    private int inFlight;
+    private int waiting;
+    private long rejections;
+
+    /** Long-term average latency in nanoseconds, per operation name. */
+    private final Map<String, Double> averageLatencies = new HashMap<>();
+
+    /** Incremented on each decrease of the limit. */
+    private long generation;
+
+    /** Source of the time (in nanoseconds) for latency measurement. */
+    @NotNull private final LongSupplier nanoTime;
+
+    ConnIdConcurrencyLimiter(int maxLimit, long maxWait) {
+        this(maxLimit, maxWait, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    ConnIdConcurrencyLimiter(int maxLimit, long maxWait, @NotNull LongSupplier nanoTime) {
+        this.maxLimit = Math.max(maxLimit, MIN_LIMIT);
+        this.maxWait = maxWait;
+        this.limit = this.maxLimit;
+        this.nanoTime = nanoTime;
+    }
+
+    /** Returns a facade that executes the limited operations under this limiter. */
+    @NotNull ConnectorFacade wrap(@NotNull ConnectorFacade facade) {
+        return (ConnectorFacade) Proxy.newProxyInstance(
+                ConnectorFacade.class.getClassLoader(),
+                new Class<?>[] { ConnectorFacade.class },
+                new LimitingHandler(facade));
+    }
+
+    /**
+     * Returns the original facade, if the provided one was created by {@link #wrap(ConnectorFacade)}. To be used for
+     * diagnostics (e.g. the connector class in operation results), where the proxy class would not be helpful.
+     */
+    static @NotNull ConnectorFacade unwrap(@NotNull ConnectorFacade facade) {
+        if (Proxy.isProxyClass(facade.getClass()) && Proxy.getInvocationHandler(facade) instanceof LimitingHandler) {
+            return ((LimitingHandler) Proxy.getInvocationHandler(facade)).facade;
+        } else {
+            return facade;
+        }
+    }
+
+    private Object invoke(ConnectorFacade facade, Method method, Object[] args) throws Throwable {
+        if (!LIMITED_OPERATIONS.contains(method.getName())) {
+            return invokeTarget(facade, method, args);
+        }
+        String operationName = method.getName();
+        long startGeneration = acquire(operationName);
+        long start = nanoTime.getAsLong();
+        boolean overloaded = false;
+        try {
+            return invokeTarget(facade, method, args);
+        } catch (OperationTimeoutException | ConnectionFailedException | ConnectionBrokenException | ConnectorIOException e) {
+            overloaded = true;
+            throw e;
+        } finally {
+            release(operationName, startGeneration, nanoTime.getAsLong() - start, overloaded);
+        }
+    }
+
+    private static Object invokeTarget(ConnectorFacade facade, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(facade, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Waits for a free slot and occupies it. Returns the current generation. */
+    private synchronized long acquire(String operationName) {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return generation;
+        }
+        long deadline = System.currentTimeMillis() + maxWait;
+        waiting++;
+        try {
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    rejections++;
+                    LOGGER.debug("Rejecting {} operation: concurrency limit {} reached and not released in {} ms",
+                            operationName, (int) limit, maxWait);
+                    throw new OperationTimeoutException(
+                            "Concurrency limit of " + (int) limit + " operations for the connector reached; "
+                                    + "the operation could not be started within " + maxWait + " ms");
+                }
+                wait(remaining);
+            }
+            inFlight++;
+            return generation;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationTimeoutException("Interrupted while waiting for the connector concurrency limit", e);
+        } finally {
+            waiting--;
+        }
+    }
+
+    /** Frees the slot, and adjusts the limit according to the operation outcome. */
+    private synchronized void release(String operationName, long startGeneration, long latency, boolean overloaded) {
+        boolean limitUsedUp = inFlight >= (int) limit;
+        inFlight--;
+        Double averageLatency = averageLatencies.get(operationName);
+        if (overloaded || averageLatency != null && latency > averageLatency * LATENCY_TOLERANCE) {
+            if (startGeneration == generation) {
+                double newLimit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                if ((int) newLimit < (int) limit) {
+                    LOGGER.debug("Decreasing concurrency limit to {} ({}: latency {} ms, average {} ms, error: {})",
+                            (int) newLimit, operationName, latency / 1_000_000,
+                            averageLatency != null ? (long) (averageLatency / 1_000_000) : null, overloaded);
+                }
+                limit = newLimit;
+                generation++;
+            } else {
+                LOGGER.trace("Not decreasing concurrency limit for {}: the operation started before the last decrease",
+                        operationName);
+            }
+        } else if (limitUsedUp && limit < maxLimit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        if (!overloaded) {
+            averageLatencies.put(operationName,
+                    averageLatency != null ?
+                            averageLatency + LATENCY_SMOOTHING * (latency - averageLatency) :
+                            latency);
+        }
+        notifyAll();
+    }
+
+    /** Puts the current state into the status. */
+    synchronized void fillStatus(@NotNull ConnectorOperationalStatus status) {
+        status.setConcurrencyLimit((int) limit);
+        status.setConcurrencyLimitMax(maxLimit);
+        status.setConcurrencyLimitInFlight(inFlight);
+        status.setConcurrencyLimitQueueDepth(waiting);
+        status.setConcurrencyLimitRejections(rejections);
+    }
+
+    /** Executes the operations on the original facade, under the limiter. */
+    private class LimitingHandler implements InvocationHandler {
+
+        @NotNull private final ConnectorFacade facade;
+
+        private LimitingHandler(@NotNull ConnectorFacade facade) {
+            this.facade = facade;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return ConnIdConcurrencyLimiter.this.invoke(facade, method, args);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnIdConcurrencyLimiter{limit=" + (int) limit + "/" + maxLimit + ", inFlight=" + inFlight
+                + ", waiting=" + waiting + ", rejections=" + rejections + "}";
+    }
+}
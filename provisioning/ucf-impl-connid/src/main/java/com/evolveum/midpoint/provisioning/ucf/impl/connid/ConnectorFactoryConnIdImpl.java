@@ -54,6 +54,7 @@ import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.LocalizableMessageBuilder;
 import com.evolveum.midpoint.util.exception.CommunicationException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
@@ -136,6 +137,29 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
     private static final String ICF_CONFIGURATION_NAMESPACE_PREFIX = SchemaConstants.ICF_FRAMEWORK_URI + "/bundle/";
     private static final String CONNECTOR_IDENTIFIER_SEPARATOR = "/";
 
+    /**
+     * Configuration key (in `midpoint/icf`) for the size of hand-off queue for pipelined searches.
+     * Zero (the default) means that the pipelining is disabled. See {@link SearchExecutor}.
+     */
+    private static final String CONF_SEARCH_PIPELINE_QUEUE_SIZE = "searchPipelineQueueSize";
+
+    /**
+     * Configuration key (in `midpoint/icf`) for the maximal adaptive concurrency limit for a connector instance.
+     * Zero (the default) means that the limiting is disabled. See {@link ConnIdConcurrencyLimiter}.
+     */
+    private static final String CONF_ADAPTIVE_CONCURRENCY_LIMIT = "adaptiveConcurrencyLimit";
+
+    /** Configuration key for the time (in milliseconds) an operation may wait for the concurrency limit. */
+    private static final String CONF_ADAPTIVE_CONCURRENCY_MAX_WAIT = "adaptiveConcurrencyMaxWait";
+
+    private static final long DEFAULT_ADAPTIVE_CONCURRENCY_MAX_WAIT = 60_000;
+
+    /**
+     * Configuration key (in `midpoint/icf`) that enables caching of connector bundle discovery results
+     * in midPoint home directory. See {@link ConnIdBundleDiscoveryCache}.
+     */
+    private static final String CONF_BUNDLE_DISCOVERY_CACHE = "bundleDiscoveryCache";
+
     public static final int ATTR_DISPLAY_ORDER_START = 120;
     public static final int ATTR_DISPLAY_ORDER_INCREMENT = 10;
 
@@ -150,6 +174,15 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
     ConnectorInfoManagerFactory connectorInfoManagerFactory;
     private DirectoryScanningInfoManager localConnectorInfoManager;
     private Set<URI> bundleURIs;
+    private int searchPipelineQueueSize;
+    private int adaptiveConcurrencyLimit;
+    private long adaptiveConcurrencyMaxWait;
+
+    /** Used only during the discovery in {@link #initialize()}; null if the cache is disabled. */
+    private ConnIdBundleDiscoveryCache bundleDiscoveryCache;
+
+    /** Bundles not changed since the last discovery, with cached keys of their connectors. Used only during the discovery. */
+    private final Map<URI, List<ConnectorKey>> lazyBundles = new HashMap<>();
     @Autowired private MidpointConfiguration midpointConfiguration;
     @Autowired private Protector protector;
     @Autowired private PrismContext prismContext;
@@ -173,12 +206,31 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
 
         Configuration config = midpointConfiguration.getConfiguration(MidpointConfiguration.ICF_CONFIGURATION);
 
+        String midpointHome = midpointConfiguration.getMidpointHome();
+        if (config.getBoolean(CONF_BUNDLE_DISCOVERY_CACHE, false) && midpointHome != null) {
+            File cacheFile = new File(midpointHome, ConnIdBundleDiscoveryCache.FILE_NAME);
+            LOGGER.info("Connector bundle discovery cache is enabled, using {}", cacheFile);
+            bundleDiscoveryCache = new ConnIdBundleDiscoveryCache(cacheFile, getBundleDiscoveryEnvironment());
+        }
+
         // Is classpath scan enabled
         if (config.getBoolean("scanClasspath")) {
             // Scan class path
             bundleURIs.addAll(scanClassPathForBundles());
         }
 
+        searchPipelineQueueSize = config.getInt(CONF_SEARCH_PIPELINE_QUEUE_SIZE, 0);
+        if (searchPipelineQueueSize > 0) {
+            LOGGER.info("Pipelined ConnId searches are enabled, queue size: {}", searchPipelineQueueSize);
+        }
+
+        adaptiveConcurrencyLimit = config.getInt(CONF_ADAPTIVE_CONCURRENCY_LIMIT, 0);
+        adaptiveConcurrencyMaxWait = config.getLong(CONF_ADAPTIVE_CONCURRENCY_MAX_WAIT, DEFAULT_ADAPTIVE_CONCURRENCY_MAX_WAIT);
+        if (adaptiveConcurrencyLimit > 0) {
+            LOGGER.info("Adaptive concurrency limit for connector instances is enabled, maximum: {}, max wait: {} ms",
+                    adaptiveConcurrencyLimit, adaptiveConcurrencyMaxWait);
+        }
+
         // Scan all provided directories
         List<Object> dirs = config.getList("scanDirectory");
         for (Object dir : dirs) {
@@ -187,9 +239,36 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
 
         for (URI u : bundleURIs) {
             LOGGER.debug("ICF bundle URI : {}", u);
-            localConnectorInfoManager.uriAdded(u);
+            List<ConnectorKey> cachedKeys = lazyBundles.get(u);
+            if (cachedKeys != null) {
+                localConnectorInfoManager.uriAddedLazily(u, cachedKeys);
+            } else {
+                localConnectorInfoManager.uriAdded(u);
+            }
         }
         localConnectorInfoManager.start();
+
+        if (bundleDiscoveryCache != null) {
+            LOGGER.debug("{} of {} connector bundles were not changed since the last discovery, they will be loaded on first use",
+                    lazyBundles.size(), bundleURIs.size());
+            bundleDiscoveryCache.save();
+            bundleDiscoveryCache = null;
+            lazyBundles.clear();
+        }
+    }
+
+    /**
+     * Describes the environment the bundle compatibility checks depend on: ConnId framework and midPoint versions.
+     * Bundle discovery results cached in a different environment are not used.
+     */
+    private String getBundleDiscoveryEnvironment() {
+        return "connid=" + getFrameworkVersion()
+                + ";midpoint=" + translateSystemProperty("midpoint.system.version")
+                + "/" + translateSystemProperty("midpoint.system.build");
+    }
+
+    private String translateSystemProperty(String key) {
+        return localizationService.translate(LocalizableMessageBuilder.buildKey(key), Locale.getDefault());
     }
 
     /**
@@ -236,6 +315,11 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
                 connectorSchema, protector, localizationService);
         connectorImpl.setDescription(instanceDescription);
         connectorImpl.setInstanceName(instanceName);
+        connectorImpl.setSearchPipelineQueueSize(searchPipelineQueueSize);
+        if (adaptiveConcurrencyLimit > 0) {
+            connectorImpl.setConcurrencyLimiter(
+                    new ConnIdConcurrencyLimiter(adaptiveConcurrencyLimit, adaptiveConcurrencyMaxWait));
+        }
 
         return connectorImpl;
     }
@@ -285,7 +369,7 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
         Set<ConnectorType> localConnectorTypes = new HashSet<>();
 
         // Fetch list of local connectors from ICF
-        List<ConnectorInfo> connectorInfos = getLocalConnectorInfoManager().getConnectorInfos();
+        List<ConnectorInfo> connectorInfos = localConnectorInfoManager.getLoadedConnectorInfos();
 
         for (ConnectorInfo connectorInfo : connectorInfos) {
             ConnectorType connectorType;
@@ -296,6 +380,12 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
                 LOGGER.error("Schema error while initializing ICF connector {}: {}", getConnectorDesc(connectorInfo), e.getMessage(), e);
             }
         }
+
+        // Connectors in bundles that are not loaded yet are listed without the configuration schema. It is generated
+        // (and the bundle is loaded) only if needed, see ConnectorFactory#generateConnectorConfigurationSchema.
+        for (ConnectorKey connectorKey : localConnectorInfoManager.getNotLoadedConnectorKeys()) {
+            localConnectorTypes.add(createConnectorType(connectorKey, null));
+        }
         return localConnectorTypes;
     }
 
@@ -326,8 +416,19 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
      * @param hostType host that this connector runs on or null for local connectors
      */
     private ConnectorType convertToConnectorType(ConnectorInfo cinfo, ConnectorHostType hostType) throws SchemaException {
+        ConnectorType connectorType = createConnectorType(cinfo.getConnectorKey(), hostType);
+
+        PrismSchema connectorSchema = generateConnectorConfigurationSchema(cinfo, connectorType);
+        LOGGER.trace("Generated connector schema for {}: {} definitions",
+                connectorType, connectorSchema.getDefinitions().size());
+        UcfUtil.setConnectorSchema(connectorType, connectorSchema);
+
+        return connectorType;
+    }
+
+    /** Creates midPoint connector representation without the configuration schema. */
+    private ConnectorType createConnectorType(ConnectorKey key, ConnectorHostType hostType) {
         ConnectorType connectorType = new ConnectorType();
-        ConnectorKey key = cinfo.getConnectorKey();
         UcfUtil.addConnectorNames(connectorType, "ConnId", key.getBundleName(), key.getConnectorName(), key.getBundleVersion(), hostType);
         String stringID = keyToNamespaceSuffix(key);
         connectorType.setFramework(SchemaConstants.ICF_FRAMEWORK_URI);
@@ -343,12 +444,6 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
             ref.asReferenceValue().setObject(hostType.asPrismObject());
             connectorType.setConnectorHostRef(ref);
         }
-
-        PrismSchema connectorSchema = generateConnectorConfigurationSchema(cinfo, connectorType);
-        LOGGER.trace("Generated connector schema for {}: {} definitions",
-                connectorType, connectorSchema.getDefinitions().size());
-        UcfUtil.setConnectorSchema(connectorType, connectorSchema);
-
         return connectorType;
     }
 
@@ -561,7 +656,7 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
                     }
 
                     URL tmp = new URL(toUrl(upath.substring(0, upath.lastIndexOf("!"))));
-                    if (isThisBundleCompatible(tmp)) {
+                    if (isBundleEligible(tmp)) {
                         try {
                             bundle.add(tmp.toURI());
                         } catch (Exception e) {
@@ -635,7 +730,7 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
     private void addBundleIfEligible(Set<URI> bundle, File dirEntry) {
         try {
             final URI uri = dirEntry.toURI();
-            if (isThisBundleCompatible(uri.toURL())) {
+            if (isBundleEligible(uri.toURL())) {
                 bundle.add(uri);
             } else {
                 LOGGER.warn("Skip loading bundle {} due error occurred", uri.toURL());
@@ -645,6 +740,43 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
         }
     }
 
+    /**
+     * Tests if the bundle can be used. Bundles not changed since the last discovery (if {@link ConnIdBundleDiscoveryCache}
+     * is enabled) are not loaded here: they are registered lazily, using the cached keys of their connectors.
+     */
+    private boolean isBundleEligible(URL bundleUrl) {
+        URI bundleUri = bundleDiscoveryCache != null ? toUriIfPossible(bundleUrl) : null;
+        if (bundleUri != null) {
+            List<ConnectorKey> cachedKeys = bundleDiscoveryCache.getUnchangedBundleKeys(bundleUri);
+            if (cachedKeys != null) {
+                LOGGER.trace("Connector bundle {} was not changed since the last discovery, not loading it now", bundleUri);
+                lazyBundles.put(bundleUri, cachedKeys);
+                bundleDiscoveryCache.recordBundle(bundleUri, cachedKeys);
+                return true;
+            }
+        }
+        if (!isThisBundleCompatible(bundleUrl)) {
+            return false;
+        }
+        if (bundleUri != null) {
+            List<ConnectorKey> keys = new ArrayList<>();
+            for (ConnectorInfo connectorInfo : connectorInfoManagerFactory.getLocalManager(bundleUrl).getConnectorInfos()) {
+                keys.add(connectorInfo.getConnectorKey());
+            }
+            bundleDiscoveryCache.recordBundle(bundleUri, keys);
+        }
+        return true;
+    }
+
+    private URI toUriIfPossible(URL url) {
+        try {
+            return url.toURI();
+        } catch (Exception e) {
+            LOGGER.debug("Couldn't convert {} to URI: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Test if bundle internal configuration and dependencies are OK
      *
@@ -131,6 +131,12 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
     private String instanceName; // resource name
     private boolean caseIgnoreAttributeNames = false;
 
+    /** Size of the hand-off queue for pipelined searches; 0 means "no pipelining". See {@link SearchExecutor}. */
+    private int searchPipelineQueueSize;
+
+    /** Limits concurrent operations against the resource; null if not enabled. See {@link ConnIdConcurrencyLimiter}. */
+    private ConnIdConcurrencyLimiter concurrencyLimiter;
+
     ConnectorInstanceConnIdImpl(ConnectorInfo connectorInfo, ConnectorType connectorType,
             PrismSchema connectorSchema, Protector protector, LocalizationService localizationService) {
         this.connectorInfo = connectorInfo;
@@ -210,7 +216,9 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             ConnectorFacade oldConnIdConnectorFacade = connIdConnectorFacade;
 
             // Create new connector instance using the transformed configuration
-            connIdConnectorFacade = ConnectorFacadeFactory.getInstance().newInstance(apiConfig);
+            ConnectorFacade newConnIdConnectorFacade = ConnectorFacadeFactory.getInstance().newInstance(apiConfig);
+            connIdConnectorFacade = concurrencyLimiter != null ?
+                    concurrencyLimiter.wrap(newConnIdConnectorFacade) : newConnIdConnectorFacade;
 
             if (oldConnIdConnectorFacade != null) {
                 // Make sure old connector instance is disposed. We do not want to waste resources.
@@ -317,6 +325,10 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             }
         }
 
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.fillStatus(status);
+        }
+
         return status;
     }
 
@@ -550,7 +562,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         icfResult.addArbitraryObjectAsParam("objectClass", icfObjectClass);
         icfResult.addParam("uid", uid.getUidValue());
         icfResult.addArbitraryObjectAsParam("options", options);
-        icfResult.addContext("connector", connIdConnectorFacade.getClass());
+        icfResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
         InternalMonitor.recordConnectorOperation("getObject");
         ConnIdOperation operation = recordIcfOperationStart(reporter, ProvisioningOperation.ICF_GET, objectDefinition, uid);
@@ -796,7 +808,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         connIdResult.addArbitraryObjectCollectionAsParam("auxiliaryObjectClasses", icfAuxiliaryObjectClasses);
         connIdResult.addArbitraryObjectCollectionAsParam("attributes", attributes);
         connIdResult.addArbitraryObjectAsParam("options", options);
-        connIdResult.addContext("connector", connIdConnectorFacade.getClass());
+        connIdResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
         // CALL THE ConnId FRAMEWORK
         InternalMonitor.recordConnectorOperation("create");
@@ -987,7 +999,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             connIdResult.addParam("uid", uid.getUidValue());
             connIdResult.addParam("attributesDelta", attributesDelta.toString());
             connIdResult.addArbitraryObjectAsParam("options", connIdOptions);
-            connIdResult.addContext("connector", connIdConnectorFacade.getClass());
+            connIdResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
             InternalMonitor.recordConnectorOperation("update");
             InternalMonitor.recordConnectorModification("update");
@@ -1145,7 +1157,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             connIdResult.addParam("uid", uid.getUidValue());
             connIdResult.addArbitraryObjectAsParam("attributes", attributesToAdd);
             connIdResult.addArbitraryObjectAsParam("options", connIdOptions);
-            connIdResult.addContext("connector", connIdConnectorFacade.getClass());
+            connIdResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
             InternalMonitor.recordConnectorOperation("addAttributeValues");
             InternalMonitor.recordConnectorModification("addAttributeValues");
@@ -1204,7 +1216,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             connIdResult.addParam("uid", uid==null?"null":uid.getUidValue());
             connIdResult.addArbitraryObjectAsParam("attributes", attributesToUpdate);
             connIdResult.addArbitraryObjectAsParam("options", connIdOptions);
-            connIdResult.addContext("connector", connIdConnectorFacade.getClass());
+            connIdResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
             InternalMonitor.recordConnectorOperation("update");
             InternalMonitor.recordConnectorModification("update");
@@ -1262,7 +1274,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             connIdResult.addParam("uid", uid.getUidValue());
             connIdResult.addArbitraryObjectAsParam("attributes", attributesToRemove);
             connIdResult.addArbitraryObjectAsParam("options", connIdOptions);
-            connIdResult.addContext("connector", connIdConnectorFacade.getClass());
+            connIdResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
             InternalMonitor.recordConnectorOperation("removeAttributeValues");
             InternalMonitor.recordConnectorModification("removeAttributeValues");
@@ -1448,7 +1460,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         OperationResult icfResult = result.createSubresult(ConnectorFacade.class.getName() + ".delete");
         icfResult.addArbitraryObjectAsParam("uid", uid);
         icfResult.addArbitraryObjectAsParam("objectClass", objClass);
-        icfResult.addContext("connector", connIdConnectorFacade.getClass());
+        icfResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
         InternalMonitor.recordConnectorOperation("delete");
         InternalMonitor.recordConnectorModification("delete");
@@ -1506,7 +1518,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         }
 
         OperationResult icfResult = result.createSubresult(ConnectorFacade.class.getName() + ".sync");
-        icfResult.addContext("connector", connIdConnectorFacade.getClass());
+        icfResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
         icfResult.addArbitraryObjectAsParam("icfObjectClass", icfObjectClass);
 
         SyncToken syncToken;
@@ -1592,7 +1604,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             UcfFetchChangesResult fetchChangesResult;
 
             OperationResult connIdResult = result.subresult(ConnectorFacade.class.getName() + ".sync")
-                    .addContext("connector", connIdConnectorFacade.getClass())
+                    .addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass())
                     .addArbitraryObjectAsParam("objectClass", requestConnIdObjectClass)
                     .addArbitraryObjectAsParam("initialToken", initialToken)
                     .build();
@@ -1872,7 +1884,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         // create result for it
         OperationResult icfResult = result.createSubresult(ConnectorFacade.class.getName() + ".search");
         icfResult.addArbitraryObjectAsParam("objectClass", icfObjectClass);
-        icfResult.addContext("connector", connIdConnectorFacade.getClass());
+        icfResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
         int retval;
 
@@ -2134,7 +2146,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         ScriptContext scriptContext = convertToScriptContext(scriptOperation);
 
         OperationResult icfResult = parentResult.createSubresult(ConnectorFacade.class.getName() + "." + icfOpName);
-        icfResult.addContext("connector", connIdConnectorFacade.getClass());
+        icfResult.addContext("connector", ConnIdConcurrencyLimiter.unwrap(connIdConnectorFacade).getClass());
 
         ConnIdOperation operation = recordIcfOperationStart(reporter, ProvisioningOperation.ICF_SCRIPT, null);
 
@@ -2333,6 +2345,19 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         return caseIgnoreAttributeNames;
     }
 
+    int getSearchPipelineQueueSize() {
+        return searchPipelineQueueSize;
+    }
+
+    void setSearchPipelineQueueSize(int searchPipelineQueueSize) {
+        this.searchPipelineQueueSize = searchPipelineQueueSize;
+    }
+
+    /** Must be called before the connector is configured. */
+    void setConcurrencyLimiter(ConnIdConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
     ConnectorFacade getConnIdConnectorFacade() {
         return connIdConnectorFacade;
     }
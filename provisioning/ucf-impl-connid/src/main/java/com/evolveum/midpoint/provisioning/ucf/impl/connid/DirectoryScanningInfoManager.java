@@ -72,6 +72,28 @@ public class DirectoryScanningInfoManager implements ConnectorInfoManager {
         return ret;
     }
 
+    /** Returns infos of connectors in bundles that are loaded. Bundles registered lazily are not loaded by this method. */
+    List<ConnectorInfo> getLoadedConnectorInfos() {
+        List<ConnectorInfo> ret = new ArrayList<>();
+        for (ConnectorInfoManager manager : managers) {
+            if (!(manager instanceof LazyBundleManager) || ((LazyBundleManager) manager).isLoaded()) {
+                ret.addAll(manager.getConnectorInfos());
+            }
+        }
+        return ret;
+    }
+
+    /** Returns keys of connectors in bundles that were registered lazily and are not loaded yet. */
+    List<ConnectorKey> getNotLoadedConnectorKeys() {
+        List<ConnectorKey> ret = new ArrayList<>();
+        for (ConnectorInfoManager manager : managers) {
+            if (manager instanceof LazyBundleManager && !((LazyBundleManager) manager).isLoaded()) {
+                ret.addAll(((LazyBundleManager) manager).keys);
+            }
+        }
+        return ret;
+    }
+
     private boolean registerConnector(File bundle) {
         if (ConnectorFactoryConnIdImpl.isThisJarFileBundle(bundle)) {
             return registerConnector(bundle.toURI());
@@ -133,6 +155,19 @@ public class DirectoryScanningInfoManager implements ConnectorInfoManager {
         registerConnector(u);
     }
 
+    /**
+     * Registers a bundle with known connectors (see {@link ConnIdBundleDiscoveryCache}) without loading it.
+     * The bundle is loaded when any of its connectors is used for the first time.
+     */
+    void uriAddedLazily(URI u, List<ConnectorKey> keys) {
+        if (isLoaded(u)) {
+            return;
+        }
+        LazyBundleManager manager = new LazyBundleManager(u, keys);
+        uriToManager.put(u, manager);
+        managers.add(manager);
+    }
+
     public void watchDirectory(File directory) {
         FileAlterationObserver observer = new FileAlterationObserver(directory);
         observer.addListener(listener);
@@ -155,6 +190,50 @@ public class DirectoryScanningInfoManager implements ConnectorInfoManager {
         }
     }
 
+    /** Bundle that is loaded on the first use of any of its connectors. */
+    private class LazyBundleManager implements ConnectorInfoManager {
+
+        private final URI bundle;
+        private final List<ConnectorKey> keys;
+
+        /** The real manager; null if not loaded yet (or if the loading failed). */
+        private volatile ConnectorInfoManager loaded;
+        private volatile boolean loadingFailed;
+
+        private LazyBundleManager(URI bundle, List<ConnectorKey> keys) {
+            this.bundle = bundle;
+            this.keys = List.copyOf(keys);
+        }
+
+        @Override
+        public ConnectorInfo findConnectorInfo(ConnectorKey key) {
+            if (!keys.contains(key)) {
+                return null;
+            }
+            ConnectorInfoManager manager = load();
+            return manager != null ? manager.findConnectorInfo(key) : null;
+        }
+
+        @Override
+        public List<ConnectorInfo> getConnectorInfos() {
+            ConnectorInfoManager manager = load();
+            return manager != null ? manager.getConnectorInfos() : List.of();
+        }
+
+        boolean isLoaded() {
+            return loaded != null || loadingFailed;
+        }
+
+        private synchronized ConnectorInfoManager load() {
+            if (loaded == null && !loadingFailed) {
+                LOGGER.debug("Loading connector bundle {} on first use", bundle);
+                loaded = connectorFromURL(bundle).orElse(null);
+                loadingFailed = loaded == null;
+            }
+            return loaded;
+        }
+    }
+
     class Listener extends FileAlterationListenerAdaptor {
 
         @Override
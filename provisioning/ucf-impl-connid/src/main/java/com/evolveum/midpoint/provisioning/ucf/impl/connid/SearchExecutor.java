@@ -10,6 +10,7 @@ package com.evolveum.midpoint.provisioning.ucf.impl.connid;
 import static com.evolveum.midpoint.provisioning.ucf.impl.connid.ConnIdUtil.processConnIdException;
 import static com.evolveum.midpoint.provisioning.ucf.impl.connid.ConnectorInstanceConnIdImpl.toShadowDefinition;
 
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.namespace.QName;
 
@@ -19,6 +20,7 @@ import com.evolveum.midpoint.provisioning.ucf.api.UcfExecutionContext;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import org.apache.commons.lang3.Validate;
 import org.identityconnectors.framework.api.ConnectorFacade;
@@ -48,11 +50,29 @@ import com.evolveum.prism.xml.ns._public.query_3.OrderDirectionType;
 
 /**
  * Executes `search` operation. (Offloads {@link ConnectorInstanceConnIdImpl} from this task.)
+ *
+ * If pipelining is enabled (`searchPipelineQueueSize` in `midpoint/icf` configuration), the ConnId search runs
+ * in a separate thread, handing the connector objects over to the calling thread via a bounded queue. The calling
+ * thread converts the objects and passes them to the handler (i.e. shadow acquisition, classification, and so on).
+ * The connector can therefore read from the resource while the objects are being processed; when the processing falls
+ * behind, the queue gets full, and the connector thread waits.
+ *
+ * The processing stays in the calling thread, because it needs the thread-bound context of the caller (task,
+ * security context, repository caches, and so on).
  */
 class SearchExecutor {
 
     private static final Trace LOGGER = TraceManager.getTrace(SearchExecutor.class);
 
+    /** Threads running the ConnId searches in the pipelined mode. */
+    private static final ExecutorService PIPELINE_EXECUTOR = Executors.newCachedThreadPool(new PipelineThreadFactory());
+
+    /** How often the waiting threads check whether the other side is still working. */
+    private static final long PIPELINE_POLL_INTERVAL = 100;
+
+    /** Number of ConnId searches currently running in the pipeline threads. */
+    private static final AtomicInteger RUNNING_PIPELINED_SEARCHES = new AtomicInteger();
+
     @NotNull private final ResourceObjectDefinition resourceObjectDefinition;
     @NotNull private final PrismObjectDefinition<ShadowType> prismObjectDefinition;
     @NotNull private final ObjectClass icfObjectClass;
@@ -217,13 +237,19 @@ class SearchExecutor {
         ConnIdOperation operation = recordIcfOperationStart();
 
         try {
-            LOGGER.trace("Executing ConnId search operation: {}", operation);
-            connIdSearchResult = connectorInstance.getConnIdConnectorFacade()
-                    .search(
-                            icfObjectClass,
-                            connIdFilter,
-                            new SearchResultsHandler(operation, result),
-                            connIdOptions);
+            int pipelineQueueSize = connectorInstance.getSearchPipelineQueueSize();
+            if (pipelineQueueSize > 0) {
+                LOGGER.trace("Executing pipelined ConnId search operation (queue size {}): {}", pipelineQueueSize, operation);
+                connIdSearchResult = executePipelinedConnIdSearch(connIdOptions, operation, pipelineQueueSize, result);
+            } else {
+                LOGGER.trace("Executing ConnId search operation: {}", operation);
+                connIdSearchResult = connectorInstance.getConnIdConnectorFacade()
+                        .search(
+                                icfObjectClass,
+                                connIdFilter,
+                                new SearchResultsHandler(operation, true, result),
+                                connIdOptions);
+            }
             recordIcfOperationEnd(operation, null);
 
             result.recordSuccess();
@@ -244,6 +270,84 @@ class SearchExecutor {
         return connIdSearchResult;
     }
 
+    /**
+     * Runs the ConnId search in a separate thread, processing the objects found in the current one.
+     *
+     * The connector operation is not suspended while the objects are processed, as the connector runs concurrently.
+     *
+     * The method returns only after the connector thread finishes, even if the processing fails. The exceptions
+     * are then the same as in the non-pipelined mode: those from the handler are thrown as they are, and those from
+     * the connector are re-thrown in this thread (to be converted by the caller).
+     */
+    private SearchResult executePipelinedConnIdSearch(
+            OperationOptions connIdOptions, ConnIdOperation operation, int queueSize, OperationResult result) {
+        SearchPipeline pipeline = new SearchPipeline(queueSize);
+        ConnectorFacade facade = connectorInstance.getConnIdConnectorFacade();
+        RUNNING_PIPELINED_SEARCHES.incrementAndGet();
+        Future<SearchResult> connIdSearch = PIPELINE_EXECUTOR.submit(() -> {
+            try {
+                return facade.search(icfObjectClass, connIdFilter, pipeline::put, connIdOptions);
+            } finally {
+                pipeline.producerFinished();
+                RUNNING_PIPELINED_SEARCHES.decrementAndGet();
+            }
+        });
+
+        SearchResultsHandler handler = new SearchResultsHandler(operation, false, result);
+        boolean processingFailed = true;
+        try {
+            ConnectorObject connectorObject;
+            while ((connectorObject = pipeline.take(connIdSearch)) != null) {
+                if (!handler.handle(connectorObject)) {
+                    LOGGER.trace("Handler requested stopping the pipelined search");
+                    break;
+                }
+            }
+            processingFailed = false;
+        } finally {
+            // Releases the connector thread, if it is waiting for the queue space.
+            pipeline.stop();
+            if (processingFailed) {
+                awaitSearchEnd(connIdSearch);
+            }
+        }
+        return getSearchResult(connIdSearch);
+    }
+
+    /** Waits for the connector thread after the processing failed. The outcome of the search itself is not relevant then. */
+    private void awaitSearchEnd(Future<SearchResult> connIdSearch) {
+        try {
+            connIdSearch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.debug("ConnId search failed after the processing of its results failed; ignoring", e.getCause());
+        }
+    }
+
+    @VisibleForTesting
+    static int getRunningPipelinedSearches() {
+        return RUNNING_PIPELINED_SEARCHES.get();
+    }
+
+    private SearchResult getSearchResult(Future<SearchResult> connIdSearch) {
+        try {
+            return connIdSearch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for the ConnId search to finish", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new SystemException(cause.getMessage(), cause);
+            }
+        }
+    }
+
     /** Do some kind of acrobatics to do proper throwing of checked exception */
     private void throwProperException(Throwable transformed, Throwable original) throws CommunicationException,
             ObjectNotFoundException, GenericFrameworkException, SchemaException, SecurityViolationException {
@@ -316,10 +420,15 @@ class SearchExecutor {
     private class SearchResultsHandler implements ResultsHandler {
 
         @NotNull private final ConnIdOperation operation;
+
+        /** Whether the ConnId operation is suspended during the processing (i.e. not in the pipelined mode). */
+        private final boolean suspendOperation;
+
         private final OperationResult result;
 
-        SearchResultsHandler(@NotNull ConnIdOperation operation, OperationResult result) {
+        SearchResultsHandler(@NotNull ConnIdOperation operation, boolean suspendOperation, OperationResult result) {
             this.operation = operation;
+            this.suspendOperation = suspendOperation;
             this.result = result;
         }
 
@@ -327,7 +436,9 @@ class SearchExecutor {
         public boolean handle(ConnectorObject connectorObject) {
             Validate.notNull(connectorObject, "null connector object"); // todo apply error reporting method?
 
-            recordIcfOperationSuspend(operation);
+            if (suspendOperation) {
+                recordIcfOperationSuspend(operation);
+            }
             try {
                 int number = objectsFetched.getAndIncrement(); // The numbering starts at 0
                 if (isNoConnectorPaging()) {
@@ -352,7 +463,9 @@ class SearchExecutor {
             } catch (SchemaException e) {
                 throw new IntermediateException(e);
             } finally {
-                recordIcfOperationResume(operation);
+                if (suspendOperation) {
+                    recordIcfOperationResume(operation);
+                }
             }
         }
 
@@ -361,4 +474,83 @@ class SearchExecutor {
             return "(midPoint searching result handler)";
         }
     }
+
+    /**
+     * Bounded hand-off queue between the connector thread (producer) and the processing thread (consumer).
+     */
+    private static class SearchPipeline {
+
+        /** Marks the end of the search. */
+        private static final Object END = new Object();
+
+        @NotNull private final BlockingQueue<Object> queue;
+
+        /** Set by the consumer when it does not want any more objects. */
+        private volatile boolean stopped;
+
+        SearchPipeline(int size) {
+            this.queue = new ArrayBlockingQueue<>(size);
+        }
+
+        /** Called in the connector thread. Waits if the queue is full. Returns false if the search should stop. */
+        boolean put(ConnectorObject connectorObject) {
+            return offer(connectorObject);
+        }
+
+        /** Called in the connector thread when the search is over (successfully or not). */
+        void producerFinished() {
+            offer(END);
+        }
+
+        private boolean offer(Object object) {
+            try {
+                while (!stopped) {
+                    if (queue.offer(object, PIPELINE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /** Called in the processing thread. Returns the next object, or null if the search is over. */
+        ConnectorObject take(Future<?> producer) {
+            try {
+                for (;;) {
+                    Object object = queue.poll(PIPELINE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (object == END) {
+                        return null;
+                    } else if (object != null) {
+                        return (ConnectorObject) object;
+                    } else if (producer.isDone() && queue.isEmpty()) {
+                        return null; // Should not occur, as the producer always puts the END mark; but just for sure.
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SystemException("Interrupted while waiting for objects from the connector", e);
+            }
+        }
+
+        /** Called in the processing thread. */
+        void stop() {
+            stopped = true;
+            queue.clear();
+        }
+    }
+
+    private static class PipelineThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread thread = new Thread(r, "ConnId-search-pipeline-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
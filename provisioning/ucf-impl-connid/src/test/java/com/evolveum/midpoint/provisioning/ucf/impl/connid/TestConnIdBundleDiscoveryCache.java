@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests the persistence and invalidation of {@link ConnIdBundleDiscoveryCache}.
+ */
+public class TestConnIdBundleDiscoveryCache extends AbstractUnitTest {
+
+    private static final String ENVIRONMENT = "connid=1.5.1.10;midpoint=4.8-SNAPSHOT/abc";
+    private static final String ENVIRONMENT_NEW_CONNID = "connid=1.5.2.0;midpoint=4.8-SNAPSHOT/abc";
+    private static final String ENVIRONMENT_NEW_MIDPOINT = "connid=1.5.1.10;midpoint=4.8-SNAPSHOT/def";
+
+    private static final ConnectorKey KEY =
+            new ConnectorKey("com.evolveum.polygon.connector-ldap", "3.6", "com.evolveum.polygon.connector.ldap.LdapConnector");
+
+    @Test
+    public void test100UnchangedBundleIsCached() throws IOException {
+        given("a bundle recorded in the cache");
+        File dir = createTempDir();
+        URI bundle = createBundle(dir, "content-1");
+        File cacheFile = createCache(dir, bundle, ENVIRONMENT);
+
+        when("the cache is read in the same environment");
+        ConnIdBundleDiscoveryCache cache = new ConnIdBundleDiscoveryCache(cacheFile, ENVIRONMENT);
+        List<ConnectorKey> keys = cache.getUnchangedBundleKeys(bundle);
+
+        then("the bundle is known");
+        assertThat(keys).containsExactly(KEY);
+    }
+
+    @Test
+    public void test110ChangedBundleIsNotCached() throws IOException {
+        given("a bundle recorded in the cache");
+        File dir = createTempDir();
+        URI bundle = createBundle(dir, "content-1");
+        File cacheFile = createCache(dir, bundle, ENVIRONMENT);
+
+        when("the bundle is changed and the cache is read");
+        Files.writeString(new File(bundle).toPath(), "content-2", StandardCharsets.UTF_8);
+        ConnIdBundleDiscoveryCache cache = new ConnIdBundleDiscoveryCache(cacheFile, ENVIRONMENT);
+
+        then("the bundle has to be checked");
+        assertThat(cache.getUnchangedBundleKeys(bundle)).isNull();
+    }
+
+    @Test
+    public void test120DifferentConnIdVersionDropsTheCache() throws IOException {
+        given("a bundle recorded in the cache");
+        File dir = createTempDir();
+        URI bundle = createBundle(dir, "content-1");
+        File cacheFile = createCache(dir, bundle, ENVIRONMENT);
+
+        when("the cache is read with a different ConnId framework version");
+        ConnIdBundleDiscoveryCache cache = new ConnIdBundleDiscoveryCache(cacheFile, ENVIRONMENT_NEW_CONNID);
+
+        then("the bundle has to be checked, and the file is deleted");
+        assertThat(cache.getUnchangedBundleKeys(bundle)).isNull();
+        assertThat(cacheFile).doesNotExist();
+
+        when("the discovery results are saved and the cache is read again");
+        cache.recordBundle(bundle, List.of(KEY));
+        cache.save();
+        ConnIdBundleDiscoveryCache cacheReread = new ConnIdBundleDiscoveryCache(cacheFile, ENVIRONMENT_NEW_CONNID);
+
+        then("the bundle is known in the new environment");
+        assertThat(cacheReread.getUnchangedBundleKeys(bundle)).containsExactly(KEY);
+    }
+
+    @Test
+    public void test130DifferentMidPointVersionDropsTheCache() throws IOException {
+        given("a bundle recorded in the cache");
+        File dir = createTempDir();
+        URI bundle = createBundle(dir, "content-1");
+        File cacheFile = createCache(dir, bundle, ENVIRONMENT);
+
+        when("the cache is read with a different midPoint build");
+        ConnIdBundleDiscoveryCache cache = new ConnIdBundleDiscoveryCache(cacheFile, ENVIRONMENT_NEW_MIDPOINT);
+
+        then("the bundle has to be checked, and the file is deleted");
+        assertThat(cache.getUnchangedBundleKeys(bundle)).isNull();
+        assertThat(cacheFile).doesNotExist();
+    }
+
+    @Test
+    public void test140CacheWithoutEnvironmentIsDropped() throws IOException {
+        given("a cache file written without the environment (by an older version)");
+        File dir = createTempDir();
+        URI bundle = createBundle(dir, "content-1");
+        File cacheFile = createCache(dir, bundle, ENVIRONMENT);
+        List<String> lines = Files.readAllLines(cacheFile.toPath(), StandardCharsets.ISO_8859_1);
+        lines.removeIf(line -> line.startsWith(ConnIdBundleDiscoveryCache.ENVIRONMENT_KEY + "="));
+        Files.write(cacheFile.toPath(), lines, StandardCharsets.ISO_8859_1);
+
+        when("the cache is read");
+        ConnIdBundleDiscoveryCache cache = new ConnIdBundleDiscoveryCache(cacheFile, ENVIRONMENT);
+
+        then("the bundle has to be checked");
+        assertThat(cache.getUnchangedBundleKeys(bundle)).isNull();
+        assertThat(cacheFile).doesNotExist();
+    }
+
+    private File createTempDir() throws IOException {
+        File dir = Files.createTempDirectory(getTestNameShort()).toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private URI createBundle(File dir, String content) throws IOException {
+        File bundle = new File(dir, "connector-ldap-3.6.jar");
+        Files.writeString(bundle.toPath(), content, StandardCharsets.UTF_8);
+        bundle.deleteOnExit();
+        return bundle.toURI();
+    }
+
+    /** Simulates the discovery: records the bundle in given environment and writes the cache file. */
+    private File createCache(File dir, URI bundle, String environment) {
+        File cacheFile = new File(dir, ConnIdBundleDiscoveryCache.FILE_NAME);
+        cacheFile.deleteOnExit();
+        ConnIdBundleDiscoveryCache cache = new ConnIdBundleDiscoveryCache(cacheFile, environment);
+        cache.recordBundle(bundle, List.of(KEY));
+        cache.save();
+        assertThat(cacheFile).exists();
+        return cacheFile;
+    }
+}
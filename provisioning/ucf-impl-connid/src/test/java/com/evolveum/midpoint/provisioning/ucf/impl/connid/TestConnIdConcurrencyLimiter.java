@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.statistics.ConnectorOperationalStatus;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests the limit adjustments, waiting and rejections in {@link ConnIdConcurrencyLimiter}, using a fake clock
+ * (for latencies) and a fake connector facade.
+ */
+public class TestConnIdConcurrencyLimiter extends AbstractUnitTest {
+
+    private static final int MAX_LIMIT = 10;
+    private static final long MAX_WAIT = 10_000;
+    private static final long TIMEOUT = 10;
+
+    private static final long MS = 1_000_000; // in nanoseconds
+
+    @Test
+    public void test100SlowOperationDecreasesLimit() {
+        given("limiter with the average latency of getObject established");
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(MAX_LIMIT, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        for (int i = 0; i < 5; i++) {
+            connector.getObject(facade, 10 * MS);
+        }
+        assertThat(getLimit(limiter)).isEqualTo(MAX_LIMIT);
+
+        when("getObject takes much longer than usual");
+        connector.getObject(facade, 50 * MS);
+
+        then("the limit is decreased");
+        assertThat(getLimit(limiter)).isEqualTo(9);
+    }
+
+    @Test
+    public void test110LatencyIsTrackedPerOperation() {
+        given("limiter with the average latency of getObject established");
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(MAX_LIMIT, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        for (int i = 0; i < 5; i++) {
+            connector.getObject(facade, 10 * MS);
+        }
+
+        when("updates, being naturally much slower than getObject, are executed");
+        for (int i = 0; i < 5; i++) {
+            connector.update(facade, 100 * MS);
+        }
+
+        then("the limit is not decreased");
+        assertThat(getLimit(limiter)).isEqualTo(MAX_LIMIT);
+
+        when("an update takes much longer than usual updates");
+        connector.update(facade, 300 * MS);
+
+        then("the limit is decreased");
+        assertThat(getLimit(limiter)).isEqualTo(9);
+    }
+
+    @Test
+    public void test120ConcurrentSlowOperationsDecreaseLimitOnce() throws Exception {
+        given("limiter with the average latency of getObject established");
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(MAX_LIMIT, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        for (int i = 0; i < 5; i++) {
+            connector.getObject(facade, 10 * MS);
+        }
+
+        when("three operations started at the same time are all slow");
+        int threads = 3;
+        connector.nextLatency = 0;
+        CountDownLatch entered = new CountDownLatch(threads);
+        CountDownLatch finish = new CountDownLatch(1);
+        connector.blockingCall = () -> {
+            entered.countDown();
+            assertThat(finish.await(TIMEOUT, TimeUnit.SECONDS)).as("finish signal").isTrue();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> facade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null)));
+            }
+            assertThat(entered.await(TIMEOUT, TimeUnit.SECONDS)).as("all operations started").isTrue();
+            connector.clock.addAndGet(100 * MS);
+            finish.countDown();
+            for (Future<?> future : futures) {
+                future.get(TIMEOUT, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        then("the limit is decreased only once");
+        assertThat(getLimit(limiter)).isEqualTo(9);
+
+        when("an operation started after the decrease is slow as well");
+        connector.blockingCall = null;
+        connector.getObject(facade, 100 * MS);
+
+        then("the limit is decreased again");
+        assertThat(getLimit(limiter)).isEqualTo(8);
+    }
+
+    @Test
+    public void test130CommunicationErrorDecreasesLimit() {
+        given("limiter and a connector failing on I/O");
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(MAX_LIMIT, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        connector.error = new ConnectorIOException("connection reset");
+
+        when("an operation fails");
+        then("the error is propagated");
+        assertThatThrownBy(() -> connector.getObject(facade, 10 * MS))
+                .isInstanceOf(ConnectorIOException.class);
+
+        then("the limit is decreased, and the operation is not in flight anymore");
+        ConnectorOperationalStatus status = getStatus(limiter);
+        assertThat(status.getConcurrencyLimit()).isEqualTo(9);
+        assertThat(status.getConcurrencyLimitInFlight()).isZero();
+
+        when("searches (not limited) are executed");
+        connector.error = null;
+        connector.search(facade);
+
+        then("the limit is not changed");
+        assertThat(getLimit(limiter)).isEqualTo(9);
+    }
+
+    @Test
+    public void test140OperationWaitsForFreeSlot() throws Exception {
+        given("limiter with the limit of 1, and an operation in flight");
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(1, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        connector.blockingCall = () -> {
+            entered.countDown();
+            assertThat(finish.await(TIMEOUT, TimeUnit.SECONDS)).as("finish signal").isTrue();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> facade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null));
+            assertThat(entered.await(TIMEOUT, TimeUnit.SECONDS)).as("first operation started").isTrue();
+
+            when("another operation is started");
+            Future<?> second = executor.submit(() -> facade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null));
+
+            then("it waits in the queue");
+            ConnectorOperationalStatus status = waitForQueueDepth(limiter, 1);
+            assertThat(status.getConcurrencyLimitInFlight()).as("in flight").isEqualTo(1);
+            assertThat(second.isDone()).as("second operation done").isFalse();
+
+            when("the first operation completes");
+            finish.countDown();
+            first.get(TIMEOUT, TimeUnit.SECONDS);
+
+            then("the waiting operation is executed");
+            second.get(TIMEOUT, TimeUnit.SECONDS);
+            ConnectorOperationalStatus statusAfter = getStatus(limiter);
+            assertThat(statusAfter.getConcurrencyLimitInFlight()).as("in flight").isZero();
+            assertThat(statusAfter.getConcurrencyLimitQueueDepth()).as("queue depth").isZero();
+            assertThat(statusAfter.getConcurrencyLimitRejections()).as("rejections").isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test150OperationRejectedAfterMaxWait() throws Exception {
+        given("limiter with the limit of 1 and short maximal wait, and an operation in flight");
+        long maxWait = 200;
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(1, maxWait, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        connector.blockingCall = () -> {
+            entered.countDown();
+            assertThat(finish.await(TIMEOUT, TimeUnit.SECONDS)).as("finish signal").isTrue();
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = executor.submit(() -> facade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null));
+            assertThat(entered.await(TIMEOUT, TimeUnit.SECONDS)).as("first operation started").isTrue();
+
+            when("another operation is started");
+            long start = System.currentTimeMillis();
+            then("it is rejected after the maximal wait");
+            assertThatThrownBy(() -> facade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null))
+                    .isInstanceOf(OperationTimeoutException.class);
+            assertThat(System.currentTimeMillis() - start).as("time waited").isGreaterThanOrEqualTo(maxWait);
+
+            and("the rejection is counted, and the operation is not waiting anymore");
+            ConnectorOperationalStatus status = getStatus(limiter);
+            assertThat(status.getConcurrencyLimitRejections()).as("rejections").isEqualTo(1);
+            assertThat(status.getConcurrencyLimitQueueDepth()).as("queue depth").isZero();
+            assertThat(status.getConcurrencyLimitInFlight()).as("in flight").isEqualTo(1);
+
+            finish.countDown();
+            first.get(TIMEOUT, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        and("the rejection does not change the limit");
+        assertThat(getLimit(limiter)).isEqualTo(1);
+    }
+
+    @Test
+    public void test160LimitIncreasedWhenUsedUp() throws Exception {
+        given("limiter with the limit decreased from 3 to 2");
+        int maxLimit = 3;
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(maxLimit, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+        for (int i = 0; i < 5; i++) {
+            connector.getObject(facade, 10 * MS);
+        }
+        connector.getObject(facade, 50 * MS);
+        assertThat(getLimit(limiter)).isEqualTo(2);
+
+        when("operations are executed one by one, in usual time");
+        for (int i = 0; i < 5; i++) {
+            connector.getObject(facade, 10 * MS);
+        }
+
+        then("the limit is not increased, as it is not used up");
+        assertThat(getLimit(limiter)).isEqualTo(2);
+
+        when("two operations are executed at the same time, in usual time");
+        connector.nextLatency = 0;
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch finish = new CountDownLatch(1);
+        connector.blockingCall = () -> {
+            entered.countDown();
+            assertThat(finish.await(TIMEOUT, TimeUnit.SECONDS)).as("finish signal").isTrue();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> facade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null)));
+            }
+            assertThat(entered.await(TIMEOUT, TimeUnit.SECONDS)).as("all operations started").isTrue();
+            connector.clock.addAndGet(10 * MS);
+            finish.countDown();
+            for (Future<?> future : futures) {
+                future.get(TIMEOUT, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        then("the limit is increased, up to the maximum");
+        assertThat(getLimit(limiter)).isEqualTo(maxLimit);
+    }
+
+    @Test
+    public void test170UnwrapReturnsOriginalFacade() {
+        given("limiter and a wrapped facade");
+        FakeConnector connector = new FakeConnector();
+        ConnIdConcurrencyLimiter limiter = new ConnIdConcurrencyLimiter(MAX_LIMIT, MAX_WAIT, connector.clock::get);
+        ConnectorFacade facade = limiter.wrap(connector.facade);
+
+        expect("the original facade is returned for diagnostics, the unwrapped one is kept as is");
+        assertThat(ConnIdConcurrencyLimiter.unwrap(facade)).isSameAs(connector.facade);
+        assertThat(ConnIdConcurrencyLimiter.unwrap(connector.facade)).isSameAs(connector.facade);
+    }
+
+    /** Waits until given number of operations is waiting for the limit. */
+    private ConnectorOperationalStatus waitForQueueDepth(ConnIdConcurrencyLimiter limiter, int expected)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        for (;;) {
+            ConnectorOperationalStatus status = getStatus(limiter);
+            if (status.getConcurrencyLimitQueueDepth() == expected) {
+                return status;
+            }
+            assertThat(System.currentTimeMillis()).as("time waiting for queue depth " + expected).isLessThan(deadline);
+            //noinspection BusyWait
+            Thread.sleep(10);
+        }
+    }
+
+    private int getLimit(ConnIdConcurrencyLimiter limiter) {
+        return getStatus(limiter).getConcurrencyLimit();
+    }
+
+    private ConnectorOperationalStatus getStatus(ConnIdConcurrencyLimiter limiter) {
+        ConnectorOperationalStatus status = new ConnectorOperationalStatus();
+        limiter.fillStatus(status);
+        display("Limiter: " + limiter);
+        return status;
+    }
+
+    /** Connector facade that takes the specified time (on the fake clock) to execute the operations. */
+    private static class FakeConnector {
+
+        private final AtomicLong clock = new AtomicLong();
+        private final ConnectorFacade facade;
+
+        /** Latency of the next operation. */
+        private volatile long nextLatency;
+
+        /** Executed as part of each operation, if set. */
+        private volatile BlockingCall blockingCall;
+
+        /** Thrown by each operation, if set. */
+        private volatile RuntimeException error;
+
+        FakeConnector() {
+            facade = (ConnectorFacade) Proxy.newProxyInstance(
+                    ConnectorFacade.class.getClassLoader(),
+                    new Class<?>[] { ConnectorFacade.class },
+                    (proxy, method, args) -> {
+                        BlockingCall call = blockingCall;
+                        if (call != null) {
+                            call.execute();
+                        }
+                        clock.addAndGet(nextLatency);
+                        if (error != null) {
+                            throw error;
+                        }
+                        return null;
+                    });
+        }
+
+        void getObject(ConnectorFacade limitedFacade, long latency) {
+            nextLatency = latency;
+            limitedFacade.getObject(ObjectClass.ACCOUNT, new Uid("jack"), null);
+        }
+
+        void update(ConnectorFacade limitedFacade, long latency) {
+            nextLatency = latency;
+            limitedFacade.update(ObjectClass.ACCOUNT, new Uid("jack"), Set.of(), null);
+        }
+
+        void search(ConnectorFacade limitedFacade) {
+            nextLatency = 1000 * MS;
+            limitedFacade.search(ObjectClass.ACCOUNT, null, null, null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockingCall {
+        void execute() throws Exception;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2010-2023 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_ACCOUNT_OBJECT_CLASS;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.BreakMode;
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.provisioning.ucf.api.UcfObjectFound;
+import com.evolveum.midpoint.provisioning.ucf.api.UcfObjectHandler;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.processor.ResourceObjectClassDefinition;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ConnectorConfigurationType;
+
+/**
+ * Tests the pipelined ConnId search (`searchPipelineQueueSize`) against the dummy connector. Each scenario is executed
+ * in both the pipelined and the regular mode, and the outcomes are compared.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-ucf-connid-test.xml" })
+public class TestUcfDummyPipelinedSearch extends AbstractUcfDummyTest {
+
+    /** Smaller than the number of accounts, so the connector thread has to wait for the processing. */
+    private static final int QUEUE_SIZE = 3;
+
+    private static final int ACCOUNTS = 20;
+
+    private static final int STOP_AFTER = 5;
+
+    private ConnectorInstanceConnIdImpl connector;
+    private ResourceObjectClassDefinition accountDefinition;
+
+    @Test
+    public void test000Setup() throws Exception {
+        OperationResult result = createOperationResult();
+
+        connector = (ConnectorInstanceConnIdImpl) connectorFactory.createConnectorInstance(
+                connectorType, "dummy", "dummy connector for pipelined searches");
+        //noinspection unchecked
+        PrismContainerValue<ConnectorConfigurationType> configContainer =
+                resourceType.getConnectorConfiguration().asPrismContainerValue();
+        connector.configure(configContainer, ResourceTypeUtil.getSchemaGenerationConstraints(resourceType), result);
+        resourceSchema = connector.fetchResourceSchema(result);
+        accountDefinition = resourceSchema.findObjectClassDefinitionRequired(RI_ACCOUNT_OBJECT_CLASS);
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            dummyResource.addAccount(new DummyAccount(String.format("user-%02d", i)));
+        }
+    }
+
+    @Test
+    public void test100Search() throws Exception {
+        when("all accounts are searched for");
+        List<String> regular = new ArrayList<>();
+        search(false, collectingHandler(regular, Integer.MAX_VALUE));
+        List<String> pipelined = new ArrayList<>();
+        search(true, collectingHandler(pipelined, Integer.MAX_VALUE));
+
+        then("all accounts are found, in the same order");
+        assertThat(regular).as("accounts found by regular search").hasSize(ACCOUNTS);
+        assertThat(pipelined).as("accounts found by pipelined search").isEqualTo(regular);
+        assertSearchThreadsFinished();
+    }
+
+    @Test
+    public void test110HandlerStopsSearch() throws Exception {
+        when("the handler stops the search after " + STOP_AFTER + " accounts");
+        List<String> regular = new ArrayList<>();
+        search(false, collectingHandler(regular, STOP_AFTER));
+        List<String> pipelined = new ArrayList<>();
+        search(true, collectingHandler(pipelined, STOP_AFTER));
+
+        then("the handler got the same accounts, and the connector thread is finished");
+        assertThat(regular).as("accounts processed in regular search").hasSize(STOP_AFTER);
+        assertThat(pipelined).as("accounts processed in pipelined search").isEqualTo(regular);
+        assertSearchThreadsFinished();
+    }
+
+    @Test
+    public void test120HandlerThrows() throws Exception {
+        given("a handler that fails after " + STOP_AFTER + " accounts");
+        UcfObjectHandler failingHandler = failingHandler(STOP_AFTER);
+
+        when("the search is executed");
+        Throwable regular = searchForException(false, failingHandler(STOP_AFTER));
+        Throwable pipelined = searchForException(true, failingHandler);
+
+        then("the same exception is thrown, and the connector thread is finished");
+        displayValue("Exception from regular search", regular);
+        displayValue("Exception from pipelined search", pipelined);
+        assertThat(pipelined).isNotNull();
+        assertThat(pipelined.getClass()).as("exception class").isEqualTo(regular.getClass());
+        assertThat(pipelined.getMessage()).as("exception message").isEqualTo(regular.getMessage());
+        assertSearchThreadsFinished();
+    }
+
+    @Test
+    public void test130ConnectorThrows() throws Exception {
+        given("a resource that fails on search");
+        dummyResource.setGetBreakMode(BreakMode.IO);
+        try {
+            when("the search is executed");
+            Throwable regular = searchForException(false, collectingHandler(new ArrayList<>(), Integer.MAX_VALUE));
+            Throwable pipelined = searchForException(true, collectingHandler(new ArrayList<>(), Integer.MAX_VALUE));
+
+            then("the exception is converted in the same way, and the connector thread is finished");
+            displayValue("Exception from regular search", regular);
+            displayValue("Exception from pipelined search", pipelined);
+            assertThat(regular).isInstanceOf(CommunicationException.class);
+            assertThat(pipelined).isInstanceOf(CommunicationException.class);
+            assertThat(pipelined.getMessage()).as("exception message").isEqualTo(regular.getMessage());
+            assertSearchThreadsFinished();
+        } finally {
+            dummyResource.setGetBreakMode(BreakMode.NONE);
+        }
+    }
+
+    private void search(boolean pipelined, UcfObjectHandler handler) throws Exception {
+        connector.setSearchPipelineQueueSize(pipelined ? QUEUE_SIZE : 0);
+        OperationResult result = createOperationResult();
+        connector.search(accountDefinition, null, handler, null, null, null, null, createExecutionContext(), result);
+    }
+
+    private Throwable searchForException(boolean pipelined, UcfObjectHandler handler) {
+        try {
+            search(pipelined, handler);
+        } catch (Throwable t) {
+            return t;
+        }
+        throw new AssertionError("Search (pipelined: " + pipelined + ") unexpectedly succeeded");
+    }
+
+    private UcfObjectHandler collectingHandler(List<String> names, int limit) {
+        return (ucfObject, result) -> {
+            names.add(getName(ucfObject));
+            return names.size() < limit;
+        };
+    }
+
+    private UcfObjectHandler failingHandler(int failAfter) {
+        List<String> names = new ArrayList<>();
+        return (ucfObject, result) -> {
+            if (names.size() == failAfter) {
+                throw new IllegalStateException("Processing failed after " + failAfter + " objects");
+            }
+            names.add(getName(ucfObject));
+            return true;
+        };
+    }
+
+    private static String getName(UcfObjectFound ucfObject) {
+        try {
+            return ShadowUtil.getAttributeValue(ucfObject.getResourceObject(), SchemaConstants.ICFS_NAME);
+        } catch (SchemaException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void assertSearchThreadsFinished() {
+        assertThat(SearchExecutor.getRunningPipelinedSearches())
+                .as("pipelined searches still running in connector threads")
+                .isZero();
+    }
+}
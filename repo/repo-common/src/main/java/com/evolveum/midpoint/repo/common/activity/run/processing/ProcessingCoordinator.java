@@ -31,6 +31,10 @@ import com.evolveum.midpoint.util.logging.Trace;
 
 /**
  * Responsible for distributing instances of {@link ItemProcessingRequest} to individual worker threads.
+ *
+ * Requests can be submitted from more threads at once (e.g. by the asynchronous update connector that processes
+ * the changes in parallel). Requests with the same correlation value are processed in the order of their submission,
+ * see {@link RequestsBuffer}. Without worker threads, the requests are processed one at a time by the coordinator task.
  */
 public class ProcessingCoordinator<I> {
 
@@ -63,6 +67,12 @@ public class ProcessingCoordinator<I> {
      */
     private final AtomicBoolean allItemsSubmitted = new AtomicBoolean(false);
 
+    /**
+     * Serializes the processing of requests in the coordinator task (if there are no worker threads), as the task
+     * state (e.g. execution support or simulation transaction) is set up for each request being processed.
+     */
+    private final Object coordinatorTaskProcessingLock = new Object();
+
     public ProcessingCoordinator(int threadsCount, @NotNull IterativeActivityRun<I, ?, ?, ?> activityRun) {
         this.coordinatorTask = activityRun.getRunningTask();
         this.activityRun = activityRun;
@@ -110,8 +120,10 @@ public class ProcessingCoordinator<I> {
             result.recordStatus(OperationResultStatus.SUCCESS, "Request submitted for processing");
             return true;
         } else {
-            // In this case the coordinator task is the worker.
-            return request.process(coordinatorTask, result);
+            // In this case the coordinator task is the worker. It can process only one request at a time.
+            synchronized (coordinatorTaskProcessingLock) {
+                return request.process(coordinatorTask, result);
+            }
         }
     }
 
@@ -154,6 +166,7 @@ public class ProcessingCoordinator<I> {
             return;
         }
         assert workerSpecificResults != null;
+        assert requestsBuffer != null;
 
         // remove subtasks that could have been created previously
         coordinatorTask.deleteLightweightAsynchronousSubtasks();
@@ -166,6 +179,7 @@ public class ProcessingCoordinator<I> {
             workerSpecificResults.add(workerSpecificResult);
 
             RunningLightweightTask subtask = coordinatorTask.createSubtask(new WorkerHandler(workerSpecificResult));
+            requestsBuffer.registerWorker(subtask.getTaskIdentifier(), i);
             subtask.setResult(new OperationResult(OP_EXECUTE_WORKER, OperationResultStatus.IN_PROGRESS, (String) null));
             subtask.setName("Worker thread " + (i+1) + " of " + threadsCount);
             subtask.setExecutionEnvironment(CloneUtil.clone(coordinatorTask.getExecutionEnvironment()));
@@ -230,6 +244,8 @@ public class ProcessingCoordinator<I> {
             while (canRun(workerTask)) {
 
                 workerTask.refreshThreadLocalStatistics();
+                // Must be read before polling: a request could be submitted after an unsuccessful poll.
+                boolean allSubmitted = allItemsSubmitted.get();
                 ItemProcessingRequest<I> request = requestsBuffer.poll(taskIdentifier);
 
                 if (request != null) {
@@ -238,11 +254,10 @@ public class ProcessingCoordinator<I> {
                             stopRequestedByAnyWorker.set(true);
                         }
                     } finally {
-                        requestsBuffer.markProcessed(request, taskIdentifier);
                         treatOperationResultAfterOperation();
                     }
                 } else {
-                    if (allItemsSubmitted.get()) {
+                    if (allSubmitted) {
                         LOGGER.trace("Queue is empty and nothing more is expected - exiting");
                         break;
                     } else {
@@ -259,9 +274,9 @@ public class ProcessingCoordinator<I> {
                 }
             }
 
-            int reservedRequests = requestsBuffer.getReservedRequestsCount(taskIdentifier);
-            if (reservedRequests > 0) {
-                LOGGER.warn("Worker task exiting but it has {} reserved (pre-assigned) change requests", reservedRequests);
+            int queuedRequests = requestsBuffer.getQueuedRequestsCount(taskIdentifier);
+            if (queuedRequests > 0) {
+                LOGGER.warn("Worker task exiting but it has {} queued (pre-assigned) requests", queuedRequests);
             }
             workerTask.refreshThreadLocalStatistics();
         }
@@ -10,6 +10,7 @@ package com.evolveum.midpoint.repo.common.activity.run.processing;
 import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -18,206 +19,119 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
 /**
- * TODO fix the description
+ * Stores requests to be processed by worker tasks.
  *
- * <p>Stores requests to be processed.</p>
+ * Its primary responsibility is that it has to ensure that requests related to given correlation value (e.g. primary
+ * identifier of a resource object) are processed exactly in the order in which they were submitted.
  *
- * <p>Its primary responsibility is that it has to ensure that changes related to given primary identifier are processed exactly
- * in the order in which they were fetched from the resource (recorded as {@link com.evolveum.midpoint.provisioning.ucf.api.Change#localSequenceNumber}).
- * This responsibility is ensured by the concepts of binding and reservation.</p>
+ * This is ensured by partitioning: each {@link CorrelatableProcessingRequest} is put into the queue of the worker
+ * determined by its correlation value. Each worker processes its own queue in FIFO order, so the requests with the same
+ * correlation value are processed by the same worker, one after another - even if they are submitted from more threads
+ * (e.g. from the processing lanes of the asynchronous update connector), provided that each correlation value is submitted
+ * from a single thread at a time.
  *
- * <p>Primary identifier I is said to be _bound_ to task T if an object with this identifier it is being currently processed by T
- * or is waiting to be processed by T (reserved for T). See {@link #bind(ProcessChangeRequest, String)} and {@link #unbind(ProcessChangeRequest, String)}
- * methods.</p>
- *
- * <p>Reservation is represented by a queue of requests waiting to be processed by specified subtask. A request gets
- * onto this queue if it's fetched from the global queue but cannot be processed because it is bound to a subtask different
- * from the current one. So it's put into "owning" task reserved requests queue. See {@link #reserve(ProcessChangeRequest, String)}.</p>
+ * Requests without correlation value go to the global queue, from which they can be taken by any worker.
  */
-@SuppressWarnings("JavadocReference")
 class RequestsBuffer<I> {
 
     private static final Trace LOGGER = TraceManager.getTrace(RequestsBuffer.class);
 
     private static final long REQUEST_QUEUE_OFFER_TIMEOUT = 1000L;
 
+    /** Size of the queue of each worker. Small, in order to keep the submitting thread(s) from going too far ahead. */
+    private static final int WORKER_QUEUE_SIZE = 2;
+
     /**
-     * Global queue of waiting requests.
+     * Global queue of waiting requests that are not correlated.
      */
     private final BlockingQueue<ItemProcessingRequest<I>> globalQueue;
 
     /**
-     * Current bindings of resource objects (their identifiers) to subtasks.
-     *
-     * Entry key: primary resource object identifier (~ account ID)
-     * Entry value: task identifier
+     * Queues of correlated requests waiting to be processed by individual workers.
      */
-    private final Map<Object, String> bindingsMap = new HashMap<>();
+    private final List<BlockingQueue<ItemProcessingRequest<I>>> workerQueues = new ArrayList<>();
 
     /**
-     * Change requests reserved to be processed by each subtask.
+     * Index of the worker queue for each worker task.
      *
      * Entry key: task identifier.
-     * Entry value: queue of requests. The requests are sorted by change identifier, to ensure processing in the correct order.
+     * Entry value: index into {@link #workerQueues}.
      */
-    private final Map<String, PriorityQueue<ItemProcessingRequest<I>>> reservedRequestsQueueMap = new HashMap<>();
+    private final Map<String, Integer> workerIndices = new ConcurrentHashMap<>();
 
     RequestsBuffer(int threadsCount) {
         int globalQueueSize = threadsCount*2; // actually, size of threadsCount should be sufficient but it doesn't hurt if queue is larger
         globalQueue = new ArrayBlockingQueue<>(globalQueueSize);
+        for (int i = 0; i < threadsCount; i++) {
+            workerQueues.add(new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE));
+        }
     }
 
     /**
-     * Offers a request for processing.
+     * Registers a worker task. Must be called (for all workers) before any request is offered or polled.
      *
-     * This method is intentionally NOT synchronized.
-     *
-     * @throws InterruptedException If present, the request was not put into the queue.
+     * @param index Index of the worker, from 0 to threadsCount - 1.
      */
-    boolean offer(ItemProcessingRequest<I> request) throws InterruptedException {
-        return globalQueue.offer(request, REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+    void registerWorker(String taskIdentifier, int index) {
+        workerIndices.put(taskIdentifier, index);
     }
 
     /**
-     * Tries to obtain a request to be processed by the specified subtask.
-     * Does NOT wait, it just checks reserved requests and global queues.
+     * Offers a request for processing. Correlated requests go to the queue of the respective worker, others
+     * go to the global queue.
+     *
+     * This method is intentionally NOT synchronized.
      *
-     * Post-conditions:
-     * - Returns null only if there are no reserved nor globally available requests.
-     * - If the request is not null, the primary identifier of the request is (successfully) bound to the specified task.
+     * @return false if the request could not be queued in a reasonable time; the caller should check whether
+     * the processing can continue and try again.
+     * @throws InterruptedException If present, the request was not put into the queue.
      */
-    synchronized ItemProcessingRequest<I> poll(String taskIdentifier) {
-
-        ItemProcessingRequest<I> reserved = getNextReservedRequest(taskIdentifier);
-        if (reserved != null) {
-            LOGGER.trace("Got reserved (pre-assigned) request: {}", reserved);
-            if (bind(reserved, taskIdentifier)) {
-                return reserved;
-            } else {
-                throw new IllegalStateException("A reserved request couldn't be bound to the current task. Request = " +
-                        reserved + ", task = " + taskIdentifier);
-            }
-        }
-
-        for (;;) {
-            ItemProcessingRequest<I> request = globalQueue.poll();
-            LOGGER.trace("Got request from global queue: {}", request);
-
-            if (request == null) {
-                // Nothing in the queue for now. OK, let's try next time.
-                return null;
-            }
-
-            if (bind(request, taskIdentifier)) {
-                return request;
-            } else {
-                // The request couldn't be bound to the specified task. We have to go and try another one.
-            }
-        }
+    boolean offer(ItemProcessingRequest<I> request) throws InterruptedException {
+        return getQueueFor(request).offer(request, REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
-    /**
-     * Binds a request identifier to specified subtask, if possible i.e. if the request identifier is not bound to another task.
-     * If the request identifier is bound to another task, the request is assigned to it.
-     *
-     * @return true if the request was successfully bound to the current task;
-     *         false if it was reassigned (so this task has to fetch another request).
-     */
-    private boolean bind(ItemProcessingRequest<I> request, String taskIdentifier) {
+    private BlockingQueue<ItemProcessingRequest<I>> getQueueFor(ItemProcessingRequest<I> request) {
         if (!(request instanceof CorrelatableProcessingRequest)) {
-            return true;
+            return globalQueue;
         }
-
         Object correlationValue = ((CorrelatableProcessingRequest) request).getCorrelationValue();
         if (correlationValue == null) {
             LOGGER.warn("Null correlationValue in request {}", request);
-            return true;
-        }
-
-        String boundTo = bindingsMap.get(correlationValue);
-        if (boundTo == null) {
-            LOGGER.trace("Binding {} to {}", correlationValue, taskIdentifier);
-            bindingsMap.put(correlationValue, taskIdentifier);
-            return true;
-        }
-
-        if (boundTo.equals(taskIdentifier)) {
-            LOGGER.trace("Processing {} as it is already bound to current task: {}", correlationValue, taskIdentifier);
-            return true;
+            return globalQueue;
         }
-
-        LOGGER.trace("Request {} (ID {}) is already bound to another task {}. Moving it to the reserved"
-                + " requests queue for that task. Current task: {}", request, correlationValue, boundTo, taskIdentifier);
-        reserve(request, boundTo);
-        return false;
+        int index = Math.floorMod(correlationValue.hashCode(), workerQueues.size());
+        LOGGER.trace("Request {} (ID {}) goes to the queue of worker #{}", request, correlationValue, index);
+        return workerQueues.get(index);
     }
 
     /**
-     * Gets a change reserved for given task (if there's any).
-     * REMOVES the reservation.
+     * Tries to obtain a request to be processed by the specified worker task.
+     * Does NOT wait, it just checks the worker's own and the global queue.
      *
-     * @return Change reserved for given task; or null if there's nothing there.
-     */
-    private ItemProcessingRequest<I> getNextReservedRequest(String taskIdentifier) {
-        Queue<ItemProcessingRequest<I>> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        if (reservedRequests != null) {
-            return reservedRequests.poll();
-        } else {
-            return null;
-        }
-    }
-
-    private void reserve(ItemProcessingRequest<I> request, String owningTaskIdentifier) {
-        reservedRequestsQueueMap
-                .computeIfAbsent(owningTaskIdentifier, key -> new PriorityQueue<>())
-                .offer(request);
-    }
-
-    /**
-     * Marks specified request as processed: Unbinds its primary identifier from the calling subtask.
+     * @return null only if there are no requests for the worker nor globally available requests.
      */
-    synchronized void markProcessed(ItemProcessingRequest<I> request, String taskIdentifier) {
-        unbind(request, taskIdentifier);
-    }
-
-    private void unbind(ItemProcessingRequest<I> request, String taskIdentifier) {
-        if (!(request instanceof CorrelatableProcessingRequest)) {
-            return;
+    ItemProcessingRequest<I> poll(String taskIdentifier) {
+        ItemProcessingRequest<I> own = getWorkerQueue(taskIdentifier).poll();
+        if (own != null) {
+            LOGGER.trace("Got request from worker queue: {}", own);
+            return own;
         }
-
-        Object correlationValue = ((CorrelatableProcessingRequest) request).getCorrelationValue();
-        LOGGER.trace("Trying to unbind {} from {}", correlationValue, taskIdentifier);
-        if (correlationValue == null) {
-            LOGGER.trace("correlationValue is null (warning has been already issued): {}", request);
-            return;
-        }
-
-        if (isReserved(correlationValue, taskIdentifier)) {
-            LOGGER.trace("...but it is reserved to its owner (some relevant changes are waiting), so not unbinding now");
-            return;
-        }
-
-        String previousOwner = bindingsMap.remove(correlationValue);
-        LOGGER.trace("Unbound (previous owner was: {})", previousOwner);
-        assert taskIdentifier.equals(previousOwner);
+        ItemProcessingRequest<I> request = globalQueue.poll();
+        LOGGER.trace("Got request from global queue: {}", request);
+        return request;
     }
 
-    private boolean isReserved(Object primaryIdentifier, String taskIdentifier) {
-        Queue<ItemProcessingRequest<I>> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        if (reservedRequests != null) {
-            for (ItemProcessingRequest<I> request : reservedRequests) {
-                if (request instanceof CorrelatableProcessingRequest &&
-                        primaryIdentifier.equals(((CorrelatableProcessingRequest) request).getCorrelationValue())) {
-                    return true;
-                }
-            }
+    private BlockingQueue<ItemProcessingRequest<I>> getWorkerQueue(String taskIdentifier) {
+        Integer index = workerIndices.get(taskIdentifier);
+        if (index == null) {
+            throw new IllegalStateException("Worker task " + taskIdentifier + " is not registered");
         }
-        return false;
+        return workerQueues.get(index);
     }
 
-    synchronized int getReservedRequestsCount(String taskIdentifier) {
-        Queue<ItemProcessingRequest<I>> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        return reservedRequests != null ? reservedRequests.size() : 0;
+    /** Returns the number of requests waiting in the queue of the specified worker. */
+    int getQueuedRequestsCount(String taskIdentifier) {
+        return getWorkerQueue(taskIdentifier).size();
     }
 
     // should be called when there's no concurrency
@@ -225,7 +139,7 @@ class RequestsBuffer<I> {
         AtomicInteger nackCounter = new AtomicInteger();
 
         nackAll(globalQueue, nackCounter, result);
-        reservedRequestsQueueMap.values().forEach(queue -> nackAll(queue, nackCounter, result));
+        workerQueues.forEach(queue -> nackAll(queue, nackCounter, result));
 
         return nackCounter.get();
     }
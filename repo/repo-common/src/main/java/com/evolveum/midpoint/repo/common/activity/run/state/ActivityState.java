@@ -106,6 +106,13 @@ public abstract class ActivityState implements DebugDumpable {
     private @NotNull ItemPath getResultStatusItemPath() {
         return stateItemPath.append(ActivityStateType.F_RESULT_STATUS);
     }
+
+    /** Returns (a clone of) item processing statistics, accumulated over all runs of the activity realization. */
+    public @Nullable ActivityItemProcessingStatisticsType getItemProcessingStatistics() {
+        return getItemRealValueClone(
+                ItemPath.create(ActivityStateType.F_STATISTICS, ActivityStatisticsType.F_ITEM_PROCESSING),
+                ActivityItemProcessingStatisticsType.class);
+    }
     //endregion
 
     //region Bucketing
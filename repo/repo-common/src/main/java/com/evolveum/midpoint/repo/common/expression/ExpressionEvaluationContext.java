@@ -14,10 +14,12 @@ import javax.xml.namespace.QName;
 
 import org.jetbrains.annotations.NotNull;
 
+import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.schema.expression.ExpressionEvaluatorProfile;
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
 /**
  * Simple almost-DTO used to contain all the parameters of expression evaluation.
@@ -120,6 +122,17 @@ public class ExpressionEvaluationContext {
      */
     private TransformationValueMetadataComputer valueMetadataComputer;
 
+    /**
+     * Object in which the expression is defined (e.g. a resource or a role), if known. For diagnostic purposes.
+     */
+    private ObjectType originObject;
+
+    /**
+     * Bean containing the expression (e.g. a mapping), if known. Its path in {@link #originObject} identifies
+     * the expression for diagnostic purposes.
+     */
+    private Containerable originBean;
+
     public ExpressionEvaluationContext(
             Collection<Source<?,?>> sources, VariablesMap variables, String contextDescription, Task task) {
         super();
@@ -251,6 +264,19 @@ public class ExpressionEvaluationContext {
         this.valueMetadataComputer = valueMetadataComputer;
     }
 
+    public ObjectType getOriginObject() {
+        return originObject;
+    }
+
+    public Containerable getOriginBean() {
+        return originBean;
+    }
+
+    public void setOrigin(ObjectType originObject, Containerable originBean) {
+        this.originObject = originObject;
+        this.originBean = originBean;
+    }
+
     public boolean hasDeltas() {
         return hasDeltas(sources) || variables != null && variables.haveDeltas();
     }
@@ -277,6 +303,8 @@ public class ExpressionEvaluationContext {
         clone.variableProducer = this.variableProducer;
         clone.valueMetadataComputer = this.valueMetadataComputer;
         clone.localContextDescription = this.localContextDescription;
+        clone.originObject = this.originObject;
+        clone.originBean = this.originBean;
         return clone;
     }
 }
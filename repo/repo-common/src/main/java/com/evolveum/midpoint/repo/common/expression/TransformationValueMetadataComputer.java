@@ -31,6 +31,16 @@ public interface TransformationValueMetadataComputer {
             throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
             ConfigurationException, ExpressionEvaluationException;
 
+    /**
+     * The same as {@link #compute(List, OperationResult)}, but the returned value may be immutable and shared among calls.
+     * For callers that copy the metadata anyway, so they need not be copied here.
+     */
+    default ValueMetadataType computeShared(@NotNull List<PrismValue> inputValues, @NotNull OperationResult result)
+            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException,
+            ConfigurationException, ExpressionEvaluationException {
+        return compute(inputValues, result);
+    }
+
     boolean supportsProvenance() throws SchemaException, ConfigurationException;
 
 }
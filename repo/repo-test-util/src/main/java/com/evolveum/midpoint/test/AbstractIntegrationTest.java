@@ -1416,6 +1416,10 @@ public abstract class AbstractIntegrationTest extends AbstractSpringTest
         assertCacheMisses(lastResourceCacheStats, InternalMonitor.getResourceCacheStats(), "resource cache", expectedIncrement);
     }
 
+    protected void assertResourceCacheClonesIncrement(int expectedIncrement) {
+        assertCacheClones(lastResourceCacheStats, InternalMonitor.getResourceCacheStats(), "resource cache", expectedIncrement);
+    }
+
     protected void assertCacheHits(CachingStatistics lastStats, CachingStatistics currentStats, String desc, int expectedIncrement) {
         long actualIncrement = currentStats.getHits() - lastStats.getHits();
         assertThat(actualIncrement)
@@ -1432,6 +1436,14 @@ public abstract class AbstractIntegrationTest extends AbstractSpringTest
         lastStats.setMisses(currentStats.getMisses());
     }
 
+    protected void assertCacheClones(CachingStatistics lastStats, CachingStatistics currentStats, String desc, int expectedIncrement) {
+        long actualIncrement = currentStats.getClones() - lastStats.getClones();
+        assertThat(actualIncrement)
+                .as("Increment in " + desc + " clone count")
+                .isEqualTo(expectedIncrement);
+        lastStats.setClones(currentStats.getClones());
+    }
+
     protected void assertSteadyResources() {
         assertCounterIncrement(InternalCounters.RESOURCE_REPOSITORY_READ_COUNT, 0);
         assertCounterIncrement(InternalCounters.RESOURCE_REPOSITORY_MODIFY_COUNT, 0);